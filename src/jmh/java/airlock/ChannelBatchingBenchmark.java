@@ -0,0 +1,75 @@
+package airlock;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many pokes per second can be pushed through a channel, with and without batching,
+ * against a {@link FakeEyre} which holds every PUT for a couple of milliseconds.
+ * <p>
+ * Each invocation fires a burst of pokes from one thread and waits for every PUT to be accepted.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelBatchingBenchmark {
+
+	private static final int BURST_SIZE = 200;
+
+	@Param({"false", "true"})
+	public boolean batching;
+
+	@Param({"2"})
+	public long putLatencyMs;
+
+	private FakeEyre fakeEyre;
+	private AirlockChannel channel;
+	private int nextId = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		fakeEyre = new FakeEyre(putLatencyMs);
+		channel = new AirlockChannel(fakeEyre.credentials());
+		channel.authenticate();
+		if (batching) {
+			channel.enableBatching(BatchingConfig.DEFAULT);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		channel.disableBatching();
+		System.out.println("puts: " + fakeEyre.puts.get() + ", actions: " + fakeEyre.actions.get());
+		fakeEyre.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST_SIZE)
+	public void pokeBurst() {
+		List<CompletableFuture<InMemoryResponseWrapper>> sent = new ArrayList<>(BURST_SIZE);
+		for (int i = 0; i < BURST_SIZE; i++) {
+			JsonObject poke = AirlockUtils.map2json(Map.of(
+					"id", ++nextId,
+					"action", "poke",
+					"ship", FakeEyre.SHIP,
+					"app", "hood",
+					"mark", "helm-hi",
+					"json", new JsonPrimitive("benchmark")
+			));
+			sent.add(channel.sendJSONtoChannelAsync(poke));
+		}
+		CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).join();
+	}
+
+}
@@ -0,0 +1,129 @@
+package airlock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A very small stand-in for eyre, used by the benchmarks so that they can run without a fakezod.
+ * <p>
+ * It only implements as much of the protocol as the benchmarks need:
+ * logging in (which hands out an auth cookie for ~zod), accepting PUTs to a channel, and answering scries
+ * with a json array of {@link FakeEyre#SCRY_ELEMENTS} numbers.
+ * Every PUT is held for a configurable amount of time to simulate the round trip to a real ship.
+ * </p>
+ */
+public class FakeEyre implements AutoCloseable {
+
+	public static final String SHIP = "zod";
+	public static final String CODE = "lidlut-tabwed-pillex-ridrup";
+	public static final int SCRY_ELEMENTS = 10_000;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long putLatencyMs;
+	private final byte[] scryBody;
+
+	/**
+	 * The number of PUTs received so far
+	 */
+	public final AtomicLong puts = new AtomicLong();
+
+	/**
+	 * The number of actions received so far, across all PUTs
+	 */
+	public final AtomicLong actions = new AtomicLong();
+
+	public FakeEyre(long putLatencyMs) throws IOException {
+		this.putLatencyMs = putLatencyMs;
+		StringBuilder scryJson = new StringBuilder("[");
+		for (int i = 0; i < SCRY_ELEMENTS; i++) {
+			scryJson.append(i == 0 ? "" : ",").append(i);
+		}
+		this.scryBody = scryJson.append("]").toString().getBytes(StandardCharsets.UTF_8);
+		this.executor = Executors.newCachedThreadPool();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.setExecutor(executor);
+		this.server.createContext("/~/login", this::handleLogin);
+		this.server.createContext("/~/channel/", this::handleChannel);
+		this.server.createContext("/~/scry/", this::handleScry);
+		this.server.start();
+	}
+
+	public URL url() {
+		try {
+			return new URL("http://localhost:" + server.getAddress().getPort());
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException("Unable to create url for fake eyre", e);
+		}
+	}
+
+	public AirlockCredentials credentials() {
+		return new AirlockCredentials(this.url(), SHIP, CODE);
+	}
+
+	private void handleLogin(HttpExchange exchange) throws IOException {
+		exchange.getRequestBody().readAllBytes();
+		exchange.getResponseHeaders().add("Set-Cookie", "urbauth-~" + SHIP + "=0vfake.cookie; Path=/; Max-Age=604800");
+		exchange.sendResponseHeaders(204, -1);
+		exchange.close();
+	}
+
+	private void handleChannel(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("PUT")) {
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+
+		String body;
+		try (InputStream requestBody = exchange.getRequestBody()) {
+			body = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		puts.incrementAndGet();
+		actions.addAndGet(countActions(body));
+
+		try {
+			Thread.sleep(putLatencyMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		exchange.sendResponseHeaders(204, -1);
+		exchange.close();
+	}
+
+	private void handleScry(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, scryBody.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(scryBody);
+		}
+	}
+
+	private static int countActions(String body) {
+		int count = 0;
+		int from = 0;
+		while ((from = body.indexOf("\"action\"", from)) != -1) {
+			count++;
+			from++;
+		}
+		return count;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
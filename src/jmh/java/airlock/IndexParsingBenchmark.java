@@ -0,0 +1,87 @@
+package airlock;
+
+import airlock.agent.graph.types.Index;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link Index#fromString(String)} with the split/stream/BigInteger parser it replaced,
+ * on the kinds of index strings we see while reading an `add-graph`.
+ * <p>
+ * Each invocation parses every string of the set once.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexParsingBenchmark {
+
+	private static final int SET_SIZE = 1024;
+
+	/**
+	 * "post" is a single `@da` (a chat message), "nested" is a `@da` with a revision under it (a publish note),
+	 * and "small" is a couple of small atoms
+	 */
+	@Param({"post", "nested", "small"})
+	public String shape;
+
+	private String[] indexes;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		indexes = new String[SET_SIZE];
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < SET_SIZE; i++) {
+			BigInteger da = AirlockUtils.unixToDa(now - i * 1000L);
+			switch (shape) {
+				case "post":
+					indexes[i] = "/" + da;
+					break;
+				case "nested":
+					indexes[i] = "/" + da + "/1/" + (i % 8 + 1);
+					break;
+				default:
+					indexes[i] = "/" + i + "/" + (i % 3);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * The old implementation of {@link Index#fromString(String)}
+	 */
+	private static Index legacyFromString(String indexStr) {
+		return new Index(
+				Arrays
+				.stream(indexStr.split("/"))
+				.skip(1)
+				.map(BigInteger::new)
+				.collect(Collectors.toList())
+		);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SET_SIZE)
+	public void legacy(Blackhole blackhole) {
+		for (String index : indexes) {
+			blackhole.consume(legacyFromString(index));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SET_SIZE)
+	public void singlePass(Blackhole blackhole) {
+		for (String index : indexes) {
+			blackhole.consume(Index.fromString(index));
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package airlock;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link OkHttpTransport} and the {@link JdkHttpTransport} under the two kinds of traffic a channel makes,
+ * against a {@link FakeEyre}: bursts of asynchronous PUTs (pokes), and blocking scries whose body is decoded as it is read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+	private static final int BURST_SIZE = 200;
+
+	@Param({"okhttp", "jdk"})
+	public String transport;
+
+	@Param({"0"})
+	public long putLatencyMs;
+
+	private FakeEyre fakeEyre;
+	private AirlockChannel channel;
+	private int nextId = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		fakeEyre = new FakeEyre(putLatencyMs);
+		HttpTransport httpTransport = transport.equals("okhttp") ? new OkHttpTransport() : new JdkHttpTransport();
+		channel = new AirlockChannel(fakeEyre.credentials(), httpTransport);
+		channel.authenticate();
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		fakeEyre.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST_SIZE)
+	public void pokeBurst() {
+		List<CompletableFuture<InMemoryResponseWrapper>> sent = new ArrayList<>(BURST_SIZE);
+		for (int i = 0; i < BURST_SIZE; i++) {
+			JsonObject poke = AirlockUtils.map2json(Map.of(
+					"id", ++nextId,
+					"action", "poke",
+					"ship", FakeEyre.SHIP,
+					"app", "hood",
+					"mark", "helm-hi",
+					"json", new JsonPrimitive("benchmark")
+			));
+			sent.add(channel.sendJSONtoChannelAsync(poke));
+		}
+		CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).join();
+	}
+
+	@Benchmark
+	public long scry() throws Exception {
+		return channel.scryRequest("graph-store", "/keys", TransportBenchmark::sum);
+	}
+
+	private static long sum(JsonReader reader) throws IOException {
+		long sum = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			sum += reader.nextLong();
+		}
+		reader.endArray();
+		return sum;
+	}
+
+}
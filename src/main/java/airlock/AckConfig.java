@@ -0,0 +1,64 @@
+package airlock;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides how often events received from the ship are acknowledged.
+ * See {@link AirlockChannel#setAckConfig(AckConfig)}.
+ * <p>
+ * Acks in eyre are cumulative: acking an event acks every event before it as well.
+ * So rather than acking every single event, we only ack the highest event id we have seen,
+ * once <i>either</i> of the limits below is reached.
+ * </p>
+ * <p>
+ * N.B: eyre will eventually kill a channel which has too many unacked events, so the limits should be kept small.
+ * </p>
+ */
+public class AckConfig {
+
+	/**
+	 * Send an ack after this many events have been received without one
+	 */
+	public final int everyEvents;
+
+	/**
+	 * Send an ack at most this long after the first unacked event was received
+	 */
+	public final Duration maxDelay;
+
+	/**
+	 * Ack every 20 events, or 100ms after an unacked event, whichever comes first
+	 */
+	public static final AckConfig DEFAULT = new AckConfig(20, Duration.ofMillis(100));
+
+	/**
+	 * Ack every single event as soon as it arrives (still without blocking the sse thread)
+	 */
+	public static final AckConfig EVERY_EVENT = new AckConfig(1, Duration.ZERO);
+
+	/**
+	 * @param everyEvents The number of events after which an ack is sent
+	 * @param maxDelay    The longest time an event may remain unacked
+	 */
+	public AckConfig(int everyEvents, Duration maxDelay) {
+		requireNonNull(maxDelay, "Please provide a max delay");
+		if (everyEvents < 1) {
+			throw new IllegalArgumentException("everyEvents must be at least 1");
+		}
+		if (maxDelay.isNegative()) {
+			throw new IllegalArgumentException("maxDelay cannot be negative");
+		}
+		this.everyEvents = everyEvents;
+		this.maxDelay = maxDelay;
+	}
+
+	@Override
+	public String toString() {
+		return "AckConfig{" +
+				"everyEvents=" + everyEvents +
+				", maxDelay=" + maxDelay +
+				'}';
+	}
+}
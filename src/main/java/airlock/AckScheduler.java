@@ -0,0 +1,243 @@
+package airlock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps track of which events have been seen and acknowledged, and sends coalesced acks according to an {@link AckConfig}.
+ * <p>
+ * The sse thread only ever calls {@link AckScheduler#alreadySeen(int)} and {@link AckScheduler#eventSeen(int)}, which just look at and update some counters.
+ * The acks themselves are sent from a timer thread shared by all channels, or piggybacked onto whatever PUT goes out next
+ * (see {@link AckScheduler#takePendingAck()}).
+ * </p>
+ */
+class AckScheduler {
+
+	private static final System.Logger LOGGER = System.getLogger(AckScheduler.class.getName());
+
+	/**
+	 * Returned by {@link AckScheduler#takePendingAck()} when there is nothing to ack
+	 */
+	static final int NO_PENDING_ACK = -1;
+
+	private volatile AckConfig config;
+
+	/**
+	 * Sends an ack for the given event id. (this is {@link AirlockChannel}'s ack method)
+	 */
+	private final IntFunction<CompletableFuture<Void>> sendAck;
+
+	/**
+	 * Sends the delayed acks. Shared between all schedulers, so that a pool of many channels doesn't end up with a thread per channel
+	 * (it only ever hands the ack off to the http client, so one thread is plenty)
+	 */
+	private static final ScheduledThreadPoolExecutor ACK_TIMER = createAckTimer();
+
+	private final Object ackLock = new Object();
+
+	// all of the following are guarded by ackLock
+	/**
+	 * The id of the last event received from the ship
+	 */
+	private int lastSeenEventId = 0;
+
+	/**
+	 * The id of the last event we acked to the server (i.e. the PUT carrying the ack succeeded)
+	 */
+	private int lastAcknowledgedEventId = 0;
+
+	/**
+	 * The id of the last event whose ack has been handed out by {@link AckScheduler#takePendingAck()}.
+	 * Ahead of {@link AckScheduler#lastAcknowledgedEventId} while that ack is in flight
+	 */
+	private int lastClaimedEventId = 0;
+
+	/**
+	 * The number of events received since the last ack
+	 */
+	private int unackedEvents = 0;
+
+	private ScheduledFuture<?> scheduledAck = null;
+	private boolean immediateAckScheduled = false;
+
+
+	AckScheduler(AckConfig config, IntFunction<CompletableFuture<Void>> sendAck) {
+		this.config = config;
+		this.sendAck = sendAck;
+	}
+
+	private static ScheduledThreadPoolExecutor createAckTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "airlock-ack-scheduler");
+			thread.setDaemon(true); // a pending ack should never keep the jvm alive
+			return thread;
+		});
+		// the delayed ack is cancelled every time enough events arrive before it fires, so don't let them pile up
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	void setConfig(AckConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * @param eventId The id of the event (as given by the sse stream, not the eyre request id)
+	 * @return true if the event has already been seen (i.e. it is being replayed after a reconnect)
+	 */
+	boolean alreadySeen(int eventId) {
+		synchronized (ackLock) {
+			return eventId <= lastSeenEventId;
+		}
+	}
+
+	/**
+	 * Records that an event has been received and handled, which makes it due for an ack. Cheap enough to be called on the sse thread.
+	 *
+	 * @param eventId The id of the event (as given by the sse stream, not the eyre request id)
+	 * @return false if the event had already been seen before (i.e. it is being replayed after a reconnect), true otherwise
+	 */
+	boolean eventSeen(int eventId) {
+		AckConfig currentConfig = this.config;
+		synchronized (ackLock) {
+			if (eventId <= lastSeenEventId) {
+				return false;
+			}
+			lastSeenEventId = eventId;
+			unackedEvents++;
+
+			if (immediateAckScheduled) {
+				return true;
+			}
+			if (unackedEvents >= currentConfig.everyEvents) {
+				cancelScheduledAck();
+				immediateAckScheduled = true;
+				scheduledAck = ACK_TIMER.schedule(this::ackNow, 0, TimeUnit.NANOSECONDS);
+			} else if (scheduledAck == null) {
+				scheduledAck = ACK_TIMER.schedule(this::ackNow, currentConfig.maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Claims the highest unacked event id, so that the caller can send the ack along with some other request.
+	 * Once claimed, the scheduler will not send an ack for it itself, but the event only counts as acked once the caller
+	 * reports back with {@link AckScheduler#ackSettled(int, boolean)}.
+	 *
+	 * @return the event id to ack, or {@link AckScheduler#NO_PENDING_ACK} if everything has already been acked (or claimed)
+	 */
+	int takePendingAck() {
+		synchronized (ackLock) {
+			cancelScheduledAck();
+			unackedEvents = 0;
+			if (lastSeenEventId <= lastClaimedEventId) {
+				return NO_PENDING_ACK;
+			}
+			lastClaimedEventId = lastSeenEventId;
+			return lastClaimedEventId;
+		}
+	}
+
+	/**
+	 * Reports whether the PUT carrying an ack claimed with {@link AckScheduler#takePendingAck()} went through.
+	 * If it didn't, the ack is pending again, and will be sent (or piggybacked) once more.
+	 *
+	 * @param eventId   The event id that was acked
+	 * @param succeeded Whether the ack made it to the ship
+	 */
+	void ackSettled(int eventId, boolean succeeded) {
+		synchronized (ackLock) {
+			if (eventId > lastSeenEventId) {
+				// left over from before a reset, these ids mean nothing on the new channel
+				return;
+			}
+			if (succeeded) {
+				lastAcknowledgedEventId = Math.max(lastAcknowledgedEventId, eventId);
+				return;
+			}
+			if (lastClaimedEventId != eventId) {
+				// a later ack has been claimed since, and acks are cumulative, so that one covers this event too
+				return;
+			}
+			lastClaimedEventId = lastAcknowledgedEventId;
+			// retry after the usual delay, rather than straight away, in case the ship is unreachable
+			if (scheduledAck == null && lastSeenEventId > lastClaimedEventId) {
+				scheduledAck = ACK_TIMER.schedule(this::ackNow, config.maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	private void ackNow() {
+		int eventToAck = takePendingAck();
+		if (eventToAck == NO_PENDING_ACK) {
+			return;
+		}
+		CompletableFuture<Void> sent;
+		try {
+			sent = sendAck.apply(eventToAck);
+		} catch (RuntimeException e) {
+			sent = CompletableFuture.failedFuture(e);
+		}
+		sent.whenComplete((ignored, throwable) -> {
+			if (throwable != null) {
+				// there is no caller to hand this to, so the best we can do is report it
+				LOGGER.log(System.Logger.Level.WARNING, "Failed to ack event " + eventToAck, throwable);
+			}
+			this.ackSettled(eventToAck, throwable == null);
+		});
+	}
+
+	// must hold ackLock
+	private void cancelScheduledAck() {
+		if (scheduledAck != null) {
+			scheduledAck.cancel(false);
+			scheduledAck = null;
+		}
+		immediateAckScheduled = false;
+	}
+
+	int getLastSeenEventId() {
+		synchronized (ackLock) {
+			return lastSeenEventId;
+		}
+	}
+
+	int getLastAcknowledgedEventId() {
+		synchronized (ackLock) {
+			return lastAcknowledgedEventId;
+		}
+	}
+
+	/**
+	 * Picks up where a previous run left off on the same channel: the given event counts as both seen and acked,
+	 * so the stream can be resumed right after it.
+	 *
+	 * @param lastAcknowledgedEventId The id of the last event that was acked
+	 */
+	void restore(int lastAcknowledgedEventId) {
+		synchronized (ackLock) {
+			cancelScheduledAck();
+			lastSeenEventId = lastAcknowledgedEventId;
+			this.lastAcknowledgedEventId = lastAcknowledgedEventId;
+			lastClaimedEventId = lastAcknowledgedEventId;
+			unackedEvents = 0;
+		}
+	}
+
+	/**
+	 * Forgets all seen events. Used when the channel is torn down, since event ids start over on a new channel.
+	 */
+	void reset() {
+		synchronized (ackLock) {
+			cancelScheduledAck();
+			lastSeenEventId = 0;
+			lastAcknowledgedEventId = 0;
+			lastClaimedEventId = 0;
+			unackedEvents = 0;
+		}
+	}
+}
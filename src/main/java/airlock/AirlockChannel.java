@@ -1,28 +1,46 @@
 package airlock;
 
+import airlock.errors.AirlockException;
 import airlock.errors.channel.AirlockAuthenticationError;
 import airlock.errors.channel.AirlockChannelError;
 import airlock.errors.channel.AirlockRequestError;
 import airlock.errors.channel.AirlockResponseError;
+import airlock.errors.channel.AirlockResponseTooLargeError;
+import airlock.errors.channel.AirlockTimeoutError;
 import airlock.errors.scry.ScryDataNotFoundException;
 import airlock.errors.scry.ScryFailureException;
 import airlock.errors.spider.SpiderFailureException;
 import airlock.types.ShipName;
 import com.google.gson.*;
-import okhttp3.*;
-import okhttp3.sse.EventSource;
-import okhttp3.sse.EventSourceListener;
-import okhttp3.sse.EventSources;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
@@ -47,30 +65,47 @@ public class AirlockChannel {
 	/**
 	 * The ID of the last request we sent to the server
 	 */
-	private int requestId = 0;
+	private final AtomicInteger requestId = new AtomicInteger(0);
 
 	/**
-	 * he id of the last event received from the ship
+	 * Keeps track of the last seen and last acknowledged event ids, and decides when to send acks
 	 */
-	private int lastSeenEventId = 0;
+	private final AckScheduler ackScheduler;
+
 
 	/**
-	 * The id of the last event we acked to the server
+	 * The SSE Client responsible for receiving events from the ship.  Starts off as null and is initialized later; we don't want to start polling until it the channel exists
 	 */
-	private int lastAcknowledgedEventId = 0;
+	private volatile EventStream sseClient;
 
+	/**
+	 * Opens the sse stream. Reads with the channel's transport unless a {@link MultiplexedSseReader} was set with {@link AirlockChannel#useMultiplexedSseReader(MultiplexedSseReader)}
+	 */
+	private volatile EventStream.Factory eventStreamFactory;
 
 	/**
-	 * The SSE Client responsible for receiving events from the ship.  Starts off as null and is initialized later; we don't want to start polling until it the channel exists
+	 * The listener of the current sse stream. Each stream gets its own listener, which lets us tell apart callbacks from the current stream
+	 * from those of a stream that has since been replaced or torn down. Null when not connected.
 	 */
-	private EventSource sseClient;
+	private volatile ChannelEventListener currentListener;
 
 	/**
 	 * The authentication cookie given to us after logging in with the {@link AirlockChannel#credentials#code}.
 	 * Note: it is possible to authenticate with an incorrect +code and still get an auth cookie.
 	 * Only after sending the first real request will it fail.
 	 */
-	private Cookie cookie;
+	private HttpCookie cookie;
+
+	/**
+	 * Where the session is saved so that it can be resumed by a later process, or null to not save it (the default).
+	 * See {@link AirlockChannel#useSessionStore(SessionStore)}
+	 */
+	private volatile @Nullable SessionStore sessionStore;
+
+	/**
+	 * Keeps concurrent saves from writing an older session over a newer one
+	 */
+	private final Object sessionLock = new Object();
 
 
 
@@ -106,27 +141,141 @@ public class AirlockChannel {
 	}
 
 	/**
-	 * This is a Map between event-id of a poke request and the respective handler function.
+	 * This keeps track of the handlers of every poke and subscription, keyed by request id.
 	 * When the sseClient receives an {@link EyreResponse}, it propagates the data in the form of a {@link PokeResponse}
-	 * to the correct handler function.
+	 * or {@link SubscribeEvent} to the correct handler.
+	 * <p>
+	 * Handlers are registered <i>before</i> the request is sent, because the response may arrive over the sse stream
+	 * before the PUT which carried the request has even returned.
+	 * </p>
+	 */
+	private final InFlightRegistry inFlight;
+
+	/**
+	 * How long a poke may wait for its ack, or a subscription for its first event, before it is failed
+	 */
+	private volatile Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+	/**
+	 * The largest scry or spider response body that will be read, in bytes
+	 */
+	private volatile long maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+
+	public static final long DEFAULT_MAX_RESPONSE_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * For problems in the background which aren't the caller's to handle, i.e. a session that could not be saved
+	 */
+	private static final System.Logger LOGGER = System.getLogger(AirlockChannel.class.getName());
+
+	/**
+	 * Times out requests and schedules reconnects for all channels.
+	 * A single wheel with a coarse tick is plenty, since both deal in delays in the order of seconds.
+	 */
+	private static final TimerWheel CHANNEL_TIMER = new TimerWheel(100, TimeUnit.MILLISECONDS, 512, "airlock-channel-timer");
+
+	/**
+	 * How to reopen the sse stream after it fails. Null if reconnecting is disabled (the default)
+	 */
+	private volatile @Nullable ReconnectConfig reconnectConfig;
+
+	/**
+	 * The number of consecutive reconnect attempts that have been made without the stream opening successfully
 	 */
-	private final Map<Integer, CompletableFuture<PokeResponse>> pokeHandlers;
+	private int reconnectAttempts = 0; // guarded by channelLock
+
+	public static final String JSON = "application/json; charset=utf-8";
+
+	/**
+	 * The http client of the channel. Derived from the transport the channel was created with, so that it has its own cookies
+	 */
+	private final HttpTransport transport;
 
 	/**
-	 * This is the equivalent mapping for subscription handlers. See {@link AirlockChannel#pokeHandlers}.
+	 * Where the transport keeps the cookies of this channel (i.e. the auth cookie)
 	 */
-	private final Map<Integer, Consumer<SubscribeEvent>> subscribeHandlers;
+	private final CookieManager cookieManager;
 
-	public static final MediaType JSON
-			= MediaType.get("application/json; charset=utf-8");
+	/**
+	 * Coalesces outgoing actions into batched PUTs. Null unless batching has been enabled with {@link AirlockChannel#enableBatching(BatchingConfig)}
+	 */
+	private volatile @Nullable ChannelBatcher batcher;
 
-	private final OkHttpClient client;
+	/**
+	 * Collects the actions that go out together with the creation of the channel, while {@link AirlockChannel#connectFastAsync(Consumer)}
+	 * is setting up. Takes precedence over {@link AirlockChannel#batcher}. Null at all other times
+	 */
+	private volatile @Nullable ChannelBatcher preludeBatcher;
+
+	/**
+	 * Keeps recent scry results. Null unless it has been enabled with {@link AirlockChannel#enableScryCache(ScryCacheConfig)}
+	 */
+	private volatile @Nullable ScryCache scryCache;
+
+	/**
+	 * Runs the poke and subscription handlers. Events for the same request id are handled in the order they arrived,
+	 * while events for different ids may be handled in parallel.
+	 */
+	private volatile KeyedSerialExecutor dispatcher;
+
+	/**
+	 * Lets many local listeners share one subscription on the ship. See {@link AirlockChannel#getSubscriptionMultiplexer()}
+	 */
+	private final SubscriptionMultiplexer multiplexer;
+
+	/**
+	 * Lets concurrent identical scries (and runs of read-only threads) share a single request
+	 */
+	private final SingleFlight singleFlight = new SingleFlight();
+
+	/**
+	 * The threads which have been marked as read-only with {@link AirlockChannel#setReadOnlyThread(String, boolean)}
+	 */
+	private final Set<String> readOnlyThreads = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The decoder of the untyped scry/spider requests. Kept in a constant so that those requests can be coalesced
+	 */
+	private static final JsonDecoder<JsonElement> JSON_TREE = new JsonDecoder<>() {
+		@Override
+		public JsonElement decode(JsonReader reader) {
+			return JsonParser.parseReader(reader);
+		}
+
+		@Override
+		public JsonElement copy(JsonElement value) {
+			return value.deepCopy();
+		}
+	};
+
+	/**
+	 * The executor used to run handlers if none is configured with {@link AirlockChannel#setDispatchExecutor(Executor)}.
+	 * Shared between all channels.
+	 */
+	private static final Executor DEFAULT_DISPATCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "airlock-dispatch");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
 	 * Synchronization object used to prevent multithreading errors and incorrectly ordered network calls
 	 */
 	private final Object channelLock = new Object();
 
+	/**
+	 * Guards {@link AirlockChannel#lastPut}
+	 */
+	private final Object putLock = new Object();
+
+	/**
+	 * The last PUT issued to the channel. Every PUT is chained onto the one before it,
+	 * so that eyre receives (and so handles) actions in the order they were sent, even when they are sent asynchronously
+	 */
+	private CompletableFuture<?> lastPut = CompletableFuture.completedFuture(null);
+
 
 	/**
 	 * Constructs a new Urbit connection.
@@ -138,38 +287,247 @@ public class AirlockChannel {
 	 * @param credentials The credentials of the ship to create a channel with
 	 */
 	public AirlockChannel(AirlockCredentials credentials) {
+		this(credentials, HttpTransport.defaultTransport());
+	}
+
+	/**
+	 * Constructs a channel on top of an existing transport, i.e. to pick between {@link OkHttpTransport} and {@link JdkHttpTransport}.
+	 * The transport may be shared with other channels (this is how {@link AirlockChannelPool} shares one
+	 * connection pool and dispatcher between many channels); the channel still keeps its own cookies.
+	 *
+	 * @param credentials The credentials of the ship to create a channel with
+	 * @param transport   The transport which requests are made and the sse stream is opened with
+	 */
+	public AirlockChannel(AirlockCredentials credentials, HttpTransport transport) {
 		this.credentials = credentials;
-		this.pokeHandlers = new HashMap<>();
-		this.subscribeHandlers = new HashMap<>();
+		this.inFlight = new InFlightRegistry(CHANNEL_TIMER, this::onSubscriptionTimeout);
 		this.cookie = null;
 		this.channelID = generateChannelID();
+		this.ackScheduler = new AckScheduler(AckConfig.DEFAULT, this::ackAsync);
+		this.dispatcher = new KeyedSerialExecutor(DEFAULT_DISPATCH_EXECUTOR);
+		this.multiplexer = new SubscriptionMultiplexer(this);
 
 		// init cookie manager to use `InMemoryCookieStore` by providing a null store
-		CookieHandler cookieHandler = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
-
-
-		this.client = new OkHttpClient.Builder()
-				.cookieJar(new JavaNetCookieJar(cookieHandler))
-				// todo possibly adjust timeout duration might be too aggressive, and maybe implement a heartbeat of some kind
-				.readTimeout(1, TimeUnit.DAYS)  // possible max length of session (time before we get an event back) (as per https://stackoverflow.com/a/47232731)
-				.build();
+		this.cookieManager = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+		this.transport = requireNonNull(transport, "Please provide a transport").withCookieHandler(cookieManager);
+		this.eventStreamFactory = this.transport;
 
 
 		// todo figure out if newly changed `synchronized` blocks break functionality again or not
 		//  i basically removed what i thought would not be affected by inter-thread bugs (i.e. only local thread data stuff outside of synchronized
 		//  but there may still be problems which will only arise after testing
 
-		// todo make this class more modular so we can easily replace http clients/libraries.
-		//  the only thing that would have some friction is adapting the cookie jar, but you could just go back to string based auth temporarily
+	}
+
+	/**
+	 * Enables batching mode. While enabled, every action sent to the channel (pokes, subscribes, unsubscribes, acks, etc.)
+	 * is queued and sent together with the other actions issued within the configured linger window, as a single PUT.
+	 * Each caller still gets back its own future.
+	 * <p>
+	 * Calling this while batching is already enabled flushes the current batch and replaces the config.
+	 * </p>
+	 *
+	 * @param config The limits used to decide when a batch is sent
+	 */
+	public void enableBatching(BatchingConfig config) {
+		ChannelBatcher previous;
+		synchronized (channelLock) {
+			previous = this.batcher;
+			this.batcher = new ChannelBatcher(config, this::sendActionsToChannelAsync);
+		}
+		if (previous != null) {
+			previous.shutdown();
+		}
+	}
+
+	/**
+	 * Disables batching mode, sending any actions that are still queued. Does nothing if batching is not enabled.
+	 */
+	public void disableBatching() {
+		ChannelBatcher previous;
+		synchronized (channelLock) {
+			previous = this.batcher;
+			this.batcher = null;
+		}
+		if (previous != null) {
+			previous.shutdown();
+		}
+	}
+
+	/**
+	 * Enables the scry cache. While enabled, a scry for a path that was scried recently is answered from the cache
+	 * instead of going to the ship. Results are thrown away once their ttl runs out, or when they are invalidated
+	 * through {@link ScryCache#invalidate(String, String)} (agents do this when they see an update for the data behind a path).
+	 * <p>
+	 * Calling this while the cache is already enabled replaces it with an empty one.
+	 * </p>
+	 *
+	 * @param config The ttl and size limits of the cache
+	 * @return the new cache
+	 */
+	public ScryCache enableScryCache(ScryCacheConfig config) {
+		ScryCache cache = new ScryCache(requireNonNull(config, "Please provide a scry cache config"));
+		this.scryCache = cache;
+		return cache;
+	}
+
+	/**
+	 * Disables the scry cache, throwing away everything in it. Does nothing if the cache is not enabled.
+	 */
+	public void disableScryCache() {
+		this.scryCache = null;
+	}
+
+	/**
+	 * @return the scry cache, or null if it is not enabled
+	 */
+	public @Nullable ScryCache getScryCache() {
+		return scryCache;
+	}
+
+	/**
+	 * Marks a thread as read-only (or not). Concurrent identical runs of a read-only thread share a single request,
+	 * the same way that scries do. Only do this for threads that do not change anything on the ship,
+	 * since the runs that were coalesced never actually happen.
+	 *
+	 * @param threadName The name of the thread
+	 * @param readOnly   Whether the thread is read-only
+	 */
+	public void setReadOnlyThread(String threadName, boolean readOnly) {
+		if (readOnly) {
+			readOnlyThreads.add(requireNonNull(threadName, "Please provide a thread name"));
+		} else {
+			readOnlyThreads.remove(threadName);
+		}
+	}
+
+	/**
+	 * Sets how often events received from the ship are acknowledged. Defaults to {@link AckConfig#DEFAULT}.
+	 *
+	 * @param config The ack limits to use from now on
+	 */
+	public void setAckConfig(AckConfig config) {
+		this.ackScheduler.setConfig(requireNonNull(config, "Please provide an ack config"));
+	}
 
+	/**
+	 * Sets the executor on which subscription handlers and poke completions are run.
+	 * Regardless of the executor, events belonging to the same subscription are always handled one at a time, in order.
+	 * <p>
+	 * This should be set before connecting; events that have already been queued are still handled by the previous executor.
+	 * </p>
+	 *
+	 * @param executor The executor to run handlers on
+	 */
+	public void setDispatchExecutor(Executor executor) {
+		this.dispatcher = new KeyedSerialExecutor(requireNonNull(executor, "Please provide an executor"));
+	}
+
+	/**
+	 * @return the number of received events which are waiting for their handler to be run
+	 */
+	public int getDispatchQueueDepth() {
+		return this.dispatcher.getQueueDepth();
+	}
+
+	/**
+	 * Sets how long a poke may wait for its ack, or a subscription for its first event, before it is failed with an
+	 * {@link airlock.errors.channel.AirlockTimeoutError}. Only applies to requests sent after this call.
+	 *
+	 * @param requestTimeout the timeout, or {@link Duration#ZERO} to wait forever. Defaults to {@link AirlockChannel#DEFAULT_REQUEST_TIMEOUT}
+	 */
+	public void setRequestTimeout(Duration requestTimeout) {
+		requireNonNull(requestTimeout, "Please provide a timeout");
+		if (requestTimeout.isNegative()) {
+			throw new IllegalArgumentException("requestTimeout cannot be negative");
+		}
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Sets the largest scry or spider response body that will be read. Bigger responses are abandoned
+	 * with an {@link AirlockResponseTooLargeError} instead of being read into memory.
+	 *
+	 * @param maxResponseBytes the limit in bytes. Defaults to {@link AirlockChannel#DEFAULT_MAX_RESPONSE_BYTES}
+	 */
+	public void setMaxResponseBytes(long maxResponseBytes) {
+		if (maxResponseBytes <= 0) {
+			throw new IllegalArgumentException("maxResponseBytes must be positive");
+		}
+		this.maxResponseBytes = maxResponseBytes;
+	}
+
+	/**
+	 * @return the number of pokes which have been sent but not yet acked by the ship
+	 */
+	public int getInFlightPokeCount() {
+		return this.inFlight.getInFlightPokeCount();
+	}
+
+	/**
+	 * @return the number of subscriptions which have been requested but not yet started by the ship
+	 */
+	public int getPendingSubscriptionCount() {
+		return this.inFlight.getPendingSubscriptionCount();
+	}
+
+	/**
+	 * @return the number of subscriptions that currently have a handler registered
+	 */
+	public int getSubscriptionCount() {
+		return this.inFlight.getSubscriptionCount();
+	}
+
+	/**
+	 * Enables reconnect mode. While enabled, a failed sse stream is reopened on the same channel (with exponential backoff)
+	 * instead of the channel being torn down. Registered handlers are kept, and the stream resumes from the last event we received
+	 * by means of the `Last-Event-ID` header, so no events are lost or delivered twice.
+	 *
+	 * @param config How to back off between attempts
+	 */
+	public void enableReconnect(ReconnectConfig config) {
+		this.reconnectConfig = requireNonNull(config, "Please provide a reconnect config");
+	}
+
+	/**
+	 * Disables reconnect mode. A failed sse stream will tear down the channel again.
+	 */
+	public void disableReconnect() {
+		this.reconnectConfig = null;
+	}
+
+	/**
+	 * Read the sse stream with the given {@link MultiplexedSseReader}, instead of parking a thread on it.
+	 * Takes effect the next time the stream is opened (i.e. on {@link AirlockChannel#connect()} or a reconnect).
+	 *
+	 * @param reader The reader to use, or null to go back to reading the stream with the channel's transport
+	 */
+	public void useMultiplexedSseReader(@Nullable MultiplexedSseReader reader) {
+		this.eventStreamFactory = reader != null ? reader : this.transport;
+	}
+
+	/**
+	 * Saves the session of the channel (its auth cookie, channel id and last acked event) to the given store whenever it changes,
+	 * so that a later process can pick the channel back up with {@link AirlockChannel#resumeSession()} instead of logging in again.
+	 *
+	 * @param store The store to save to, or null to stop saving the session
+	 */
+	public void useSessionStore(@Nullable SessionStore store) {
+		this.sessionStore = store;
+	}
+
+	/**
+	 * @return whether or not batching mode is enabled
+	 */
+	public boolean isBatching() {
+		return this.batcher != null;
 	}
 
 	/**
 	 * Returns the next event ID for the appropriate channel.
 	 */
 	private int nextID() {
-		this.requestId++;
-		return this.requestId;
+		return this.requestId.incrementAndGet();
 	}
 
 	/**
@@ -194,216 +552,861 @@ public class AirlockChannel {
 		return AirlockUtils.resolveOrBust(this.credentials.url, "/spider/" + inputMark + "/" + threadName + "/" + outputMark + ".json");
 	}
 
-	private InMemoryResponseWrapper sendRequest(Request request) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
-		// note: not thread safe with regards to sse event handler thread.
-		// see sendJSONtoChannel instead for the thread safe version
-		Response response;
+	private InMemoryResponseWrapper sendRequest(TransportRequest request) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		// note: not thread safe with regards to sse event handler thread.
+		// see sendJSONtoChannel instead for the thread safe version
+		TransportResponse response;
+
+		try {
+			response = transport.execute(request);
+		} catch (IOException e) {
+			throw new AirlockRequestError("Failed to execute request", e);
+		}
+
+		if (!response.isSuccessful()) {
+			if (response.code == 403) {
+				response.close();
+				throw new AirlockAuthenticationError("Got 403 while trying to send request");
+			} else {
+				throw new AirlockResponseError("Got unsuccessful http response code", new InMemoryResponseWrapper(response), new IOException("Error: " + response));
+			}
+		}
+
+		return new InMemoryResponseWrapper(response);
+	}
+
+	/**
+	 * Sends a request and decodes the body of a successful response straight off of the network,
+	 * so that it never exists as a String or json tree in memory (and only as a byte array if a copy is asked for).
+	 * <p>
+	 * Unsuccessful responses are still buffered into an {@link InMemoryResponseWrapper}, because callers inspect their
+	 * status and body to decide which error to throw (and error bodies are small anyways).
+	 * </p>
+	 *
+	 * @param request The request to send
+	 * @param decoder The decoder for the response body
+	 * @param copy    If not null, everything that the decoder reads off of the body is also written here
+	 * @param <T>     The type of the decoded body
+	 * @return the decoded body
+	 */
+	private <T> T sendRequestStreaming(TransportRequest request, JsonDecoder<T> decoder, @Nullable ByteArrayOutputStream copy) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		TransportResponse response;
+
+		try {
+			response = transport.execute(request);
+		} catch (IOException e) {
+			throw new AirlockRequestError("Failed to execute request", e);
+		}
+
+		if (!response.isSuccessful()) {
+			if (response.code == 403) {
+				response.close();
+				throw new AirlockAuthenticationError("Got 403 while trying to send request");
+			} else {
+				throw new AirlockResponseError("Got unsuccessful http response code", new InMemoryResponseWrapper(response), new IOException("Error: " + response));
+			}
+		}
+
+		long maxBytes = this.maxResponseBytes;
+		try (response) {
+			if (response.contentLength > maxBytes) {
+				// no need to read anything if the ship already told us how big the body is
+				throw new ResponseTooLargeException();
+			}
+			InputStream body = new SizeLimitedInputStream(response.body(), maxBytes);
+			if (copy != null) {
+				body = new CopyingInputStream(body, copy);
+			}
+			JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+			return decoder.decode(reader);
+		} catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+			// gson wraps errors from the underlying stream (including our size limit) in a JsonIOException
+			Throwable cause = e instanceof JsonIOException && e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof ResponseTooLargeException) {
+				throw new AirlockResponseTooLargeError("Response body is larger than " + maxBytes + " bytes", InMemoryResponseWrapper.withoutBody(response), maxBytes);
+			}
+			if (cause instanceof IOException && !(cause instanceof MalformedJsonException)) {
+				throw new AirlockRequestError("Failed to read response body", cause);
+			}
+			// everything else means that the body was not what the decoder expected.
+			// N.B: JsonReader throws IllegalStateException when the json has a different shape than the decoder expects
+			throw new AirlockResponseError("Unable to decode response body", InMemoryResponseWrapper.withoutBody(response), e);
+		}
+	}
+
+	/**
+	 * Decodes a response body which has already been read off of the network (i.e. a cached one)
+	 */
+	private static <T> T decodeBody(byte[] body, JsonDecoder<T> decoder) throws IOException {
+		return decoder.decode(new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Makes a copy of the result of a single flight, for one of the callers that joined it.
+	 * The decoder's own copy is preferred, since it is cheaper than decoding the body again (if the body was even kept)
+	 *
+	 * @return the copy, or null if there is no way to make one, in which case the caller makes its own request
+	 */
+	private static @Nullable <T> T copyResult(T value, @Nullable byte[] body, JsonDecoder<T> decoder) throws AirlockRequestError {
+		T copy = decoder.copy(value);
+		if (copy != null || body == null) {
+			return copy;
+		}
+		try {
+			// the leader already decoded it with the same decoder, so this practically never fails
+			return decodeBody(body, decoder);
+		} catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+			throw new AirlockRequestError("Unable to decode the response of an identical request", e);
+		}
+	}
+
+	/**
+	 * Writes everything that is read through it to another stream, i.e. so that a body can be cached while it is being decoded
+	 */
+	private static class CopyingInputStream extends FilterInputStream {
+		private final ByteArrayOutputStream copy;
+
+		CopyingInputStream(InputStream delegate, ByteArrayOutputStream copy) {
+			super(delegate);
+			this.copy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				copy.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				copy.write(b, off, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// skipped bytes would be missing from the copy, so read them instead
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			int read = this.read(buffer, 0, buffer.length);
+			return Math.max(read, 0);
+		}
+	}
+
+	/**
+	 * Fails the read once more than {@code maxBytes} have come through, so that a huge body is never read in full
+	 */
+	private static class SizeLimitedInputStream extends FilterInputStream {
+		private final long maxBytes;
+		private long bytesRead = 0;
+
+		SizeLimitedInputStream(InputStream delegate, long maxBytes) {
+			super(delegate);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read != -1) {
+				count(1);
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+
+		private void count(int read) throws ResponseTooLargeException {
+			bytesRead += read;
+			if (bytesRead > maxBytes) {
+				throw new ResponseTooLargeException();
+			}
+		}
+	}
+
+	private static class ResponseTooLargeException extends IOException {
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#sendRequest(TransportRequest)}.
+	 * The request is handed to the transport, so the calling thread never blocks on network io.
+	 * <p>
+	 * The returned future completes exceptionally with the same {@link AirlockChannelError}s that the blocking version throws.
+	 * </p>
+	 *
+	 * @param request The request to send
+	 * @return a future which completes with the buffered response once the request has finished
+	 */
+	private CompletableFuture<InMemoryResponseWrapper> sendRequestAsync(TransportRequest request) {
+		CompletableFuture<InMemoryResponseWrapper> responseFuture = new CompletableFuture<>();
+
+		transport.executeAsync(request).whenComplete((response, throwable) -> {
+			if (throwable != null) {
+				Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+				responseFuture.completeExceptionally(new AirlockRequestError("Failed to execute request", cause));
+				return;
+			}
+			try {
+				if (!response.isSuccessful()) {
+					if (response.code == 403) {
+						response.close();
+						responseFuture.completeExceptionally(new AirlockAuthenticationError("Got 403 while trying to send request"));
+					} else {
+						responseFuture.completeExceptionally(new AirlockResponseError("Got unsuccessful http response code", new InMemoryResponseWrapper(response), new IOException("Error: " + response)));
+					}
+					return;
+				}
+				responseFuture.complete(new InMemoryResponseWrapper(response));
+			} catch (RuntimeException e) {
+				// thrown by InMemoryResponseWrapper when the body could not be buffered
+				responseFuture.completeExceptionally(new AirlockRequestError("Failed to read response", e));
+			}
+		});
+
+		return responseFuture;
+	}
+
+	/**
+	 * Blocks until the given future completes, unwrapping any {@link AirlockChannelError} that it failed with.
+	 * This is what lets the blocking api (i.e. {@link AirlockChannel#poke}) be a thin layer over the asynchronous one.
+	 *
+	 * @param future The future to wait on
+	 * @param <T>    The type of the result
+	 * @return the result of the future
+	 */
+	static <T> T awaitChannelResult(CompletableFuture<T> future) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AirlockRequestError("Interrupted while waiting for request to complete", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof AirlockRequestError) {
+				throw (AirlockRequestError) cause;
+			} else if (cause instanceof AirlockResponseError) {
+				throw (AirlockResponseError) cause;
+			} else if (cause instanceof AirlockAuthenticationError) {
+				throw (AirlockAuthenticationError) cause;
+			}
+			throw new AirlockRequestError("Unexpected failure while executing request", cause);
+		}
+	}
+
+	/**
+	 * Connects to the Urbit ship. Nothing can be done until this is called.
+	 *
+	 * @return Returns an immutable wrapper around a response body object
+	 */
+	public InMemoryResponseWrapper authenticate() throws AirlockRequestError, AirlockAuthenticationError, AirlockResponseError {
+		InMemoryResponseWrapper responseWrapper = this.sendRequest(this.loginRequest());
+		this.storeAuthCookie();
+		return responseWrapper;
+	}
+
+	private TransportRequest loginRequest() {
+		String formBody = "password=" + URLEncoder.encode(this.credentials.code, StandardCharsets.UTF_8);
+		return TransportRequest.post(this.getLoginUrl(), "application/x-www-form-urlencoded", formBody);
+	}
+
+	/**
+	 * Picks the auth cookie out of the cookies the login response left in our cookie jar
+	 */
+	private void storeAuthCookie() {
+		// after we made the request, here we extract the cookie. it's quite ceremonial
+		URI channelUri;
+		try {
+			channelUri = this.getChannelUrl().toURI();
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException("Invalid channel url: " + this.getChannelUrl(), e);
+		}
+		this.cookie = this.cookieManager.getCookieStore().get(channelUri)
+				.stream()
+				.filter(cookie -> cookie.getName().startsWith("urbauth-" + ShipName.withSig(this.credentials.ship)))
+				.findFirst().orElseThrow(() -> new IllegalStateException("Did not receive valid authcookie"));
+		// stream api is probably expensive and extra af but this is basically necessary to prevent brittle behavior
+
+		this.saveSession();
+	}
+
+
+	/**
+	 * Creates the channel on which the sseClient will be instantiated on
+	 * This must be done in the same breath as creating the sseClient (i.e. in {@link AirlockChannel#connect()},
+	 * otherwise we will never be able to create a connection to the ship.
+	 */
+	private void createChannel() throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		JsonPrimitive jsonPayload = new JsonPrimitive("Opening Airlock :)");
+		this.poke(this.getShipName(), "hood", "helm-hi", jsonPayload);
+	}
+
+	/**
+	 * Initializes the SSE pipe for the appropriate channel (if necessary). Must be called after authenticating
+	 */
+	public void connect() throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		if (this.sseClient != null) {
+			return;
+		}
+		if (!this.isAuthenticated()) {
+			throw new IllegalStateException("Cannot connect to ship without being authenticated");
+		}
+
+		this.createChannel(); // We MUST create the channel before sending the sseRequest. Only after doing both will we get a response from the ship.
+		// That is, we cannot wait for a poke response back because before creating the sseClient because we'll never have established one in the first place
+
+		synchronized (channelLock) {
+			this.reconnectAttempts = 0;
+			this.openEventSource();
+		}
+		this.saveSession();
+	}
+
+	/**
+	 * Blocking version of {@link AirlockChannel#connectFastAsync(Consumer)}
+	 *
+	 * @param initialActions Sends the actions which should go out together with the creation of the channel, or null
+	 * @return how long each step of connecting took
+	 */
+	public ConnectTiming connectFast(@Nullable Consumer<AirlockChannel> initialActions) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		return awaitChannelResult(this.connectFastAsync(initialActions));
+	}
+
+	/**
+	 * Logs in (if needed) and connects, pipelining every step as far as eyre allows.
+	 * <p>
+	 * {@link AirlockChannel#authenticate()} followed by {@link AirlockChannel#connect()} waits for the login, then for the PUT that
+	 * creates the channel, and only then asks for the stream. Here, nothing waits on the caller:
+	 * </p>
+	 * <ul>
+	 *     <li>the PUT that creates the channel is prepared while the login is still in flight, and sent the moment the cookie arrives</li>
+	 *     <li>any actions sent by {@code initialActions} (i.e. the initial subscriptions) go out in that same PUT,
+	 *     instead of each waiting for the channel to exist and then taking a round trip of their own</li>
+	 *     <li>the stream is requested as soon as the PUT is accepted. (eyre answers 404 for the stream of a channel that does not exist yet,
+	 *     so this is as early as it can be)</li>
+	 * </ul>
+	 * <p>
+	 * {@code initialActions} is called on the calling thread, before anything has been sent. It must only use the asynchronous methods
+	 * (i.e. {@link AirlockChannel#subscribeAsync}), since the blocking ones would wait on a PUT that is only sent once it returns.
+	 * </p>
+	 *
+	 * @param initialActions Sends the actions which should go out together with the creation of the channel, or null
+	 * @return a future which completes once the first event has arrived on the stream, with how long each step took
+	 */
+	public CompletableFuture<ConnectTiming> connectFastAsync(@Nullable Consumer<AirlockChannel> initialActions) {
+		if (this.sseClient != null) {
+			return CompletableFuture.failedFuture(new IllegalStateException("Channel is already connected"));
+		}
+		return new FastConnect().start(initialActions);
+	}
+
+	/**
+	 * Authenticates and connects, reusing the session saved by an earlier process if there is one
+	 * (see {@link AirlockChannel#useSessionStore(SessionStore)}).
+	 * <p>
+	 * A saved session skips the login and the creation of the channel: the stream of the saved channel is reopened right after
+	 * the last event that was acked, so eyre replays only what was never acked. If the ship no longer knows the channel,
+	 * a new one is created with the saved cookie. Only if the ship rejects the cookie do we log in again.
+	 * </p>
+	 * <p>
+	 * N.B: subscriptions made by the earlier process are still alive on a resumed channel, but nothing here is listening to them anymore.
+	 * Their events are dropped (with a warning) until they are subscribed to again.
+	 * </p>
+	 *
+	 * @return true if the saved channel was resumed, false if a new one had to be created
+	 */
+	public boolean resumeSession() throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		SessionStore store = requireNonNull(this.sessionStore, "Please set a session store before resuming a session");
 
+		ChannelSession session;
 		try {
-			response = client.newCall(request).execute();
+			session = store.load();
 		} catch (IOException e) {
-			throw new AirlockRequestError("Failed to execute request", e);
+			LOGGER.log(System.Logger.Level.WARNING, "Unable to load session from " + store, e);
+			session = null;
 		}
 
-		if (!response.isSuccessful()) {
-			if (response.code() == 403) {
-				throw new AirlockAuthenticationError("Got 403 while trying to send request");
+		if (session != null && session.belongsTo(this.credentials)) {
+			int responseCode = this.openSavedChannel(session);
+			if (responseCode == 200) {
+				return true;
+			} else if (responseCode == 404) {
+				// the cookie is still good, but eyre has since reaped the channel. (the stream already tore it down on our side)
+				this.connect();
+				return false;
+			} else if (responseCode == 403) {
+				// the saved cookie was rejected, so log in again below.
+				// otherwise the rejected cookie would be sent along with (or instead of) the new one
+				this.cookieManager.getCookieStore().removeAll();
+				try {
+					store.clear();
+				} catch (IOException e) {
+					LOGGER.log(System.Logger.Level.WARNING, "Unable to clear session from " + store, e);
+				}
 			} else {
-				throw new AirlockResponseError("Got unsuccessful http response code", new InMemoryResponseWrapper(response), new IOException("Error: " + response));
+				this.teardown();
+				throw new AirlockRequestError("Unable to reopen the stream of the saved channel (got http " + responseCode + ")");
 			}
 		}
 
-		return new InMemoryResponseWrapper(response);
+		this.authenticate();
+		this.connect();
+		return false;
 	}
 
 	/**
-	 * Connects to the Urbit ship. Nothing can be done until this is called.
+	 * Points the channel at a saved session, and opens its stream
 	 *
-	 * @return Returns an immutable wrapper around a response body object
+	 * @return the http status the stream was answered with, or -1 if it failed without one
 	 */
-	public InMemoryResponseWrapper authenticate() throws AirlockRequestError, AirlockAuthenticationError, AirlockResponseError {
-		RequestBody formBody = new FormBody.Builder()
-				.add("password", this.credentials.code)
-				.build();
-
-		Request request = new Request.Builder()
-				.url(this.getLoginUrl())
-				.post(formBody)
-				.build();
-
-		InMemoryResponseWrapper responseWrapper = this.sendRequest(request);
+	private int openSavedChannel(ChannelSession session) throws AirlockRequestError {
+		HttpCookie savedCookie = new HttpCookie(session.cookieName, session.cookieValue);
+		savedCookie.setPath("/");
+		savedCookie.setVersion(0);
+		try {
+			// so that the transport sends it along with our PUTs
+			this.cookieManager.getCookieStore().add(this.credentials.url.toURI(), savedCookie);
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException("Invalid ship url: " + this.credentials.url, e);
+		}
 
-		// after we made the request, here we extract the cookie. it's quite ceremonial
-		this.cookie = this.client.cookieJar().loadForRequest(requireNonNull(HttpUrl.get(this.getChannelUrl())))
-				.stream()
-				.filter(cookie -> cookie.name().startsWith("urbauth-" + ShipName.withSig(this.credentials.ship)))
-				.findFirst().orElseThrow(() -> new IllegalStateException("Did not receive valid authcookie"));
-		// stream api is probably expensive and extra af but this is basically necessary to prevent brittle behavior
+		ChannelEventListener listener;
+		synchronized (channelLock) {
+			if (this.sseClient != null) {
+				throw new IllegalStateException("Cannot resume a session on a channel which is already connected");
+			}
+			this.cookie = savedCookie;
+			this.channelID = session.channelID;
+			this.requestId.set(session.lastRequestId);
+			this.ackScheduler.restore(session.lastAcknowledgedEventId);
+			this.reconnectAttempts = 0;
+			this.openEventSource();
+			listener = this.currentListener;
+		}
 
-		return responseWrapper;
+		try {
+			return listener.opened.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.teardown();
+			throw new AirlockRequestError("Interrupted while reopening the saved channel", e);
+		} catch (ExecutionException e) {
+			// never completed exceptionally
+			throw new IllegalStateException(e);
+		} catch (TimeoutException e) {
+			this.teardown();
+			throw new AirlockTimeoutError("The stream of the saved channel was not opened within " + requestTimeout, e);
+		}
 	}
 
+	/**
+	 * Saves the current session to the session store, if there is one
+	 */
+	private void saveSession() {
+		SessionStore store = this.sessionStore;
+		HttpCookie currentCookie = this.cookie;
+		if (store == null || currentCookie == null) {
+			return;
+		}
+		synchronized (sessionLock) {
+			ChannelSession session = new ChannelSession(
+					this.credentials.ship,
+					this.credentials.url.toString(),
+					currentCookie.getName(),
+					currentCookie.getValue(),
+					this.channelID,
+					this.requestId.get(),
+					this.ackScheduler.getLastAcknowledgedEventId()
+			);
+			try {
+				store.save(session);
+			} catch (IOException e) {
+				// not fatal. at worst, the next process logs in again or is sent some events twice
+				LOGGER.log(System.Logger.Level.WARNING, "Unable to save session to " + store, e);
+			}
+		}
+	}
 
 	/**
-	 * Creates the channel on which the sseClient will be instantiated on
-	 * This must be done in the same breath as creating the sseClient (i.e. in {@link AirlockChannel#connect()},
-	 * otherwise we will never be able to create a connection to the ship.
+	 * Opens the sse stream on the current channel. If we have already received events on this channel,
+	 * the stream resumes after the last one of them.
+	 * Must hold channelLock.
 	 */
-	private void createChannel() throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
-		JsonPrimitive jsonPayload = new JsonPrimitive("Opening Airlock :)");
-		this.poke(this.getShipName(), "hood", "helm-hi", jsonPayload);
+	private void openEventSource() {
+		Map<String, String> headers = new HashMap<>();
+
+		int lastSeenEventId = ackScheduler.getLastSeenEventId();
+		if (lastSeenEventId > 0) {
+			// tells eyre to only send us the events that came after this one
+			headers.put("Last-Event-ID", String.valueOf(lastSeenEventId));
+		}
+		if (this.cookie != null) {
+			// OkHttp would take this from the cookie jar anyways, but sse streams are not given the cookies of the transport
+			headers.put("Cookie", this.cookie.getName() + "=" + this.cookie.getValue());
+		}
+
+		// the listener is made current before the stream is created, so we cannot miss the first event
+		ChannelEventListener listener = new ChannelEventListener();
+		this.currentListener = listener;
+		this.sseClient = eventStreamFactory.open(this.getChannelUrl(), headers, listener);
 	}
 
 	/**
-	 * Initializes the SSE pipe for the appropriate channel (if necessary). Must be called after authenticating
+	 * Schedules the sse stream to be reopened, or tears down the channel if reconnecting is disabled or we have run out of attempts.
+	 *
+	 * @param listener The listener of the event source which failed
+	 * @param reason   Why the event source failed, for logging
+	 * @param cause    The error the event source failed with, if any
 	 */
-	public void connect() throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
-		if (this.sseClient != null) {
+	private void onEventSourceLost(ChannelEventListener listener, String reason, @Nullable Throwable cause) {
+		ReconnectConfig config = this.reconnectConfig;
+		Duration backoff;
+		synchronized (channelLock) {
+			if (listener != this.currentListener) {
+				// an old event source, or the channel was torn down on purpose. nothing to do
+				return;
+			}
+			if (config == null || (config.maxAttempts != 0 && reconnectAttempts >= config.maxAttempts)) {
+				backoff = null;
+			} else {
+				backoff = config.backoffFor(reconnectAttempts);
+				reconnectAttempts++;
+			}
+		}
+
+		if (backoff == null) {
+			LOGGER.log(System.Logger.Level.WARNING, "Lost connection to ship (" + reason + "), tearing down channel", cause);
+			teardown();
 			return;
 		}
-		if (!this.isAuthenticated()) {
-			throw new IllegalStateException("Cannot connect to ship without being authenticated");
+
+		LOGGER.log(System.Logger.Level.WARNING, "Lost connection to ship (" + reason + "), reconnecting in " + backoff, cause);
+		CHANNEL_TIMER.schedule(() -> {
+			synchronized (channelLock) {
+				if (listener != this.currentListener) {
+					return; // torn down in the meantime
+				}
+				// the failed stream is still the current one, since it is replaced only here
+				this.sseClient.cancel();
+				this.openEventSource();
+			}
+		}, backoff.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Receives the events of a single sse stream. Callbacks from a stream which is no longer current
+	 * (because it was replaced by a reconnect, or the channel was torn down) are ignored.
+	 */
+	private class ChannelEventListener implements EventStream.Listener {
+
+		/**
+		 * Completes once the first event arrives on the stream
+		 */
+		final CompletableFuture<Void> firstEvent = new CompletableFuture<>();
+
+		/**
+		 * Completes with the http status the stream was answered with (or -1), once it is open or has failed
+		 */
+		final CompletableFuture<Integer> opened = new CompletableFuture<>();
+
+		@Override
+		public void onOpen() {
+			opened.complete(200);
+			synchronized (channelLock) {
+				if (this == currentListener) {
+					reconnectAttempts = 0;
+				}
+			}
 		}
 
-		this.createChannel(); // We MUST create the channel before sending the sseRequest. Only after doing both will we get a response from the ship.
-		// That is, we cannot wait for a poke response back because before creating the sseClient because we'll never have established one in the first place
+		@Override
+		public void onEvent(@Nullable String id, @Nullable String type, @NotNull String data) {
+			if (this != currentListener) {
+				return;
+			}
+			firstEvent.complete(null);
+			// N.B: this is the id of the sse event, which is what eyre expects us to ack.
+			// it is not the same as `eyreResponse.id`, which is the id of the request the event is in response to
+			int eventID = Integer.parseInt(requireNonNull(id, "Got null id"));
+
+			if (ackScheduler.alreadySeen(eventID)) {
+				// eyre may replay events we have already handled after a reconnect
+				LOGGER.log(System.Logger.Level.DEBUG, () -> "Skipping already seen event " + eventID);
+				return;
+			}
 
-		Request sseRequest = new Request.Builder()
-				.url(this.getChannelUrl())
-				.header("connection", "keep-alive") // todo why do i still have to manually set timeout to 1 day when connection is keep-alive
-				.build();
-
-
-		this.sseClient = EventSources.createFactory(this.client)
-				.newEventSource(sseRequest, new EventSourceListener() {
-					@Override
-					public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
-						int eventID = Integer.parseInt(requireNonNull(id, "Got null id")); // this thing is kinda useless
-
-						EyreResponse eyreResponse = AirlockUtils.gson.fromJson(data, EyreResponse.class);
-
-						synchronized (channelLock) {
-							lastSeenEventId = eyreResponse.id;
-
-							System.out.println(",=============Event==============,");
-							System.out.println("raw: " + data);
-							System.out.println("event id from okhttp " + eventID);
-							System.out.println("lastSeenEventId: " + lastSeenEventId);
-							System.out.println("lastAckedEventId: " + lastAcknowledgedEventId);
-							System.out.println("got eyre response data");
-							System.out.println(eyreResponse);
-							System.out.println(".=============Event==============.");
-
-							try {
-								if (lastSeenEventId != lastAcknowledgedEventId) {
-									ack(lastSeenEventId);
-									lastAcknowledgedEventId = lastSeenEventId;
-								}
-							} catch (AirlockChannelError e) {
-								// even though normally a channel error is catch + recoverable,
-								// if we cannot ack a message, we should fail because right now,
-								// i do not know a valid way to continue in a useful state
-								// so we terminate
-								throw new IllegalStateException("could not ack");
-							}
-
-							// possible enhancement: add check to ensure that the id received in the eyreResponse matches the one we expect to see
-							switch (eyreResponse.response) {
-								case POKE:
-									var pokeHandler = pokeHandlers.get(eyreResponse.id);
-									if (eyreResponse.ok) {
-										pokeHandler.complete(PokeResponse.SUCCESS);
-									} else {
-										pokeHandler.complete(PokeResponse.fromFailure(eyreResponse.err));
-									}
-									pokeHandlers.remove(eyreResponse.id);
-									break;
-								case SUBSCRIBE:
-									var subscribeHandler = subscribeHandlers.get(eyreResponse.id);
-									if (eyreResponse.ok) {
-										subscribeHandler.accept(SubscribeEvent.STARTED);
-									} else {
-										subscribeHandler.accept(SubscribeEvent.fromFailure(eyreResponse.err));
-										subscribeHandlers.remove(eyreResponse.id);
-									}
-									break;
-								case DIFF:
-									subscribeHandler = subscribeHandlers.get(eyreResponse.id);
-									subscribeHandler.accept(SubscribeEvent.fromUpdate(eyreResponse.json));
-									break;
-								case QUIT:
-									subscribeHandler = subscribeHandlers.get(eyreResponse.id);
-									subscribeHandler.accept(SubscribeEvent.FINISHED);
-									subscribeHandlers.remove(eyreResponse.id);
-									break;
-
-								default:
-									// todo, we could turn this into an AirlockException to make it catchable or silently log / ignore like channel.js does
-									// but that might be more canceratic idk
-									throw new IllegalStateException("Got unknown eyre responseType");
-							}
-						}
+			// the payload is decoded in the same pass as the envelope, by the subscription's decoder if it registered one
+			EyreResponse eyreResponse;
+			try {
+				eyreResponse = EyreResponse.fromJson(data, inFlight::getDecoder);
+			} catch (JsonParseException e) {
+				LOGGER.log(System.Logger.Level.WARNING, "Could not decode event " + eventID + ", dropping it", e);
+				// it has been reported, and eyre would only send it again, so it is still acked
+				ackScheduler.eventSeen(eventID);
+				return;
+			}
 
+			// the payload can be a whole graph, so it is only turned into a string if someone is listening
+			LOGGER.log(System.Logger.Level.DEBUG, () -> "Got event " + eventID + " (last acked " + ackScheduler.getLastAcknowledgedEventId() + "): " + eyreResponse);
 
-					}
+			// handlers run on the dispatch executor, so a slow handler never holds up the sse thread.
+			// responses are keyed by their request id, so events for the same subscription are still handled in order
+			dispatcher.execute(eyreResponse.id, () -> handleEyreResponse(eyreResponse));
 
-					@Override
-					public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
-						// todo better error handling
-						//  right now, if I try to
-
-						// here, we get an EOFException if we have a running connection and then Ctrl-z forcibly close the fakezod
-						// so maybe that's another custom error to make
-						// socket exception occurs because by default, the okhttp sse event client times out after like 500ms
-						// if it hasn't received any data from the connection, even though that's normal when using eyre. this is why we set the timeout really high.
-
-
-						if (response != null) {
-							if (response.code() == 200) {
-								System.out.println("Got 200 OK on " + response.request().url());
-								System.out.println("Channel canceled by eyre");
-								// at this point, t is normally SocketError because the socket is closed
-								// our channel was canceled normally by eyre; skip rest of code
-								return;
-							} else {
-								System.err.println("Event Source Error: " + response);
-							}
-						}
-
-						if (t != null) {
-							System.err.println("Encountered error while doing sse stuff");
-							throw new RuntimeException(t);
-						}
+			// the event only counts as seen (and so gets acked) once it has been handed off.
+			// this only records it, the ack itself is sent later, off of this thread (see AckScheduler)
+			ackScheduler.eventSeen(eventID);
+		}
 
-					}
+		@Override
+		public void onFailure(@Nullable Throwable t, int responseCode) {
+			// here, we get an EOFException if we have a running connection and then Ctrl-z forcibly close the fakezod
+			// so maybe that's another custom error to make
+			// socket exception occurs because by default, the okhttp sse event client times out after like 500ms
+			// if it hasn't received any data from the connection, even though that's normal when using eyre. this is why we set the timeout really high.
+
+			if (responseCode == 200) {
+				LOGGER.log(System.Logger.Level.INFO, "Channel " + getChannelUrl() + " was canceled by eyre");
+				// at this point, t is normally SocketError because the socket is closed
+				// our channel was canceled normally by eyre
+			} else if (responseCode == 403 || responseCode == 404) {
+				// our cookie is no longer valid, or the channel no longer exists. retrying will not help
+				if (this == currentListener) {
+					teardown();
+				}
+				// only completed after tearing down, so that a resuming channel can't race with the teardown
+				opened.complete(responseCode);
+				return;
+			}
+			opened.complete(responseCode);
 
-					@Override
-					public void onClosed(@NotNull EventSource eventSource) {
-						// reference https://github.com/dclelland/UrsusAirlock/blob/master/Ursus%20Airlock/Airlock.swift#L196
-						// todo test to see when this gets called, and if were are doing the right thing based on it.
+			// the error itself is logged along with what we do about it
+			onEventSourceLost(this, t != null ? t.toString() : "got http " + responseCode, t);
+		}
 
-						System.out.println("!!!!!!!!!!Closing!!!!!!!!!!!!");
-						teardown();  // calling this may cause onFailure, causing it to be called recursively. make sure theres no weird interaction with it.
-					}
+		@Override
+		public void onClosed() {
+			// reference https://github.com/dclelland/UrsusAirlock/blob/master/Ursus%20Airlock/Airlock.swift#L196
+			onEventSourceLost(this, "stream closed", null);
+		}
+	}
+
+	/**
+	 * The state of a single {@link AirlockChannel#connectFastAsync(Consumer)}
+	 */
+	private class FastConnect {
+
+		/**
+		 * The settings of the batch which carries the creation of the channel: it is only ever flushed by hand
+		 */
+		private final BatchingConfig preludeConfig = new BatchingConfig(Duration.ofDays(1), Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+		private final CompletableFuture<ConnectTiming> result = new CompletableFuture<>();
+		private final long start = System.nanoTime();
+
+		// each of these is written before the future of the next step completes, so they are safe to read from later steps
+		private volatile long loggedIn;
+		private volatile long channelCreated;
+		private volatile long streamOpened;
+
+		CompletableFuture<ConnectTiming> start(@Nullable Consumer<AirlockChannel> initialActions) {
+			CompletableFuture<Void> login;
+			if (isAuthenticated()) {
+				loggedIn = start;
+				login = CompletableFuture.completedFuture(null);
+			} else {
+				login = sendRequestAsync(loginRequest()).thenRun(() -> {
+					storeAuthCookie();
+					loggedIn = System.nanoTime();
 				});
+			}
+
+			// everything sent until the prelude is flushed ends up in the PUT that creates the channel, which waits for the login
+			ChannelBatcher prelude = new ChannelBatcher(preludeConfig, actions -> login.thenCompose(ignored -> sendActionsToChannelAsync(actions)));
+			PendingAction<PokeResponse> hello;
+			synchronized (channelLock) {
+				preludeBatcher = prelude;
+			}
+			try {
+				hello = sendPoke(getShipName(), "hood", "helm-hi", new JsonPrimitive("Opening Airlock :)"));
+				if (initialActions != null) {
+					initialActions.accept(AirlockChannel.this);
+				}
+			} finally {
+				synchronized (channelLock) {
+					preludeBatcher = null;
+				}
+				prelude.flush();
+			}
+
+			hello.sent.whenComplete((response, throwable) -> {
+				if (throwable != null) {
+					result.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+					return;
+				}
+				channelCreated = System.nanoTime();
+				this.openStream();
+			});
+			// i.e. the ship never acked the poke
+			hello.result.whenComplete((pokeResponse, throwable) -> {
+				if (throwable != null) {
+					result.completeExceptionally(throwable);
+				}
+			});
+			return result;
+		}
+
+		private void openStream() {
+			ChannelEventListener listener;
+			synchronized (channelLock) {
+				reconnectAttempts = 0;
+				openEventSource();
+				listener = currentListener;
+			}
+			saveSession();
+
+			listener.opened.thenAccept(responseCode -> {
+				if (responseCode == 403) {
+					result.completeExceptionally(new AirlockAuthenticationError("Got 403 while opening the event stream"));
+				} else if (responseCode != 200) {
+					result.completeExceptionally(new AirlockRequestError("Unable to open the event stream (got http " + responseCode + ")"));
+				} else {
+					streamOpened = System.nanoTime();
+				}
+			});
+			listener.firstEvent.thenRun(() -> {
+				long firstEvent = System.nanoTime();
+				ConnectTiming timing = new ConnectTiming(
+						Duration.ofNanos(loggedIn - start),
+						Duration.ofNanos(channelCreated - start),
+						// the first event can be handed to us before the callback for the opened stream has run
+						Duration.ofNanos((streamOpened != 0 ? streamOpened : firstEvent) - start),
+						Duration.ofNanos(firstEvent - start)
+				);
+				result.complete(timing);
+			});
+		}
+	}
+
+	/**
+	 * Hands a response received from the ship to the handler registered for its request.
+	 * Runs on the dispatch executor, never on the sse thread.
+	 *
+	 * @param eyreResponse The response to handle
+	 */
+	private void handleEyreResponse(EyreResponse eyreResponse) {
+		// possible enhancement: add check to ensure that the id received in the eyreResponse matches the one we expect to see
+		// a missing handler means the request already timed out (or the channel was torn down), so the response is dropped
+		switch (eyreResponse.response) {
+			case POKE:
+				var pokeHandler = inFlight.removePoke(eyreResponse.id);
+				if (pokeHandler == null) {
+					LOGGER.log(System.Logger.Level.WARNING, "Got poke response for unknown request " + eyreResponse.id);
+					break;
+				}
+				if (eyreResponse.ok) {
+					pokeHandler.complete(PokeResponse.SUCCESS);
+				} else {
+					pokeHandler.complete(PokeResponse.fromFailure(eyreResponse.err));
+				}
+				break;
+			case SUBSCRIBE:
+				Consumer<SubscribeEvent> subscribeHandler;
+				if (eyreResponse.ok) {
+					subscribeHandler = inFlight.subscriptionStarted(eyreResponse.id);
+				} else {
+					subscribeHandler = inFlight.removeSubscription(eyreResponse.id);
+				}
+				if (subscribeHandler == null) {
+					LOGGER.log(System.Logger.Level.WARNING, "Got subscribe response for unknown subscription " + eyreResponse.id);
+					break;
+				}
+				if (eyreResponse.ok) {
+					subscribeHandler.accept(SubscribeEvent.STARTED);
+				} else {
+					subscribeHandler.accept(SubscribeEvent.fromFailure(eyreResponse.err));
+				}
+				break;
+			case DIFF:
+				subscribeHandler = inFlight.getSubscription(eyreResponse.id);
+				if (subscribeHandler == null) {
+					LOGGER.log(System.Logger.Level.WARNING, "Got diff for unknown subscription " + eyreResponse.id);
+					break;
+				}
+				if (eyreResponse.decodedJson != null) {
+					subscribeHandler.accept(SubscribeEvent.fromDecodedUpdate(eyreResponse.decodedJson));
+				} else {
+					subscribeHandler.accept(SubscribeEvent.fromUpdate(eyreResponse.json));
+				}
+				break;
+			case QUIT:
+				subscribeHandler = inFlight.removeSubscription(eyreResponse.id);
+				if (subscribeHandler == null) {
+					LOGGER.log(System.Logger.Level.WARNING, "Got quit for unknown subscription " + eyreResponse.id);
+					break;
+				}
+				subscribeHandler.accept(SubscribeEvent.FINISHED);
+				break;
+
+			default:
+				// todo, we could turn this into an AirlockException to make it catchable or silently log / ignore like channel.js does
+				// but that might be more canceratic idk
+				throw new IllegalStateException("Got unknown eyre responseType");
+		}
+	}
+
+	/**
+	 * Called by the {@link InFlightRegistry} when a subscription was not started in time.
+	 * The failure is delivered through the dispatcher like any other event, so it stays in order with the subscription's other events.
+	 * The ship may still start the subscription later on, so we unsubscribe from it as well, instead of leaving it running with no one to hear it.
+	 */
+	private void onSubscriptionTimeout(int id, Consumer<SubscribeEvent> handler) {
+		dispatcher.execute(id, () -> handler.accept(SubscribeEvent.fromFailure("Subscription was not started within " + requestTimeout)));
+		this.unsubscribeAsync(id).exceptionally(throwable -> {
+			LOGGER.log(System.Logger.Level.WARNING, "Failed to unsubscribe from timed out subscription " + id, throwable);
+			return null;
+		});
 	}
 
 	public void teardown() {
 		synchronized (channelLock) {
 			// synchronized because otherwise we may accidently clear the pokehandlers whlie the other thread is still using them
-			this.sseClient.cancel();
-			pokeHandlers.clear();
-			subscribeHandlers.clear();
+			EventStream currentClient = this.sseClient;
+			// cleared before cancelling, so that the listener knows the resulting failure is on purpose and does not try to reconnect
+			this.currentListener = null;
+			this.sseClient = null;
+			if (currentClient != null) {
+				currentClient.cancel();
+			}
+			// pending pokes are failed rather than dropped, so that no one is left waiting on them forever
+			inFlight.clear(new AirlockRequestError("Channel was torn down before a response was received"));
+			// the subscriptions on the ship went away with the channel, so there is nothing left to share
+			multiplexer.clear();
+		}
+
+		// we can no longer hear about changes, so anything cached may go stale without us knowing
+		ScryCache cache = this.scryCache;
+		if (cache != null) {
+			cache.invalidateAll();
 		}
 
 		channelID = AirlockChannel.uid();
-		// todo see if we need this or if it will cause more problems
-		// the place i can see it being needed is for things like scry/spider requests
-//		this.client.dispatcher().cancelAll();
-		sseClient = null;
-		requestId = 0;
-		lastSeenEventId = 0;
-		lastAcknowledgedEventId = 0;
+		// the new channel starts counting its requests from scratch.
+		// N.B: the transport's in-flight calls (i.e. scry/spider requests) are deliberately not cancelled here,
+		// since the transport may be shared with other channels (see AirlockChannelPool)
+		requestId.set(0);
+		ackScheduler.reset();
 
 	}
 
@@ -419,7 +1422,22 @@ public class AirlockChannel {
 	 * @return the response to the request
 	 */
 	public InMemoryResponseWrapper sendJSONtoChannel(JsonObject jsonData) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
-		JsonArray fullJsonDataArray = new JsonArray();
+		return awaitChannelResult(this.sendJSONtoChannelAsync(jsonData));
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#sendJSONtoChannel(JsonObject)}.
+	 * <p>
+	 * The channel lock is only held while updating our bookkeeping, never across the network call,
+	 * so any number of threads may send at the same time without blocking.
+	 * The PUTs themselves go out one at a time, in the order they were sent, since the order of actions matters to eyre
+	 * (i.e. a poke sent after a subscribe expects the subscription to exist).
+	 * </p>
+	 *
+	 * @param jsonData The data to send with the action
+	 * @return a future response to the request
+	 */
+	public CompletableFuture<InMemoryResponseWrapper> sendJSONtoChannelAsync(JsonObject jsonData) {
 		JsonObject fullJsonData = jsonData.deepCopy(); // todo seems like a wasteful way to do it, if outside callers are using this method; possibly refactor
 		//  if we make this method private then we can avoid this because we are the only ones ever calling the method so we can basically just make sure that we never call it with anything that we use later on that would be affected by the mutability of the json object
 
@@ -430,29 +1448,65 @@ public class AirlockChannel {
 			// enforce no sig on ship property
 			fullJsonData.addProperty("ship", ShipName.withoutSig(fullJsonData.get("ship").getAsString()));
 		}
-		fullJsonDataArray.add(fullJsonData);
 
-		String jsonString = AirlockUtils.gson.toJson(fullJsonDataArray);
+		String serializedAction = AirlockUtils.gson.toJson(fullJsonData);
+
+		ChannelBatcher prelude = this.preludeBatcher;
+		ChannelBatcher batcher = prelude != null ? prelude : this.batcher;
+		if (batcher != null) {
+			return batcher.enqueue(serializedAction);
+		}
+		return this.sendActionsToChannelAsync(List.of(serializedAction));
 
-		RequestBody requestBody = RequestBody.create(jsonString, JSON);
+	}
 
-		Request request = new Request.Builder()
-				.url(this.getChannelUrl())
-				.header("Content-Type", "application/json") // `header` just adds the name/value pair to headers array, while addHeader does validation on the content apparently
-				.put(requestBody)
-				.build();
+	/**
+	 * Sends a list of already serialized actions to the channel as a single PUT.
+	 * Eyre accepts a json array of actions, so this is the primitive that both the direct and the batched paths go through.
+	 *
+	 * @param serializedActions The actions to send, in the order they should be processed
+	 * @return a future response to the request
+	 */
+	private CompletableFuture<InMemoryResponseWrapper> sendActionsToChannelAsync(List<String> serializedActions) {
+		// piggyback any pending ack onto this request, which saves the ack scheduler from having to send its own
+		int pendingAck = ackScheduler.takePendingAck();
+		if (pendingAck != AckScheduler.NO_PENDING_ACK) {
+			serializedActions = new ArrayList<>(serializedActions);
+			serializedActions.add(AirlockUtils.gson.toJson(this.ackAction(pendingAck)));
+		}
 
+		// the actions are already serialized, so we join them by hand instead of rebuilding a JsonArray
+		String jsonString = "[" + String.join(",", serializedActions) + "]";
 
-		System.out.println(",============SendMessage============,");
-		System.out.println("About the send the following message");
-		System.out.println("Id: " + jsonData.get("id").getAsInt());
-		System.out.println("Message: " + AirlockUtils.gson.toJson(fullJsonDataArray));
-		System.out.println(".============SendMessage============.");
+		TransportRequest request = TransportRequest.put(this.getChannelUrl(), JSON, jsonString);
+		int actionCount = serializedActions.size();
+		LOGGER.log(System.Logger.Level.DEBUG, () -> "Sending " + actionCount + " actions to " + this.getChannelUrl());
 
-		synchronized (channelLock) {
-			this.lastAcknowledgedEventId = this.lastSeenEventId;
-			return this.sendRequest(request);
+		// the PUT only starts once the previous one has completed, whether or not that one succeeded
+		CompletableFuture<InMemoryResponseWrapper> response;
+		synchronized (putLock) {
+			if (lastPut.isDone()) {
+				response = this.sendRequestAsync(request);
+			} else {
+				// started from the dispatch executor rather than from whichever thread completes the previous PUT,
+				// since that thread may be stuck in a callback which is itself waiting on this PUT
+				response = lastPut
+						.handleAsync((previousResponse, previousThrowable) -> null, DEFAULT_DISPATCH_EXECUTOR)
+						.thenCompose(ignored -> this.sendRequestAsync(request));
+			}
+			lastPut = response;
 		}
+		if (pendingAck != AckScheduler.NO_PENDING_ACK) {
+			// the event only counts as acked once the ship has the ack. if the PUT failed, the ack is pending again
+			int ackedEvent = pendingAck;
+			response.whenComplete((responseWrapper, throwable) -> {
+				ackScheduler.ackSettled(ackedEvent, throwable == null);
+				if (throwable == null) {
+					this.saveSession();
+				}
+			});
+		}
+		return response;
 
 	}
 
@@ -480,6 +1534,34 @@ public class AirlockChannel {
 
 		// todo make poke strict to follow above rules
 
+		PendingAction<PokeResponse> pendingPoke = this.sendPoke(ship, app, mark, json);
+		awaitChannelResult(pendingPoke.sent);
+		return pendingPoke.result;
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#poke}. Does not block the calling thread.
+	 * <p>
+	 * If the request itself fails (i.e. the PUT to the channel was not successful),
+	 * the returned future completes exceptionally with the corresponding {@link AirlockChannelError}.
+	 * </p>
+	 *
+	 * @param ship The ship to poke
+	 * @param app  The app to poke
+	 * @param mark The mark of the data being sent
+	 * @param json The data to send
+	 * @return a future poke response to the request
+	 */
+	public CompletableFuture<PokeResponse> pokeAsync(
+			String ship,
+			@NotNull String app,
+			@NotNull String mark,
+			@NotNull JsonElement json
+	) {
+		return this.sendPoke(ship, app, mark, json).result;
+	}
+
+	private PendingAction<PokeResponse> sendPoke(String ship, String app, String mark, JsonElement json) {
 		CompletableFuture<PokeResponse> pokeFuture = new CompletableFuture<>();
 		int id = nextID();
 		JsonObject pokeDataObj = AirlockUtils.gson.toJsonTree(Map.of(
@@ -490,14 +1572,20 @@ public class AirlockChannel {
 				"mark", mark,
 				"json", json
 		)).getAsJsonObject();
-		// adapted from https://github.com/dclelland/UrsusAirlock/blob/master/Ursus%20Airlock/Airlock.swift#L114
-		InMemoryResponseWrapper pokeResponse = this.sendJSONtoChannel(pokeDataObj);
 
-		if (pokeResponse.response.isSuccessful()) {
-			pokeHandlers.put(id, pokeFuture);
-		}
+		// the handler must be in place before sending, otherwise eyre could respond before we are listening
+		inFlight.registerPoke(id, pokeFuture, requestTimeout);
+
+		// adapted from https://github.com/dclelland/UrsusAirlock/blob/master/Ursus%20Airlock/Airlock.swift#L114
+		CompletableFuture<InMemoryResponseWrapper> sent = this.sendJSONtoChannelAsync(pokeDataObj);
+		sent.whenComplete((response, throwable) -> {
+			if (throwable != null) {
+				inFlight.removePoke(id);
+				pokeFuture.completeExceptionally(throwable);
+			}
+		});
 
-		return pokeFuture;
+		return new PendingAction<>(sent, pokeFuture);
 	}
 
 	/**
@@ -514,6 +1602,63 @@ public class AirlockChannel {
 			@NotNull String path,
 			@NotNull Consumer<SubscribeEvent> subscribeHandler
 	) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		return awaitChannelResult(this.subscribeAsync(ship, app, path, subscribeHandler));
+	}
+
+	/**
+	 * Subscribes to a path on an app on a ship, decoding the payload of every update with the given decoder.
+	 * The decoded value is available through {@link SubscribeEvent#getDecodedUpdate(Class)}.
+	 *
+	 * @param ship    The ship to subscribe to
+	 * @param app     The app to subscribe to
+	 * @param path    The path to which to subscribe
+	 * @param decoder The decoder for the `json` payload of each update
+	 * @return id of the subscription, which can be used to cancel it
+	 */
+	public int subscribe(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@NotNull JsonDecoder<?> decoder,
+			@NotNull Consumer<SubscribeEvent> subscribeHandler
+	) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		return awaitChannelResult(this.subscribeAsync(ship, app, path, decoder, subscribeHandler));
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#subscribe}. Does not block the calling thread.
+	 *
+	 * @param ship The ship to subscribe to
+	 * @param app  The app to subscribe to
+	 * @param path The path to which to subscribe
+	 * @return a future id of the subscription, which completes once the subscribe request has been accepted by the ship
+	 */
+	public CompletableFuture<Integer> subscribeAsync(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@NotNull Consumer<SubscribeEvent> subscribeHandler
+	) {
+		return this.subscribeAsync(ship, app, path, null, subscribeHandler);
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#subscribe(String, String, String, JsonDecoder, Consumer)}.
+	 * Does not block the calling thread.
+	 *
+	 * @param ship    The ship to subscribe to
+	 * @param app     The app to subscribe to
+	 * @param path    The path to which to subscribe
+	 * @param decoder The decoder for the `json` payload of each update, or null to receive updates as {@link JsonObject}s
+	 * @return a future id of the subscription, which completes once the subscribe request has been accepted by the ship
+	 */
+	public CompletableFuture<Integer> subscribeAsync(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@Nullable JsonDecoder<?> decoder,
+			@NotNull Consumer<SubscribeEvent> subscribeHandler
+	) {
 		int id = this.nextID();
 		JsonObject subscribeDataObj;
 		subscribeDataObj = AirlockUtils.gson.toJsonTree(Map.of(
@@ -523,13 +1668,16 @@ public class AirlockChannel {
 				"app", app,
 				"path", path
 		)).getAsJsonObject();
-		InMemoryResponseWrapper subscribeResponse = this.sendJSONtoChannel(subscribeDataObj);
 
-		if (subscribeResponse.response.isSuccessful()) {
-			subscribeHandlers.put(id, subscribeHandler);
-		}
+		inFlight.registerSubscription(id, subscribeHandler, decoder, requestTimeout);
 
-		return this.requestId;
+		return this.sendJSONtoChannelAsync(subscribeDataObj)
+				.whenComplete((response, throwable) -> {
+					if (throwable != null) {
+						inFlight.removeSubscription(id);
+					}
+				})
+				.thenApply(response -> id);
 	}
 
 	/**
@@ -538,6 +1686,16 @@ public class AirlockChannel {
 	 * @param subscription The id of the subscription to unsubscribe from
 	 */
 	public void unsubscribe(int subscription) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+		awaitChannelResult(this.unsubscribeAsync(subscription));
+	}
+
+	/**
+	 * Asynchronous version of {@link AirlockChannel#unsubscribe(int)}. Does not block the calling thread.
+	 *
+	 * @param subscription The id of the subscription to unsubscribe from
+	 * @return a future which completes once the unsubscribe request has been accepted by the ship
+	 */
+	public CompletableFuture<Void> unsubscribeAsync(int subscription) {
 		int id = this.nextID();
 
 		JsonObject unsubscribeDataObj = AirlockUtils.gson.toJsonTree(Map.of(
@@ -546,7 +1704,53 @@ public class AirlockChannel {
 				"subscription", subscription
 		)).getAsJsonObject();
 
-		this.sendJSONtoChannel(unsubscribeDataObj);
+		// forget the handler right away, the caller doesn't want any more events
+		inFlight.removeSubscription(subscription);
+
+		return this.sendJSONtoChannelAsync(unsubscribeDataObj).thenApply(response -> null);
+	}
+
+	/**
+	 * Creates a {@link java.util.concurrent.Flow.Publisher} of the events of a subscription, which only delivers
+	 * as many events as its subscribers request. Each subscriber that subscribes to the publisher creates a
+	 * subscription on the ship, with its own bounded buffer. See {@link SubscriptionPublisher}.
+	 *
+	 * @param ship    The ship to subscribe to
+	 * @param app     The app to subscribe to
+	 * @param path    The path to which to subscribe
+	 * @param decoder The decoder for the `json` payload of each update, or null to receive updates as {@link JsonObject}s
+	 * @param config  How many updates to buffer per subscriber, and what to do when a subscriber falls behind
+	 * @return the publisher. Nothing is sent to the ship until something subscribes to it
+	 */
+	public SubscriptionPublisher subscriptionPublisher(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@Nullable JsonDecoder<?> decoder,
+			@NotNull BackpressureConfig config
+	) {
+		requireNonNull(config, "Please provide a backpressure config");
+		return new SubscriptionPublisher(this, ship, app, path, decoder, config);
+	}
+
+	/**
+	 * Returns the multiplexer of this channel, which shares one subscription on the ship between all local listeners
+	 * of the same (ship, app, path), instead of every listener creating its own.
+	 *
+	 * @return the subscription multiplexer of this channel
+	 */
+	public SubscriptionMultiplexer getSubscriptionMultiplexer() {
+		return multiplexer;
+	}
+
+	/**
+	 * Runs a task on the dispatch queue of the given request id, i.e. in order with the handlers of that request's events
+	 *
+	 * @param requestId The id of the request
+	 * @param task      The task to run
+	 */
+	void dispatchFor(int requestId, Runnable task) {
+		dispatcher.execute(requestId, task);
 	}
 
 	/**
@@ -567,100 +1771,175 @@ public class AirlockChannel {
 	 * Acks the given eventID
 	 *
 	 * @param eventID the id of the event to ack
+	 * @return a future which completes once the ack has been accepted by the ship
 	 */
-	private void ack(int eventID) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
+	private CompletableFuture<Void> ackAsync(int eventID) {
+		return this.sendJSONtoChannelAsync(this.ackAction(eventID)).thenApply(response -> {
+			this.saveSession();
+			return null;
+		});
+	}
+
+	private JsonObject ackAction(int eventID) {
 		int id = this.nextID();
 
-		JsonObject ackObj = AirlockUtils.gson.toJsonTree(Map.of(
+		return AirlockUtils.gson.toJsonTree(Map.of(
 				"id", id,
 				"action", "ack",
 				"event-id", eventID
 		)).getAsJsonObject();
-
-		this.sendJSONtoChannel(ackObj);
 	}
 
 
 	public JsonElement scryRequest(String app, String path) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockRequestError, AirlockResponseError {
+		return this.scryRequest(app, path, JSON_TREE);
+	}
+
+	/**
+	 * Performs a scry, decoding the response with the given decoder as it is read off of the network.
+	 * Use this for large scries (i.e. whole graphs) where building a json tree of the response would be wasteful.
+	 * The body may be at most {@link AirlockChannel#setMaxResponseBytes(long)} bytes.
+	 * <p>
+	 * Concurrent scries for the same path with the same decoder share one request.
+	 * Every caller still gets back its own decoded object, which it is free to mutate:
+	 * the others get a copy made with {@link JsonDecoder#copy(Object)}, or make their own request if the decoder can't copy.
+	 * </p>
+	 *
+	 * @param app     The app to scry
+	 * @param path    The path to scry
+	 * @param decoder The decoder for the response
+	 * @param <T>     The type of the decoded response
+	 * @return the decoded response
+	 */
+	public <T> T scryRequest(String app, String path, JsonDecoder<T> decoder) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockRequestError, AirlockResponseError {
 		// as per https://github.com/urbit/urbit/blob/90faac16c9f61278d0a1d946bd91c5b387f7a423/pkg/interface/src/logic/api/base.ts
 		// we are never gonna use any other mark than json because that's the only protocol we know how to work with
 		URL scryUrl = this.getScryUrl(app, path, "json");
 
-		Request request = new Request.Builder()
-				.url(scryUrl)
-				.header("Content-Type", "application/json")
-				.get()
-				.build();
+		ScryCache cache = this.scryCache;
+		if (cache != null) {
+			byte[] cached = cache.get(app, path);
+			if (cached != null) {
+				try {
+					return decodeBody(cached, decoder);
+				} catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+					// the result was cached by someone with a different decoder. just ask the ship, so that the caller gets a proper error.
+					// only this entry is dropped: bumping the generation would keep every scry that is running right now out of the cache
+					cache.remove(app, path);
+				}
+			}
+		}
+
+		// i.e. everyone asking for the same graph right after startup
+		try {
+			return singleFlight.run(
+					List.of(scryUrl.toString(), decoder),
+					() -> this.fetchScry(app, path, scryUrl, decoder, cache),
+					(value, body) -> copyResult(value, body, decoder)
+			);
+		} catch (ScryDataNotFoundException | ScryFailureException | AirlockAuthenticationError | AirlockRequestError | AirlockResponseError e) {
+			throw e;
+		} catch (AirlockException e) {
+			throw new AirlockRequestError("Unexpected failure while making scry request", e);
+		}
+	}
 
-		System.out.println(",============ScryRequest============,");
-		System.out.println("Request: " + scryUrl);
-		System.out.println(".============ScryRequest============.");
+	/**
+	 * Sends the scry, decoding the response as it comes in
+	 *
+	 * @return the decoded response, along with a copy of the raw body if the cache is going to keep it (and null otherwise).
+	 * Large scries are exactly the ones that shouldn't exist as bytes and decoded objects at the same time
+	 */
+	private <T> SingleFlight.Result<T, byte[]> fetchScry(String app, String path, URL scryUrl, JsonDecoder<T> decoder, @Nullable ScryCache cache) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockRequestError, AirlockResponseError {
+		TransportRequest request = TransportRequest.get(scryUrl);
 
-		InMemoryResponseWrapper responseWrapper;
 		try {
-			responseWrapper = this.sendRequest(request);
+			if (cache == null || !cache.isCacheable(app, path)) {
+				return new SingleFlight.Result<>(this.sendRequestStreaming(request, decoder, null), null);
+			}
+			long generation = cache.generation();
+			ByteArrayOutputStream copy = new ByteArrayOutputStream();
+			T result = this.sendRequestStreaming(request, decoder, copy);
+			byte[] body = copy.toByteArray();
+			cache.put(app, path, body, generation);
+			return new SingleFlight.Result<>(result, body);
 		} catch (AirlockResponseError responseError) {
 
+			// the body of the error goes into the exception, so there is no need to print it
 			InMemoryResponseWrapper errorResponseWrapper = responseError.responseWrapper;
-			Response response = errorResponseWrapper.response;
-			System.err.println(errorResponseWrapper.getBodyAsString());
-
-			if (response.code() == 404) {
-				throw new ScryDataNotFoundException("Got 404 when trying to make scry request.\n" + "Request: " + response.request() + "Response: " + response.body());
-			} else if (response.code() == 500) {
-				throw new ScryFailureException("Got 500 when trying to make a request.\n" + "Request: " + response.request() + "Response: " + response.body());
+			if (errorResponseWrapper.code == 404) {
+				throw new ScryDataNotFoundException("Got 404 when trying to make scry request.\n" + "Request: " + errorResponseWrapper.url + "Response: " + errorResponseWrapper.getBodyAsString());
+			} else if (errorResponseWrapper.code == 500) {
+				throw new ScryFailureException("Got 500 when trying to make a request.\n" + "Request: " + errorResponseWrapper.url + "Response: " + errorResponseWrapper.getBodyAsString());
 			} else {
 				throw responseError;
 			}
 
 		}
-
-		String bodyText = responseWrapper.getBodyAsString();
-
-		return JsonParser.parseString(bodyText);
 	}
 
 
 	public JsonElement spiderRequest(String inputMark, String threadName, String outputMark, JsonObject jsonData) throws AirlockRequestError, SpiderFailureException, AirlockResponseError, AirlockAuthenticationError {
+		return this.spiderRequest(inputMark, threadName, outputMark, jsonData, JSON_TREE);
+	}
+
+	/**
+	 * Runs a thread, decoding the response with the given decoder as it is read off of the network.
+	 * The body may be at most {@link AirlockChannel#setMaxResponseBytes(long)} bytes.
+	 * <p>
+	 * If the thread has been marked as read-only with {@link AirlockChannel#setReadOnlyThread(String, boolean)},
+	 * concurrent runs with the same marks, input and decoder share one request. Each of them still gets back its own decoded object
+	 * (see {@link AirlockChannel#scryRequest(String, String, JsonDecoder)}).
+	 * </p>
+	 *
+	 * @param inputMark  The mark of the input
+	 * @param threadName The name of the thread to run
+	 * @param outputMark The mark of the output
+	 * @param jsonData   The input to the thread
+	 * @param decoder    The decoder for the response
+	 * @param <T>        The type of the decoded response
+	 * @return the decoded response
+	 */
+	public <T> T spiderRequest(String inputMark, String threadName, String outputMark, JsonObject jsonData, JsonDecoder<T> decoder) throws AirlockRequestError, SpiderFailureException, AirlockResponseError, AirlockAuthenticationError {
 
 		// copied from sendJSONtoChannel
 		// tbh I think that for now I'm only ever gonna be sending the json mark. so maybe I should just send
 
 		String jsonString = AirlockUtils.gson.toJson(jsonData.deepCopy()); // todo possible refactor of deep copy
 
-		RequestBody requestBody = RequestBody.create(jsonString, JSON);
 		URL spiderUrl = this.getSpiderUrl(inputMark, threadName, outputMark);
 
-		System.out.println(",============SpiderRequest============,");
-		System.out.println("Request: " + spiderUrl);
-		System.out.println("Payload: " + jsonString);
-		System.out.println(".============SpiderRequest============.");
-
-		Request request = new Request.Builder()
-				.url(spiderUrl)
-				.header("Content-Type", "application/json")
-				.post(requestBody)
-				.build();
+		if (!readOnlyThreads.contains(threadName)) {
+			return this.runThread(spiderUrl, jsonString, decoder);
+		}
+		try {
+			return singleFlight.run(
+					List.of(spiderUrl.toString(), jsonString, decoder),
+					() -> new SingleFlight.Result<T, byte[]>(this.runThread(spiderUrl, jsonString, decoder), null),
+					(value, body) -> copyResult(value, body, decoder)
+			);
+		} catch (SpiderFailureException | AirlockAuthenticationError | AirlockRequestError | AirlockResponseError e) {
+			throw e;
+		} catch (AirlockException e) {
+			throw new AirlockRequestError("Unexpected failure while making spider request", e);
+		}
+	}
 
-		InMemoryResponseWrapper responseWrapper;
+	private <T> T runThread(URL spiderUrl, String jsonString, JsonDecoder<T> decoder) throws AirlockRequestError, SpiderFailureException, AirlockResponseError, AirlockAuthenticationError {
+		TransportRequest request = TransportRequest.post(spiderUrl, JSON, jsonString);
 
 		try {
-			responseWrapper = this.sendRequest(request);
-
+			return this.sendRequestStreaming(request, decoder, null);
 		} catch (AirlockResponseError airlockResponseError) {
 
-			Response response = airlockResponseError.responseWrapper.response;
-			if (response.code() == 500) {
-				throw new SpiderFailureException("Got 500 when trying to make a request.\n" + "Request: " + response.request() + "\nResponse: \n" + response.body(), airlockResponseError);
+			InMemoryResponseWrapper errorResponseWrapper = airlockResponseError.responseWrapper;
+			if (errorResponseWrapper.code == 500) {
+				throw new SpiderFailureException("Got 500 when trying to make a request.\n" + "Request: " + errorResponseWrapper.url + "\nResponse: \n" + errorResponseWrapper.getBodyAsString(), airlockResponseError);
 			} else {
 				throw airlockResponseError;
 			}
 
 		}
-
-		String bodyText = responseWrapper.getBodyAsString();
-
-		return JsonParser.parseString(bodyText);
 	}
 
 
@@ -723,6 +2002,20 @@ public class AirlockChannel {
 		return str.substring(0, str.length() - 1);
 	}
 
+	/**
+	 * Pairs the future of the PUT which carried an action with the future of the action's eventual result
+	 * (which arrives later over the sse stream).
+	 */
+	private static final class PendingAction<T> {
+		final CompletableFuture<InMemoryResponseWrapper> sent;
+		final CompletableFuture<T> result;
+
+		PendingAction(CompletableFuture<InMemoryResponseWrapper> sent, CompletableFuture<T> result) {
+			this.sent = sent;
+			this.result = result;
+		}
+	}
+
 	@NotNull
 	public static String generateChannelID() {
 		return Math.round(Math.floor(AirlockUtils.currentTimeMS())) + "-" + AirlockChannel.hexString(6);
@@ -0,0 +1,218 @@
+package airlock;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Creates and keeps track of channels to many ships, all of which share one http transport.
+ * <p>
+ * A standalone {@link AirlockChannel} has its own connection pool and dispatcher (and with them, its own threads and sockets).
+ * Channels made by a pool instead share a single connection pool, and a single dispatcher whose limits
+ * (see {@link ChannelPoolConfig}) apply to all of them together. Each channel still has its own cookie jar,
+ * so ships never see each other's auth cookies.
+ * </p>
+ * <p>
+ * Sse streams run on a separate dispatcher without limits. They stay open for the lifetime of a channel,
+ * so if they counted against the request limits, a few hundred ships would leave no room for anything else.
+ * Since OkHttp parks a thread on every stream, pools of more than a few hundred ships should read their streams
+ * with a {@link MultiplexedSseReader} instead (see {@link AirlockChannelPool#AirlockChannelPool(ChannelPoolConfig, MultiplexedSseReader)}).
+ * </p>
+ * <p>
+ * N.B: the limits only apply to asynchronous requests. Blocking requests (login, scries, threads) run on the calling thread,
+ * so they are bounded by the caller.
+ * </p>
+ * <p>
+ * The pool is built on OkHttp's connection pool and dispatcher, so it needs OkHttp on the classpath
+ * (see {@link OkHttpTransport}). A {@link JdkHttpTransport} can be shared between channels without a pool,
+ * by passing it to {@link AirlockChannel#AirlockChannel(AirlockCredentials, HttpTransport)}.
+ * </p>
+ */
+public class AirlockChannelPool {
+
+	private final ChannelPoolConfig config;
+
+	private final ConnectionPool connectionPool;
+	private final Dispatcher requestDispatcher;
+	private final Dispatcher streamDispatcher;
+
+	/**
+	 * The transport for regular requests. Every channel derives its own client from this one (with its own cookie jar)
+	 */
+	private final OkHttpClient transport;
+
+	/**
+	 * The transport for sse streams
+	 */
+	private final OkHttpClient streamTransport;
+
+	/**
+	 * The transport that every channel of the pool is created with
+	 */
+	private final OkHttpTransport channelTransport;
+
+	/**
+	 * Reads the sse streams of all channels, or null to read them with OkHttp
+	 */
+	private final @Nullable MultiplexedSseReader sseReader;
+
+	/**
+	 * The channels of the pool, by ship and url
+	 */
+	private final Map<String, AirlockChannel> channels = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Create a pool with the {@link ChannelPoolConfig#DEFAULT default} limits
+	 */
+	public AirlockChannelPool() {
+		this(ChannelPoolConfig.DEFAULT);
+	}
+
+	/**
+	 * @param config The limits shared by all channels of the pool
+	 */
+	public AirlockChannelPool(ChannelPoolConfig config) {
+		this(config, null);
+	}
+
+	/**
+	 * @param config    The limits shared by all channels of the pool
+	 * @param sseReader The reader for the sse streams of all channels, or null to read them with OkHttp.
+	 *                  The reader is not shut down together with the pool.
+	 */
+	public AirlockChannelPool(ChannelPoolConfig config, @Nullable MultiplexedSseReader sseReader) {
+		this.config = requireNonNull(config, "Please provide a config");
+		this.sseReader = sseReader;
+
+		this.connectionPool = new ConnectionPool(config.maxIdleConnections, config.keepAlive.toNanos(), TimeUnit.NANOSECONDS);
+
+		this.requestDispatcher = new Dispatcher();
+		this.requestDispatcher.setMaxRequests(config.maxRequests);
+		this.requestDispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost);
+
+		this.streamDispatcher = new Dispatcher();
+		this.streamDispatcher.setMaxRequests(Integer.MAX_VALUE);
+		this.streamDispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+
+		this.transport = new OkHttpClient.Builder()
+				.connectionPool(connectionPool)
+				.dispatcher(requestDispatcher)
+				.readTimeout(config.readTimeout)
+				.build();
+
+		// same connection pool, so a stream and the PUTs of a channel can share connections to the ship
+		this.streamTransport = transport.newBuilder()
+				.dispatcher(streamDispatcher)
+				.readTimeout(1, TimeUnit.DAYS) // see OkHttpTransport's constructor
+				.build();
+
+		this.channelTransport = new OkHttpTransport(transport, streamTransport);
+	}
+
+	/**
+	 * Get the channel for the given ship, creating it if the pool doesn't have one yet.
+	 * The channel is not authenticated or connected by this method.
+	 *
+	 * @param credentials The credentials of the ship
+	 * @return the channel for the ship
+	 */
+	public AirlockChannel getChannel(AirlockCredentials credentials) {
+		requireNonNull(credentials, "Please provide credentials");
+		return channels.computeIfAbsent(keyOf(credentials), key -> {
+			AirlockChannel channel = new AirlockChannel(credentials, channelTransport);
+			if (sseReader != null) {
+				channel.useMultiplexedSseReader(sseReader);
+			}
+			return channel;
+		});
+	}
+
+	/**
+	 * Tear down the channel for the given ship (if there is one) and remove it from the pool
+	 *
+	 * @param credentials The credentials of the ship
+	 * @return the removed channel, or null if the pool did not have a channel for the ship
+	 */
+	public @Nullable AirlockChannel removeChannel(AirlockCredentials credentials) {
+		AirlockChannel channel = channels.remove(keyOf(credentials));
+		if (channel != null) {
+			channel.teardown();
+		}
+		return channel;
+	}
+
+	/**
+	 * @return a snapshot of every channel in the pool
+	 */
+	public Collection<AirlockChannel> getChannels() {
+		return List.copyOf(channels.values());
+	}
+
+	public int getChannelCount() {
+		return channels.size();
+	}
+
+	/**
+	 * @return the number of asynchronous requests which are currently being executed
+	 */
+	public int getRunningRequestCount() {
+		return requestDispatcher.runningCallsCount();
+	}
+
+	/**
+	 * @return the number of asynchronous requests which are waiting for a free slot because one of the limits was reached
+	 */
+	public int getQueuedRequestCount() {
+		return requestDispatcher.queuedCallsCount();
+	}
+
+	/**
+	 * @return the number of open sse streams
+	 */
+	public int getOpenStreamCount() {
+		// N.B: if the reader is shared with channels outside of the pool, this counts those too
+		return sseReader != null ? sseReader.getOpenStreamCount() : streamDispatcher.runningCallsCount();
+	}
+
+	/**
+	 * @return the number of open connections, idle or not
+	 */
+	public int getConnectionCount() {
+		return connectionPool.connectionCount();
+	}
+
+	public int getIdleConnectionCount() {
+		return connectionPool.idleConnectionCount();
+	}
+
+	public ChannelPoolConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Tear down every channel and release the shared threads and connections.
+	 * The pool cannot be used afterwards.
+	 */
+	public void shutdown() {
+		channels.values().forEach(AirlockChannel::teardown);
+		channels.clear();
+		requestDispatcher.executorService().shutdown();
+		streamDispatcher.executorService().shutdown();
+		connectionPool.evictAll();
+	}
+
+	private static String keyOf(AirlockCredentials credentials) {
+		return credentials.ship + "@" + credentials.url;
+	}
+
+}
@@ -9,15 +9,14 @@ import airlock.agent.graph.types.content.GraphContent;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import okhttp3.HttpUrl;
 
 import java.math.BigInteger;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.time.Instant;
 import java.util.Map;
-import java.util.Objects;
 
 public class AirlockUtils {
 
@@ -27,11 +26,11 @@ public class AirlockUtils {
 	public static final Gson gson = new GsonBuilder() // todo add some sort of lint to make sure there are no unused ADAPTER objects
 			.setPrettyPrinting()  // disable in production
 			.registerTypeAdapter(EyreResponse.class, EyreResponse.ADAPTER)
-			.registerTypeAdapter(Graph.class, Graph.ADAPTER)
+			.registerTypeAdapterFactory(Graph.ADAPTER_FACTORY)
 			.registerTypeAdapter(GraphContent.class, GraphContent.ADAPTER)
-			.registerTypeAdapter(NodeMap.class, NodeMap.ADAPTER)
+			.registerTypeAdapterFactory(NodeMap.ADAPTER_FACTORY)
 			.registerTypeAdapter(Index.class, Index.ADAPTER)
-			.registerTypeAdapter(Post.class, Post.ADAPTER)
+			.registerTypeAdapterFactory(Post.ADAPTER_FACTORY)
 			.registerTypeAdapter(CodeContent.class, CodeContent.ADAPTER)
 			.serializeNulls() // necessary because certain payloads that we send / receive need explicit nulls. by default gson just omits the properties which will not work
 			.create();
@@ -49,9 +48,164 @@ public class AirlockUtils {
 		return ud.replaceAll("/\\./g", "");
 	}
 
+	// a `@da` is a 128 bit number of 2^-64ths of a second, so the whole seconds are the upper 64 bits
+	// and the fraction of a second is the lower 64 bits. ~1970.1.1 has no fraction
+	private static final long DA_UNIX_EPOCH_SECONDS = 0x8000000cce9e0d80L;
+
+	/**
+	 * Convert a unix time to a `@da`, i.e. to use as the index of a new post.
+	 * This creates the BigInteger, see {@link AirlockUtils#unixToDaHigh(long)} and {@link AirlockUtils#unixToDaLow(long)} to do without it
+	 *
+	 * @param unix The time in ms since 1970
+	 * @return the `@da`
+	 */
 	public static BigInteger unixToDa(long unix) {
-		final var timeSinceEpoch = new BigInteger(String.valueOf(unix)).multiply(DA_SECOND).divide(new BigInteger(String.valueOf(1000)));
-		return DA_UNIX_EPOCH.add(timeSinceEpoch);
+		return daFromParts(unixToDaHigh(unix), unixToDaLow(unix));
+	}
+
+	/**
+	 * @param unix The time in ms since 1970
+	 * @return the upper 64 bits of the `@da` (the whole seconds), as an unsigned long
+	 */
+	public static long unixToDaHigh(long unix) {
+		return DA_UNIX_EPOCH_SECONDS + Math.floorDiv(unix, 1000);
+	}
+
+	/**
+	 * @param unix The time in ms since 1970
+	 * @return the lower 64 bits of the `@da` (the fraction of a second), as an unsigned long
+	 */
+	public static long unixToDaLow(long unix) {
+		// floorMod, so that a time before 1970 still gets a fraction counting up from the (floored) second
+		return toDaFraction(Math.floorMod(unix, 1000), 1000);
+	}
+
+	/**
+	 * Convert an instant to a `@da`, keeping the nanoseconds
+	 *
+	 * @param instant The instant
+	 * @return the `@da`
+	 */
+	public static BigInteger unixToDa(Instant instant) {
+		return daFromParts(unixToDaHigh(instant), unixToDaLow(instant));
+	}
+
+	/**
+	 * @param instant The instant
+	 * @return the upper 64 bits of the `@da` (the whole seconds), as an unsigned long
+	 */
+	public static long unixToDaHigh(Instant instant) {
+		return DA_UNIX_EPOCH_SECONDS + instant.getEpochSecond();
+	}
+
+	/**
+	 * @param instant The instant
+	 * @return the lower 64 bits of the `@da` (the fraction of a second), as an unsigned long
+	 */
+	public static long unixToDaLow(Instant instant) {
+		return toDaFraction(instant.getNano(), 1_000_000_000);
+	}
+
+	/**
+	 * Convert a `@da` (i.e. the index of a post) back to a unix time. The inverse of {@link AirlockUtils#unixToDa(long)}
+	 *
+	 * @param da The `@da`
+	 * @return the time in ms since 1970, rounded to the nearest ms
+	 * @throws IllegalArgumentException if the atom is not a `@da` (i.e. it is negative or more than 128 bits)
+	 */
+	public static long daToUnix(BigInteger da) {
+		checkDa(da);
+		return daToUnix(daHigh(da), da.longValue());
+	}
+
+	/**
+	 * The same as {@link AirlockUtils#daToUnix(BigInteger)}, for a `@da` that is already split in two
+	 *
+	 * @param hi The upper 64 bits of the `@da`
+	 * @param lo The lower 64 bits of the `@da`
+	 * @return the time in ms since 1970, rounded to the nearest ms
+	 */
+	public static long daToUnix(long hi, long lo) {
+		long seconds = hi - DA_UNIX_EPOCH_SECONDS;
+		// the ms can round up to the next second
+		return seconds * 1000 + fromDaFraction(lo, 1000);
+	}
+
+	/**
+	 * Convert a `@da` (i.e. the index of a post) to an instant. The inverse of {@link AirlockUtils#unixToDa(Instant)}
+	 *
+	 * @param da The `@da`
+	 * @return the instant, rounded to the nearest ns
+	 * @throws IllegalArgumentException if the atom is not a `@da` (i.e. it is negative or more than 128 bits)
+	 */
+	public static Instant daToInstant(BigInteger da) {
+		checkDa(da);
+		return daToInstant(daHigh(da), da.longValue());
+	}
+
+	/**
+	 * The same as {@link AirlockUtils#daToInstant(BigInteger)}, for a `@da` that is already split in two
+	 *
+	 * @param hi The upper 64 bits of the `@da`
+	 * @param lo The lower 64 bits of the `@da`
+	 * @return the instant, rounded to the nearest ns
+	 */
+	public static Instant daToInstant(long hi, long lo) {
+		return Instant.ofEpochSecond(hi - DA_UNIX_EPOCH_SECONDS, fromDaFraction(lo, 1_000_000_000));
+	}
+
+	/**
+	 * @return the upper 64 bits of a `@da`
+	 */
+	private static long daHigh(BigInteger da) {
+		// a BigInteger doesn't hand out its upper half without making a new one, so this is the one allocation left on this path
+		return da.bitLength() <= 64 ? 0 : da.shiftRight(64).longValue();
+	}
+
+	private static void checkDa(BigInteger da) {
+		if (da.signum() < 0 || da.bitLength() > 128) {
+			throw new IllegalArgumentException("Not a @da: " + da);
+		}
+	}
+
+	/**
+	 * @param units         A number of units which is less than a second
+	 * @param unitsPerSecond How many units are in a second (i.e. 1000 for ms)
+	 * @return floor(units * 2^64 / unitsPerSecond), the fraction of a second in `@da` terms
+	 */
+	private static long toDaFraction(long units, long unitsPerSecond) {
+		// 2^64 = unitsPerSecond * q + r, so units * 2^64 / unitsPerSecond = units * q + units * r / unitsPerSecond
+		// units * q fits in (unsigned) 64 bits because units < unitsPerSecond, and units * r fits because both are small
+		long q = Long.divideUnsigned(-1L, unitsPerSecond);
+		long r = Long.remainderUnsigned(-1L, unitsPerSecond) + 1; // never equals unitsPerSecond for 1000 or 10^9
+		return units * q + units * r / unitsPerSecond;
+	}
+
+	/**
+	 * @param fraction      The lower 64 bits of a `@da`
+	 * @param unitsPerSecond How many units are in a second (i.e. 1000 for ms)
+	 * @return round(fraction * unitsPerSecond / 2^64), which may be a whole second
+	 */
+	private static long fromDaFraction(long fraction, long unitsPerSecond) {
+		// the upper 64 bits of the unsigned 128 bit product, after adding half of 2^64 to round
+		long high = Math.multiplyHigh(fraction, unitsPerSecond) + ((fraction >> 63) & unitsPerSecond);
+		long low = fraction * unitsPerSecond;
+		if (Long.compareUnsigned(low + Long.MIN_VALUE, low) < 0) {
+			high++;
+		}
+		return high;
+	}
+
+	/**
+	 * Only the BigInteger api needs this, the packed overloads don't create anything
+	 */
+	private static BigInteger daFromParts(long seconds, long fraction) {
+		byte[] magnitude = new byte[16];
+		for (int i = 0; i < 8; i++) {
+			magnitude[i] = (byte) (seconds >>> (56 - 8 * i));
+			magnitude[8 + i] = (byte) (fraction >>> (56 - 8 * i));
+		}
+		return new BigInteger(1, magnitude);
 	}
 
 	public static JsonObject map2json(Map<String, Object> map) {
@@ -59,9 +213,12 @@ public class AirlockUtils {
 	}
 
 	static URL escaped(String url) {
-		// todo: airlock utils: use https://square.github.io/okhttp/4.x/okhttp/okhttp3/-http-url/#percent-encoding
-		// which properly encodes spaces (i.e. *-> %20. currently this just throws when it encounters chars that need escaping
-		return Objects.requireNonNull(HttpUrl.parse(url)).url();
+		// todo: airlock utils: properly encode spaces (i.e. *-> %20). currently this just throws when it encounters chars that need escaping
+		try {
+			return URI.create(url).toURL();
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid url: " + url, e);
+		}
 	}
 
 	static URL normalizeOrBust(URL url) {
@@ -0,0 +1,84 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides how much a {@link SubscriptionPublisher} buffers for each of its subscribers,
+ * and what happens to new updates once a subscriber has fallen that far behind.
+ * See {@link AirlockChannel#subscriptionPublisher(String, String, String, JsonDecoder, BackpressureConfig)}.
+ */
+public class BackpressureConfig {
+
+	/**
+	 * What to do with a new update when a subscriber's buffer is full.
+	 * <p>
+	 * Only UPDATE events count towards the buffer, and only they are ever dropped or conflated.
+	 * STARTED, FAILURE and FINISHED events are always delivered.
+	 * </p>
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait until the subscriber makes room. This holds up the handling of further events of the same subscription
+		 * (events for other subscriptions are unaffected), which queue up on the channel's dispatcher instead.
+		 * That queue has no limit, so this only bounds the buffer, not the memory used by a subscriber that never catches up.
+		 */
+		BLOCK,
+		/**
+		 * Drop the oldest buffered update to make room for the new one
+		 */
+		DROP_OLDEST,
+		/**
+		 * Replace a buffered update which has the same {@link BackpressureConfig#conflationKey} as the new one,
+		 * so that only the latest update per key is waiting. If there is none, drop the oldest update.
+		 * Only use this for subscriptions where the latest update per key supersedes the earlier ones,
+		 * since the intermediate updates are lost.
+		 */
+		CONFLATE
+	}
+
+	/**
+	 * The maximum number of updates buffered for a single subscriber
+	 */
+	public final int bufferSize;
+
+	public final OverflowPolicy overflowPolicy;
+
+	/**
+	 * Extracts the key that {@link OverflowPolicy#CONFLATE} conflates updates by (i.e. the resource of a graph update).
+	 * Null means that all updates share one key, so only the latest update is ever kept.
+	 */
+	public final @Nullable Function<SubscribeEvent, Object> conflationKey;
+
+	/**
+	 * A reasonable default: buffer up to 256 updates and drop the oldest once full, so a slow subscriber can't use up memory
+	 */
+	public static final BackpressureConfig DEFAULT = new BackpressureConfig(256, OverflowPolicy.DROP_OLDEST, null);
+
+	/**
+	 * @param bufferSize     The maximum number of updates buffered per subscriber
+	 * @param overflowPolicy What to do with a new update when the buffer is full
+	 * @param conflationKey  The key to conflate updates by. Only used by {@link OverflowPolicy#CONFLATE}.
+	 */
+	public BackpressureConfig(int bufferSize, OverflowPolicy overflowPolicy, @Nullable Function<SubscribeEvent, Object> conflationKey) {
+		requireNonNull(overflowPolicy, "Please provide an overflow policy");
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be at least 1");
+		}
+		this.bufferSize = bufferSize;
+		this.overflowPolicy = overflowPolicy;
+		this.conflationKey = conflationKey;
+	}
+
+	@Override
+	public String toString() {
+		return "BackpressureConfig{" +
+				"bufferSize=" + bufferSize +
+				", overflowPolicy=" + overflowPolicy +
+				", conflationKey=" + conflationKey +
+				'}';
+	}
+}
@@ -0,0 +1,66 @@
+package airlock;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The set of limits which decide when a batch of queued channel actions is sent.
+ * See {@link AirlockChannel#enableBatching(BatchingConfig)}.
+ * <p>
+ * A batch is sent as soon as <i>any</i> of the limits is reached.
+ * </p>
+ */
+public class BatchingConfig {
+
+	/**
+	 * The longest amount of time an action will wait in the queue for other actions to join it
+	 */
+	public final Duration linger;
+
+	/**
+	 * The maximum number of actions sent in a single PUT
+	 */
+	public final int maxActions;
+
+	/**
+	 * The (approximate) maximum size of a single PUT, measured as the length of the serialized actions.
+	 * An action that is larger than this on its own is still sent, just by itself.
+	 */
+	public final int maxBytes;
+
+	/**
+	 * A reasonable default: a 5ms linger window, with at most 100 actions or 256KiB per PUT
+	 */
+	public static final BatchingConfig DEFAULT = new BatchingConfig(Duration.ofMillis(5), 100, 256 * 1024);
+
+	/**
+	 * @param linger     The longest amount of time an action will wait to be batched
+	 * @param maxActions The maximum number of actions per PUT
+	 * @param maxBytes   The maximum (approximate) size of a PUT
+	 */
+	public BatchingConfig(Duration linger, int maxActions, int maxBytes) {
+		requireNonNull(linger, "Please provide a linger duration");
+		if (linger.isNegative()) {
+			throw new IllegalArgumentException("linger cannot be negative");
+		}
+		if (maxActions < 1) {
+			throw new IllegalArgumentException("maxActions must be at least 1");
+		}
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be at least 1");
+		}
+		this.linger = linger;
+		this.maxActions = maxActions;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchingConfig{" +
+				"linger=" + linger +
+				", maxActions=" + maxActions +
+				", maxBytes=" + maxBytes +
+				'}';
+	}
+}
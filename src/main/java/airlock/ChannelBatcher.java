@@ -0,0 +1,152 @@
+package airlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Queues serialized channel actions and sends them in batches, according to a {@link BatchingConfig}.
+ * <p>
+ * Eyre's channel endpoint takes a json array of actions, so any number of actions can share one PUT.
+ * Every action still gets its own future, which completes with the response of the PUT that carried it.
+ * </p>
+ */
+class ChannelBatcher {
+
+	private final BatchingConfig config;
+
+	/**
+	 * Sends a list of serialized actions as a single PUT. (this is {@link AirlockChannel}'s send method)
+	 */
+	private final Function<List<String>, CompletableFuture<InMemoryResponseWrapper>> sender;
+
+	/**
+	 * Used to flush the queue once the linger window has passed.
+	 * Shared between all batchers, so that a pool of many channels doesn't end up with a thread per channel.
+	 */
+	private static final ScheduledThreadPoolExecutor LINGER_TIMER = createLingerTimer();
+
+	private final Object batchLock = new Object();
+
+	// all of the following are guarded by batchLock
+	private List<QueuedAction> queue = new ArrayList<>();
+	private int queuedBytes = 0;
+	private ScheduledFuture<?> scheduledFlush = null;
+
+
+	ChannelBatcher(BatchingConfig config, Function<List<String>, CompletableFuture<InMemoryResponseWrapper>> sender) {
+		this.config = config;
+		this.sender = sender;
+	}
+
+	private static ScheduledThreadPoolExecutor createLingerTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "airlock-batch-linger");
+			thread.setDaemon(true); // a pending flush should never keep the jvm alive
+			return thread;
+		});
+		// a flush is cancelled every time a batch fills up before its linger window ends, so don't let them pile up
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * Adds an action to the current batch, sending the batch right away if doing so reaches one of the limits.
+	 *
+	 * @param serializedAction The action to send
+	 * @return a future which completes with the response of the PUT which carried the action
+	 */
+	CompletableFuture<InMemoryResponseWrapper> enqueue(String serializedAction) {
+		QueuedAction action = new QueuedAction(serializedAction);
+		List<List<QueuedAction>> readyBatches = new ArrayList<>(2);
+
+		synchronized (batchLock) {
+			// if this action would overflow the current batch, the current batch goes out first
+			if (!queue.isEmpty() && queuedBytes + serializedAction.length() > config.maxBytes) {
+				readyBatches.add(drain());
+			}
+
+			queue.add(action);
+			queuedBytes += serializedAction.length();
+
+			if (queue.size() >= config.maxActions || queuedBytes >= config.maxBytes) {
+				readyBatches.add(drain());
+			} else if (scheduledFlush == null) {
+				scheduledFlush = LINGER_TIMER.schedule(this::flush, config.linger.toNanos(), TimeUnit.NANOSECONDS);
+			}
+		}
+
+		// sending happens outside of the lock so other threads can keep queueing
+		readyBatches.forEach(this::send);
+		return action.sent;
+	}
+
+	/**
+	 * Sends everything that is currently queued
+	 */
+	void flush() {
+		List<QueuedAction> batch;
+		synchronized (batchLock) {
+			batch = drain();
+		}
+		if (!batch.isEmpty()) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * Flushes any remaining actions. (the linger timer is shared, so it is left running)
+	 */
+	void shutdown() {
+		flush();
+	}
+
+	// must hold batchLock
+	private List<QueuedAction> drain() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		List<QueuedAction> batch = queue;
+		queue = new ArrayList<>();
+		queuedBytes = 0;
+		return batch;
+	}
+
+	private void send(List<QueuedAction> batch) {
+		List<String> serializedActions = new ArrayList<>(batch.size());
+		for (QueuedAction action : batch) {
+			serializedActions.add(action.serializedAction);
+		}
+
+		CompletableFuture<InMemoryResponseWrapper> response;
+		try {
+			response = sender.apply(serializedActions);
+		} catch (RuntimeException e) {
+			response = CompletableFuture.failedFuture(e);
+		}
+
+		response.whenComplete((responseWrapper, throwable) -> {
+			for (QueuedAction action : batch) {
+				if (throwable != null) {
+					action.sent.completeExceptionally(throwable);
+				} else {
+					action.sent.complete(responseWrapper);
+				}
+			}
+		});
+	}
+
+	private static final class QueuedAction {
+		final String serializedAction;
+		final CompletableFuture<InMemoryResponseWrapper> sent = new CompletableFuture<>();
+
+		QueuedAction(String serializedAction) {
+			this.serializedAction = serializedAction;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package airlock;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The limits shared by every channel of an {@link AirlockChannelPool}.
+ */
+public class ChannelPoolConfig {
+
+	/**
+	 * The maximum number of asynchronous requests (i.e. channel PUTs) in flight at once, across all ships
+	 */
+	public final int maxRequests;
+
+	/**
+	 * The maximum number of asynchronous requests in flight at once to a single host.
+	 * Ships which share a host (i.e. moons behind the same proxy) share this limit.
+	 */
+	public final int maxRequestsPerHost;
+
+	/**
+	 * The maximum number of idle connections kept open, across all ships
+	 */
+	public final int maxIdleConnections;
+
+	/**
+	 * How long an idle connection is kept open before it is closed
+	 */
+	public final Duration keepAlive;
+
+	/**
+	 * The read timeout of regular requests (PUTs, scries, threads). Sse streams are exempt, since eyre can go quiet for a long time.
+	 */
+	public final Duration readTimeout;
+
+	/**
+	 * A reasonable default for a few hundred ships: 256 requests in total, 8 per host, 64 idle connections kept for 5 minutes,
+	 * and a 60 second read timeout
+	 */
+	public static final ChannelPoolConfig DEFAULT = new ChannelPoolConfig(256, 8, 64, Duration.ofMinutes(5), Duration.ofSeconds(60));
+
+	/**
+	 * @param maxRequests        The maximum number of requests in flight in total
+	 * @param maxRequestsPerHost The maximum number of requests in flight per host
+	 * @param maxIdleConnections The maximum number of idle connections to keep
+	 * @param keepAlive          How long to keep an idle connection
+	 * @param readTimeout        The read timeout of regular requests
+	 */
+	public ChannelPoolConfig(int maxRequests, int maxRequestsPerHost, int maxIdleConnections, Duration keepAlive, Duration readTimeout) {
+		requireNonNull(keepAlive, "Please provide a keep alive duration");
+		requireNonNull(readTimeout, "Please provide a read timeout");
+		if (maxRequests < 1) {
+			throw new IllegalArgumentException("maxRequests must be at least 1");
+		}
+		if (maxRequestsPerHost < 1) {
+			throw new IllegalArgumentException("maxRequestsPerHost must be at least 1");
+		}
+		if (maxIdleConnections < 0) {
+			throw new IllegalArgumentException("maxIdleConnections cannot be negative");
+		}
+		if (keepAlive.isNegative() || keepAlive.isZero()) {
+			throw new IllegalArgumentException("keepAlive must be positive");
+		}
+		if (readTimeout.isNegative()) {
+			throw new IllegalArgumentException("readTimeout cannot be negative");
+		}
+		this.maxRequests = maxRequests;
+		this.maxRequestsPerHost = maxRequestsPerHost;
+		this.maxIdleConnections = maxIdleConnections;
+		this.keepAlive = keepAlive;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return "ChannelPoolConfig{" +
+				"maxRequests=" + maxRequests +
+				", maxRequestsPerHost=" + maxRequestsPerHost +
+				", maxIdleConnections=" + maxIdleConnections +
+				", keepAlive=" + keepAlive +
+				", readTimeout=" + readTimeout +
+				'}';
+	}
+}
@@ -0,0 +1,68 @@
+package airlock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Everything needed to pick a channel back up after the process that opened it has exited:
+ * the auth cookie, the id of the channel, and how far we got in its event stream.
+ * Saved and loaded by a {@link SessionStore}.
+ */
+public class ChannelSession {
+
+	/**
+	 * The ship the session belongs to, without the sig
+	 */
+	public final String ship;
+
+	/**
+	 * The url of the ship, as given in its {@link AirlockCredentials}
+	 */
+	public final String url;
+
+	public final String cookieName;
+	public final String cookieValue;
+
+	public final String channelID;
+
+	/**
+	 * The id of the last request sent on the channel, so that a resumed channel doesn't reuse ids
+	 */
+	public final int lastRequestId;
+
+	/**
+	 * The id of the last event that was acked. The stream is resumed right after it, so eyre replays everything we never acked
+	 */
+	public final int lastAcknowledgedEventId;
+
+	public ChannelSession(String ship, String url, String cookieName, String cookieValue, String channelID, int lastRequestId, int lastAcknowledgedEventId) {
+		this.ship = requireNonNull(ship, "Please provide a ship");
+		this.url = requireNonNull(url, "Please provide a url");
+		this.cookieName = requireNonNull(cookieName, "Please provide a cookie name");
+		this.cookieValue = requireNonNull(cookieValue, "Please provide a cookie value");
+		this.channelID = requireNonNull(channelID, "Please provide a channel id");
+		if (lastRequestId < 0 || lastAcknowledgedEventId < 0) {
+			throw new IllegalArgumentException("ids cannot be negative");
+		}
+		this.lastRequestId = lastRequestId;
+		this.lastAcknowledgedEventId = lastAcknowledgedEventId;
+	}
+
+	/**
+	 * @return whether the session was made for the ship with the given credentials
+	 */
+	public boolean belongsTo(AirlockCredentials credentials) {
+		return ship.equals(credentials.ship) && url.equals(credentials.url.toString());
+	}
+
+	@Override
+	public String toString() {
+		// N.B: leaves out the cookie, which is as good as the ship's +code
+		return "ChannelSession{" +
+				"ship='" + ship + '\'' +
+				", url='" + url + '\'' +
+				", channelID='" + channelID + '\'' +
+				", lastRequestId=" + lastRequestId +
+				", lastAcknowledgedEventId=" + lastAcknowledgedEventId +
+				'}';
+	}
+}
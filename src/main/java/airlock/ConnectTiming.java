@@ -0,0 +1,47 @@
+package airlock;
+
+import java.time.Duration;
+
+/**
+ * How long each step of {@link AirlockChannel#connectFast} took. Every duration is measured from the start of the connect,
+ * so they can be compared against each other directly.
+ */
+public class ConnectTiming {
+
+	/**
+	 * Until we were logged in. Zero if the channel was already authenticated
+	 */
+	public final Duration loggedIn;
+
+	/**
+	 * Until the PUT that created the channel (and carried the initial actions) was accepted
+	 */
+	public final Duration channelCreated;
+
+	/**
+	 * Until the ship answered the request for the sse stream
+	 */
+	public final Duration streamOpened;
+
+	/**
+	 * Until the first event arrived on the stream, i.e. until the channel was actually usable
+	 */
+	public final Duration firstEvent;
+
+	public ConnectTiming(Duration loggedIn, Duration channelCreated, Duration streamOpened, Duration firstEvent) {
+		this.loggedIn = loggedIn;
+		this.channelCreated = channelCreated;
+		this.streamOpened = streamOpened;
+		this.firstEvent = firstEvent;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectTiming{" +
+				"loggedIn=" + loggedIn.toMillis() + "ms" +
+				", channelCreated=" + channelCreated.toMillis() + "ms" +
+				", streamOpened=" + streamOpened.toMillis() + "ms" +
+				", firstEvent=" + firstEvent.toMillis() + "ms" +
+				'}';
+	}
+}
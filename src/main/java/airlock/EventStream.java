@@ -0,0 +1,63 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * A single open sse stream. This lets {@link AirlockChannel} read its events through whichever {@link HttpTransport}
+ * it uses, or through a {@link MultiplexedSseReader} (a few threads for all streams).
+ */
+public interface EventStream {
+
+	/**
+	 * Close the stream. No more callbacks are made to its listener afterwards.
+	 */
+	void cancel();
+
+	/**
+	 * Receives the callbacks of a stream. Callbacks for a single stream are never made concurrently.
+	 */
+	interface Listener {
+
+		/**
+		 * The server accepted the stream
+		 */
+		void onOpen();
+
+		/**
+		 * @param id   The id of the event, if it had one
+		 * @param type The type of the event, if it had one
+		 * @param data The data of the event
+		 */
+		void onEvent(@Nullable String id, @Nullable String type, String data);
+
+		/**
+		 * The stream could not be opened, or broke
+		 *
+		 * @param t            The cause, if there was one
+		 * @param responseCode The http status the server answered with, or -1 if it never answered
+		 */
+		void onFailure(@Nullable Throwable t, int responseCode);
+
+		/**
+		 * The server ended the stream normally
+		 */
+		void onClosed();
+	}
+
+	/**
+	 * Opens streams
+	 */
+	interface Factory {
+
+		/**
+		 * @param url      The url to open the stream on
+		 * @param headers  Extra request headers (i.e. cookie and Last-Event-ID)
+		 * @param listener The listener for the stream's callbacks
+		 * @return the stream, which is opened asynchronously
+		 */
+		EventStream open(URL url, Map<String, String> headers, Listener listener);
+	}
+}
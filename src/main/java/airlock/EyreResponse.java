@@ -1,9 +1,21 @@
 package airlock;
 
-import com.google.gson.*;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Type;
+import java.util.function.IntFunction;
 
 /**
  * This is a data class which represents the response payload that is received from eyre after any request.
@@ -46,12 +58,124 @@ public class EyreResponse {
 	 */
 	public final @Nullable JsonObject json;
 
-	private EyreResponse(int id, boolean ok, @Nullable String err, ResponseType response, @Nullable JsonObject json) {
+	/**
+	 * The json payload as decoded by the {@link JsonDecoder} registered for this response's id, if any.
+	 * When this is set, {@link #json} is null, because the payload was never materialized as a tree.
+	 */
+	public final @Nullable Object decodedJson;
+
+	private EyreResponse(int id, boolean ok, @Nullable String err, ResponseType response, @Nullable JsonObject json, @Nullable Object decodedJson) {
 		this.id = id;
 		this.ok = ok;
 		this.err = err;
 		this.response = response;
 		this.json = json;
+		this.decodedJson = decodedJson;
+	}
+
+	/**
+	 * Decode an eyre response in a single pass over the event data.
+	 * The `json` payload is handed to the decoder that `decoderForId` returns for the response id,
+	 * or kept as a {@link JsonObject} when there is none.
+	 *
+	 * @param data         The raw event data
+	 * @param decoderForId Looks up the decoder registered for a request id. May return null.
+	 * @return The decoded response
+	 * @throws JsonParseException if the event is malformed, or the payload could not be decoded
+	 */
+	public static EyreResponse fromJson(String data, IntFunction<JsonDecoder<?>> decoderForId) throws JsonParseException {
+		try (JsonReader reader = new JsonReader(new StringReader(data))) {
+			return read(reader, decoderForId);
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			// JsonReader throws IllegalStateException when it gets a different kind of value than it was asked for
+			// (e.g. a string where a decoder expected an object), and NumberFormatException for numbers that don't fit
+			throw new JsonParseException("Malformed eyre response", e);
+		}
+	}
+
+	private static EyreResponse read(JsonReader reader, IntFunction<JsonDecoder<?>> decoderForId) throws IOException {
+		// todo throw proper exceptions at different failure modes
+		Integer id = null;
+		boolean ok = false;
+		String err = null;
+		String responseString = null;
+		JsonObject jsonData = null;
+		Object decodedJson = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "id":
+					id = reader.nextInt();
+					break;
+				case "ok":
+					// right now, when response is ok, the property looks like "ok"="ok". this could change in the future
+					ok = true;
+					reader.skipValue();
+					break;
+				case "err":
+					err = readString(reader);
+					break;
+				case "response":
+					responseString = reader.nextString();
+					break;
+				case "json":
+					if (reader.peek() == JsonToken.NULL) {
+						reader.nextNull();
+						break;
+					}
+					JsonDecoder<?> decoder = id == null ? null : decoderForId.apply(id);
+					if (decoder != null) {
+						decodedJson = decoder.decode(reader);
+					} else {
+						// either nobody asked for a typed payload, or eyre sent the payload before the id
+						// (it doesn't today, but the order of keys in a json object isn't guaranteed).
+						// in the latter case we keep the tree and try the decoder again once we know the id
+						jsonData = JsonParser.parseReader(reader).getAsJsonObject();
+					}
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (id == null || responseString == null) {
+			throw new JsonParseException("Eyre response is missing `id` or `response`");
+		}
+
+		if (jsonData != null) {
+			JsonDecoder<?> decoder = decoderForId.apply(id);
+			if (decoder != null) {
+				decodedJson = decoder.decode(new JsonReader(new StringReader(jsonData.toString())));
+				jsonData = null;
+			}
+		}
+
+		return new EyreResponse(id, ok, err, parseResponseType(responseString), jsonData, decodedJson);
+	}
+
+	private static @Nullable String readString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static ResponseType parseResponseType(String responseString) {
+		switch (responseString) {
+			case "poke":
+				return ResponseType.POKE;
+			case "subscribe":
+				return ResponseType.SUBSCRIBE;
+			case "diff":
+				return ResponseType.DIFF;
+			case "quit":
+				return ResponseType.QUIT;
+			default:
+				throw new JsonParseException("Invalid Response type: " + responseString);
+		}
 	}
 
 
@@ -63,56 +187,39 @@ public class EyreResponse {
 				", err='" + err + '\'' +
 				", response='" + response + '\'' +
 				", json='" + json + '\'' +
+				", decodedJson='" + decodedJson + '\'' +
 				'}';
 	}
 
-	private static class Adapter implements JsonDeserializer<EyreResponse> {
-
+	// lets plain gson decoding reuse the streaming code on the tree it already has, via TypeAdapter.fromJsonTree.
+	// it is never registered with gson, so it doesn't need to be able to write
+	private static final TypeAdapter<EyreResponse> TREE_READER = new TypeAdapter<>() {
 		@Override
-		public EyreResponse deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-			JsonObject responseObject = json.getAsJsonObject();
-
-			// todo throw proper exceptions at different failure modes
-
-			int id = responseObject.get("id").getAsInt();
-			boolean ok = responseObject.has("ok"); // right now, when response is ok, the property looks like "ok"="ok". this could change in the future
-			String responseString = responseObject.get("response").getAsString();
+		public void write(JsonWriter out, EyreResponse value) {
+			throw new UnsupportedOperationException("EyreResponse cannot be serialized");
+		}
 
-			String err = null;
-			if (responseObject.has("err")) {
-				err = responseObject.get("err").getAsString();
-			}
+		@Override
+		public EyreResponse read(JsonReader in) throws IOException {
+			// plain gson decoding has no subscriptions to ask, so the payload is always kept as a tree
+			return EyreResponse.read(in, id -> null);
+		}
+	};
 
-			JsonObject jsonData = null;
-			if (responseObject.has("json")) {
-				jsonData = responseObject.get("json").getAsJsonObject();
-			}
+	// only a deserializer, because we will never send an EyreResponse back to the ship
+	private static class Adapter implements JsonDeserializer<EyreResponse> {
 
-			ResponseType responseType;
-			switch (responseString) {
-				case "poke":
-					responseType = ResponseType.POKE;
-					break;
-				case "subscribe":
-					responseType = ResponseType.SUBSCRIBE;
-					break;
-				case "diff":
-					responseType = ResponseType.DIFF;
-					break;
-				case "quit":
-					responseType = ResponseType.QUIT;
-					break;
-				default:
-					throw new JsonParseException("Invalid Response type: " + responseString);
+		@Override
+		public EyreResponse deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+			try {
+				// io errors already come out as a JsonIOException, which is a JsonParseException
+				return TREE_READER.fromJsonTree(json);
+			} catch (IllegalStateException | NumberFormatException e) {
+				throw new JsonParseException("Malformed eyre response", e);
 			}
-
-			return new EyreResponse(id, ok, err, responseType, jsonData);
 		}
 
-		// no serializer implemented because we will never send an EyreResponse back to the ship
-
 	}
 
 	public static final Adapter ADAPTER = new Adapter();
 }
-
@@ -0,0 +1,83 @@
+package airlock;
+
+import com.google.gson.JsonParseException;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link SessionStore} which keeps the session in a json file.
+ * <p>
+ * The file is replaced atomically on every save, so a process that is killed halfway through a save leaves the previous session behind
+ * rather than half of a new one. Since the file holds an auth cookie, it is only readable by its owner (where the filesystem supports that).
+ * Every process (or every channel) needs a file of its own.
+ * </p>
+ */
+public class FileSessionStore implements SessionStore {
+
+	private static final System.Logger LOGGER = System.getLogger(FileSessionStore.class.getName());
+
+	private final Path path;
+
+	/**
+	 * @param path The file to keep the session in. Its directory must exist
+	 */
+	public FileSessionStore(Path path) {
+		this.path = requireNonNull(path, "Please provide a path").toAbsolutePath();
+	}
+
+	@Override
+	public synchronized @Nullable ChannelSession load() throws IOException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+		String json = Files.readString(path, StandardCharsets.UTF_8);
+		try {
+			return AirlockUtils.gson.fromJson(json, ChannelSession.class);
+		} catch (JsonParseException e) {
+			// a corrupt session is no worse than no session at all. we'll just log in again
+			LOGGER.log(System.Logger.Level.WARNING, "Ignoring unreadable session in " + path, e);
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized void save(ChannelSession session) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.writeString(temp, AirlockUtils.gson.toJson(session), StandardCharsets.UTF_8);
+		try {
+			Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			// not a posix filesystem (i.e. windows). nothing we can do here
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public synchronized void clear() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return "FileSessionStore{" +
+				"path=" + path +
+				'}';
+	}
+}
@@ -0,0 +1,63 @@
+package airlock;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The http client underneath an {@link AirlockChannel}: plain requests, sse streams, and cookies.
+ * <p>
+ * Two implementations come with airlock: {@link OkHttpTransport}, and {@link JdkHttpTransport} which is built on the
+ * jdk's own {@link java.net.http.HttpClient} and so needs no other dependencies.
+ * Pick one with {@link AirlockChannel#AirlockChannel(AirlockCredentials, HttpTransport)},
+ * or let {@link HttpTransport#defaultTransport()} pick.
+ * </p>
+ * <p>
+ * A transport may be shared between many channels. Each channel derives its own with
+ * {@link HttpTransport#withCookieHandler(CookieHandler)}, so that ships never see each other's cookies.
+ * </p>
+ */
+public interface HttpTransport extends EventStream.Factory {
+
+	/**
+	 * Sends a request, blocking until the status and headers of the response have arrived.
+	 * The body is read off of the network as the caller reads it, so the caller must close the response.
+	 *
+	 * @param request The request to send
+	 * @return the response, whatever its status
+	 * @throws IOException if the request could not be sent or no response was received
+	 */
+	TransportResponse execute(TransportRequest request) throws IOException;
+
+	/**
+	 * Sends a request without blocking the calling thread.
+	 * The future completes once the whole body of the response has been received, so it does not have to be closed.
+	 *
+	 * @param request The request to send
+	 * @return a future response, whatever its status, which fails with an {@link IOException} if no response was received
+	 */
+	CompletableFuture<TransportResponse> executeAsync(TransportRequest request);
+
+	/**
+	 * Derives a transport that shares connections and threads with this one, but keeps its cookies in the given handler.
+	 * Cookies set by responses are stored in the handler and sent along with every request (except sse streams,
+	 * which are given their cookie explicitly).
+	 *
+	 * @param cookieHandler Where to keep cookies
+	 * @return the derived transport
+	 */
+	HttpTransport withCookieHandler(CookieHandler cookieHandler);
+
+	/**
+	 * @return an {@link OkHttpTransport} if OkHttp is on the classpath, otherwise a {@link JdkHttpTransport}
+	 */
+	static HttpTransport defaultTransport() {
+		try {
+			// OkHttp is an optional dependency, so we only touch OkHttpTransport if it is actually there
+			Class.forName("okhttp3.OkHttpClient", false, HttpTransport.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return new JdkHttpTransport();
+		}
+		return new OkHttpTransport();
+	}
+}
@@ -0,0 +1,219 @@
+package airlock;
+
+import airlock.errors.channel.AirlockTimeoutError;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of every request that is waiting on a response from the ship, keyed by request id.
+ * <p>
+ * Every poke and subscription is registered <i>before</i> it is sent, and carries a deadline.
+ * If the response (the poke ack, or the subscription's first event) does not arrive in time,
+ * the request is removed and failed with an {@link AirlockTimeoutError}.
+ * </p>
+ * <p>
+ * All operations are safe to call from any thread. Callers register requests from their own threads,
+ * while responses are handled on the dispatch threads.
+ * </p>
+ */
+class InFlightRegistry {
+
+	private final TimerWheel timer;
+
+	/**
+	 * Called (from the timer thread) when a subscription does not get started before its deadline
+	 */
+	private final BiConsumer<Integer, Consumer<SubscribeEvent>> onSubscriptionTimeout;
+
+	private final Map<Integer, PendingPoke> pokes = new ConcurrentHashMap<>();
+	private final Map<Integer, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+
+	InFlightRegistry(TimerWheel timer, BiConsumer<Integer, Consumer<SubscribeEvent>> onSubscriptionTimeout) {
+		this.timer = timer;
+		this.onSubscriptionTimeout = onSubscriptionTimeout;
+	}
+
+	/**
+	 * Register a poke that is about to be sent
+	 *
+	 * @param id       The id of the poke request
+	 * @param future   The future to complete once the poke is acked
+	 * @param deadline How long to wait for the ack. {@link Duration#ZERO} waits forever.
+	 */
+	void registerPoke(int id, CompletableFuture<PokeResponse> future, Duration deadline) {
+		PendingPoke pendingPoke = new PendingPoke(future);
+		pokes.put(id, pendingPoke);
+		if (!deadline.isZero()) {
+			pendingPoke.timeout = timer.schedule(() -> {
+				if (pokes.remove(id, pendingPoke)) {
+					future.completeExceptionally(new AirlockTimeoutError("Did not receive a response to poke " + id + " within " + deadline));
+				}
+			}, deadline.toNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Remove a poke, i.e. because its response has arrived or because it could not be sent
+	 *
+	 * @param id The id of the poke request
+	 * @return the future of the poke, or null if the poke is not in flight (i.e. because it already timed out)
+	 */
+	@Nullable CompletableFuture<PokeResponse> removePoke(int id) {
+		PendingPoke pendingPoke = pokes.remove(id);
+		if (pendingPoke == null) {
+			return null;
+		}
+		pendingPoke.cancelTimeout();
+		return pendingPoke.future;
+	}
+
+	/**
+	 * Register a subscription that is about to be sent
+	 *
+	 * @param id       The id of the subscribe request
+	 * @param handler  The handler for the subscription's events
+	 * @param decoder  The decoder for the `json` payload of the subscription's diffs, or null to keep them as json trees
+	 * @param deadline How long to wait for the subscription to be started. {@link Duration#ZERO} waits forever.
+	 */
+	void registerSubscription(int id, Consumer<SubscribeEvent> handler, @Nullable JsonDecoder<?> decoder, Duration deadline) {
+		Subscription subscription = new Subscription(handler, decoder);
+		subscriptions.put(id, subscription);
+		if (!deadline.isZero()) {
+			subscription.timeout = timer.schedule(() -> {
+				if (!subscription.started && subscriptions.remove(id, subscription)) {
+					onSubscriptionTimeout.accept(id, handler);
+				}
+			}, deadline.toNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Mark a subscription as started, which clears its deadline
+	 *
+	 * @param id The id of the subscription
+	 * @return the handler of the subscription, or null if there is no such subscription
+	 */
+	@Nullable Consumer<SubscribeEvent> subscriptionStarted(int id) {
+		Subscription subscription = subscriptions.get(id);
+		if (subscription == null) {
+			return null;
+		}
+		subscription.started = true;
+		subscription.cancelTimeout();
+		return subscription.handler;
+	}
+
+	/**
+	 * @param id The id of the subscription
+	 * @return the handler of the subscription, or null if there is no such subscription
+	 */
+	@Nullable Consumer<SubscribeEvent> getSubscription(int id) {
+		Subscription subscription = subscriptions.get(id);
+		return subscription == null ? null : subscription.handler;
+	}
+
+	/**
+	 * Look up the payload decoder of a subscription. This is called from the sse thread while an event is being parsed.
+	 *
+	 * @param id The id of the subscription
+	 * @return the decoder of the subscription, or null if there is no such subscription or it has no decoder
+	 */
+	@Nullable JsonDecoder<?> getDecoder(int id) {
+		Subscription subscription = subscriptions.get(id);
+		return subscription == null ? null : subscription.decoder;
+	}
+
+	/**
+	 * @param id The id of the subscription
+	 * @return the handler of the removed subscription, or null if there was no such subscription
+	 */
+	@Nullable Consumer<SubscribeEvent> removeSubscription(int id) {
+		Subscription subscription = subscriptions.remove(id);
+		if (subscription == null) {
+			return null;
+		}
+		subscription.cancelTimeout();
+		return subscription.handler;
+	}
+
+	/**
+	 * @return the number of pokes which have not been acked yet
+	 */
+	int getInFlightPokeCount() {
+		return pokes.size();
+	}
+
+	/**
+	 * @return the number of subscriptions which have been requested, but not started yet
+	 */
+	int getPendingSubscriptionCount() {
+		return (int) subscriptions.values().stream().filter(subscription -> !subscription.started).count();
+	}
+
+	/**
+	 * @return the number of subscriptions which are registered (started or not)
+	 */
+	int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Forget every request. Pokes which are still waiting are failed with the given cause,
+	 * so that nobody is left waiting on a future that can never complete.
+	 *
+	 * @param cause The reason the requests are being dropped
+	 */
+	void clear(Throwable cause) {
+		pokes.keySet().forEach(id -> {
+			CompletableFuture<PokeResponse> future = this.removePoke(id);
+			if (future != null) {
+				future.completeExceptionally(cause);
+			}
+		});
+		subscriptions.keySet().forEach(this::removeSubscription);
+	}
+
+
+	private static final class PendingPoke {
+		final CompletableFuture<PokeResponse> future;
+		volatile TimerWheel.Timeout timeout;
+
+		PendingPoke(CompletableFuture<PokeResponse> future) {
+			this.future = future;
+		}
+
+		void cancelTimeout() {
+			TimerWheel.Timeout currentTimeout = this.timeout;
+			if (currentTimeout != null) {
+				currentTimeout.cancel();
+			}
+		}
+	}
+
+	private static final class Subscription {
+		final Consumer<SubscribeEvent> handler;
+		final @Nullable JsonDecoder<?> decoder;
+		volatile TimerWheel.Timeout timeout;
+		volatile boolean started = false;
+
+		Subscription(Consumer<SubscribeEvent> handler, @Nullable JsonDecoder<?> decoder) {
+			this.handler = handler;
+			this.decoder = decoder;
+		}
+
+		void cancelTimeout() {
+			TimerWheel.Timeout currentTimeout = this.timeout;
+			if (currentTimeout != null) {
+				currentTimeout.cancel();
+			}
+		}
+	}
+}
@@ -1,47 +1,69 @@
 package airlock;
 
-import okhttp3.Response;
-import okio.BufferedSource;
-
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
 
 
 /**
- * This class wraps around an {@link okhttp3.Response} object providing an immutable version of it
+ * This class wraps around a {@link TransportResponse} object providing an immutable version of it
  * <p>
  *     Specifically, it makes generates an immutable "copy" of the response body.
  * </p>
  */
 public class InMemoryResponseWrapper {
 	// todo, maybe we don't need to keep around this data and the class is useless
-	//  the Response body is meant to be thrown away as per okhttp design
+	//  the response body is meant to be thrown away as per okhttp design
 	//  in the future, maybe we should remove the use of this class entirely and not return any responses.
 	// for now im keeping it tho
 
 	/**
-	 * The closed response object. Trying to perform any reads to the body will necessarily cause a `closed` exception to be thrown
-	 * (i.e. anything like response.close() or response.body())
+	 * The http status code of the response
 	 */
-	public final Response response;
+	public final int code;
+
+	/**
+	 * The url of the request that this is the response to
+	 */
+	public final URL url;
+
+	public final Map<String, List<String>> headers;
 
 	/**
 	 * The body content of the response, as a string
 	 */
 	public final ByteBuffer responseBody;
 
-	// response.body() is a one-shot obj that needs to be copied manually, and we can't call it multiple times to use in multiple places
-	// For example, we cannot inspect the body in one method, then pass the same response object to somewhere else because the buffer will be exhausted
+	// the body of a response is a one-shot stream that needs to be copied manually, and we can't read it multiple times to use in multiple places
+	// For example, we cannot inspect the body in one method, then pass the same response object to somewhere else because the stream will be exhausted
 	// this is why InMemoryResponseWrapper exists
 
-	public InMemoryResponseWrapper(Response response) {
-		this.response = response;
-		// taken from https://github.com/square/okhttp/issues/2869
-		BufferedSource source = Objects.requireNonNull(response.body(), "Got null response body").source();
-		try {
-			source.request(Integer.MAX_VALUE);
+	public InMemoryResponseWrapper(TransportResponse response) {
+		this(response, readBody(response));
+	}
+
+	private InMemoryResponseWrapper(TransportResponse response, ByteBuffer responseBody) {
+		this.code = response.code;
+		this.url = response.url;
+		this.headers = response.headers;
+		this.responseBody = responseBody;
+	}
+
+	/**
+	 * @return a wrapper around the status, headers and url of the response, but none of its body. The response is closed
+	 */
+	public static InMemoryResponseWrapper withoutBody(TransportResponse response) {
+		response.close();
+		return new InMemoryResponseWrapper(response, ByteBuffer.allocate(0).asReadOnlyBuffer());
+	}
+
+	private static ByteBuffer readBody(TransportResponse response) {
+		try (InputStream body = response.body()) {
+			return ByteBuffer.wrap(body.readAllBytes()).asReadOnlyBuffer(); // i don't know if i need `asReadOnlyBuffer`
 		} catch (IOException e) {
 			// for now, we will fail fatally if we cannot buffer the body
 			// why? because normally we are able to buffer the body even if it is empty and we are good
@@ -49,14 +71,26 @@ public class InMemoryResponseWrapper {
 			// so, if we are unable to, we cannot really continue in any meaningful way (at least not that I know how to yet)
 			// so we just conk out. this also makes the exception throwing cleaner in Urbit.java
 			// until we have a proper way of addressing this, im leaving it as a runtime exception
-			throw new RuntimeException("Unable to buffer body from okhttp response", e);
+			throw new RuntimeException("Unable to buffer body from response", e);
+		} finally {
+			response.close();
 		}
-		this.responseBody = source.getBuffer().snapshot().asByteBuffer().asReadOnlyBuffer(); // i don't know if i need `asReadOnlyBuffer`
-		response.close();
+	}
+
+	public boolean isSuccessful() {
+		return code >= 200 && code < 300;
 	}
 
 	public String getBodyAsString() {
-		return StandardCharsets.UTF_8.decode(this.responseBody).toString();
+		// decode a duplicate, so that the body can be read more than once
+		return StandardCharsets.UTF_8.decode(this.responseBody.duplicate()).toString();
 	}
 
+	@Override
+	public String toString() {
+		return "InMemoryResponseWrapper{" +
+				"code=" + code +
+				", url=" + url +
+				'}';
+	}
 }
@@ -0,0 +1,207 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieHandler;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpTransport} built on the jdk's {@link HttpClient}, so it needs no dependencies besides the jdk itself.
+ * <p>
+ * Requests to https urls use http/2 when the server supports it, so that all requests (and sse streams) to a ship
+ * are multiplexed over a single connection. Plaintext (http) urls always use http/1.1, which is all that eyre speaks.
+ * Sse streams are read without parking a thread on each of them, just like with a {@link MultiplexedSseReader}.
+ * </p>
+ */
+public class JdkHttpTransport implements HttpTransport {
+
+	private static final System.Logger LOGGER = System.getLogger(JdkHttpTransport.class.getName());
+
+	/**
+	 * How long to wait for the headers of a response, if no other timeout is given
+	 */
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+	private final HttpClient httpClient;
+	private final Duration requestTimeout;
+	private final MultiplexedSseReader sseReader;
+
+	/**
+	 * The cookies of the channel that the transport belongs to, or null if it does not keep cookies
+	 */
+	private final @Nullable CookieHandler cookieHandler;
+
+	/**
+	 * Create a transport with its own client
+	 */
+	public JdkHttpTransport() {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(Duration.ofSeconds(30))
+				.build(), DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * @param httpClient     The client which requests and sse streams are made with. Its cookie handler (if any) is not used
+	 * @param requestTimeout How long to wait for the headers of a response (this does not apply to sse streams)
+	 */
+	public JdkHttpTransport(HttpClient httpClient, Duration requestTimeout) {
+		this(httpClient, requestTimeout, new MultiplexedSseReader(httpClient), null);
+	}
+
+	private JdkHttpTransport(HttpClient httpClient, Duration requestTimeout, MultiplexedSseReader sseReader, @Nullable CookieHandler cookieHandler) {
+		this.httpClient = requireNonNull(httpClient, "Please provide a client");
+		this.requestTimeout = requireNonNull(requestTimeout, "Please provide a request timeout");
+		this.sseReader = sseReader;
+		this.cookieHandler = cookieHandler;
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		HttpRequest httpRequest = toHttpRequest(request);
+		HttpResponse<InputStream> response;
+		try {
+			response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for response", e);
+		}
+		storeCookies(httpRequest.uri(), response);
+		return new TransportResponse(
+				response.statusCode(),
+				request.url,
+				response.headers().map(),
+				response.headers().firstValueAsLong("Content-Length").orElse(-1),
+				response.body()
+		);
+	}
+
+	@Override
+	public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+		HttpRequest httpRequest;
+		try {
+			httpRequest = toHttpRequest(request);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+				.handle((response, throwable) -> {
+					if (throwable != null) {
+						Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+						throw new CompletionException(cause instanceof IOException ? cause : new IOException(cause));
+					}
+					storeCookies(httpRequest.uri(), response);
+					return new TransportResponse(
+							response.statusCode(),
+							request.url,
+							response.headers().map(),
+							response.body().length,
+							new ByteArrayInputStream(response.body())
+					);
+				});
+	}
+
+	@Override
+	public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+		// unlike with OkHttp, the cookie handler of a jdk client can't be swapped without creating a whole new client
+		// (and with it, a new selector thread and connection pool). so we handle cookies ourselves instead
+		return new JdkHttpTransport(httpClient, requestTimeout, sseReader, requireNonNull(cookieHandler, "Please provide a cookie handler"));
+	}
+
+	@Override
+	public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+		return sseReader.open(url, headers, listener);
+	}
+
+	/**
+	 * @return the number of sse streams which are currently open through this transport, or any transport derived from it
+	 */
+	public int getOpenStreamCount() {
+		return sseReader.getOpenStreamCount();
+	}
+
+	private HttpRequest toHttpRequest(TransportRequest request) throws IOException {
+		URI uri;
+		try {
+			uri = request.url.toURI();
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid url: " + request.url, e);
+		}
+
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+				.timeout(requestTimeout)
+				.method(request.method, request.body != null
+						? HttpRequest.BodyPublishers.ofByteArray(request.body)
+						: HttpRequest.BodyPublishers.noBody());
+		if ("http".equals(uri.getScheme())) {
+			requestBuilder.version(HttpClient.Version.HTTP_1_1);
+		}
+		if (request.contentType != null) {
+			requestBuilder.header("Content-Type", request.contentType);
+		}
+		request.headers.forEach(requestBuilder::header);
+
+		if (cookieHandler != null) {
+			List<String> cookies = new ArrayList<>();
+			for (Map.Entry<String, List<String>> header : cookieHandler.get(uri, Map.of()).entrySet()) {
+				if ("Cookie".equalsIgnoreCase(header.getKey()) || "Cookie2".equalsIgnoreCase(header.getKey())) {
+					header.getValue().forEach(value -> addCookiePairs(value, cookies));
+				}
+			}
+			if (!cookies.isEmpty()) {
+				requestBuilder.header("Cookie", String.join("; ", cookies));
+			}
+		}
+		return requestBuilder.build();
+	}
+
+	/**
+	 * A {@link java.net.CookieManager} formats cookies which came with a Max-Age (like eyre's auth cookie) the rfc 2965 way,
+	 * i.e. {@code $Version="1"; urbauth-~zod="0v1";$Path="/"}, which eyre doesn't understand.
+	 * So only the name=value pairs are sent, without quotes or attributes, the same as OkHttp does
+	 *
+	 * @param header  A cookie header as given by the cookie handler
+	 * @param cookies Where to add the plain name=value pairs
+	 */
+	private static void addCookiePairs(String header, List<String> cookies) {
+		for (String pair : header.split("[;,]")) {
+			pair = pair.trim();
+			int equals = pair.indexOf('=');
+			if (equals <= 0 || pair.startsWith("$")) {
+				continue;
+			}
+			String value = pair.substring(equals + 1);
+			if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+				value = value.substring(1, value.length() - 1);
+			}
+			cookies.add(pair.substring(0, equals) + "=" + value);
+		}
+	}
+
+	private void storeCookies(URI uri, HttpResponse<?> response) {
+		if (cookieHandler == null) {
+			return;
+		}
+		try {
+			cookieHandler.put(uri, response.headers().map());
+		} catch (IOException e) {
+			LOGGER.log(System.Logger.Level.WARNING, "Unable to store cookies from " + uri, e);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package airlock;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * A decoder which reads a value directly off of a {@link JsonReader}, without building an intermediate json tree.
+ * Subscriptions can register one of these so that the `json` payload of each diff is decoded in the same pass
+ * as the rest of the event.
+ *
+ * @param <T> The type of value which is produced
+ */
+@FunctionalInterface
+public interface JsonDecoder<T> {
+
+	/**
+	 * Decode exactly one json value from the reader. Implementations must consume the whole value
+	 * (and nothing after it), otherwise the surrounding event cannot be read.
+	 *
+	 * @param reader The reader, positioned at the start of the value
+	 * @return The decoded value
+	 * @throws IOException if the reader fails or the json is malformed
+	 */
+	T decode(JsonReader reader) throws IOException;
+
+	/**
+	 * Make a copy of a value that this decoder produced, which shares nothing mutable with it.
+	 * Callers of identical scries that share one request each get a copy of its result (see {@link AirlockChannel#scryRequest(String, String, JsonDecoder)}).
+	 * The default can't make one, and returns null, in which case each of those callers makes its own request
+	 *
+	 * @param value The value to copy
+	 * @return the copy, or null if this decoder doesn't know how to copy its values
+	 */
+	default @Nullable T copy(T value) {
+		return null;
+	}
+
+	/**
+	 * Create a decoder which uses the {@link TypeAdapter} that gson has for the given type
+	 *
+	 * @param gson The gson instance to take the adapter from
+	 * @param type The type to decode to
+	 * @param <T>  The type to decode to
+	 * @return The decoder
+	 */
+	static <T> JsonDecoder<T> of(Gson gson, Class<T> type) {
+		TypeAdapter<T> adapter = gson.getAdapter(type);
+		return adapter::read;
+	}
+
+}
@@ -0,0 +1,128 @@
+package airlock;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor which runs tasks that share a key one at a time, in the order they were submitted,
+ * while tasks with different keys run in parallel on an underlying executor.
+ * <p>
+ * This is used to dispatch events from the ship: every subscription keeps its events in order,
+ * but a slow subscription handler does not hold up any of the others.
+ * </p>
+ */
+public class KeyedSerialExecutor {
+
+	private static final System.Logger LOGGER = System.getLogger(KeyedSerialExecutor.class.getName());
+
+	/**
+	 * The maximum number of tasks a key may run in a row before yielding its thread back to the underlying executor
+	 */
+	private static final int MAX_TASKS_PER_TURN = 32;
+
+	private final Executor delegate;
+
+	/**
+	 * Queues of all keys which currently have tasks. Idle queues are removed.
+	 */
+	private final ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of tasks submitted but not yet started, across all keys
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	/**
+	 * @param delegate The executor the tasks are actually run on
+	 */
+	public KeyedSerialExecutor(Executor delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Queue a task to be run after all previously submitted tasks with the same key
+	 *
+	 * @param key  The key to order the task by
+	 * @param task The task to run
+	 */
+	public void execute(Object key, Runnable task) {
+		// counted before the task is visible, since a running drain may take it (and count it down) straight away
+		queueDepth.incrementAndGet();
+		// the map's per-key locking (through `compute`) is what guards the `running` flag of each queue
+		boolean[] mustStart = {false};
+		SerialQueue queue = queues.compute(key, (k, existing) -> {
+			SerialQueue serialQueue = existing != null ? existing : new SerialQueue(k);
+			serialQueue.tasks.add(task);
+			if (!serialQueue.running) {
+				serialQueue.running = true;
+				mustStart[0] = true;
+			}
+			return serialQueue;
+		});
+
+		if (mustStart[0]) {
+			delegate.execute(() -> this.drain(queue));
+		}
+	}
+
+	private void drain(SerialQueue queue) {
+		for (int ran = 0; ran < MAX_TASKS_PER_TURN; ran++) {
+			Runnable task = queue.tasks.poll();
+			if (task == null) {
+				boolean[] moreTasks = {false};
+				queues.compute(queue.key, (k, existing) -> {
+					if (!queue.tasks.isEmpty()) {
+						// something was queued between the poll and now, so keep going
+						moreTasks[0] = true;
+						return existing;
+					}
+					queue.running = false;
+					return null;
+				});
+				if (!moreTasks[0]) {
+					return;
+				}
+				continue;
+			}
+
+			queueDepth.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable throwable) {
+				// a failing handler must not stop the rest of the queue from being handled
+				LOGGER.log(System.Logger.Level.WARNING, "Encountered error while running dispatched task for key " + queue.key, throwable);
+			}
+		}
+		// give other keys a chance to use this thread
+		delegate.execute(() -> this.drain(queue));
+	}
+
+	/**
+	 * @return the number of tasks waiting to be run, across all keys
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * @param key The key to look up
+	 * @return the number of tasks waiting to be run for the given key
+	 */
+	public int getQueueDepth(Object key) {
+		SerialQueue queue = queues.get(key);
+		return queue == null ? 0 : queue.tasks.size();
+	}
+
+	private static final class SerialQueue {
+		final Object key;
+		final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		boolean running = false; // guarded by the map entry (see `execute`)
+
+		SerialQueue(Object key) {
+			this.key = key;
+		}
+	}
+}
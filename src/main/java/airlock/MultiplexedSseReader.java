@@ -0,0 +1,264 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the sse streams of many channels on a small, fixed number of threads.
+ * <p>
+ * By default, every connected {@link AirlockChannel} reads its stream with OkHttp, which parks a thread on each stream
+ * for as long as the channel is connected. This reader uses the jdk's non-blocking {@link HttpClient} instead:
+ * a single selector thread watches every stream, and lines are parsed on a fixed pool of threads, only when data arrives.
+ * </p>
+ * <p>
+ * Share one reader between all channels (i.e. with {@link AirlockChannelPool#AirlockChannelPool(ChannelPoolConfig, MultiplexedSseReader)}),
+ * or set it per channel with {@link AirlockChannel#useMultiplexedSseReader(MultiplexedSseReader)}.
+ * Events are handed to the channel exactly like with OkHttp, so acking and dispatching to handlers work the same.
+ * </p>
+ */
+public class MultiplexedSseReader implements EventStream.Factory {
+
+	private static final System.Logger LOGGER = System.getLogger(MultiplexedSseReader.class.getName());
+
+	/**
+	 * The threads of the reader, or null if it reads with a client that it doesn't own (see {@link JdkHttpTransport})
+	 */
+	private final @Nullable ExecutorService executor;
+	private final HttpClient httpClient;
+
+	private final Set<Stream> openStreams = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Create a reader with one thread per core (but at least two)
+	 */
+	public MultiplexedSseReader() {
+		this(Math.max(2, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * @param threads The number of threads that lines are parsed and handed to channels on
+	 */
+	public MultiplexedSseReader(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "airlock-sse-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.httpClient = HttpClient.newBuilder()
+				.executor(executor)
+				// eyre speaks http/1.1. we don't want the client to try and upgrade plaintext connections to h2c
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(30))
+				.build();
+	}
+
+	/**
+	 * Create a reader on top of an existing client. Shutting the reader down only closes its streams.
+	 *
+	 * @param httpClient The client to open the streams with
+	 */
+	MultiplexedSseReader(HttpClient httpClient) {
+		this.executor = null;
+		this.httpClient = httpClient;
+	}
+
+	@Override
+	public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+		HttpRequest.Builder requestBuilder;
+		try {
+			requestBuilder = HttpRequest.newBuilder(url.toURI())
+					.header("Accept", "text/event-stream")
+					.GET();
+			if ("http".equals(url.getProtocol())) {
+				// same as the version of our own client above, but per request so that it also holds for a shared client that prefers http/2
+				requestBuilder.version(HttpClient.Version.HTTP_1_1);
+			}
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid channel url: " + url, e);
+		}
+		// N.B: there is no read timeout here. the request timeout of the jdk client only applies until the headers arrive
+		headers.forEach(requestBuilder::header);
+
+		Stream stream = new Stream(listener);
+		openStreams.add(stream);
+		httpClient.sendAsync(requestBuilder.build(), stream::bodySubscriberFor)
+				.whenComplete(stream::finished);
+		return stream;
+	}
+
+	/**
+	 * @return the number of streams which are currently open (or being opened)
+	 */
+	public int getOpenStreamCount() {
+		return openStreams.size();
+	}
+
+	/**
+	 * Close every stream and stop the reader's threads. The reader cannot be used afterwards.
+	 */
+	public void shutdown() {
+		openStreams.forEach(Stream::cancel);
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * A single stream. Receives the body line by line and turns it into events, as per
+	 * https://html.spec.whatwg.org/multipage/server-sent-events.html#event-stream-interpretation
+	 */
+	private final class Stream implements EventStream, Flow.Subscriber<String> {
+
+		private final EventStream.Listener listener;
+
+		private volatile boolean cancelled = false;
+		private volatile @Nullable Flow.Subscription subscription;
+
+		// the parser state is only touched by the thread that is currently delivering a line
+		// (lines of a single stream are delivered one at a time)
+		private final StringBuilder data = new StringBuilder();
+		private @Nullable String eventType = null;
+		private @Nullable String lastEventId = null;
+
+		Stream(EventStream.Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			openStreams.remove(this);
+			Flow.Subscription currentSubscription = this.subscription;
+			if (currentSubscription != null) {
+				currentSubscription.cancel(); // this closes the connection
+			}
+		}
+
+		HttpResponse.BodySubscriber<Void> bodySubscriberFor(HttpResponse.ResponseInfo responseInfo) {
+			if (cancelled || responseInfo.statusCode() != 200) {
+				// failures are reported once the response completes (see `finished`)
+				return HttpResponse.BodySubscribers.discarding();
+			}
+			listener.onOpen();
+			return HttpResponse.BodySubscribers.fromLineSubscriber(this);
+		}
+
+		void finished(@Nullable HttpResponse<Void> response, @Nullable Throwable t) {
+			openStreams.remove(this);
+			if (cancelled) {
+				return;
+			}
+			if (t != null) {
+				listener.onFailure(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t, -1);
+			} else if (response.statusCode() != 200) {
+				LOGGER.log(System.Logger.Level.WARNING, "Event Source Error: " + response);
+				listener.onFailure(null, response.statusCode());
+			} else {
+				listener.onClosed();
+			}
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (cancelled) {
+				subscription.cancel();
+				return;
+			}
+			// lines are handled as soon as they arrive; there is nothing to buffer them in
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(String line) {
+			if (cancelled) {
+				return;
+			}
+
+			if (line.isEmpty()) {
+				dispatchEvent();
+				return;
+			}
+			if (line.startsWith(":")) {
+				return; // comment. (eyre doesn't send these, but proxies use them as heartbeats)
+			}
+
+			String field;
+			String value;
+			int colon = line.indexOf(':');
+			if (colon == -1) {
+				field = line;
+				value = "";
+			} else {
+				field = line.substring(0, colon);
+				value = line.substring(colon + 1);
+				if (value.startsWith(" ")) {
+					value = value.substring(1);
+				}
+			}
+
+			switch (field) {
+				case "event":
+					eventType = value;
+					break;
+				case "data":
+					data.append(value).append('\n');
+					break;
+				case "id":
+					if (value.indexOf('\0') == -1) {
+						lastEventId = value;
+					}
+					break;
+				default:
+					// `retry` and unknown fields are ignored. reconnecting is up to the channel
+			}
+		}
+
+		private void dispatchEvent() {
+			if (data.length() == 0) {
+				eventType = null;
+				return;
+			}
+			data.setLength(data.length() - 1); // trailing newline
+			String eventData = data.toString();
+			String type = eventType;
+			data.setLength(0);
+			eventType = null;
+			try {
+				listener.onEvent(lastEventId, type, eventData);
+			} catch (RuntimeException e) {
+				// a bad event must not take the other events of the stream down with it
+				LOGGER.log(System.Logger.Level.WARNING, "Error while handling sse event " + lastEventId, e);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			// reported once the response completes (see `finished`)
+		}
+
+		@Override
+		public void onComplete() {
+			// a trailing event without a blank line after it is incomplete, and dropped as per the spec
+		}
+	}
+}
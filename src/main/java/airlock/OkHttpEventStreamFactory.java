@@ -0,0 +1,59 @@
+package airlock;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import okhttp3.sse.EventSources;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Opens sse streams with OkHttp. Each open stream blocks one of the client's dispatcher threads while it is read.
+ */
+class OkHttpEventStreamFactory implements EventStream.Factory {
+
+	private final EventSource.Factory eventSourceFactory;
+
+	OkHttpEventStreamFactory(OkHttpClient client) {
+		this.eventSourceFactory = EventSources.createFactory(client);
+	}
+
+	@Override
+	public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+		Request.Builder requestBuilder = new Request.Builder()
+				.url(url)
+				.header("connection", "keep-alive"); // todo why do i still have to manually set timeout to 1 day when connection is keep-alive
+		headers.forEach(requestBuilder::header);
+
+		EventSource eventSource = eventSourceFactory.newEventSource(requestBuilder.build(), new EventSourceListener() {
+			@Override
+			public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+				listener.onOpen();
+			}
+
+			@Override
+			public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+				listener.onEvent(id, type, data);
+			}
+
+			@Override
+			public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+				if (response != null) {
+					System.err.println("Event Source Error: " + response);
+				}
+				listener.onFailure(t, response != null ? response.code() : -1);
+			}
+
+			@Override
+			public void onClosed(@NotNull EventSource eventSource) {
+				listener.onClosed();
+			}
+		});
+		return eventSource::cancel;
+	}
+}
@@ -0,0 +1,141 @@
+package airlock;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.JavaNetCookieJar;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An {@link HttpTransport} built on OkHttp. Every open sse stream blocks one of the client's dispatcher threads.
+ * <p>
+ * OkHttp is an optional dependency of airlock, so it must be on the classpath to use this transport.
+ * </p>
+ */
+public class OkHttpTransport implements HttpTransport {
+
+	private final OkHttpClient client;
+	private final OkHttpClient streamClient;
+	private final OkHttpEventStreamFactory eventStreamFactory;
+
+	/**
+	 * Create a transport with its own connection pool and dispatcher
+	 */
+	public OkHttpTransport() {
+		this(new OkHttpClient.Builder()
+				// todo possibly adjust timeout duration might be too aggressive, and maybe implement a heartbeat of some kind
+				.readTimeout(1, TimeUnit.DAYS)  // possible max length of session (time before we get an event back) (as per https://stackoverflow.com/a/47232731)
+				.build());
+	}
+
+	/**
+	 * @param client The client which requests and sse streams are made with
+	 */
+	public OkHttpTransport(OkHttpClient client) {
+		this(client, client);
+	}
+
+	/**
+	 * @param client       The client which requests are made with
+	 * @param streamClient The client which sse streams are opened with (i.e. one with a longer read timeout, or its own dispatcher)
+	 */
+	public OkHttpTransport(OkHttpClient client, OkHttpClient streamClient) {
+		this.client = requireNonNull(client, "Please provide a client");
+		this.streamClient = requireNonNull(streamClient, "Please provide a stream client");
+		this.eventStreamFactory = new OkHttpEventStreamFactory(streamClient);
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		return toTransportResponse(client.newCall(toOkHttpRequest(request)).execute());
+	}
+
+	@Override
+	public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+		CompletableFuture<TransportResponse> responseFuture = new CompletableFuture<>();
+
+		client.newCall(toOkHttpRequest(request)).enqueue(new Callback() {
+			@Override
+			public void onFailure(@NotNull Call call, @NotNull IOException e) {
+				responseFuture.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(@NotNull Call call, @NotNull Response response) {
+				// the body is buffered here, on the dispatcher thread, so that the caller never blocks on it
+				try (response) {
+					ResponseBody body = requireNonNull(response.body(), "Got null response body");
+					byte[] bytes = body.bytes();
+					responseFuture.complete(new TransportResponse(
+							response.code(),
+							response.request().url().url(),
+							response.headers().toMultimap(),
+							bytes.length,
+							new ByteArrayInputStream(bytes)
+					));
+				} catch (IOException e) {
+					responseFuture.completeExceptionally(e);
+				}
+			}
+		});
+
+		return responseFuture;
+	}
+
+	@Override
+	public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+		JavaNetCookieJar cookieJar = new JavaNetCookieJar(cookieHandler);
+		// N.B: newBuilder() shares the connection pool and dispatcher of the client. only the cookie jar is our own
+		OkHttpClient newClient = client.newBuilder()
+				.cookieJar(cookieJar)
+				.build();
+		OkHttpClient newStreamClient = streamClient == client ? newClient : streamClient.newBuilder()
+				.cookieJar(cookieJar)
+				.build();
+		return new OkHttpTransport(newClient, newStreamClient);
+	}
+
+	@Override
+	public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+		return eventStreamFactory.open(url, headers, listener);
+	}
+
+	private static Request toOkHttpRequest(TransportRequest request) {
+		RequestBody body = null;
+		if (request.body != null) {
+			body = RequestBody.create(request.body, request.contentType != null ? MediaType.get(request.contentType) : null);
+		}
+		Request.Builder requestBuilder = new Request.Builder()
+				.url(request.url)
+				.method(request.method, body);
+		request.headers.forEach(requestBuilder::header);
+		return requestBuilder.build();
+	}
+
+	private static TransportResponse toTransportResponse(Response response) {
+		ResponseBody body = requireNonNull(response.body(), "Got null response body");
+		// closing the body's stream closes the response too
+		return new TransportResponse(
+				response.code(),
+				response.request().url().url(),
+				response.headers().toMultimap(),
+				body.contentLength(),
+				body.byteStream()
+		);
+	}
+}
@@ -0,0 +1,83 @@
+package airlock;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides how the sse stream of a channel is reopened after it fails. See {@link AirlockChannel#enableReconnect(ReconnectConfig)}.
+ * <p>
+ * The delay before each attempt doubles, starting from {@link ReconnectConfig#initialBackoff} up to {@link ReconnectConfig#maxBackoff},
+ * with a bit of random jitter so that many channels which lost their connection at the same time do not all come back at once.
+ * </p>
+ */
+public class ReconnectConfig {
+
+	/**
+	 * The delay before the first reconnect attempt
+	 */
+	public final Duration initialBackoff;
+
+	/**
+	 * The longest delay between two attempts
+	 */
+	public final Duration maxBackoff;
+
+	/**
+	 * The number of consecutive failed attempts after which we give up and tear down the channel. 0 means never give up.
+	 */
+	public final int maxAttempts;
+
+	/**
+	 * Start at 500ms, back off up to 30s, and never give up
+	 */
+	public static final ReconnectConfig DEFAULT = new ReconnectConfig(Duration.ofMillis(500), Duration.ofSeconds(30), 0);
+
+	/**
+	 * @param initialBackoff The delay before the first attempt
+	 * @param maxBackoff     The longest delay between attempts
+	 * @param maxAttempts    The number of attempts before giving up, or 0 to retry forever
+	 */
+	public ReconnectConfig(Duration initialBackoff, Duration maxBackoff, int maxAttempts) {
+		requireNonNull(initialBackoff, "Please provide an initial backoff");
+		requireNonNull(maxBackoff, "Please provide a max backoff");
+		if (initialBackoff.isNegative() || maxBackoff.isNegative()) {
+			throw new IllegalArgumentException("backoff cannot be negative");
+		}
+		if (maxBackoff.compareTo(initialBackoff) < 0) {
+			throw new IllegalArgumentException("maxBackoff cannot be less than initialBackoff");
+		}
+		if (maxAttempts < 0) {
+			throw new IllegalArgumentException("maxAttempts cannot be negative");
+		}
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @param attempt The number of the attempt, starting from 0
+	 * @return how long to wait before making the attempt
+	 */
+	Duration backoffFor(int attempt) {
+		long initialMillis = initialBackoff.toMillis();
+		long maxMillis = maxBackoff.toMillis();
+		// shift is capped so we never overflow
+		long backoffMillis = Math.min(maxMillis, initialMillis << Math.min(attempt, 30));
+		if (backoffMillis < 0) {
+			backoffMillis = maxMillis;
+		}
+		// +/- 20% jitter
+		double jitter = 0.8 + Math.random() * 0.4;
+		return Duration.ofMillis((long) (backoffMillis * jitter));
+	}
+
+	@Override
+	public String toString() {
+		return "ReconnectConfig{" +
+				"initialBackoff=" + initialBackoff +
+				", maxBackoff=" + maxBackoff +
+				", maxAttempts=" + maxAttempts +
+				'}';
+	}
+}
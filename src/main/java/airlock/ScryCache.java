@@ -0,0 +1,303 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the results of recent scries, so that asking for the same path again does not need a round trip to the ship.
+ * See {@link AirlockChannel#enableScryCache(ScryCacheConfig)}.
+ * <p>
+ * The raw response body is kept rather than the decoded value, so every hit is decoded again.
+ * That way callers always get their own copy, which they are free to mutate (i.e. {@link airlock.agent.graph.GraphAgent}
+ * adds nodes to the graphs it gets back), and the same path may be read with different decoders.
+ * The body is only copied off of the network for paths that this cache keeps.
+ * </p>
+ * <p>
+ * Results are kept until their ttl runs out, until they are the least recently used of their rule's entries
+ * and room is needed, or until they are invalidated. Invalidating is how stale results get thrown away early,
+ * i.e. when a subscription tells us that the data behind a path has changed.
+ * </p>
+ * <p>
+ * All operations are safe to call from any thread.
+ * </p>
+ */
+public class ScryCache {
+
+	private final ScryCacheConfig config;
+
+	/**
+	 * One lru map per rule, plus the one for scries that match no rule (keyed by null)
+	 */
+	private final Map<ScryCacheConfig.Rule, Segment> segments = new HashMap<>();
+
+	private final Object lock = new Object();
+
+	/**
+	 * Bumped on every invalidation. A result which was requested before an invalidation is not stored,
+	 * since it may have been read before the change that caused the invalidation
+	 */
+	private long generation = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long invalidations = 0;
+
+	ScryCache(ScryCacheConfig config) {
+		this.config = config;
+	}
+
+	public ScryCacheConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Get a cached response body
+	 *
+	 * @param app  The app that was scried
+	 * @param path The path that was scried
+	 * @return The body, or null if there is no fresh result for the path
+	 */
+	@Nullable byte[] get(String app, String path) {
+		String key = key(app, path);
+		synchronized (lock) {
+			Segment segment = segments.get(config.ruleFor(key));
+			CachedBody entry = segment == null ? null : segment.get(key);
+			if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+				segment.remove(key);
+				expirations++;
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return entry.body;
+		}
+	}
+
+	/**
+	 * The current generation, which has to be passed back to {@link ScryCache#put(String, String, byte[], long)}.
+	 * Take this <i>before</i> sending the scry.
+	 */
+	long generation() {
+		synchronized (lock) {
+			return generation;
+		}
+	}
+
+	/**
+	 * @return whether {@link ScryCache#put(String, String, byte[], long)} would keep the result of this path at all,
+	 * so that there is no need to hold on to a body which is going to be thrown away
+	 */
+	boolean isCacheable(String app, String path) {
+		ScryCacheConfig.Rule rule = config.ruleFor(key(app, path));
+		return !(rule == null ? config.ttl : rule.ttl).isZero();
+	}
+
+	/**
+	 * Store a response body. Does nothing if the path is not cacheable,
+	 * or if anything was invalidated since the given generation was taken
+	 *
+	 * @param app        The app that was scried
+	 * @param path       The path that was scried
+	 * @param body       The response body
+	 * @param generation The generation from before the scry was sent
+	 */
+	void put(String app, String path, byte[] body, long generation) {
+		String key = key(app, path);
+		ScryCacheConfig.Rule rule = config.ruleFor(key);
+		long ttlNanos = (rule == null ? config.ttl : rule.ttl).toNanos();
+		if (ttlNanos == 0) {
+			return;
+		}
+		int maxEntries = rule == null ? config.maxEntries : rule.maxEntries;
+
+		synchronized (lock) {
+			if (generation != this.generation) {
+				return;
+			}
+			segments.computeIfAbsent(rule, r -> new Segment(maxEntries))
+					.put(key, new CachedBody(body, System.nanoTime() + ttlNanos));
+		}
+	}
+
+	/**
+	 * Throw away the cached result of exactly one path, i.e. one that could not be decoded.
+	 * Unlike {@link ScryCache#invalidate(String, String)}, this does not stop scries that are already running from being cached,
+	 * since nothing on the ship changed
+	 *
+	 * @param app  The app that was scried
+	 * @param path The path that was scried
+	 */
+	void remove(String app, String path) {
+		String key = key(app, path);
+		synchronized (lock) {
+			Segment segment = segments.get(config.ruleFor(key));
+			if (segment != null) {
+				segment.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Throw away the cached results for every path of an app which starts with the given prefix.
+	 * A prefix which does not end with a '/' only matches whole path segments,
+	 * i.e. "/graph/~zod/test" matches "/graph/~zod/test" and "/graph/~zod/test/5", but not "/graph/~zod/testing".
+	 *
+	 * @param app        The app whose results to throw away
+	 * @param pathPrefix The prefix of the paths to throw away
+	 * @return how many results were thrown away
+	 */
+	public int invalidate(String app, String pathPrefix) {
+		String prefix = key(app, pathPrefix);
+		int removed = 0;
+		synchronized (lock) {
+			generation++;
+			for (Segment segment : segments.values()) {
+				Iterator<String> keys = segment.keySet().iterator();
+				while (keys.hasNext()) {
+					String key = keys.next();
+					if (key.startsWith(prefix) && (key.length() == prefix.length() || prefix.endsWith("/") || key.charAt(prefix.length()) == '/')) {
+						keys.remove();
+						removed++;
+					}
+				}
+			}
+			invalidations += removed;
+		}
+		return removed;
+	}
+
+	/**
+	 * Throw away every cached result
+	 */
+	public void invalidateAll() {
+		synchronized (lock) {
+			generation++;
+			for (Segment segment : segments.values()) {
+				invalidations += segment.size();
+			}
+			segments.clear();
+		}
+	}
+
+	/**
+	 * @return A snapshot of how well the cache is doing
+	 */
+	public Stats getStats() {
+		synchronized (lock) {
+			int entries = 0;
+			long bytes = 0;
+			for (Segment segment : segments.values()) {
+				entries += segment.size();
+				for (CachedBody entry : segment.values()) {
+					bytes += entry.body.length;
+				}
+			}
+			return new Stats(hits, misses, evictions, expirations, invalidations, entries, bytes);
+		}
+	}
+
+	private static String key(String app, String path) {
+		return "/" + app + path;
+	}
+
+	private static final class CachedBody {
+		final byte[] body;
+		final long expiresAt;
+
+		CachedBody(byte[] body, long expiresAt) {
+			this.body = body;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * An access ordered map, which drops its least recently used entry once it is full.
+	 * Only ever touched while holding the lock of the cache
+	 */
+	private final class Segment extends LinkedHashMap<String, CachedBody> {
+		private final int maxEntries;
+
+		Segment(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+			if (size() > maxEntries) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The hit/miss counters of a cache, since it was enabled
+	 */
+	public static final class Stats {
+		public final long hits;
+		public final long misses;
+		/**
+		 * Results dropped to make room for newer ones
+		 */
+		public final long evictions;
+		/**
+		 * Results dropped because their ttl ran out
+		 */
+		public final long expirations;
+		/**
+		 * Results dropped by {@link ScryCache#invalidate(String, String)} or {@link ScryCache#invalidateAll()}
+		 */
+		public final long invalidations;
+		/**
+		 * The number of results currently cached
+		 */
+		public final int entries;
+		/**
+		 * The total size of the currently cached response bodies
+		 */
+		public final long bytes;
+
+		Stats(long hits, long misses, long evictions, long expirations, long invalidations, int entries, long bytes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.expirations = expirations;
+			this.invalidations = invalidations;
+			this.entries = entries;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the fraction of lookups which were hits, or 0 if there have not been any lookups
+		 */
+		public double hitRate() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{" +
+					"hits=" + hits +
+					", misses=" + misses +
+					", evictions=" + evictions +
+					", expirations=" + expirations +
+					", invalidations=" + invalidations +
+					", entries=" + entries +
+					", bytes=" + bytes +
+					'}';
+		}
+	}
+
+}
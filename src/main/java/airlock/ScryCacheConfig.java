@@ -0,0 +1,140 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The limits of a channel's scry cache. See {@link AirlockChannel#enableScryCache(ScryCacheConfig)}.
+ * <p>
+ * Every scry is matched against the rules by its "/app/path" (i.e. "/graph-store/keys"), and the rule with the longest
+ * matching prefix decides how long the result is kept and how many results of that kind are kept at once.
+ * Scries that match no rule use the default ttl and size. A ttl of zero means that matching scries are never cached.
+ * </p>
+ */
+public class ScryCacheConfig {
+
+	/**
+	 * How long a result which matches no rule is kept
+	 */
+	public final Duration ttl;
+
+	/**
+	 * How many results which match no rule are kept before the least recently used one is evicted
+	 */
+	public final int maxEntries;
+
+	/**
+	 * The per-prefix rules, in the order they were added
+	 */
+	public final List<Rule> rules;
+
+	/**
+	 * A reasonable default: results are kept for 30 seconds, with at most 256 of them cached at once
+	 */
+	public static final ScryCacheConfig DEFAULT = new ScryCacheConfig(Duration.ofSeconds(30), 256);
+
+	/**
+	 * @param ttl        How long a result is kept by default
+	 * @param maxEntries How many results are kept by default
+	 */
+	public ScryCacheConfig(Duration ttl, int maxEntries) {
+		this(ttl, maxEntries, List.of());
+	}
+
+	private ScryCacheConfig(Duration ttl, int maxEntries, List<Rule> rules) {
+		requireNonNull(ttl, "Please provide a ttl");
+		if (ttl.isNegative()) {
+			throw new IllegalArgumentException("ttl cannot be negative");
+		}
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1");
+		}
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.rules = rules;
+	}
+
+	/**
+	 * Create a config which has an additional rule for the scries under the given prefix.
+	 * A rule for a prefix which already has one replaces it.
+	 *
+	 * @param prefix     The prefix of the "/app/path" of the scries this rule applies to, i.e. "/graph-store/graph/"
+	 * @param ttl        How long matching results are kept, or zero to never cache them
+	 * @param maxEntries How many matching results are kept
+	 * @return The new config
+	 */
+	public ScryCacheConfig withRule(String prefix, Duration ttl, int maxEntries) {
+		Rule rule = new Rule(prefix, ttl, maxEntries);
+		List<Rule> newRules = new ArrayList<>(this.rules);
+		newRules.removeIf(existing -> existing.prefix.equals(prefix));
+		newRules.add(rule);
+		return new ScryCacheConfig(this.ttl, this.maxEntries, Collections.unmodifiableList(newRules));
+	}
+
+	/**
+	 * Find the rule that applies to a scry
+	 *
+	 * @param key The "/app/path" of the scry
+	 * @return The rule with the longest matching prefix, or null if none of them match
+	 */
+	@Nullable Rule ruleFor(String key) {
+		Rule best = null;
+		for (Rule rule : rules) {
+			if (key.startsWith(rule.prefix) && (best == null || rule.prefix.length() > best.prefix.length())) {
+				best = rule;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The limits for the scries under a single prefix
+	 */
+	public static final class Rule {
+
+		public final String prefix;
+		public final Duration ttl;
+		public final int maxEntries;
+
+		Rule(String prefix, Duration ttl, int maxEntries) {
+			requireNonNull(prefix, "Please provide a prefix");
+			requireNonNull(ttl, "Please provide a ttl");
+			if (!prefix.startsWith("/")) {
+				throw new IllegalArgumentException("prefix must start with a '/'");
+			}
+			if (ttl.isNegative()) {
+				throw new IllegalArgumentException("ttl cannot be negative");
+			}
+			if (maxEntries < 1) {
+				throw new IllegalArgumentException("maxEntries must be at least 1");
+			}
+			this.prefix = prefix;
+			this.ttl = ttl;
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		public String toString() {
+			return "Rule{" +
+					"prefix='" + prefix + '\'' +
+					", ttl=" + ttl +
+					", maxEntries=" + maxEntries +
+					'}';
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ScryCacheConfig{" +
+				"ttl=" + ttl +
+				", maxEntries=" + maxEntries +
+				", rules=" + rules +
+				'}';
+	}
+}
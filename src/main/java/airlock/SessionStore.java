@@ -0,0 +1,27 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Keeps a {@link ChannelSession} around between runs of a process, so that a restarted process can resume its channel
+ * instead of logging in and creating a new one. See {@link AirlockChannel#useSessionStore(SessionStore)}.
+ */
+public interface SessionStore {
+
+	/**
+	 * @return the saved session, or null if there is none
+	 */
+	@Nullable ChannelSession load() throws IOException;
+
+	/**
+	 * Replace the saved session
+	 */
+	void save(ChannelSession session) throws IOException;
+
+	/**
+	 * Forget the saved session (i.e. because the ship rejected its cookie)
+	 */
+	void clear() throws IOException;
+}
@@ -0,0 +1,163 @@
+package airlock;
+
+import airlock.errors.AirlockException;
+import airlock.errors.channel.AirlockRequestError;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes concurrent identical calls share a single execution.
+ * <p>
+ * The first caller for a key (the leader) runs the call on its own thread. Everyone who asks for the same key while it is running
+ * (the followers) waits for it. Once the call is done, the leader makes one copy of its result for each follower that joined,
+ * before it returns (and so before it can change its own result), and every follower takes one of them.
+ * If the leader's result can't be copied, the followers run the call themselves.
+ * Failures are handed to every follower as they are. Once the call is done the key is forgotten, so a later caller runs it again.
+ * </p>
+ * <p>
+ * This is only correct for calls that have no side effects, i.e. scries, since the followers' calls never happen.
+ * </p>
+ */
+class SingleFlight {
+
+	/**
+	 * A call to the ship, which may fail with any of our checked exceptions
+	 */
+	@FunctionalInterface
+	interface Call<T> {
+		T call() throws AirlockException;
+	}
+
+	/**
+	 * Makes a copy of the leader's result for a follower
+	 */
+	@FunctionalInterface
+	interface Copier<T, S> {
+		/**
+		 * @param value  The leader's result
+		 * @param shared What else the leader kept around, if anything
+		 * @return a copy which shares nothing mutable with the value, or null if there is no way to make one
+		 */
+		@Nullable T copy(T value, @Nullable S shared) throws AirlockException;
+	}
+
+	/**
+	 * What a call produces: the leader's own result, and anything that helps to copy it (i.e. the raw body of a response)
+	 */
+	static final class Result<T, S> {
+		final T value;
+		final @Nullable S shared;
+
+		Result(T value, @Nullable S shared) {
+			this.value = value;
+			this.shared = shared;
+		}
+	}
+
+	/**
+	 * A call that is running
+	 */
+	private static final class Flight {
+		/**
+		 * Completes with a copy of the result for each follower, or with null if they have to run the call themselves
+		 */
+		final CompletableFuture<Queue<Object>> copies = new CompletableFuture<>();
+		/**
+		 * Only changed while holding the key's entry in the map (through `compute`), and only read once the entry is gone
+		 */
+		volatile int followers = 0;
+	}
+
+	private final Map<Object, Flight> calls = new ConcurrentHashMap<>();
+
+	/**
+	 * Run the call, or wait for the identical call that is already running
+	 *
+	 * @param key    What makes two calls identical. Must have a proper equals and hashCode
+	 * @param call   The call to run
+	 * @param copier Makes the followers' results out of the leader's
+	 * @param <T>    The type of the result
+	 * @param <S>    The type of what the call keeps around for the copier
+	 * @return the result of the call, or a copy of it if an identical call was already running
+	 */
+	@SuppressWarnings("unchecked")
+	<T, S> T run(Object key, Call<Result<T, S>> call, Copier<T, S> copier) throws AirlockException {
+		Flight ours = new Flight();
+		Flight flight = calls.compute(key, (k, running) -> {
+			if (running == null) {
+				return ours;
+			}
+			running.followers++;
+			return running;
+		});
+
+		if (flight != ours) {
+			Queue<Object> copies;
+			try {
+				copies = flight.copies.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AirlockRequestError("Interrupted while waiting for an identical request to complete", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof AirlockException) {
+					throw (AirlockException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new AirlockRequestError("Unexpected failure while executing request", cause);
+			}
+			// there is exactly one copy for each follower, since the count was final once the leader was done
+			return copies != null ? (T) copies.remove() : call.call().value;
+		}
+
+		Result<T, S> result;
+		try {
+			result = call.call();
+		} catch (AirlockException | RuntimeException | Error e) {
+			calls.remove(key, ours);
+			ours.copies.completeExceptionally(e);
+			throw e;
+		}
+		// forgotten before copying, so that nobody can join the call after the copies are made
+		calls.remove(key, ours);
+		int followers = ours.followers;
+		if (followers == 0) {
+			ours.copies.complete(new ArrayDeque<>());
+			return result.value;
+		}
+		try {
+			Queue<Object> copies = new ConcurrentLinkedQueue<>();
+			for (int i = 0; i < followers; i++) {
+				T copy = copier.copy(result.value, result.shared);
+				if (copy == null) {
+					copies = null;
+					break;
+				}
+				copies.add(copy);
+			}
+			ours.copies.complete(copies);
+		} catch (AirlockException | RuntimeException | Error e) {
+			// the leader got what it asked for, only the followers are out of luck
+			ours.copies.completeExceptionally(e);
+		}
+		return result.value;
+	}
+
+	/**
+	 * @return how many distinct calls are currently running
+	 */
+	int getRunningCount() {
+		return calls.size();
+	}
+
+}
@@ -1,6 +1,7 @@
 package airlock;
 
 import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This is a data class which represents a subscribe event
@@ -12,6 +13,11 @@ public class SubscribeEvent {
 	 */
 	public final EventType eventType;
 	public final JsonObject updateJson;
+	/**
+	 * The update, as decoded by the {@link JsonDecoder} the subscription was created with.
+	 * Only set for UPDATE events of subscriptions that registered a decoder, in which case {@link #updateJson} is null.
+	 */
+	public final @Nullable Object decodedUpdate;
 	public final String failureMessage;
 
 	/**
@@ -39,24 +45,41 @@ public class SubscribeEvent {
 	/**
 	 * Static instance of the STARTED event.
 	 */
-	public static final SubscribeEvent STARTED = new SubscribeEvent(EventType.STARTED, null, null);
+	public static final SubscribeEvent STARTED = new SubscribeEvent(EventType.STARTED, null, null, null);
 	/**
 	 * Static instance of the FINISHED event.
 	 */
-	public static final SubscribeEvent FINISHED = new SubscribeEvent(EventType.FINISHED, null, null);
+	public static final SubscribeEvent FINISHED = new SubscribeEvent(EventType.FINISHED, null, null, null);
 
-	private SubscribeEvent(EventType eventType, JsonObject updateJson, String failureMessage) {
+	private SubscribeEvent(EventType eventType, JsonObject updateJson, @Nullable Object decodedUpdate, String failureMessage) {
 		this.eventType = eventType;
 		this.updateJson = updateJson;
+		this.decodedUpdate = decodedUpdate;
 		this.failureMessage = failureMessage;
 	}
 
 	public static SubscribeEvent fromUpdate(JsonObject updateJson) {
-		return new SubscribeEvent(EventType.UPDATE, updateJson, null);
+		return new SubscribeEvent(EventType.UPDATE, updateJson, null, null);
+	}
+
+	public static SubscribeEvent fromDecodedUpdate(Object decodedUpdate) {
+		return new SubscribeEvent(EventType.UPDATE, null, decodedUpdate, null);
 	}
 
 	public static SubscribeEvent fromFailure(String failureMessage) {
-		return new SubscribeEvent(EventType.FAILURE, null, failureMessage);
+		return new SubscribeEvent(EventType.FAILURE, null, null, failureMessage);
+	}
+
+	/**
+	 * Get the decoded update as the type the subscription's decoder produces
+	 *
+	 * @param type The type the decoder produces
+	 * @param <T>  The type the decoder produces
+	 * @return The decoded update, or null if this event doesn't carry one
+	 * @throws ClassCastException if the update is not of the given type
+	 */
+	public <T> @Nullable T getDecodedUpdate(Class<T> type) {
+		return type.cast(decodedUpdate);
 	}
 
 	@Override
@@ -64,6 +87,7 @@ public class SubscribeEvent {
 		return "SubscribeEvent{" +
 				"eventType=" + eventType +
 				", updateJson='" + updateJson + '\'' +
+				", decodedUpdate='" + decodedUpdate + '\'' +
 				", failureMessage='" + failureMessage + '\'' +
 				'}';
 	}
@@ -0,0 +1,351 @@
+package airlock;
+
+import airlock.errors.channel.AirlockAuthenticationError;
+import airlock.errors.channel.AirlockRequestError;
+import airlock.errors.channel.AirlockResponseError;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Shares one subscription on the ship between any number of local listeners of the same (ship, app, path).
+ * <p>
+ * The first listener of a path creates the subscription. Listeners that join later are attached to it
+ * (and get a STARTED event of their own if it has already started), every event is fanned out to all listeners,
+ * and the subscription is only unsubscribed from once the last listener has left.
+ * If the ship ends the subscription (FAILURE or FINISHED), all of its listeners get that event and are detached.
+ * </p>
+ * <p>
+ * Every channel has one of these, see {@link AirlockChannel#getSubscriptionMultiplexer()}.
+ * </p>
+ */
+public class SubscriptionMultiplexer {
+
+	private static final System.Logger LOGGER = System.getLogger(SubscriptionMultiplexer.class.getName());
+
+	private final AirlockChannel channel;
+
+	private final Object lock = new Object();
+
+	/**
+	 * The shared subscriptions, by (ship, app, path). Guarded by lock
+	 */
+	private final Map<Key, SharedSubscription> subscriptions = new HashMap<>();
+
+	SubscriptionMultiplexer(AirlockChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Listen to a path, sharing the subscription with any other listeners of the same path
+	 *
+	 * @param ship     The ship to subscribe to
+	 * @param app      The app to subscribe to
+	 * @param path     The path to which to subscribe
+	 * @param listener The listener for the subscription's events
+	 * @return a handle which detaches the listener again
+	 */
+	public Registration subscribe(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@NotNull Consumer<SubscribeEvent> listener
+	) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		return this.subscribe(ship, app, path, null, listener);
+	}
+
+	/**
+	 * Listen to a path, sharing the subscription with any other listeners of the same path.
+	 * All listeners of a path must use the same decoder.
+	 *
+	 * @param ship     The ship to subscribe to
+	 * @param app      The app to subscribe to
+	 * @param path     The path to which to subscribe
+	 * @param decoder  The decoder for the `json` payload of each update, or null to receive updates as json
+	 * @param listener The listener for the subscription's events
+	 * @return a handle which detaches the listener again
+	 */
+	public Registration subscribe(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@Nullable JsonDecoder<?> decoder,
+			@NotNull Consumer<SubscribeEvent> listener
+	) throws AirlockRequestError, AirlockResponseError, AirlockAuthenticationError {
+		return AirlockChannel.awaitChannelResult(this.subscribeAsync(ship, app, path, decoder, listener));
+	}
+
+	/**
+	 * Asynchronous version of {@link SubscriptionMultiplexer#subscribe(String, String, String, JsonDecoder, Consumer)}.
+	 * Does not block the calling thread.
+	 *
+	 * @param ship     The ship to subscribe to
+	 * @param app      The app to subscribe to
+	 * @param path     The path to which to subscribe
+	 * @param decoder  The decoder for the `json` payload of each update, or null to receive updates as json
+	 * @param listener The listener for the subscription's events
+	 * @return a future handle, which completes once the shared subscription has been accepted by the ship
+	 * @throws IllegalArgumentException if the path is already being listened to with a different decoder
+	 */
+	public CompletableFuture<Registration> subscribeAsync(
+			@NotNull String ship,
+			@NotNull String app,
+			@NotNull String path,
+			@Nullable JsonDecoder<?> decoder,
+			@NotNull Consumer<SubscribeEvent> listener
+	) {
+		requireNonNull(listener, "Please provide a listener");
+		Key key = new Key(ship, app, path);
+		SharedSubscription shared;
+		Registration registration;
+		boolean created = false;
+
+		synchronized (lock) {
+			shared = subscriptions.get(key);
+			if (shared == null) {
+				shared = new SharedSubscription(key, decoder);
+				subscriptions.put(key, shared);
+				created = true;
+			} else if (shared.decoder != decoder) {
+				throw new IllegalArgumentException("Already listening to " + key + " with a different decoder");
+			}
+			registration = new Registration(shared, listener);
+			// the first listener is attached right away so that it can't miss the STARTED event
+			registration.attached = created;
+			shared.registrations.add(registration);
+		}
+
+		if (created) {
+			SharedSubscription newShared = shared;
+			channel.subscribeAsync(ship, app, path, decoder, newShared::dispatch)
+					.whenComplete((id, throwable) -> {
+						if (throwable != null) {
+							// nothing to unsubscribe from, so just forget about it. anyone that joined in the meantime gets the same failure
+							synchronized (lock) {
+								subscriptions.remove(key, newShared);
+							}
+							newShared.idFuture.completeExceptionally(throwable);
+						} else {
+							newShared.idFuture.complete(id);
+						}
+					});
+		} else {
+			// joining is done on the subscription's own dispatch queue, so that it can't race with the events being fanned out
+			SharedSubscription existing = shared;
+			shared.idFuture.thenAccept(id -> channel.dispatchFor(id, () -> existing.join(registration)));
+		}
+
+		return shared.idFuture.thenApply(id -> registration);
+	}
+
+	/**
+	 * @param ship The ship of the subscription
+	 * @param app  The app of the subscription
+	 * @param path The path of the subscription
+	 * @return the number of listeners currently sharing the subscription to the given path
+	 */
+	public int getListenerCount(String ship, String app, String path) {
+		synchronized (lock) {
+			SharedSubscription shared = subscriptions.get(new Key(ship, app, path));
+			return shared == null ? 0 : shared.registrations.size();
+		}
+	}
+
+	/**
+	 * @return the number of distinct subscriptions on the ship that are currently being shared
+	 */
+	public int getSubscriptionCount() {
+		synchronized (lock) {
+			return subscriptions.size();
+		}
+	}
+
+	/**
+	 * Forgets all shared subscriptions without unsubscribing. Called when the channel is torn down,
+	 * since the subscriptions on the ship are gone along with it.
+	 */
+	void clear() {
+		synchronized (lock) {
+			subscriptions.clear();
+		}
+	}
+
+	private void release(Registration registration) {
+		SharedSubscription shared = registration.shared;
+		boolean last;
+		synchronized (lock) {
+			if (!shared.registrations.remove(registration)) {
+				return;
+			}
+			last = shared.registrations.isEmpty() && subscriptions.remove(shared.key, shared);
+		}
+		if (last) {
+			// don't send anything if the subscription was already ended by the ship
+			if (shared.terminalEvent == null) {
+				registration.unsubscribed = shared.idFuture.thenCompose(channel::unsubscribeAsync);
+			}
+		}
+	}
+
+	/**
+	 * A listener's handle on a shared subscription
+	 */
+	public final class Registration implements AutoCloseable {
+
+		private final SharedSubscription shared;
+		private final Consumer<SubscribeEvent> listener;
+
+		/**
+		 * Whether the listener is receiving events yet. Only touched from the subscription's dispatch queue (or before the subscription exists)
+		 */
+		private boolean attached;
+
+		private volatile boolean closed;
+
+		private volatile CompletableFuture<Void> unsubscribed = CompletableFuture.completedFuture(null);
+
+		private Registration(SharedSubscription shared, Consumer<SubscribeEvent> listener) {
+			this.shared = shared;
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops delivering events to this listener. If it was the last listener of the path, the subscription on the ship is unsubscribed from.
+		 *
+		 * @return a future which completes once the unsubscribe request (if one was needed) has been accepted by the ship
+		 */
+		public CompletableFuture<Void> unsubscribe() {
+			if (!closed) {
+				closed = true;
+				release(this);
+			}
+			return unsubscribed;
+		}
+
+		@Override
+		public void close() {
+			this.unsubscribe();
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+
+	/**
+	 * One subscription on the ship, and everyone listening to it
+	 */
+	private final class SharedSubscription {
+
+		private final Key key;
+		private final @Nullable JsonDecoder<?> decoder;
+		private final CompletableFuture<Integer> idFuture = new CompletableFuture<>();
+		private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+		// both of these are only touched from the subscription's dispatch queue
+		private boolean started;
+		private volatile @Nullable SubscribeEvent terminalEvent;
+
+		private SharedSubscription(Key key, @Nullable JsonDecoder<?> decoder) {
+			this.key = key;
+			this.decoder = decoder;
+		}
+
+		/**
+		 * Attaches a listener which joined after the subscription was created, catching it up on what it missed
+		 */
+		private void join(Registration registration) {
+			if (registration.closed) {
+				return;
+			}
+			registration.attached = true;
+			SubscribeEvent terminal = terminalEvent;
+			if (started) {
+				deliver(registration, SubscribeEvent.STARTED);
+			}
+			if (terminal != null) {
+				deliver(registration, terminal);
+				release(registration);
+			}
+		}
+
+		/**
+		 * The handler of the subscription on the ship. Runs on its dispatch queue, so never concurrently with itself
+		 */
+		private void dispatch(SubscribeEvent event) {
+			switch (event.eventType) {
+				case STARTED:
+					started = true;
+					break;
+				case FAILURE:
+				case FINISHED:
+					// the ship ended it for everyone, so the next listener of this path has to start a new one
+					terminalEvent = event;
+					synchronized (lock) {
+						subscriptions.remove(key, this);
+					}
+					break;
+			}
+			for (Registration registration : registrations) {
+				if (registration.attached && !registration.closed) {
+					deliver(registration, event);
+				}
+			}
+			if (terminalEvent != null) {
+				for (Registration registration : registrations) {
+					if (registration.attached) {
+						registrations.remove(registration);
+					}
+				}
+			}
+		}
+
+		private void deliver(Registration registration, SubscribeEvent event) {
+			try {
+				registration.listener.accept(event);
+			} catch (Exception e) {
+				// one misbehaving listener should not keep the event from the others
+				LOGGER.log(System.Logger.Level.WARNING, "Listener of " + key + " threw while handling " + event, e);
+			}
+		}
+	}
+
+	private static final class Key {
+		private final String ship;
+		private final String app;
+		private final String path;
+
+		private Key(String ship, String app, String path) {
+			this.ship = requireNonNull(ship, "Please provide a ship");
+			this.app = requireNonNull(app, "Please provide an app");
+			this.path = requireNonNull(path, "Please provide a path");
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return ship.equals(key.ship) && app.equals(key.app) && path.equals(key.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ship, app, path);
+		}
+
+		@Override
+		public String toString() {
+			return ship + "/" + app + path;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Flow.Publisher} of the events of a subscription, which only delivers as many events as its subscribers ask for.
+ * <p>
+ * Every {@link Flow.Subscriber} gets its own subscription on the ship, which is created when it subscribes and
+ * unsubscribed from when it cancels. Events wait in a bounded buffer per subscriber until they are requested.
+ * What happens when that buffer is full is decided by the {@link BackpressureConfig}.
+ * </p>
+ * <p>
+ * FAILURE and FINISHED events are delivered like any other event, after which the subscriber is completed.
+ * If the subscription could not be created at all, the subscriber gets the error with {@link Flow.Subscriber#onError}.
+ * </p>
+ */
+public class SubscriptionPublisher implements Flow.Publisher<SubscribeEvent> {
+
+	private static final System.Logger LOGGER = System.getLogger(SubscriptionPublisher.class.getName());
+
+	private final AirlockChannel channel;
+	private final String ship;
+	private final String app;
+	private final String path;
+	private final @Nullable JsonDecoder<?> decoder;
+	private final BackpressureConfig config;
+
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong conflatedCount = new AtomicLong();
+	private final AtomicLong blockedCount = new AtomicLong();
+
+	SubscriptionPublisher(AirlockChannel channel, String ship, String app, String path, @Nullable JsonDecoder<?> decoder, BackpressureConfig config) {
+		this.channel = channel;
+		this.ship = ship;
+		this.app = app;
+		this.path = path;
+		this.decoder = decoder;
+		this.config = config;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super SubscribeEvent> subscriber) {
+		requireNonNull(subscriber, "Please provide a subscriber");
+		BufferedSubscription subscription = new BufferedSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+
+		// events may arrive before the subscribe request has returned. they are simply buffered
+		channel.subscribeAsync(ship, app, path, decoder, subscription::offer)
+				.whenComplete((id, throwable) -> {
+					if (throwable != null) {
+						subscription.fail(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+					} else {
+						subscription.started(id);
+					}
+				});
+	}
+
+	/**
+	 * @return the number of updates which were dropped because a subscriber's buffer was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the number of updates which were replaced by a newer update with the same key before being delivered
+	 */
+	public long getConflatedCount() {
+		return conflatedCount.get();
+	}
+
+	/**
+	 * @return the number of times an update had to wait for room in a subscriber's buffer
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	public BackpressureConfig getConfig() {
+		return config;
+	}
+
+
+	private static final class Slot {
+		final @Nullable Object key;
+		SubscribeEvent event;
+
+		Slot(@Nullable Object key, SubscribeEvent event) {
+			this.key = key;
+			this.event = event;
+		}
+	}
+
+	private final class BufferedSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super SubscribeEvent> subscriber;
+
+		private final Object lock = new Object();
+
+		// all of the following are guarded by lock
+		private final ArrayDeque<Slot> buffer = new ArrayDeque<>();
+		private final Map<Object, Slot> bufferedUpdates = new HashMap<>(); // only used by CONFLATE
+		private int bufferedUpdateCount = 0;
+		private long demand = 0;
+		private boolean cancelled = false;
+		private boolean terminated = false; // the subscription ended on the ship's side (or could not be created)
+		private @Nullable Throwable error = null;
+		private @Nullable Integer subscriptionId = null;
+
+		/**
+		 * Makes sure only one thread delivers to the subscriber at a time, without making anyone wait for it
+		 */
+		private final AtomicInteger wip = new AtomicInteger();
+
+		BufferedSubscription(Flow.Subscriber<? super SubscribeEvent> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/**
+		 * Called on the channel's dispatcher for every event of the subscription
+		 */
+		void offer(SubscribeEvent event) {
+			synchronized (lock) {
+				if (cancelled || terminated) {
+					return;
+				}
+				Object key = null;
+				if (event.eventType == SubscribeEvent.EventType.UPDATE) {
+					BackpressureConfig.OverflowPolicy policy = config.overflowPolicy;
+					if (policy == BackpressureConfig.OverflowPolicy.CONFLATE) {
+						key = config.conflationKey == null ? Boolean.TRUE : Objects.requireNonNullElse(config.conflationKey.apply(event), Boolean.TRUE);
+						Slot buffered = bufferedUpdates.get(key);
+						if (buffered != null) {
+							buffered.event = event;
+							conflatedCount.incrementAndGet();
+							return; // nothing new to deliver
+						}
+					}
+					boolean waited = false;
+					while (bufferedUpdateCount >= config.bufferSize) {
+						if (policy == BackpressureConfig.OverflowPolicy.BLOCK) {
+							if (!waited) {
+								blockedCount.incrementAndGet();
+								waited = true;
+							}
+							try {
+								lock.wait();
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								LOGGER.log(System.Logger.Level.WARNING, "Interrupted while waiting for room in a subscriber's buffer, dropping update");
+								droppedCount.incrementAndGet();
+								return;
+							}
+							if (cancelled) {
+								return;
+							}
+						} else {
+							dropOldestUpdate();
+							droppedCount.incrementAndGet();
+						}
+					}
+					bufferedUpdateCount++;
+				}
+				Slot slot = new Slot(key, event);
+				buffer.add(slot);
+				if (key != null) {
+					bufferedUpdates.put(key, slot);
+				}
+			}
+			drain();
+		}
+
+		// must hold lock
+		private void dropOldestUpdate() {
+			Iterator<Slot> iterator = buffer.iterator();
+			while (iterator.hasNext()) {
+				Slot slot = iterator.next();
+				if (slot.event.eventType == SubscribeEvent.EventType.UPDATE) {
+					iterator.remove();
+					bufferedUpdateCount--;
+					if (slot.key != null) {
+						bufferedUpdates.remove(slot.key, slot);
+					}
+					return;
+				}
+			}
+		}
+
+		void started(int id) {
+			boolean unsubscribe;
+			synchronized (lock) {
+				subscriptionId = id;
+				unsubscribe = cancelled && !terminated;
+			}
+			if (unsubscribe) {
+				// cancelled before the ship even got the subscribe request
+				unsubscribe(id);
+			}
+		}
+
+		void fail(Throwable throwable) {
+			synchronized (lock) {
+				if (cancelled || terminated) {
+					return;
+				}
+				terminated = true;
+				error = throwable;
+			}
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				// as per rule 3.9 of the reactive streams spec
+				this.cancel();
+				subscriber.onError(new IllegalArgumentException("Requested a non-positive number of events: " + n));
+				return;
+			}
+			synchronized (lock) {
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // saturate instead of overflowing
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			Integer id;
+			synchronized (lock) {
+				if (cancelled) {
+					return;
+				}
+				cancelled = true;
+				clearBuffer();
+				lock.notifyAll(); // wake up a blocked producer so it can give up
+				id = terminated ? null : subscriptionId;
+			}
+			if (id != null) {
+				unsubscribe(id);
+			}
+		}
+
+		// must hold lock
+		private void clearBuffer() {
+			buffer.clear();
+			bufferedUpdates.clear();
+			bufferedUpdateCount = 0;
+		}
+
+		private void unsubscribe(int id) {
+			channel.unsubscribeAsync(id).exceptionally(throwable -> {
+				LOGGER.log(System.Logger.Level.WARNING, "Failed to unsubscribe from subscription " + id, throwable);
+				return null;
+			});
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return; // someone else is delivering, and will see our work when they are done
+			}
+			int missed = 1;
+			do {
+				while (true) {
+					SubscribeEvent next;
+					Throwable failure = null;
+					synchronized (lock) {
+						if (cancelled) {
+							return;
+						}
+						if (error != null) {
+							// the subscription never started, so there is nothing buffered that could be lost here.
+							// (and onError doesn't need demand)
+							failure = error;
+							cancelled = true;
+							next = null;
+						} else {
+							if (demand == 0 || buffer.isEmpty()) {
+								break;
+							}
+							Slot slot = buffer.poll();
+							if (slot.event.eventType == SubscribeEvent.EventType.UPDATE) {
+								bufferedUpdateCount--;
+								if (slot.key != null) {
+									bufferedUpdates.remove(slot.key, slot);
+								}
+								lock.notifyAll(); // there is room again
+							}
+							if (demand != Long.MAX_VALUE) {
+								demand--;
+							}
+							next = slot.event;
+							if (next.eventType == SubscribeEvent.EventType.FAILURE || next.eventType == SubscribeEvent.EventType.FINISHED) {
+								// the channel has already forgotten the subscription, so there is nothing to unsubscribe from
+								terminated = true;
+								cancelled = true;
+								clearBuffer();
+							}
+						}
+					}
+
+					if (failure != null) {
+						subscriber.onError(failure);
+						return;
+					}
+					subscriber.onNext(next);
+					if (next.eventType == SubscribeEvent.EventType.FAILURE || next.eventType == SubscribeEvent.EventType.FINISHED) {
+						subscriber.onComplete();
+						return;
+					}
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package airlock;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timer wheel, used to time out requests which never got a response.
+ * <p>
+ * Scheduling and cancelling are both O(1), which matters because every single poke and subscription gets a deadline,
+ * and almost all of them are cancelled (because the response arrived in time).
+ * The price is precision: timeouts fire on the first tick after their deadline.
+ * </p>
+ * <p>
+ * All bookkeeping is done on a single daemon worker thread, which is started lazily on the first call to {@link TimerWheel#schedule}.
+ * The tasks themselves also run on that thread, so they should be short.
+ * </p>
+ */
+class TimerWheel {
+
+	private static final System.Logger LOGGER = System.getLogger(TimerWheel.class.getName());
+
+	private final long tickNanos;
+	private final Queue<Timeout>[] wheel;
+	private final int mask;
+
+	/**
+	 * Timeouts which have been scheduled but not yet placed in the wheel by the worker
+	 */
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+	private final String threadName;
+	private volatile Thread worker;
+	private volatile long startTime;
+
+	/**
+	 * @param tickDuration The resolution of the wheel
+	 * @param unit         The unit of the tick duration
+	 * @param wheelSize    The number of buckets in the wheel. Rounded up to a power of two.
+	 * @param threadName   The name of the worker thread
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	TimerWheel(long tickDuration, TimeUnit unit, int wheelSize, String threadName) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be positive");
+		}
+		if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+		}
+		int normalizedSize = Integer.highestOneBit(wheelSize);
+		if (normalizedSize < wheelSize) {
+			normalizedSize <<= 1;
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Queue[normalizedSize];
+		for (int i = 0; i < normalizedSize; i++) {
+			this.wheel[i] = new ArrayDeque<>();
+		}
+		this.mask = normalizedSize - 1;
+		this.threadName = threadName;
+	}
+
+	/**
+	 * Schedule a task to be run once the delay has passed
+	 *
+	 * @param task  The task to run
+	 * @param delay The delay after which to run the task
+	 * @param unit  The unit of the delay
+	 * @return a handle which can be used to cancel the task
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		this.ensureStarted();
+		long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+		Timeout timeout = new Timeout(task, deadline);
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	private void ensureStarted() {
+		if (worker != null) {
+			return;
+		}
+		synchronized (this) {
+			if (worker == null) {
+				startTime = System.nanoTime();
+				Thread thread = new Thread(this::run, threadName);
+				thread.setDaemon(true);
+				thread.start();
+				worker = thread;
+			}
+		}
+	}
+
+	private void run() {
+		long tick = 0;
+		while (true) {
+			long nextTickTime = (tick + 1) * tickNanos;
+			long sleepNanos = nextTickTime - (System.nanoTime() - startTime);
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					// we are a daemon thread that lives as long as the jvm, so there is no one to hand this to
+					continue;
+				}
+			}
+
+			this.transferNewTimeouts(tick);
+			this.expireBucket(tick);
+			tick++;
+		}
+	}
+
+	private void transferNewTimeouts(long currentTick) {
+		Timeout timeout;
+		while ((timeout = newTimeouts.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long deadlineTick = Math.max(timeout.deadline / tickNanos, currentTick);
+			timeout.remainingRounds = (deadlineTick - currentTick) / wheel.length;
+			wheel[(int) (deadlineTick & mask)].add(timeout);
+		}
+	}
+
+	private void expireBucket(long tick) {
+		Iterator<Timeout> bucket = wheel[(int) (tick & mask)].iterator();
+		while (bucket.hasNext()) {
+			Timeout timeout = bucket.next();
+			if (timeout.cancelled) {
+				bucket.remove();
+			} else if (timeout.remainingRounds <= 0) {
+				bucket.remove();
+				timeout.expire();
+			} else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+	/**
+	 * A handle to a scheduled task
+	 */
+	static final class Timeout {
+		private final Runnable task;
+		private final long deadline; // nanos since the start of the wheel
+		private long remainingRounds; // only touched by the worker
+		private volatile boolean cancelled = false;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Prevent the task from running, if it has not run yet. The timeout is removed from the wheel the next time its bucket comes around.
+		 */
+		void cancel() {
+			this.cancelled = true;
+		}
+
+		private void expire() {
+			try {
+				task.run();
+			} catch (Throwable throwable) {
+				LOGGER.log(System.Logger.Level.WARNING, "Encountered error while running timeout task", throwable);
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An http request, in a form that every {@link HttpTransport} can send
+ */
+public final class TransportRequest {
+
+	public final String method;
+	public final URL url;
+
+	/**
+	 * Extra request headers. The content type of the body is in {@link TransportRequest#contentType}, not here
+	 */
+	public final Map<String, String> headers;
+
+	/**
+	 * The body of the request, or null if it has none (i.e. a GET)
+	 */
+	@Nullable
+	public final byte[] body;
+
+	public final @Nullable String contentType;
+
+	private TransportRequest(String method, URL url, Map<String, String> headers, @Nullable byte[] body, @Nullable String contentType) {
+		this.method = requireNonNull(method, "Please provide a method");
+		this.url = requireNonNull(url, "Please provide a url");
+		this.headers = Collections.unmodifiableMap(headers);
+		this.body = body;
+		this.contentType = contentType;
+	}
+
+	public static TransportRequest get(URL url) {
+		return new TransportRequest("GET", url, Map.of(), null, null);
+	}
+
+	public static TransportRequest post(URL url, String contentType, String body) {
+		return new TransportRequest("POST", url, Map.of(), body.getBytes(StandardCharsets.UTF_8), contentType);
+	}
+
+	public static TransportRequest put(URL url, String contentType, String body) {
+		return new TransportRequest("PUT", url, Map.of(), body.getBytes(StandardCharsets.UTF_8), contentType);
+	}
+
+	/**
+	 * @return a copy of this request with the given header set
+	 */
+	public TransportRequest withHeader(String name, String value) {
+		Map<String, String> newHeaders = new LinkedHashMap<>(this.headers);
+		newHeaders.put(requireNonNull(name, "Please provide a header name"), requireNonNull(value, "Please provide a header value"));
+		return new TransportRequest(method, url, newHeaders, body, contentType);
+	}
+
+	@Override
+	public String toString() {
+		return "TransportRequest{" +
+				"method=" + method +
+				", url=" + url +
+				'}';
+	}
+}
@@ -0,0 +1,69 @@
+package airlock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The response to a {@link TransportRequest}. The body is read straight off of the network (unless it was sent with
+ * {@link HttpTransport#executeAsync(TransportRequest)}), so the response must be closed once it is no longer needed.
+ */
+public final class TransportResponse implements Closeable {
+
+	public final int code;
+
+	/**
+	 * The url of the request that this is the response to
+	 */
+	public final URL url;
+
+	public final Map<String, List<String>> headers;
+
+	/**
+	 * The length of the body in bytes, or -1 if it is not known up front
+	 */
+	public final long contentLength;
+
+	private final InputStream body;
+
+	public TransportResponse(int code, URL url, Map<String, List<String>> headers, long contentLength, InputStream body) {
+		this.code = code;
+		this.url = requireNonNull(url, "Please provide a url");
+		this.headers = requireNonNull(headers, "Please provide the headers");
+		this.contentLength = contentLength;
+		this.body = requireNonNull(body, "Please provide a body");
+	}
+
+	public boolean isSuccessful() {
+		return code >= 200 && code < 300;
+	}
+
+	/**
+	 * @return the body of the response. It can only be read once
+	 */
+	public InputStream body() {
+		return body;
+	}
+
+	@Override
+	public void close() {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// nothing useful left to do with the body anyways
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TransportResponse{" +
+				"code=" + code +
+				", url=" + url +
+				'}';
+	}
+}
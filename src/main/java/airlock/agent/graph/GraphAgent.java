@@ -3,6 +3,10 @@ package airlock.agent.graph;
 import airlock.AirlockChannel;
 import airlock.AirlockUtils;
 import airlock.PokeResponse;
+import airlock.ScryCache;
+import airlock.SubscribeEvent;
+import airlock.SubscriptionMultiplexer;
+import airlock.errors.AirlockException;
 import airlock.agent.Agent;
 import airlock.agent.graph.types.*;
 import airlock.agent.graph.types.content.GraphContent;
@@ -15,7 +19,6 @@ import airlock.errors.scry.ScryDataNotFoundException;
 import airlock.errors.scry.ScryFailureException;
 import airlock.errors.spider.SpiderFailureException;
 import airlock.types.ShipName;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.jetbrains.annotations.NotNull;
@@ -24,12 +27,22 @@ import org.jetbrains.annotations.Nullable;
 import java.math.BigInteger;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static airlock.AirlockUtils.*;
+import static java.util.Objects.requireNonNull;
 import static java.util.Objects.requireNonNullElse;
-import static java.util.stream.StreamSupport.stream;
 
 /**
  * This class represents the client side implementation of the %graph-store api,
@@ -37,7 +50,8 @@ import static java.util.stream.StreamSupport.stream;
  *
  * It does minimal state handling; it keeps track of the latest keys and graphs
  * based on the <code>graph-update</code> payload it receives,
- * but does not subscribe to "/all" by default.
+ * but does not subscribe to "/all" by default. See {@link GraphAgent#startLiveSync(Collection)} to keep it up to date
+ * through a subscription instead.
  */
 // todo landscape is moving away from subscribing to "/all" for some agents
 //  we should watch for what they do instead and see if we want to implement it
@@ -45,23 +59,131 @@ public class GraphAgent extends Agent {
 
 
 	/**
-	 * Resources of all known graphs
+	 * Resources of all known graphs. This is an immutable set which is replaced on every change,
+	 * so it can be handed out (and iterated) without any locking
 	 */
-	private final Set<Resource> keys;
+	private volatile Set<Resource> keys;
 
 	/**
-	 * Map of all known graphs keyed by Resource
+	 * Serializes changes to {@link GraphAgent#keys}
+	 */
+	private final Object keysLock = new Object();
+
+	/**
+	 * Map of all known graphs keyed by Resource.
+	 * The graphs themselves are mutable, and may only be touched while holding their resource's lock (see {@link GraphAgent#lockFor(Resource)})
 	 */
 	private final Map<Resource, Graph> graphs;
 
+	/**
+	 * The number of locks that the graphs are spread over. Two resources which share a lock can't be written at the same time,
+	 * but nothing ever waits on a lock that is only being read
+	 */
+	private static final int LOCK_STRIPES = 32;
+
+	/**
+	 * The per-resource locks. Updates may come in on many threads at once (i.e. from {@link GraphAgent#getGraphs(Collection, int)}),
+	 * and graphs may be read from even more
+	 */
+	private final ReadWriteLock[] graphLocks;
+
+	/**
+	 * Guards everything to do with live sync mode (see {@link GraphAgent#startLiveSync(Collection)})
+	 */
+	private final Object liveSyncLock = new Object();
+
+	/**
+	 * Whether live sync mode is on
+	 */
+	private boolean liveSyncEnabled = false; // guarded by liveSyncLock
+
+	/**
+	 * The %graph-store subscription of live sync mode. Null while it is off (or still being set up)
+	 */
+	private @Nullable SubscriptionMultiplexer.Registration liveSync; // guarded by liveSyncLock
+
+	/**
+	 * A graph which is being fetched by {@link GraphAgent#syncGraphs(Collection)}. The same graph may be fetched by more than one sync at once,
+	 * i.e. when live sync starts over while the previous run is still fetching, so this keeps track of all of them. Guarded by liveSyncLock
+	 */
+	private static final class PendingGraph {
+		/**
+		 * The diffs received since the first of the fetches was started. They are applied once the last one is done,
+		 * since any of the fetched graphs may have been read before the diffs happened
+		 */
+		final List<GraphUpdate> heldBack = new ArrayList<>();
+		int running = 0;
+		int started = 0;
+		/**
+		 * The newest fetch whose graph was applied, or 0 if none was (yet)
+		 */
+		int applied = 0;
+	}
+
+	/**
+	 * The graphs which are still being fetched by {@link GraphAgent#syncGraphs(Collection)}
+	 */
+	private final Map<Resource, PendingGraph> fetching = new HashMap<>(); // guarded by liveSyncLock
+
+	/**
+	 * The resources whose whole graph we have, and which live sync is keeping up to date
+	 */
+	private final Set<Resource> syncedResources = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The resources that live sync was started with, or null for every resource that the ship knows of.
+	 * Used to start over when the subscription is kicked
+	 */
+	private @Nullable Collection<Resource> liveSyncResources; // guarded by liveSyncLock
+
+	/**
+	 * Completes once live sync has subscribed and fetched every graph it was asked to sync
+	 */
+	private volatile CompletableFuture<Void> caughtUp = new CompletableFuture<>();
+
+	/**
+	 * Change listeners which get every change
+	 */
+	private final List<ListenerRegistration> globalListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Change listeners of a single resource (and maybe an index prefix), keyed by that resource
+	 */
+	private final Map<Resource, List<ListenerRegistration>> resourceListeners = new ConcurrentHashMap<>();
+
+	/**
+	 * How many graphs {@link GraphAgent#getGraphs(Collection)} fetches at once.
+	 * Matches the per host request limit of {@link airlock.ChannelPoolConfig#DEFAULT}
+	 */
+	public static final int DEFAULT_FETCH_CONCURRENCY = 8;
+
+	/**
+	 * Runs the fetches of {@link GraphAgent#getGraphs(Collection, int)}. Shared between all agents.
+	 * Its threads are daemons which go away on their own once they have been idle for a while, so it never needs to be shut down
+	 */
+	private static final ExecutorService FETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "airlock-graph-fetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * For what happens to live sync in the background, long after {@link GraphAgent#startLiveSync(Collection)} returned
+	 */
+	private static final System.Logger LOGGER = System.getLogger(GraphAgent.class.getName());
+
 	/**
 	 * Create a GraphAgent on a given channel
 	 * @param channel the channel to create the agent on
 	 */
 	public GraphAgent(AirlockChannel channel) {
 		super(channel);
-		this.keys = new HashSet<>();
-		this.graphs = new HashMap<>();
+		this.keys = Set.of();
+		this.graphs = new ConcurrentHashMap<>();
+		this.graphLocks = new ReadWriteLock[LOCK_STRIPES];
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			this.graphLocks[i] = new ReentrantReadWriteLock();
+		}
 		// adapting from new landscape api https://github.com/urbit/urbit/blob/1895e807fdccd669dd0b514dff1c07aa3bfe7449/pkg/interface/src/logic/api/graph.ts
 		// and also https://github.com/urbit/urbit/blob/51fd47e886092a842341df9da549f77442c56866/pkg/interface/src/types/graph-update.ts
 		// https://github.com/urbit/urbit/blob/master/pkg/interface/src/logic/reducers/graph-update.js
@@ -422,12 +544,14 @@ export const createPost = (
 	 * @throws AirlockRequestError
 	 */
 	public JsonElement joinGraph(Resource resource) throws SpiderFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
-		return this.viewAction("graph-join", map2json(Map.of(
+		JsonElement response = this.viewAction("graph-join", map2json(Map.of(
 				"join", Map.of(
 						"resource", resource,
 						"ship", resource.ship
 				)
 		)));
+		this.invalidateCachedScries(resource, true);
+		return response;
 	}
 
 
@@ -442,9 +566,11 @@ export const createPost = (
 	 */
 	public JsonElement deleteGraph(String name) throws SpiderFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
 		final var resource = GroupUtils.makeResource(this.channel.getShipName(), name);
-		return this.viewAction("graph-delete", map2json(Map.of(
+		JsonElement response = this.viewAction("graph-delete", map2json(Map.of(
 				"delete", resource
 		)));
+		this.invalidateCachedScries(resource, true);
+		return response;
 	}
 
 
@@ -458,7 +584,9 @@ export const createPost = (
 	 * @throws AirlockRequestError
 	 */
 	public JsonElement leaveGraph(Resource resource) throws SpiderFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
-		return this.viewAction("graph-leave", map2json(Map.of("leave", resource)));
+		JsonElement response = this.viewAction("graph-leave", map2json(Map.of("leave", resource)));
+		this.invalidateCachedScries(resource, true);
+		return response;
 	}
 
 	/*
@@ -512,13 +640,15 @@ export const createPost = (
 	 * @throws AirlockAuthenticationError
 	 */
 	public CompletableFuture<PokeResponse> addGraph(Resource resource, Graph graph, String mark) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
-		return this.storeAction(map2json(Map.of(
+		CompletableFuture<PokeResponse> future = this.storeAction(map2json(Map.of(
 				"add-graph", Map.of(
 						"resource", resource,
 						"graph", graph,
 						"mark", mark
 				)
 		)));
+		future.whenComplete((response, throwable) -> this.invalidateCachedScries(resource, true));
+		return future;
 	}
 
 
@@ -617,6 +747,8 @@ export const createPost = (
 		*/
 		markPending(new ArrayList<>(nodes.values()));
 		this.updateState(payload); // we are consuming our own update in this case
+		// whatever was cached for the resource is stale once the ship has the new nodes
+		future.whenComplete((response, throwable) -> this.invalidateCachedScries(resource, false));
 
 		return future;
 	}
@@ -632,12 +764,14 @@ export const createPost = (
 	 * @throws AirlockAuthenticationError
 	 */
 	public CompletableFuture<PokeResponse> removeNodes(Resource resource, List<String> indices) throws AirlockResponseError, AirlockRequestError, AirlockAuthenticationError {
-		return this.hookAction(resource.ship, map2json(Map.of(
+		CompletableFuture<PokeResponse> future = this.hookAction(resource.ship, map2json(Map.of(
 				"remove-nodes", Map.of(
 						"resource", resource,
 						"indices", indices
 				)
 		)));
+		future.whenComplete((response, throwable) -> this.invalidateCachedScries(resource, false));
+		return future;
 	}
 
 	/**
@@ -732,6 +866,395 @@ export const createPost = (
 
 
 
+	/**
+	 * Fetch many graphs at once, at most {@code maxConcurrent} at a time. Each graph is scried and decoded on a worker thread,
+	 * then applied to our state, just like {@link GraphAgent#getGraph(Resource)} does.
+	 * <p>
+	 * This returns right away. Every resource gets its own future, which completes with a snapshot of the graph as it is in our state
+	 * once it has been applied (see {@link GraphAgent#getGraphSnapshot(Resource)}), or fails with whatever the scry failed with.
+	 * A failure does not affect the other resources.
+	 * </p>
+	 *
+	 * @param resources     The resources of the graphs to fetch. Duplicates are only fetched once
+	 * @param maxConcurrent The maximum number of graphs to fetch at once
+	 * @return a future for each resource, in the order they were given
+	 */
+	public Map<Resource, CompletableFuture<Graph>> getGraphs(Collection<Resource> resources, int maxConcurrent) {
+		return this.fetchGraphs(resources, maxConcurrent, this::getGraphSnapshot, Collections.emptyMap());
+	}
+
+	/**
+	 * Fetch many graphs at once, see {@link GraphAgent#getGraphs(Collection, int)}
+	 *
+	 * @param result  What to complete a resource's future with, once its graph has been applied
+	 * @param pending The bookkeeping of the resources which are fetched to be synced. See {@link GraphAgent#syncGraphs(Collection)}
+	 */
+	private <T> Map<Resource, CompletableFuture<T>> fetchGraphs(Collection<Resource> resources, int maxConcurrent, Function<Resource, T> result, Map<Resource, PendingGraph> pending) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent must be at least 1");
+		}
+		Map<Resource, CompletableFuture<T>> results = new LinkedHashMap<>();
+		for (Resource resource : resources) {
+			results.put(resource, new CompletableFuture<>());
+		}
+		if (results.isEmpty()) {
+			return results;
+		}
+
+		// the concurrency limit is the number of workers taking fetches off of this queue. each one stops once the queue is empty
+		Queue<Map.Entry<Resource, CompletableFuture<T>>> queued = new ConcurrentLinkedQueue<>(results.entrySet());
+		Runnable worker = () -> {
+			Map.Entry<Resource, CompletableFuture<T>> next;
+			while ((next = queued.poll()) != null) {
+				Resource resource = next.getKey();
+				try {
+					this.fetchGraph(resource, pending.get(resource));
+					next.getValue().complete(result.apply(resource));
+				} catch (AirlockException | RuntimeException e) {
+					next.getValue().completeExceptionally(e);
+				}
+			}
+		};
+		for (int i = 0; i < Math.min(maxConcurrent, results.size()); i++) {
+			FETCH_EXECUTOR.execute(worker);
+		}
+
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * Fetch many graphs at once, {@link GraphAgent#DEFAULT_FETCH_CONCURRENCY} at a time. See {@link GraphAgent#getGraphs(Collection, int)}
+	 *
+	 * @param resources The resources of the graphs to fetch
+	 * @return a future for each resource
+	 */
+	public Map<Resource, CompletableFuture<Graph>> getGraphs(Collection<Resource> resources) {
+		return this.getGraphs(resources, DEFAULT_FETCH_CONCURRENCY);
+	}
+
+	/**
+	 * Fetch the keys, then every graph that they point to. See {@link GraphAgent#getGraphs(Collection, int)}
+	 *
+	 * @param maxConcurrent The maximum number of graphs to fetch at once
+	 * @return a future for each known resource
+	 * @throws ScryDataNotFoundException
+	 * @throws ScryFailureException
+	 * @throws AirlockAuthenticationError
+	 * @throws AirlockResponseError
+	 * @throws AirlockRequestError
+	 */
+	public Map<Resource, CompletableFuture<Graph>> syncAllGraphs(int maxConcurrent) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
+		this.getKeys();
+		return this.getGraphs(this.keys, maxConcurrent);
+	}
+
+	/**
+	 * Fetch the keys, then every graph that they point to, {@link GraphAgent#DEFAULT_FETCH_CONCURRENCY} at a time
+	 *
+	 * @return a future for each known resource
+	 */
+	public Map<Resource, CompletableFuture<Graph>> syncAllGraphs() throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
+		return this.syncAllGraphs(DEFAULT_FETCH_CONCURRENCY);
+	}
+
+	/**
+	 * @param pending If the graph is fetched to be synced, the bookkeeping of its sync
+	 */
+	private void fetchGraph(Resource resource, @Nullable PendingGraph pending) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
+		int fetch = 0;
+		if (pending != null) {
+			synchronized (liveSyncLock) {
+				fetch = ++pending.started;
+			}
+		}
+		// decoded straight off of the response, since a whole graph is exactly the kind of payload where a json tree is wasteful
+		GraphUpdate update;
+		try {
+			update = this.channel.scryRequest("graph-store", "/graph/" + resource.urlForm(), GraphUpdateDecoder.INSTANCE);
+		} catch (AirlockException | RuntimeException e) {
+			// the diffs that were held back for it still have to be applied
+			this.finishFetch(resource, null, pending, fetch);
+			throw e;
+		}
+		this.finishFetch(resource, update, pending, fetch);
+	}
+
+	/**
+	 * Apply a fetched graph. If it was fetched to be synced and it is the last fetch of the graph that is still running,
+	 * this is followed by the diffs that live sync held back in the meantime.
+	 *
+	 * @param resource The resource of the graph
+	 * @param update   The fetched graph, or null if the fetch failed
+	 * @param pending  The bookkeeping of the graph's sync, or null if it wasn't fetched to be synced
+	 * @param fetch    Which of the sync's fetches this was, in the order they were sent
+	 */
+	private void finishFetch(Resource resource, @Nullable GraphUpdate update, @Nullable PendingGraph pending, int fetch) {
+		// the resource's lock is taken first, so that diffs which arrive once the held back ones are taken out of `fetching`
+		// can't be applied before them. the live sync lock is only held for as long as it takes to take them out
+		Lock lock = this.lockFor(resource).writeLock();
+		lock.lock();
+		try {
+			boolean applyGraph = update != null;
+			List<GraphUpdate> missed = null;
+			if (pending != null) {
+				synchronized (liveSyncLock) {
+					if (update != null) {
+						// a graph that was read before the one that is already applied may be missing diffs which aren't held back anymore
+						// (i.e. ones from before a kick), so it must not replace it
+						applyGraph = fetch > pending.applied;
+						if (applyGraph) {
+							pending.applied = fetch;
+						}
+					}
+					if (--pending.running == 0) {
+						fetching.remove(resource, pending);
+						missed = pending.heldBack;
+						if (pending.applied != 0 && liveSyncEnabled) {
+							syncedResources.add(resource);
+						}
+					}
+				}
+			}
+			if (applyGraph) {
+				this.applyUpdate(update);
+			}
+			if (missed != null) {
+				missed.forEach(this::applyUpdate);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Turns on live sync mode, in which our state is kept up to date by a subscription to %graph-store's "/updates",
+	 * rather than by polling (i.e. with {@link GraphAgent#getNewest(Resource, int)}).
+	 * Every diff is applied as it comes in, exactly like our own updates are.
+	 * <p>
+	 * Once the subscription is up, the graphs of the given resources are fetched (see {@link GraphAgent#syncGraphs(Collection)}).
+	 * Diffs for a graph that arrive while it is being fetched are held back and applied after it, so nothing falls in between.
+	 * Graphs which are added on the ship while live sync is on are synced automatically.
+	 * </p>
+	 * <p>
+	 * If the ship kicks the subscription, live sync resubscribes and fetches every graph it was asked to sync again
+	 * (along with those added since), since diffs may have been missed in the meantime. Calling this while live sync is already on does nothing.
+	 * </p>
+	 *
+	 * @param resources The resources to sync, or null to sync every resource that the ship knows of
+	 * @return a future which completes once we are caught up, i.e. subscribed and done fetching.
+	 * Graphs which could not be fetched are not synced, which is visible through {@link GraphAgent#getSyncedResources()}.
+	 * If live sync could not be started at all, the future fails with the reason and live sync is left off
+	 */
+	public CompletableFuture<Void> startLiveSync(@Nullable Collection<Resource> resources) {
+		CompletableFuture<Void> caughtUp;
+		synchronized (liveSyncLock) {
+			if (liveSyncEnabled) {
+				return this.caughtUp;
+			}
+			liveSyncEnabled = true;
+			liveSyncResources = resources == null ? null : List.copyOf(resources);
+			// fresh unless live sync has run before, in which case stopping it left a fresh one behind
+			caughtUp = this.caughtUp;
+		}
+
+		this.channel.getSubscriptionMultiplexer()
+				.subscribeAsync(this.channel.getShipName(), "graph-store", "/updates", GraphUpdateDecoder.INSTANCE, this::handleLiveUpdate)
+				// async, because fetching the keys blocks and this would otherwise run on the subscription's dispatch queue
+				.thenComposeAsync(registration -> {
+					synchronized (liveSyncLock) {
+						if (!liveSyncEnabled || this.caughtUp != caughtUp) {
+							// stopped while we were subscribing
+							registration.close();
+							return CompletableFuture.completedFuture(null);
+						}
+						this.liveSync = registration;
+					}
+					if (resources != null) {
+						return this.syncGraphs(resources);
+					}
+					try {
+						this.getKeys();
+					} catch (AirlockException e) {
+						return CompletableFuture.failedFuture(e);
+					}
+					return this.syncGraphs(this.keys);
+				})
+				.whenComplete((ignored, throwable) -> {
+					if (throwable != null) {
+						// failed before stopping, which would otherwise fail it with a CancellationException
+						caughtUp.completeExceptionally(throwable);
+						this.stopLiveSync(caughtUp);
+					} else {
+						caughtUp.complete(null);
+					}
+				});
+
+		return caughtUp;
+	}
+
+	/**
+	 * Turns on live sync mode for every resource that the ship knows of. See {@link GraphAgent#startLiveSync(Collection)}
+	 *
+	 * @return a future which completes once we are caught up
+	 */
+	public CompletableFuture<Void> startLiveSync() {
+		return this.startLiveSync(null);
+	}
+
+	/**
+	 * Fetch the graphs of the given resources. While live sync is on, they are marked as synced once they have been applied,
+	 * and the diffs which arrive for them in the meantime are held back until then.
+	 *
+	 * @param resources The resources to sync
+	 * @return a future which completes once every fetch is done, whether it succeeded or not
+	 */
+	public CompletableFuture<Void> syncGraphs(Collection<Resource> resources) {
+		// a graph that another sync is still fetching is fetched again all the same, since that one may have been read too long ago
+		// (i.e. before a kick). the diffs are held back until both are done
+		Map<Resource, PendingGraph> pending = new HashMap<>();
+		synchronized (liveSyncLock) {
+			for (Resource resource : resources) {
+				if (!pending.containsKey(resource)) {
+					PendingGraph graph = fetching.computeIfAbsent(resource, ignored -> new PendingGraph());
+					graph.running++;
+					pending.put(resource, graph);
+				}
+			}
+		}
+		// nobody looks at the graphs, so don't bother copying them
+		CompletableFuture<?>[] fetches = this.fetchGraphs(resources, DEFAULT_FETCH_CONCURRENCY, resource -> null, pending).values().stream()
+				.map(future -> future.handle((graph, throwable) -> null))
+				.toArray(CompletableFuture[]::new);
+		return CompletableFuture.allOf(fetches);
+	}
+
+	/**
+	 * Turns off live sync mode, unsubscribing from %graph-store. Our state is kept, but it is no longer kept up to date.
+	 *
+	 * @return a future which completes once the ship has accepted the unsubscribe
+	 */
+	public CompletableFuture<Void> stopLiveSync() {
+		return this.stopLiveSync(null);
+	}
+
+	/**
+	 * @param onlyIf If not null, only stop if this is still the caught up future of the current run of live sync
+	 */
+	private CompletableFuture<Void> stopLiveSync(@Nullable CompletableFuture<Void> onlyIf) {
+		SubscriptionMultiplexer.Registration registration;
+		CompletableFuture<Void> caughtUp;
+		synchronized (liveSyncLock) {
+			if (onlyIf != null && this.caughtUp != onlyIf) {
+				// a later run, which isn't ours to stop
+				return CompletableFuture.completedFuture(null);
+			}
+			liveSyncEnabled = false;
+			liveSyncResources = null;
+			registration = this.liveSync;
+			this.liveSync = null;
+			syncedResources.clear();
+			// the next start gets a fresh future, rather than one that already looks caught up (or failed)
+			caughtUp = this.caughtUp;
+			this.caughtUp = new CompletableFuture<>();
+		}
+		// if we were still catching up, whoever is waiting finds out that it isn't going to happen
+		caughtUp.completeExceptionally(new CancellationException("Live sync was stopped"));
+		if (registration == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return registration.unsubscribe();
+	}
+
+	/**
+	 * @return whether live sync is on, and has caught up with the ship
+	 */
+	public boolean isCaughtUp() {
+		CompletableFuture<Void> caughtUp = this.caughtUp;
+		return caughtUp.isDone() && !caughtUp.isCompletedExceptionally() && this.isLiveSyncEnabled();
+	}
+
+	/**
+	 * @return a future which completes once live sync has caught up. Replaced every time live sync stops or is restarted,
+	 * and failed with a {@link CancellationException} if live sync is stopped before it catches up
+	 */
+	public CompletableFuture<Void> getCaughtUpFuture() {
+		return this.caughtUp;
+	}
+
+	public boolean isLiveSyncEnabled() {
+		synchronized (liveSyncLock) {
+			return liveSyncEnabled;
+		}
+	}
+
+	/**
+	 * @return the resources which live sync is keeping up to date
+	 */
+	public Set<Resource> getSyncedResources() {
+		return Collections.unmodifiableSet(syncedResources);
+	}
+
+	/**
+	 * Handles the events of the live sync subscription. Runs on the subscription's dispatch queue, so diffs are applied in order
+	 */
+	private void handleLiveUpdate(SubscribeEvent event) {
+		switch (event.eventType) {
+			case UPDATE:
+				GraphUpdate update = event.getDecodedUpdate(GraphUpdate.class);
+				if (update == null) {
+					return;
+				}
+				this.invalidateCachedScries(update);
+				Resource resource = resourceOf(update);
+				synchronized (liveSyncLock) {
+					PendingGraph pending = resource == null ? null : fetching.get(resource);
+					if (pending != null) {
+						pending.heldBack.add(update);
+						return;
+					}
+				}
+				this.applyUpdate(update);
+				// a whole graph is as synced as it gets. (events may still trickle in after live sync was stopped)
+				synchronized (liveSyncLock) {
+					if (update instanceof GraphUpdate.AddGraph && liveSyncEnabled) {
+						syncedResources.add(resource);
+					} else if (update instanceof GraphUpdate.RemoveGraph) {
+						syncedResources.remove(resource);
+					}
+				}
+				break;
+			case FAILURE:
+				LOGGER.log(System.Logger.Level.WARNING, "Live sync subscription failed: " + event.failureMessage);
+				this.stopLiveSync();
+				break;
+			case FINISHED:
+				// eyre kicks subscriptions that fall too far behind. we may have missed diffs, so start over,
+				// with everything we were asked to sync (and not just what was synced so far, since some graphs may still have been fetching).
+				// resources that were added on the ship since then are in the keys when syncing everything, and synced anyways otherwise
+				Collection<Resource> resync;
+				synchronized (liveSyncLock) {
+					if (!liveSyncEnabled) {
+						return;
+					}
+					if (liveSyncResources == null) {
+						resync = null;
+					} else {
+						Set<Resource> union = new LinkedHashSet<>(liveSyncResources);
+						union.addAll(syncedResources);
+						resync = union;
+					}
+					liveSyncEnabled = false;
+					this.liveSync = null;
+					syncedResources.clear();
+					// whoever waits on the old future is told once the old run is done fetching. the new run gets its own
+					this.caughtUp = new CompletableFuture<>();
+				}
+				LOGGER.log(System.Logger.Level.INFO, "Live sync subscription was kicked, resubscribing");
+				this.startLiveSync(resync);
+				break;
+		}
+	}
+
 	/**
 	 * Get `n` newest nodes on a given graph.
 	 * @param resource The resource to get the newest nodes from
@@ -745,8 +1268,9 @@ export const createPost = (
 	 */
 	public void getNewest(Resource resource, int count, Index index) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
 		// todo document this better. I don't even know what it does myself
-		final var data = this.channel.scryRequest("graph-store", "/newest/" + resource.urlForm() + "/" + count + index.asString());
-		this.updateState(data.getAsJsonObject().getAsJsonObject("graph-update"));
+		// chat histories can be huge, so the update is decoded straight off of the response instead of through a json tree
+		final var update = this.channel.scryRequest("graph-store", "/newest/" + resource.urlForm() + "/" + count + index.asString(), GraphUpdateDecoder.INSTANCE);
+		this.applyUpdate(update);
 		// thing to do: look at example payload and how it is used
 		// there is only one usage, which is here: https://github.com/urbit/urbit/blob/master/pkg/interface/src/views/apps/chat/ChatResource.tsx#L42
 	}
@@ -766,8 +1290,8 @@ export const createPost = (
   }
 */
 	public void getOlderSiblings(Resource resource, int count, Index index) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
-		final var data = this.channel.scryRequest("graph-store", "/node-siblings/older/" + resource.urlForm() + "/" + count + index.asString());
-		this.updateState(data.getAsJsonObject().getAsJsonObject("graph-update"));
+		final var update = this.channel.scryRequest("graph-store", "/node-siblings/older/" + resource.urlForm() + "/" + count + index.asString(), GraphUpdateDecoder.INSTANCE);
+		this.applyUpdate(update);
 	}
 
 	/*
@@ -783,8 +1307,8 @@ export const createPost = (
 	*/
 
 	public void getYoungerSiblings(Resource resource, int count, Index index) throws ScryDataNotFoundException, ScryFailureException, AirlockAuthenticationError, AirlockResponseError, AirlockRequestError {
-		final var data = this.channel.scryRequest("graph-store", "/node-siblings/younger/" + resource.urlForm() + "/" + count + index.asString());
-		this.updateState(data.getAsJsonObject().getAsJsonObject("graph-update"));
+		final var update = this.channel.scryRequest("graph-store", "/node-siblings/younger/" + resource.urlForm() + "/" + count + index.asString(), GraphUpdateDecoder.INSTANCE);
+		this.applyUpdate(update);
 	}
 
 	/*
@@ -848,59 +1372,83 @@ export const createPost = (
 	// could also be called `reduce`
 	private void updateState(@NotNull JsonObject graphUpdate) {
 		// expects the object associated with the key "graph-update"
-		System.out.println("Debug: Got graphUpdate obj:");
-		System.out.println(graphUpdate);
-		if (graphUpdate.has("keys")) {
-			JsonArray keys = graphUpdate.get("keys").getAsJsonArray();
-			this.keys.clear();
-			/*
-			 * stream(keys) => for each key:
-			 * map(keyObj -> make Resource.class)
-			 * then, collect to a single list
-			 * then, set this.keys to that list
-			 */
-			this.keys.addAll(
-					stream(keys.spliterator(), false)
-							.map(resourceJSON -> AirlockUtils.gson.fromJson(resourceJSON, Resource.class))
-							.collect(Collectors.toSet())
-			);
-		} else if (graphUpdate.has("add-graph")) {
-
-			JsonObject addGraph = graphUpdate.get("add-graph").getAsJsonObject();
-			Resource resource = gson.fromJson(addGraph.get("resource"), Resource.class);
-			Graph newGraph = gson.fromJson(addGraph.get("graph"), Graph.class);
+		this.applyUpdate(GraphUpdateDecoder.INSTANCE.fromJsonTree(graphUpdate));
+	}
 
-			Graph processedNewGraph = new Graph();
+	/**
+	 * Apply an already decoded graph update to our state
+	 *
+	 * @param graphUpdate The update to apply
+	 */
+	private void applyUpdate(@NotNull GraphUpdate graphUpdate) {
+		List<GraphChange> changes = new ArrayList<>();
+		Resource resource = resourceOf(graphUpdate);
+		if (resource == null) {
+			// keys and tags don't touch any graph
+			this.reduce(graphUpdate, changes);
+			this.notifyListeners(changes);
+			return;
+		}
+		Lock lock = this.lockFor(resource).writeLock();
+		lock.lock();
+		try {
+			this.reduce(graphUpdate, changes);
+			// still under the lock, so that listeners see the changes of a resource in order, and the graph as of each change
+			this.notifyListeners(changes);
+		} finally {
+			lock.unlock();
+		}
+	}
 
+	// the reducer itself. only ever called while holding the write lock of the update's resource.
+	// everything that actually changed is added to `changes`
+	private void reduce(@NotNull GraphUpdate graphUpdate, List<GraphChange> changes) {
+		if (graphUpdate instanceof GraphUpdate.Keys) {
+			Set<Resource> newKeys = Set.copyOf(((GraphUpdate.Keys) graphUpdate).keys);
+			boolean changed;
+			synchronized (keysLock) {
+				changed = !this.keys.equals(newKeys);
+				this.keys = newKeys;
+			}
+			if (changed) {
+				changes.add(new GraphChange.KeysChanged(newKeys));
+			}
+		} else if (graphUpdate instanceof GraphUpdate.AddGraph) {
+			GraphUpdate.AddGraph addGraph = (GraphUpdate.AddGraph) graphUpdate;
+			Resource resource = addGraph.resource;
 
 			// it seems like all it does is ensure all childrenNodes have at least a nonnull
 			// `children` property that is init with an empty graph
-			newGraph.forEach((index, node) -> {
-				node.ensureAllChildrenNonEmpty();
-				processedNewGraph.put(index, node);
-			});
+			addGraph.graph.values().forEach(Node::ensureAllChildrenNonEmpty);
+
+			// the graph iterates from the newest node down, so putting the nodes one by one would insert each at the front.
+			// putAll loads the whole (sorted) graph in one go instead
+			Graph processedNewGraph = new Graph();
+			processedNewGraph.putAll(addGraph.graph);
 
 			this.graphs.put(resource, processedNewGraph);
-			this.keys.add(resource);
+			changes.add(new GraphChange.GraphAdded(resource, processedNewGraph));
+			if (this.addKey(resource)) {
+				changes.add(new GraphChange.KeysChanged(this.keys));
+			}
 
-		} else if (graphUpdate.has("remove-graph")) {
+		} else if (graphUpdate instanceof GraphUpdate.RemoveGraph) {
 
-			JsonObject removeGraphObj = graphUpdate.get("remove-graph").getAsJsonObject();
-			Resource resource = gson.fromJson(removeGraphObj, Resource.class);
+			Resource resource = ((GraphUpdate.RemoveGraph) graphUpdate).resource;
 
 			if (!this.graphs.containsKey(resource)) {
-				System.out.println("Warning: Tried to remove non-existent graph");
+				LOGGER.log(System.Logger.Level.WARNING, "Tried to remove non-existent graph " + resource);
 			} else {
-				this.keys.remove(resource);
 				this.graphs.remove(resource);
+				changes.add(new GraphChange.GraphRemoved(resource));
+				if (this.removeKey(resource)) {
+					changes.add(new GraphChange.KeysChanged(this.keys));
+				}
 			}
 
-		} else if (graphUpdate.has("add-nodes")) {
-			JsonObject addNodesObj = graphUpdate.getAsJsonObject("add-nodes");
-			JsonObject nodesObj = addNodesObj.getAsJsonObject("nodes");
-			Resource resource = gson.fromJson(addNodesObj.getAsJsonObject("resource"), Resource.class);
-
-			System.out.println("Debug: Adding nodes");
+		} else if (graphUpdate instanceof GraphUpdate.AddNodes) {
+			GraphUpdate.AddNodes addNodes = (GraphUpdate.AddNodes) graphUpdate;
+			Resource resource = addNodes.resource;
 
 			/*
 			// I think that translating if (!this.graphs) { return; } as the following code is erroneus
@@ -914,60 +1462,376 @@ export const createPost = (
 				this.graphs.put(resource, new Graph());
 			}
 
-			this.keys.add(resource);
+			boolean keysChanged = this.addKey(resource);
 
-			nodesObj.entrySet().forEach(indexNodeEntry -> {
-				// note: landscape is more flexible in regards to malformed index strings.
-				// i.e., if an index doesn't parse it just stops parsing further entries
-				// and returns without fanfare.
-				// however, the behavior here is to just completely halt execution and throw an exception
-				// when the BigInt parsing inevitably fails
-				Index index = Index.fromString(indexNodeEntry.getKey());
+			// note: landscape is more flexible in regards to malformed index strings.
+			// i.e., if an index doesn't parse it just stops parsing further entries
+			// and returns without fanfare.
+			// however, the behavior here is to just completely halt decoding and throw an exception
+			// when the BigInt parsing inevitably fails
+			// N.B: NodeMap keeps the order the nodes were sent in, so parents are added before their children
+			NodeMap added = new NodeMap();
+			addNodes.nodes.forEach((index, node) -> {
 				if (index.isEmpty()) {
 					return;
 				}
-				JsonObject nodeObj = indexNodeEntry.getValue().getAsJsonObject();
-				Node node = gson.fromJson(nodeObj, Node.class);
 				this.graphs.get(resource).addNode(index, node);
+				added.put(index, node);
 			});
-		} else if (graphUpdate.has("remove-nodes")) {
+			if (!added.isEmpty()) {
+				changes.add(new GraphChange.NodesAdded(resource, added));
+			}
+			if (keysChanged) {
+				changes.add(new GraphChange.KeysChanged(this.keys));
+			}
+		} else if (graphUpdate instanceof GraphUpdate.RemoveNodes) {
 			// indices != index.
 			// index = "/1767324682374638723487987324"
 			// indices = "/1767324682374638723487987324/1/4"
 			// since index is a List<BigInteger>,
 			// `indices` would be List<List<BigInteger>>
 			// List{BitInt(1767324682374638723487987324), BigInt(1), BigInt(4)}
-			JsonObject removeNodesObj = graphUpdate.getAsJsonObject("remove-nodes");
-			JsonArray indicesObj = removeNodesObj.getAsJsonArray("indices");
-			List<Index> indices =
-					stream(indicesObj.spliterator(), false)
-							.map(indexObj -> Index.fromString(indexObj.getAsString()))
-							.collect(Collectors.toList());
-
-
-			Resource resource = gson.fromJson(removeNodesObj.getAsJsonObject("resource"), Resource.class);
+			GraphUpdate.RemoveNodes removeNodes = (GraphUpdate.RemoveNodes) graphUpdate;
+			Resource resource = removeNodes.resource;
 			if (!this.graphs.containsKey(resource)) {
 				return;
 			}
 
-			for (Index index : indices) {
+			List<Index> removed = new ArrayList<>();
+			for (Index index : removeNodes.indices) {
 				if (index.isEmpty()) {
-					System.out.println("Warning, encountered empty index: " + index);
-					return;
+					LOGGER.log(System.Logger.Level.WARNING, "Encountered empty index in remove-nodes for " + resource);
+					break;
 				}
 				this.graphs.get(resource).removeNode(index);
+				removed.add(index);
+			}
+			if (!removed.isEmpty()) {
+				changes.add(new GraphChange.NodesRemoved(resource, removed));
 			}
 
 		} else {
-			System.out.println("Warning: encountered unknown graph-update payload. Ignoring");
+			LOGGER.log(System.Logger.Level.WARNING, "Encountered unknown graph-update payload, ignoring it");
 		}
 		// no further code should be written here because it would be skipped by early exits
 	}
 
+	/**
+	 * Throw away the scry results cached by the channel (see {@link AirlockChannel#enableScryCache(airlock.ScryCacheConfig)})
+	 * which are made stale by the given update. If you are subscribed to %graph-store yourself,
+	 * call this with every `graph-update` diff you receive so that later scries see the change.
+	 * Does nothing if the channel has no scry cache.
+	 *
+	 * @param graphUpdate The update that was received
+	 */
+	public void invalidateCachedScries(@NotNull GraphUpdate graphUpdate) {
+		if (graphUpdate instanceof GraphUpdate.Keys) {
+			this.invalidateCachedScries(null, true);
+		} else if (graphUpdate instanceof GraphUpdate.AddGraph || graphUpdate instanceof GraphUpdate.RemoveGraph) {
+			this.invalidateCachedScries(resourceOf(graphUpdate), true);
+		} else if (graphUpdate instanceof GraphUpdate.AddNodes || graphUpdate instanceof GraphUpdate.RemoveNodes) {
+			this.invalidateCachedScries(resourceOf(graphUpdate), false);
+		} else {
+			// tags and tag queries
+			ScryCache cache = this.channel.getScryCache();
+			if (cache != null) {
+				cache.invalidate("graph-store", "/tags");
+				cache.invalidate("graph-store", "/tag-queries");
+			}
+		}
+	}
+
+	/**
+	 * @param resource    The resource whose graph changed, if any
+	 * @param keysChanged Whether the set of known graphs changed
+	 */
+	private void invalidateCachedScries(@Nullable Resource resource, boolean keysChanged) {
+		ScryCache cache = this.channel.getScryCache();
+		if (cache == null) {
+			return;
+		}
+		if (keysChanged) {
+			cache.invalidate("graph-store", "/keys");
+		}
+		if (resource != null) {
+			// every scry which reads (a part of) the resource's graph
+			String urlForm = resource.urlForm();
+			cache.invalidate("graph-store", "/graph/" + urlForm);
+			cache.invalidate("graph-store", "/newest/" + urlForm);
+			cache.invalidate("graph-store", "/node-siblings/older/" + urlForm);
+			cache.invalidate("graph-store", "/node-siblings/younger/" + urlForm);
+			cache.invalidate("graph-store", "/graph-subset/" + urlForm);
+		}
+	}
+
+	/**
+	 * @return the resource whose graph the update changes, or null if it does not change a graph
+	 */
+	private static @Nullable Resource resourceOf(GraphUpdate graphUpdate) {
+		if (graphUpdate instanceof GraphUpdate.AddGraph) {
+			return ((GraphUpdate.AddGraph) graphUpdate).resource;
+		} else if (graphUpdate instanceof GraphUpdate.RemoveGraph) {
+			return ((GraphUpdate.RemoveGraph) graphUpdate).resource;
+		} else if (graphUpdate instanceof GraphUpdate.AddNodes) {
+			return ((GraphUpdate.AddNodes) graphUpdate).resource;
+		} else if (graphUpdate instanceof GraphUpdate.RemoveNodes) {
+			return ((GraphUpdate.RemoveNodes) graphUpdate).resource;
+		}
+		return null;
+	}
+
+	private ReadWriteLock lockFor(Resource resource) {
+		return graphLocks[Math.floorMod(resource.hashCode(), LOCK_STRIPES)];
+	}
+
+	/**
+	 * @return whether the key was new
+	 */
+	private boolean addKey(Resource resource) {
+		synchronized (keysLock) {
+			if (this.keys.contains(resource)) {
+				return false;
+			}
+			Set<Resource> newKeys = new HashSet<>(this.keys);
+			newKeys.add(resource);
+			this.keys = Collections.unmodifiableSet(newKeys);
+			return true;
+		}
+	}
+
+	/**
+	 * @return whether the key was known
+	 */
+	private boolean removeKey(Resource resource) {
+		synchronized (keysLock) {
+			if (!this.keys.contains(resource)) {
+				return false;
+			}
+			Set<Resource> newKeys = new HashSet<>(this.keys);
+			newKeys.remove(resource);
+			this.keys = Collections.unmodifiableSet(newKeys);
+			return true;
+		}
+	}
+
+	/**
+	 * Listen to every change to our state.
+	 * <p>
+	 * Listeners are called on the thread which applied the change, while it holds the lock of the changed resource.
+	 * So they see the changes of each resource in order, and may read its graph (i.e. with {@link GraphAgent#readGraph(Resource, Function)}),
+	 * but they must be quick, and must not wait on anything that needs to update the same resource.
+	 * The graphs and nodes carried by a change are copies, which the listener is free to keep.
+	 * </p>
+	 *
+	 * @param listener The listener
+	 * @return a handle which removes the listener again
+	 */
+	public ListenerRegistration addChangeListener(Consumer<GraphChange> listener) {
+		ListenerRegistration registration = new ListenerRegistration(null, null, listener);
+		globalListeners.add(registration);
+		return registration;
+	}
+
+	/**
+	 * Listen to the changes to a single resource's graph. See {@link GraphAgent#addChangeListener(Consumer)}
+	 *
+	 * @param resource The resource to listen to
+	 * @param listener The listener
+	 * @return a handle which removes the listener again
+	 */
+	public ListenerRegistration addChangeListener(Resource resource, Consumer<GraphChange> listener) {
+		return this.addResourceListener(new ListenerRegistration(requireNonNull(resource, "Please provide a resource"), null, listener));
+	}
+
+	/**
+	 * Listen to the changes to the nodes under an index of a single resource's graph, i.e. the replies to a post.
+	 * Added and removed nodes are narrowed down to the ones at, under, or above the prefix (since replacing or removing
+	 * an ancestor affects everything under it). Changes to the graph as a whole are passed on as they are.
+	 * See {@link GraphAgent#addChangeListener(Consumer)}
+	 *
+	 * @param resource The resource to listen to
+	 * @param prefix   The index of the node whose subtree to listen to
+	 * @param listener The listener
+	 * @return a handle which removes the listener again
+	 */
+	public ListenerRegistration addChangeListener(Resource resource, Index prefix, Consumer<GraphChange> listener) {
+		return this.addResourceListener(new ListenerRegistration(requireNonNull(resource, "Please provide a resource"), requireNonNull(prefix, "Please provide an index prefix"), listener));
+	}
+
+	private ListenerRegistration addResourceListener(ListenerRegistration registration) {
+		resourceListeners.computeIfAbsent(registration.resource, r -> new CopyOnWriteArrayList<>()).add(registration);
+		return registration;
+	}
+
+	private void notifyListeners(List<GraphChange> changes) {
+		for (GraphChange reduced : changes) {
+			Resource changedResource = resourceOf(reduced);
+			if (globalListeners.isEmpty() && (changedResource == null || !resourceListeners.containsKey(changedResource))) {
+				continue;
+			}
+			// the graphs and nodes of a change are part of our state, and keep changing with it. listeners get a copy that they may keep
+			GraphChange change = copyOf(reduced);
+			for (ListenerRegistration registration : globalListeners) {
+				registration.deliver(change);
+			}
+
+			List<ListenerRegistration> listeners = changedResource == null ? null : resourceListeners.get(changedResource);
+			if (listeners == null) {
+				continue;
+			}
+			for (ListenerRegistration registration : listeners) {
+				GraphChange narrowed = registration.prefix == null ? change : narrow(change, registration.prefix);
+				if (narrowed != null) {
+					registration.deliver(narrowed);
+				}
+			}
+		}
+	}
+
+	private static GraphChange copyOf(GraphChange change) {
+		if (change instanceof GraphChange.NodesAdded) {
+			GraphChange.NodesAdded nodesAdded = (GraphChange.NodesAdded) change;
+			NodeMap copies = new NodeMap();
+			nodesAdded.nodes.forEach((index, node) -> copies.put(index, node.deepCopy()));
+			return new GraphChange.NodesAdded(nodesAdded.resource, copies);
+		} else if (change instanceof GraphChange.GraphAdded) {
+			GraphChange.GraphAdded graphAdded = (GraphChange.GraphAdded) change;
+			return new GraphChange.GraphAdded(graphAdded.resource, graphAdded.graph.deepCopy());
+		}
+		// the others don't carry any graphs
+		return change;
+	}
+
+	private static @Nullable Resource resourceOf(GraphChange change) {
+		if (change instanceof GraphChange.NodesAdded) {
+			return ((GraphChange.NodesAdded) change).resource;
+		} else if (change instanceof GraphChange.NodesRemoved) {
+			return ((GraphChange.NodesRemoved) change).resource;
+		} else if (change instanceof GraphChange.GraphAdded) {
+			return ((GraphChange.GraphAdded) change).resource;
+		} else if (change instanceof GraphChange.GraphRemoved) {
+			return ((GraphChange.GraphRemoved) change).resource;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the part of the change which affects the nodes under the prefix, or null if it does not affect them
+	 */
+	private static @Nullable GraphChange narrow(GraphChange change, Index prefix) {
+		if (change instanceof GraphChange.NodesAdded) {
+			GraphChange.NodesAdded nodesAdded = (GraphChange.NodesAdded) change;
+			NodeMap affected = new NodeMap();
+			nodesAdded.nodes.forEach((index, node) -> {
+				if (index.startsWith(prefix) || prefix.startsWith(index)) {
+					affected.put(index, node);
+				}
+			});
+			return affected.isEmpty() ? null : new GraphChange.NodesAdded(nodesAdded.resource, affected);
+		} else if (change instanceof GraphChange.NodesRemoved) {
+			GraphChange.NodesRemoved nodesRemoved = (GraphChange.NodesRemoved) change;
+			List<Index> affected = new ArrayList<>();
+			for (Index index : nodesRemoved.indices) {
+				if (index.startsWith(prefix) || prefix.startsWith(index)) {
+					affected.add(index);
+				}
+			}
+			return affected.isEmpty() ? null : new GraphChange.NodesRemoved(nodesRemoved.resource, affected);
+		}
+		return change;
+	}
+
+	/**
+	 * A change listener's handle
+	 */
+	public final class ListenerRegistration implements AutoCloseable {
+		private final @Nullable Resource resource;
+		private final @Nullable Index prefix;
+		private final Consumer<GraphChange> listener;
+
+		private ListenerRegistration(@Nullable Resource resource, @Nullable Index prefix, Consumer<GraphChange> listener) {
+			this.resource = resource;
+			this.prefix = prefix;
+			this.listener = requireNonNull(listener, "Please provide a listener");
+		}
+
+		private void deliver(GraphChange change) {
+			try {
+				listener.accept(change);
+			} catch (Exception e) {
+				// one misbehaving listener should not keep the change from the others, or break the update
+				LOGGER.log(System.Logger.Level.WARNING, "Change listener threw while handling " + change, e);
+			}
+		}
+
+		/**
+		 * Removes the listener. It may still get a change that is being delivered at the same time
+		 */
+		@Override
+		public void close() {
+			if (resource == null) {
+				globalListeners.remove(this);
+			} else {
+				resourceListeners.computeIfPresent(resource, (r, listeners) -> {
+					listeners.remove(this);
+					return listeners.isEmpty() ? null : listeners;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Read a graph while it is guaranteed not to change. Updates to the same resource wait until the reader is done,
+	 * while reads of the same resource (and anything to do with other resources) go on at the same time.
+	 * The graph must not be modified, or kept around after the reader returns.
+	 *
+	 * @param resource The resource of the graph to read
+	 * @param reader   The function which reads the graph. It is given null if we don't know the resource's graph
+	 * @param <T>      The type of the result
+	 * @return what the reader returned
+	 */
+	public <T> T readGraph(Resource resource, Function<Graph, T> reader) {
+		Lock lock = this.lockFor(resource).readLock();
+		lock.lock();
+		try {
+			return reader.apply(this.graphs.get(resource));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get a copy of a graph, which is safe to keep, iterate and modify from any thread.
+	 * Copying a huge graph is not free, so prefer {@link GraphAgent#readGraph(Resource, Function)} for one-off reads.
+	 *
+	 * @param resource The resource of the graph
+	 * @return a deep copy of the graph, or null if we don't know the resource's graph
+	 */
+	public @Nullable Graph getGraphSnapshot(Resource resource) {
+		return this.readGraph(resource, graph -> graph == null ? null : graph.deepCopy());
+	}
+
+	/**
+	 * Get a copy of all known graphs, each of which is taken just like {@link GraphAgent#getGraphSnapshot(Resource)} does.
+	 * This copies every single graph, so prefer {@link GraphAgent#readGraph(Resource, Function)} if you only need a few of them.
+	 *
+	 * @return an unmodifiable map of snapshots of the known graphs
+	 */
 	public Map<Resource, Graph> getCurrentGraphs() {
-		return graphs;
+		Map<Resource, Graph> snapshots = new HashMap<>();
+		for (Resource resource : graphs.keySet()) {
+			Graph snapshot = this.getGraphSnapshot(resource);
+			// may have been removed since we looked at the keys
+			if (snapshot != null) {
+				snapshots.put(resource, snapshot);
+			}
+		}
+		return Collections.unmodifiableMap(snapshots);
 	}
 
+	/**
+	 * @return an immutable snapshot of the resources of all known graphs
+	 */
 	public Set<Resource> getCurrentKeys() {
 		return this.keys;
 	}
@@ -976,7 +1840,7 @@ export const createPost = (
 	public String toString() {
 		return "GraphAgent{" +
 				"keys=" + keys +
-				", graphs=" + graphs +
+				", graphs=" + this.getCurrentGraphs() +
 				'}';
 	}
 
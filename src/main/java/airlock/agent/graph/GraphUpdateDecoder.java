@@ -0,0 +1,215 @@
+package airlock.agent.graph;
+
+import airlock.AirlockUtils;
+import airlock.JsonDecoder;
+import airlock.agent.graph.types.*;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decodes a `graph-update` straight into a {@link GraphUpdate}, without building a json tree of the payload first.
+ * <p>
+ * Pass {@link #INSTANCE} to {@link airlock.AirlockChannel#subscribe(String, String, String, JsonDecoder, java.util.function.Consumer)}
+ * to get {@link GraphUpdate}s from a %graph-store subscription.
+ * </p>
+ */
+public final class GraphUpdateDecoder implements JsonDecoder<GraphUpdate> {
+
+	public static final GraphUpdateDecoder INSTANCE = new GraphUpdateDecoder();
+
+	private final TypeAdapter<Resource> resourceAdapter = AirlockUtils.gson.getAdapter(Resource.class);
+	private final TypeAdapter<Graph> graphAdapter = AirlockUtils.gson.getAdapter(Graph.class);
+	private final TypeAdapter<NodeMap> nodeMapAdapter = AirlockUtils.gson.getAdapter(NodeMap.class);
+
+	// lets us reuse the streaming code on trees we already have (i.e. scry responses), via TypeAdapter.fromJsonTree
+	private final TypeAdapter<GraphUpdate> updateAdapter = new TypeAdapter<>() {
+		@Override
+		public void write(JsonWriter out, GraphUpdate value) {
+			throw new UnsupportedOperationException("GraphUpdate cannot be serialized");
+		}
+
+		@Override
+		public GraphUpdate read(JsonReader in) throws IOException {
+			return decodeUpdate(in);
+		}
+	};
+
+	private GraphUpdateDecoder() {
+	}
+
+	@Override
+	public GraphUpdate copy(GraphUpdate value) {
+		return value.deepCopy();
+	}
+
+	/**
+	 * Decode a payload of the form {"graph-update": {...}}, which is what subscriptions and scries send
+	 */
+	@Override
+	public GraphUpdate decode(JsonReader reader) throws IOException {
+		GraphUpdate update = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("graph-update")) {
+				update = decodeUpdate(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (update == null) {
+			throw new JsonParseException("Expected a `graph-update`");
+		}
+		return update;
+	}
+
+	/**
+	 * Decode the object associated with the key "graph-update"
+	 *
+	 * @param graphUpdate The object associated with the key "graph-update"
+	 * @return the decoded update
+	 */
+	public GraphUpdate fromJsonTree(JsonObject graphUpdate) {
+		return updateAdapter.fromJsonTree(graphUpdate);
+	}
+
+	/**
+	 * Decode the object associated with the key "graph-update", i.e. {"add-nodes": {...}}
+	 */
+	GraphUpdate decodeUpdate(JsonReader reader) throws IOException {
+		GraphUpdate update = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String type = reader.nextName();
+			if (update != null) {
+				// there is only ever one update per object, but don't choke if that changes
+				reader.skipValue();
+				continue;
+			}
+			switch (type) {
+				case "keys":
+					update = decodeKeys(reader);
+					break;
+				case "add-graph":
+					update = decodeAddGraph(reader);
+					break;
+				case "remove-graph":
+					update = new GraphUpdate.RemoveGraph(resourceAdapter.read(reader));
+					break;
+				case "add-nodes":
+					update = decodeAddNodes(reader);
+					break;
+				case "remove-nodes":
+					update = decodeRemoveNodes(reader);
+					break;
+				default:
+					update = new GraphUpdate.Other(type, JsonParser.parseReader(reader));
+			}
+		}
+		reader.endObject();
+
+		if (update == null) {
+			throw new JsonParseException("Empty graph-update");
+		}
+		return update;
+	}
+
+	private GraphUpdate decodeKeys(JsonReader reader) throws IOException {
+		Set<Resource> keys = new HashSet<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			keys.add(resourceAdapter.read(reader));
+		}
+		reader.endArray();
+		return new GraphUpdate.Keys(keys);
+	}
+
+	private GraphUpdate decodeAddGraph(JsonReader reader) throws IOException {
+		Resource resource = null;
+		Graph graph = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "resource":
+					resource = resourceAdapter.read(reader);
+					break;
+				case "graph":
+					graph = graphAdapter.read(reader);
+					break;
+				default:
+					// i.e. `mark` and `overwrite`, which we don't keep track of (yet)
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (resource == null) {
+			throw new JsonParseException("add-graph is missing `resource`");
+		}
+		return new GraphUpdate.AddGraph(resource, graph == null ? new Graph() : graph);
+	}
+
+	private GraphUpdate decodeAddNodes(JsonReader reader) throws IOException {
+		Resource resource = null;
+		NodeMap nodes = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "resource":
+					resource = resourceAdapter.read(reader);
+					break;
+				case "nodes":
+					nodes = nodeMapAdapter.read(reader);
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (resource == null) {
+			throw new JsonParseException("add-nodes is missing `resource`");
+		}
+		return new GraphUpdate.AddNodes(resource, nodes == null ? new NodeMap() : nodes);
+	}
+
+	private GraphUpdate decodeRemoveNodes(JsonReader reader) throws IOException {
+		Resource resource = null;
+		List<Index> indices = new ArrayList<>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "resource":
+					resource = resourceAdapter.read(reader);
+					break;
+				case "indices":
+					reader.beginArray();
+					while (reader.hasNext()) {
+						indices.add(Index.fromString(reader.nextString()));
+					}
+					reader.endArray();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (resource == null) {
+			throw new JsonParseException("remove-nodes is missing `resource`");
+		}
+		return new GraphUpdate.RemoveNodes(resource, indices);
+	}
+
+}
@@ -0,0 +1,76 @@
+package airlock.agent.graph.types;
+
+import java.math.BigInteger;
+
+/**
+ * Helpers for atoms packed into two longs, which is how {@link Graph} and {@link Index} store them.
+ * <p>
+ * An atom is packed if it fits in 128 unsigned bits (which covers every `@da` and every small number),
+ * `hi` being the upper 64 bits and `lo` the lower 64 bits, both treated as unsigned.
+ * </p>
+ */
+final class Atoms {
+
+	private Atoms() {
+		// just static helpers
+	}
+
+	static boolean fitsPacked(BigInteger atom) {
+		return atom.signum() >= 0 && atom.bitLength() <= 128;
+	}
+
+	/**
+	 * @return the upper 64 bits of an atom that fits
+	 */
+	static long high(BigInteger atom) {
+		return atom.bitLength() <= 64 ? 0 : atom.shiftRight(64).longValue();
+	}
+
+	/**
+	 * @return the lower 64 bits of an atom that fits
+	 */
+	static long low(BigInteger atom) {
+		return atom.longValue();
+	}
+
+	static BigInteger toBigInteger(long hi, long lo) {
+		if (hi == 0 && lo >= 0) {
+			return BigInteger.valueOf(lo);
+		}
+		byte[] bytes = new byte[17]; // the leading zero byte keeps it positive
+		for (int i = 0; i < 8; i++) {
+			bytes[1 + i] = (byte) (hi >>> (56 - 8 * i));
+			bytes[9 + i] = (byte) (lo >>> (56 - 8 * i));
+		}
+		return new BigInteger(bytes);
+	}
+
+	static int compare(long hi1, long lo1, long hi2, long lo2) {
+		int cmp = Long.compareUnsigned(hi1, hi2);
+		return cmp != 0 ? cmp : Long.compareUnsigned(lo1, lo2);
+	}
+
+	/**
+	 * @return the same thing as {@link BigInteger#hashCode()} of the atom, without creating it
+	 */
+	static int hash(long hi, long lo) {
+		// BigInteger hashes its magnitude (big endian ints, without the leading zeros) like a list of unsigned ints
+		// leading zeros add nothing to the hash (31 * 0 + 0), so they don't need to be skipped
+		int h = (int) (hi >>> 32);
+		h = 31 * h + (int) hi;
+		h = 31 * h + (int) (lo >>> 32);
+		h = 31 * h + (int) lo;
+		return h;
+	}
+
+	/**
+	 * @return the decimal form of the atom
+	 */
+	static String toString(long hi, long lo) {
+		if (hi == 0) {
+			return Long.toUnsignedString(lo);
+		}
+		return toBigInteger(hi, lo).toString();
+	}
+
+}
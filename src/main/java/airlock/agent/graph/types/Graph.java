@@ -1,28 +1,68 @@
 package airlock.agent.graph.types;
 
-import com.google.gson.*;
+import airlock.AirlockUtils;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Type;
-import java.math.BigInteger;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
+import org.jetbrains.annotations.Nullable;
 
-import static java.util.stream.StreamSupport.stream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 // same as BigIntOrderedMap<Node> from Landscape
-public class Graph extends TreeMap<BigInteger, Node> {
+/**
+ * An ordered map of atoms to nodes, which iterates from the greatest key to the least, just like a `mop` with `gth` in hoon.
+ * <p>
+ * Almost every key is a 128 bit `@da` or a small number, so keys that fit in 128 bits are not kept as {@link BigInteger}s,
+ * but packed into a pair of longs, in parallel arrays that are sorted in ascending order (new posts have the greatest keys,
+ * so they are appended at the end). Any other key is kept in a regular {@link TreeMap} on the side.
+ * This is a lot smaller than a TreeMap entry plus a BigInteger for every node,
+ * at the cost of creating the BigInteger again whenever a key is handed out.
+ * </p>
+ * <p>
+ * The entries handed out while iterating are views which are only valid until the graph is next modified.
+ * Like TreeMap, a graph is not safe to modify from more than one thread at once.
+ * </p>
+ */
+public class Graph extends AbstractMap<BigInteger, Node> {
 
 
 	public static final Graph EMPTY_GRAPH = new Graph();
 
+	/**
+	 * The greatest key that can be packed, 2^128 - 1
+	 */
+	private static final BigInteger MAX_PACKED = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+	private static final long[] NO_LONGS = new long[0];
+	private static final Node[] NO_NODES = new Node[0];
+
+	// the high and low halves of the packed keys, and the node of each key, sorted in ascending (unsigned) order of key.
+	// shared empty arrays until the first put, since most nodes have an empty child graph
+	private long[] his = NO_LONGS;
+	private long[] los = NO_LONGS;
+	private Node[] nodes = NO_NODES;
+	private int size = 0;
+
+	/**
+	 * Keys that don't fit in 128 bits. Created on demand, since they practically never happen
+	 */
+	private @Nullable TreeMap<BigInteger, Node> overflow;
+
+	private transient @Nullable Set<Map.Entry<BigInteger, Node>> entrySet;
+
 	/**
 	 * Create a new (empty) graph.
 	 */
 	public Graph() {
-		super(Comparator.reverseOrder());
-		// we choose reverse ordering as the comparator for the TreeMap
-		// this ends up being greatest-to-least sorting of BigIntegers because that is our key
+		// the entries are sorted by greatest valued key first
 		// this is how a graph is implemented in hoon;
 		// it is a `mop` (ordered map),
 		// where the keys are atoms (big ints),
@@ -41,6 +81,486 @@ public class Graph extends TreeMap<BigInteger, Node> {
 		this.putAll(graphMap);
 	}
 
+	/**
+	 * @return the position of the key, or (-(insertion point) - 1) if it is not in the graph
+	 */
+	private int search(long hi, long lo) {
+		// most of the time we are looking at (or adding) the newest node, which is the last one
+		if (size == 0 || Atoms.compare(his[size - 1], los[size - 1], hi, lo) < 0) {
+			return -(size + 1);
+		}
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = Atoms.compare(his[mid], los[mid], hi, lo);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Get the node of a packed key
+	 *
+	 * @param hi The high 64 bits of the key
+	 * @param lo The low 64 bits of the key
+	 * @return the node, or null if there is none
+	 */
+	@Nullable Node getPacked(long hi, long lo) {
+		int position = search(hi, lo);
+		return position >= 0 ? nodes[position] : null;
+	}
+
+	/**
+	 * Put the node of a packed key
+	 *
+	 * @param hi   The high 64 bits of the key
+	 * @param lo   The low 64 bits of the key
+	 * @param node The node
+	 * @return the previous node of the key, or null if there was none
+	 */
+	@Nullable Node putPacked(long hi, long lo, Node node) {
+		int position = search(hi, lo);
+		if (position >= 0) {
+			Node previous = nodes[position];
+			nodes[position] = node;
+			return previous;
+		}
+		insertAt(-(position + 1), hi, lo, node);
+		return null;
+	}
+
+	/**
+	 * Remove the node of a packed key
+	 *
+	 * @param hi The high 64 bits of the key
+	 * @param lo The low 64 bits of the key
+	 * @return the removed node, or null if there was none
+	 */
+	@Nullable Node removePacked(long hi, long lo) {
+		int position = search(hi, lo);
+		if (position < 0) {
+			return null;
+		}
+		Node previous = nodes[position];
+		removeAt(position);
+		return previous;
+	}
+
+	private void insertAt(int position, long hi, long lo, Node node) {
+		if (size == his.length) {
+			int capacity = Math.max(4, size + (size >> 1));
+			his = Arrays.copyOf(his, capacity);
+			los = Arrays.copyOf(los, capacity);
+			nodes = Arrays.copyOf(nodes, capacity);
+		}
+		int moved = size - position;
+		if (moved > 0) {
+			System.arraycopy(his, position, his, position + 1, moved);
+			System.arraycopy(los, position, los, position + 1, moved);
+			System.arraycopy(nodes, position, nodes, position + 1, moved);
+		}
+		his[position] = hi;
+		los[position] = lo;
+		nodes[position] = node;
+		size++;
+	}
+
+	private void removeAt(int position) {
+		int moved = size - position - 1;
+		if (moved > 0) {
+			System.arraycopy(his, position + 1, his, position, moved);
+			System.arraycopy(los, position + 1, los, position, moved);
+			System.arraycopy(nodes, position + 1, nodes, position, moved);
+		}
+		size--;
+		nodes[size] = null; // let the node be collected
+	}
+
+	@Override
+	public int size() {
+		return size + (overflow == null ? 0 : overflow.size());
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0 && (overflow == null || overflow.isEmpty());
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public @Nullable Node get(Object key) {
+		if (!(key instanceof BigInteger)) {
+			return null;
+		}
+		BigInteger atom = (BigInteger) key;
+		if (Atoms.fitsPacked(atom)) {
+			return getPacked(Atoms.high(atom), Atoms.low(atom));
+		}
+		return overflow == null ? null : overflow.get(atom);
+	}
+
+	@Override
+	public @Nullable Node put(BigInteger key, Node value) {
+		if (Atoms.fitsPacked(key)) {
+			return putPacked(Atoms.high(key), Atoms.low(key), value);
+		}
+		if (overflow == null) {
+			overflow = new TreeMap<>(Comparator.reverseOrder());
+		}
+		return overflow.put(key, value);
+	}
+
+	@Override
+	public @Nullable Node remove(Object key) {
+		if (!(key instanceof BigInteger)) {
+			return null;
+		}
+		BigInteger atom = (BigInteger) key;
+		if (Atoms.fitsPacked(atom)) {
+			return removePacked(Atoms.high(atom), Atoms.low(atom));
+		}
+		return overflow == null ? null : overflow.remove(atom);
+	}
+
+	@Override
+	public void putAll(Map<? extends BigInteger, ? extends Node> map) {
+		if (!this.isEmpty() || map.size() < 2) {
+			super.putAll(map);
+			return;
+		}
+		// filling an empty graph from a map that is sorted either way round (i.e. another graph, or a parsed one) is done in one go,
+		// rather than by putting every entry on its own, which would mean moving the whole array for every put of a descending map
+		long[] newHis = new long[map.size()];
+		long[] newLos = new long[map.size()];
+		Node[] newNodes = new Node[map.size()];
+		int count = 0;
+		for (Map.Entry<? extends BigInteger, ? extends Node> entry : map.entrySet()) {
+			BigInteger key = entry.getKey();
+			if (Atoms.fitsPacked(key)) {
+				newHis[count] = Atoms.high(key);
+				newLos[count] = Atoms.low(key);
+				newNodes[count] = entry.getValue();
+				count++;
+			} else {
+				this.put(key, entry.getValue());
+			}
+		}
+		this.load(newHis, newLos, newNodes, count);
+	}
+
+	/**
+	 * Replace the packed entries (of an empty graph) with the given ones, which are either sorted or not
+	 */
+	private void load(long[] newHis, long[] newLos, Node[] newNodes, int count) {
+		boolean ascending = true;
+		boolean descending = true;
+		for (int i = 1; i < count && (ascending || descending); i++) {
+			int cmp = Atoms.compare(newHis[i - 1], newLos[i - 1], newHis[i], newLos[i]);
+			ascending &= cmp < 0;
+			descending &= cmp > 0;
+		}
+		if (ascending) {
+			this.his = newHis;
+			this.los = newLos;
+			this.nodes = newNodes;
+			this.size = count;
+		} else if (descending) {
+			this.his = new long[count];
+			this.los = new long[count];
+			this.nodes = new Node[count];
+			for (int i = 0; i < count; i++) {
+				this.his[i] = newHis[count - 1 - i];
+				this.los[i] = newLos[count - 1 - i];
+				this.nodes[i] = newNodes[count - 1 - i];
+			}
+			this.size = count;
+		} else {
+			// unsorted, or with duplicates. put them one by one so that the later duplicates win
+			for (int i = 0; i < count; i++) {
+				this.putPacked(newHis[i], newLos[i], newNodes[i]);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		his = NO_LONGS;
+		los = NO_LONGS;
+		nodes = NO_NODES;
+		size = 0;
+		overflow = null;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super BigInteger, ? super Node> action) {
+		// same order as the iterator, without the entry objects
+		if (overflow != null) {
+			overflow.headMap(MAX_PACKED, false).forEach(action);
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			action.accept(Atoms.toBigInteger(his[i], los[i]), nodes[i]);
+		}
+		if (overflow != null) {
+			overflow.tailMap(MAX_PACKED, false).forEach(action);
+		}
+	}
+
+	/**
+	 * @return the greatest key in the graph (i.e. the newest node, or the latest revision)
+	 * @throws NoSuchElementException if the graph is empty
+	 */
+	public BigInteger firstKey() {
+		Map.Entry<BigInteger, Node> first = this.firstEntry();
+		if (first == null) {
+			throw new NoSuchElementException();
+		}
+		return first.getKey();
+	}
+
+	/**
+	 * @return the entry with the greatest key in the graph, or null if the graph is empty
+	 */
+	public @Nullable Entry<BigInteger, Node> firstEntry() {
+		if (overflow != null && !overflow.isEmpty() && overflow.firstKey().compareTo(MAX_PACKED) > 0) {
+			return overflow.firstEntry();
+		}
+		if (size > 0) {
+			return new SimpleImmutableEntry<>(Atoms.toBigInteger(his[size - 1], los[size - 1]), nodes[size - 1]);
+		}
+		return overflow == null ? null : overflow.firstEntry();
+	}
+
+	/**
+	 * @return the least key in the graph
+	 * @throws NoSuchElementException if the graph is empty
+	 */
+	public BigInteger lastKey() {
+		Map.Entry<BigInteger, Node> last = this.lastEntry();
+		if (last == null) {
+			throw new NoSuchElementException();
+		}
+		return last.getKey();
+	}
+
+	/**
+	 * @return the entry with the least key in the graph, or null if the graph is empty
+	 */
+	public @Nullable Entry<BigInteger, Node> lastEntry() {
+		if (overflow != null && !overflow.isEmpty() && overflow.lastKey().signum() < 0) {
+			return overflow.lastEntry();
+		}
+		if (size > 0) {
+			return new SimpleImmutableEntry<>(Atoms.toBigInteger(his[0], los[0]), nodes[0]);
+		}
+		return overflow == null ? null : overflow.lastEntry();
+	}
+
+	/**
+	 * Get the nodes whose keys fall in a range. Finding the range takes O(log n), the rest is copying it.
+	 * The nodes are shared with this graph, only the graph itself is new
+	 *
+	 * @param fromInclusive The least key to include
+	 * @param toExclusive   The key after the greatest key to include
+	 * @return the nodes in the range, as a graph of their own
+	 */
+	public Graph range(BigInteger fromInclusive, BigInteger toExclusive) {
+		Graph result = new Graph();
+		if (fromInclusive.compareTo(toExclusive) >= 0) {
+			return result;
+		}
+		this.copyRange(this.lowerBound(fromInclusive), this.lowerBound(toExclusive), result);
+		if (overflow != null) {
+			overflow.forEach((key, node) -> {
+				if (key.compareTo(fromInclusive) >= 0 && key.compareTo(toExclusive) < 0) {
+					result.put(key, node);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Get the nodes that were posted within a period of time, i.e. everything from 2026-10-01 to 2026-10-07.
+	 * Only makes sense for graphs keyed by `@da`, which is every graph of posts, but not the graph of revisions of a publish note
+	 *
+	 * @param fromInclusive The start of the period
+	 * @param toExclusive   The end of the period
+	 * @return the nodes in the period, as a graph of their own. See {@link Graph#range(BigInteger, BigInteger)}
+	 */
+	public Graph between(Instant fromInclusive, Instant toExclusive) {
+		// both ends fit in the packed form, so this never makes the BigIntegers.
+		// the keys that don't fit are bigger than any `@da`, so none of them are in the period
+		long fromHi = AirlockUtils.unixToDaHigh(fromInclusive);
+		long fromLo = AirlockUtils.unixToDaLow(fromInclusive);
+		long toHi = AirlockUtils.unixToDaHigh(toExclusive);
+		long toLo = AirlockUtils.unixToDaLow(toExclusive);
+		Graph result = new Graph();
+		if (Atoms.compare(fromHi, fromLo, toHi, toLo) < 0) {
+			this.copyRange(this.lowerBound(fromHi, fromLo), this.lowerBound(toHi, toLo), result);
+		}
+		return result;
+	}
+
+	private void copyRange(int start, int end, Graph result) {
+		if (start < end) {
+			result.his = Arrays.copyOfRange(his, start, end);
+			result.los = Arrays.copyOfRange(los, start, end);
+			result.nodes = Arrays.copyOfRange(nodes, start, end);
+			result.size = end - start;
+		}
+	}
+
+	/**
+	 * @return the position of the least packed key which is not less than the given key
+	 */
+	private int lowerBound(BigInteger key) {
+		if (key.signum() <= 0) {
+			return 0;
+		}
+		if (!Atoms.fitsPacked(key)) {
+			return size;
+		}
+		return this.lowerBound(Atoms.high(key), Atoms.low(key));
+	}
+
+	private int lowerBound(long hi, long lo) {
+		int position = this.search(hi, lo);
+		return position >= 0 ? position : -(position + 1);
+	}
+
+	@Override
+	public Set<Map.Entry<BigInteger, Node>> entrySet() {
+		Set<Map.Entry<BigInteger, Node>> entries = this.entrySet;
+		if (entries == null) {
+			entries = new AbstractSet<>() {
+				@Override
+				public Iterator<Map.Entry<BigInteger, Node>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return Graph.this.size();
+				}
+
+				@Override
+				public void clear() {
+					Graph.this.clear();
+				}
+			};
+			this.entrySet = entries;
+		}
+		return entries;
+	}
+
+	/**
+	 * Goes through the overflow keys that are greater than any packed key, then the packed keys from the last to the first,
+	 * then the (negative) overflow keys that are less than any packed key
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<BigInteger, Node>> {
+		private final Iterator<Map.Entry<BigInteger, Node>> above = overflow == null ? Collections.emptyIterator() : overflow.headMap(MAX_PACKED, false).entrySet().iterator();
+		// only created once we get to it, since removing through `above` would break it
+		private @Nullable Iterator<Map.Entry<BigInteger, Node>> below;
+		private int next = size - 1;
+		private @Nullable Iterator<Map.Entry<BigInteger, Node>> lastIterator;
+		private int lastPosition = -1;
+
+		@Override
+		public boolean hasNext() {
+			return above.hasNext() || next >= 0 || below().hasNext();
+		}
+
+		private Iterator<Map.Entry<BigInteger, Node>> below() {
+			if (below == null) {
+				below = overflow == null ? Collections.emptyIterator() : overflow.tailMap(MAX_PACKED, false).entrySet().iterator();
+			}
+			return below;
+		}
+
+		@Override
+		public Map.Entry<BigInteger, Node> next() {
+			lastPosition = -1;
+			lastIterator = null;
+			if (above.hasNext()) {
+				lastIterator = above;
+				return above.next();
+			}
+			if (next >= 0) {
+				lastPosition = next--;
+				return new PackedEntry(lastPosition);
+			}
+			lastIterator = below();
+			return lastIterator.next();
+		}
+
+		@Override
+		public void remove() {
+			if (lastIterator != null) {
+				lastIterator.remove();
+				lastIterator = null;
+			} else if (lastPosition >= 0) {
+				// everything that is still to come is before this position, so it stays where it is
+				removeAt(lastPosition);
+				lastPosition = -1;
+			} else {
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	private final class PackedEntry implements Map.Entry<BigInteger, Node> {
+		private final int position;
+
+		private PackedEntry(int position) {
+			this.position = position;
+		}
+
+		@Override
+		public BigInteger getKey() {
+			return Atoms.toBigInteger(his[position], los[position]);
+		}
+
+		@Override
+		public Node getValue() {
+			return nodes[position];
+		}
+
+		@Override
+		public Node setValue(Node value) {
+			Node previous = nodes[position];
+			nodes[position] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+			return getKey().equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
 
 	/**
 	 * Add a node to the graph at the specified index
@@ -61,21 +581,25 @@ public class Graph extends TreeMap<BigInteger, Node> {
 		// also, there is a call to graph.set(index, parNode)
 		// which doesn't make sense since the graph already has the node at that index
 		// and Node is mutable so it is already changed ???
-		BigInteger nodeId = index.get(0); // todo come up with a better name
+		this.addNode(index, 0, node);
+	}
+
+	// the graphs are walked down by position in the index, rather than by making a shorter index for every level
+	private void addNode(Index index, int depth, Node node) {
 		int indexLen = index.size();
-		if (indexLen == 1) {
-			this.put(nodeId, node);
+		if (depth == indexLen - 1) {
+			this.putAtom(index, depth, node);
 		} else {
-			if (!this.containsKey(nodeId)) {
+			// todo test thoroughly
+			Node parentNode = this.getAtom(index, depth);
+			if (parentNode == null) {
 				// todo see if we want to be this strict or just silently ignore like landscape does
 				// i think silently ignoring is fine but idk man
 				throw new IllegalStateException("parent node doesn't exist, can't add child");
 			}
-			// todo test thoroughly
-			Node parentNode = this.get(nodeId);
 			parentNode.ensureChildGraph();
 			assert parentNode.children != null;
-			parentNode.children.addNode((Index) index.subList(1, indexLen), node);
+			parentNode.children.addNode(index, depth + 1, node);
 			// this.set(index, parentNode); (see above comment to why this commented out)
 		}
 	}
@@ -86,17 +610,20 @@ public class Graph extends TreeMap<BigInteger, Node> {
 	 * @param index The index specifying the node to remove.
 	 */
 	public void removeNode(Index index) {
+		this.removeNode(index, 0);
+	}
+
+	private void removeNode(Index index, int depth) {
 		int indexLen = index.size();
-		BigInteger currentIndex = index.get(0);
 
-		if (indexLen == 1) {
-			this.remove(currentIndex);
+		if (depth == indexLen - 1) {
+			this.removeAtom(index, depth);
 		} else {
-			Node child = this.get(currentIndex);
+			Node child = this.getAtom(index, depth);
 			child.ensureChildGraph();
 
 			if (child.children != null) {
-				child.children.removeNode((Index) index.subList(1, indexLen));
+				child.children.removeNode(index, depth + 1);
 			} else {
 				System.out.println("Warning, child graph does not exist, unable to delete node");
 			}
@@ -108,56 +635,129 @@ public class Graph extends TreeMap<BigInteger, Node> {
 		}
 	}
 
-	private static class Adapter implements JsonSerializer<Graph>, JsonDeserializer<Graph> {
+	// lookups by one atom of an index, which skip creating a BigInteger when the index is packed like the graph
+
+	private @Nullable Node getAtom(Index index, int position) {
+		return index.isPacked() ? getPacked(index.hi(position), index.lo(position)) : get(index.get(position));
+	}
+
+	private void putAtom(Index index, int position, Node node) {
+		if (index.isPacked()) {
+			putPacked(index.hi(position), index.lo(position), node);
+		} else {
+			put(index.get(position), node);
+		}
+	}
+
+	private void removeAtom(Index index, int position) {
+		if (index.isPacked()) {
+			removePacked(index.hi(position), index.lo(position));
+		} else {
+			remove(index.get(position));
+		}
+	}
+
+	/**
+	 * Copy the graph along with every node in it, all the way down. The posts themselves are shared with the original.
+	 *
+	 * @return the copy
+	 */
+	public Graph deepCopy() {
+		Graph copy = new Graph();
+		// the arrays are already sorted, so they are copied as they are instead of being put one by one
+		if (size > 0) {
+			copy.his = Arrays.copyOf(his, size);
+			copy.los = Arrays.copyOf(los, size);
+			copy.nodes = new Node[size];
+			for (int i = 0; i < size; i++) {
+				copy.nodes[i] = nodes[i].deepCopy();
+			}
+			copy.size = size;
+		}
+		if (overflow != null) {
+			overflow.forEach((index, node) -> copy.put(index, node.deepCopy()));
+		}
+		return copy;
+	}
+
+	// a graph can be thousands of nodes deep in an `add-graph`, so it is read and written straight off of the stream
+	// rather than through a JsonElement tree. the factory is needed to get at the adapter for Node
+	private static class AdapterFactory implements TypeAdapterFactory {
 
 		@Override
-		public JsonElement serialize(Graph src, Type typeOfSrc, JsonSerializationContext context) {
-			if (src.equals(EMPTY_GRAPH)) {
-				// the superclass of graph, TreeMap, properly implements `equals`
-				// by comparing each Entry for equality, rather than falling back to (Object.equals) (reference equality)
-				// so the above code should be valid
-				return JsonNull.INSTANCE; // results in {..., "children": null}
-			} else {
-				JsonArray serializedGraph = new JsonArray();
-				src.forEach(((index, node) -> {
-					JsonArray serializedEntry = new JsonArray();
-					JsonPrimitive serializedBigInt = new JsonPrimitive("/" + index.toString());
-					JsonElement serializedNode = context.serialize(node);
-
-					serializedEntry.add(serializedBigInt);
-					serializedEntry.add(serializedNode);
-
-					serializedGraph.add(serializedEntry);
-				}));
-				return serializedGraph;
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			if (type.getRawType() != Graph.class) {
+				return null;
 			}
+			return (TypeAdapter<T>) new Adapter(gson.getAdapter(Node.class)).nullSafe();
+		}
+	}
+
+	private static class Adapter extends TypeAdapter<Graph> {
+
+		private final TypeAdapter<Node> nodeAdapter;
+
+		Adapter(TypeAdapter<Node> nodeAdapter) {
+			this.nodeAdapter = nodeAdapter;
 		}
 
 		@Override
-		public Graph deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+		public void write(JsonWriter out, Graph src) throws IOException {
+			if (src.isEmpty()) {
+				// this used to compare against EMPTY_GRAPH, which (because maps compare entries) is the same thing
+				out.nullValue(); // results in {..., "children": null}
+				return;
+			}
+			out.beginArray();
+			for (Map.Entry<BigInteger, Node> entry : src.entrySet()) {
+				out.beginArray();
+				out.value("/" + entry.getKey().toString());
+				nodeAdapter.write(out, entry.getValue());
+				out.endArray();
+			}
+			out.endArray();
+		}
+
+		@Override
+		public Graph read(JsonReader in) throws IOException {
 			Graph result = new Graph();
-			// this code deserializes 'add-nodes', not 'add-graph'
-//			JsonObject graphJson = json.getAsJsonObject();
-//			graphJson.entrySet().forEach(graphEntry -> {
-//				BigInteger index = Graph.indexFromString(graphEntry.getKey());
-//				Node node = context.deserialize(graphEntry.getValue(), Node.class);
-//				result.put(index, node);
-//			});
-			JsonArray graphArray = json.getAsJsonArray();
-			stream(graphArray.spliterator(), false)
-					.forEach(graphJSON -> {
-						JsonArray graphAsArray = graphJSON.getAsJsonArray();
-						String indexStr = graphAsArray.get(0).getAsString();
-
-						BigInteger index = Index.fromString(indexStr).get(0);
-						Node node = context.deserialize(graphAsArray.get(1).getAsJsonObject(), Node.class);
-						result.put(index, node);
-					});
+			// this code deserializes 'add-graph', not 'add-nodes'
+			// the graph is an array of [indexStr, node] pairs
+			// the ship sends them sorted (newest first), so they are collected and loaded all at once at the end,
+			// since putting them one by one would insert every one of them at the front of the arrays
+			long[] his = NO_LONGS;
+			long[] los = NO_LONGS;
+			Node[] nodes = NO_NODES;
+			int count = 0;
+			in.beginArray();
+			while (in.hasNext()) {
+				in.beginArray();
+				Index index = Index.fromString(in.nextString());
+				Node node = nodeAdapter.read(in);
+				in.endArray();
+				if (!index.isPacked()) {
+					result.put(index.get(0), node);
+					continue;
+				}
+				if (count == his.length) {
+					int capacity = Math.max(16, count * 2);
+					his = Arrays.copyOf(his, capacity);
+					los = Arrays.copyOf(los, capacity);
+					nodes = Arrays.copyOf(nodes, capacity);
+				}
+				his[count] = index.hi(0);
+				los[count] = index.lo(0);
+				nodes[count] = node;
+				count++;
+			}
+			in.endArray();
+			result.load(his, los, nodes, count);
 
 			return result;
 		}
 	}
 
-	public static final Adapter ADAPTER = new Adapter();
+	public static final TypeAdapterFactory ADAPTER_FACTORY = new AdapterFactory();
 
 }
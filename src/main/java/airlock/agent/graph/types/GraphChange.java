@@ -0,0 +1,123 @@
+package airlock.agent.graph.types;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents a single change to the state of a {@link airlock.agent.graph.GraphAgent}, as seen by its change listeners.
+ * Unlike a {@link GraphUpdate}, which is what the ship sent, a change only carries what actually changed
+ * (and, for listeners of an index prefix, only the part of it under that prefix).
+ * The graphs and nodes in a change are copies, so they don't change along with the agent's state.
+ */
+public abstract class GraphChange {
+
+	private GraphChange() {
+		// only the subclasses below can exist
+	}
+
+	/**
+	 * Nodes were added to (or replaced in) the resource's graph
+	 */
+	public static final class NodesAdded extends GraphChange {
+		public final Resource resource;
+		/**
+		 * The added nodes, keyed by their full index
+		 */
+		public final NodeMap nodes;
+
+		public NodesAdded(Resource resource, NodeMap nodes) {
+			this.resource = resource;
+			this.nodes = nodes;
+		}
+
+		@Override
+		public String toString() {
+			return "GraphChange.NodesAdded{" +
+					"resource=" + resource +
+					", nodes=" + nodes.keySet() +
+					'}';
+		}
+	}
+
+	/**
+	 * Nodes were removed from the resource's graph
+	 */
+	public static final class NodesRemoved extends GraphChange {
+		public final Resource resource;
+		public final List<Index> indices;
+
+		public NodesRemoved(Resource resource, List<Index> indices) {
+			this.resource = resource;
+			this.indices = indices;
+		}
+
+		@Override
+		public String toString() {
+			return "GraphChange.NodesRemoved{" +
+					"resource=" + resource +
+					", indices=" + indices +
+					'}';
+		}
+	}
+
+	/**
+	 * The resource's graph was replaced as a whole
+	 */
+	public static final class GraphAdded extends GraphChange {
+		public final Resource resource;
+		public final Graph graph;
+
+		public GraphAdded(Resource resource, Graph graph) {
+			this.resource = resource;
+			this.graph = graph;
+		}
+
+		@Override
+		public String toString() {
+			return "GraphChange.GraphAdded{" +
+					"resource=" + resource +
+					", size=" + graph.size() +
+					'}';
+		}
+	}
+
+	/**
+	 * The resource's graph is gone
+	 */
+	public static final class GraphRemoved extends GraphChange {
+		public final Resource resource;
+
+		public GraphRemoved(Resource resource) {
+			this.resource = resource;
+		}
+
+		@Override
+		public String toString() {
+			return "GraphChange.GraphRemoved{" +
+					"resource=" + resource +
+					'}';
+		}
+	}
+
+	/**
+	 * The set of known resources changed
+	 */
+	public static final class KeysChanged extends GraphChange {
+		/**
+		 * Every known resource, after the change
+		 */
+		public final Set<Resource> keys;
+
+		public KeysChanged(Set<Resource> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public String toString() {
+			return "GraphChange.KeysChanged{" +
+					"keys=" + keys +
+					'}';
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package airlock.agent.graph.types;
+
+import com.google.gson.JsonElement;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents a single `graph-update` from %graph-store, already decoded into domain objects.
+ * There is one subclass for each kind of update that we understand. Everything else is kept as json in {@link Other}.
+ */
+public abstract class GraphUpdate {
+
+	private GraphUpdate() {
+		// only the subclasses below can exist
+	}
+
+	/**
+	 * @return a copy of this update which shares nothing mutable with it, i.e. for another caller of the same scry
+	 */
+	public abstract GraphUpdate deepCopy();
+
+	/**
+	 * `keys`: every resource that the ship knows about
+	 */
+	public static final class Keys extends GraphUpdate {
+		public final Set<Resource> keys;
+
+		public Keys(Set<Resource> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public Keys deepCopy() {
+			return new Keys(new HashSet<>(keys));
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.Keys{" +
+					"keys=" + keys +
+					'}';
+		}
+	}
+
+	/**
+	 * `add-graph`: a whole graph which replaces whatever we had for the resource
+	 */
+	public static final class AddGraph extends GraphUpdate {
+		public final Resource resource;
+		public final Graph graph;
+
+		public AddGraph(Resource resource, Graph graph) {
+			this.resource = resource;
+			this.graph = graph;
+		}
+
+		@Override
+		public AddGraph deepCopy() {
+			return new AddGraph(resource, graph.deepCopy());
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.AddGraph{" +
+					"resource=" + resource +
+					", graph=" + graph +
+					'}';
+		}
+	}
+
+	/**
+	 * `remove-graph`: the resource's graph is gone
+	 */
+	public static final class RemoveGraph extends GraphUpdate {
+		public final Resource resource;
+
+		public RemoveGraph(Resource resource) {
+			this.resource = resource;
+		}
+
+		@Override
+		public RemoveGraph deepCopy() {
+			return this; // nothing in here can change
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.RemoveGraph{" +
+					"resource=" + resource +
+					'}';
+		}
+	}
+
+	/**
+	 * `add-nodes`: nodes to add to the resource's graph, in the order they were sent
+	 */
+	public static final class AddNodes extends GraphUpdate {
+		public final Resource resource;
+		public final NodeMap nodes;
+
+		public AddNodes(Resource resource, NodeMap nodes) {
+			this.resource = resource;
+			this.nodes = nodes;
+		}
+
+		@Override
+		public AddNodes deepCopy() {
+			NodeMap copies = new NodeMap();
+			nodes.forEach((index, node) -> copies.put(index, node.deepCopy()));
+			return new AddNodes(resource, copies);
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.AddNodes{" +
+					"resource=" + resource +
+					", nodes=" + nodes +
+					'}';
+		}
+	}
+
+	/**
+	 * `remove-nodes`: the indices of nodes to remove from the resource's graph
+	 */
+	public static final class RemoveNodes extends GraphUpdate {
+		public final Resource resource;
+		public final List<Index> indices;
+
+		public RemoveNodes(Resource resource, List<Index> indices) {
+			this.resource = resource;
+			this.indices = indices;
+		}
+
+		@Override
+		public RemoveNodes deepCopy() {
+			return new RemoveNodes(resource, new ArrayList<>(indices));
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.RemoveNodes{" +
+					"resource=" + resource +
+					", indices=" + indices +
+					'}';
+		}
+	}
+
+	/**
+	 * Any other update (i.e. `tags`, `tag-queries`), which is not decoded any further
+	 */
+	public static final class Other extends GraphUpdate {
+		public final String type;
+		public final JsonElement json;
+
+		public Other(String type, JsonElement json) {
+			this.type = type;
+			this.json = json;
+		}
+
+		@Override
+		public Other deepCopy() {
+			return new Other(type, json.deepCopy());
+		}
+
+		@Override
+		public String toString() {
+			return "GraphUpdate.Other{" +
+					"type='" + type + '\'' +
+					", json=" + json +
+					'}';
+		}
+	}
+
+}
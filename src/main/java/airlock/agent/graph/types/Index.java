@@ -1,12 +1,14 @@
 package airlock.agent.graph.types;
 
-import com.google.gson.*;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * An index is a list of one or more `uid`s (atoms) that point to a unique {@link Node} within a graph.
@@ -14,15 +16,37 @@ import java.util.stream.Collectors;
  * When dealing with a single node, such as adding or removing a specific node on a graph,
  * The index takes the form of "/17700000/1/2", or [17700000, 1, 2].
  * However, most {@link Index}es will be a list of length 1, because they are simply representing the current node, not a nested node.
+ * <p>
+ * Indexes are immutable. The atoms are packed into a long array (two longs per atom, see {@link Graph}) rather than
+ * kept as {@link BigInteger}s, and the hash code and string form are only worked out once.
+ * Indexes made with {@link Index#prefix(int)}, {@link Index#suffix(int)} or {@link Index#subList(int, int)}
+ * share the array of the index they were made from.
+ * </p>
  */
-public class Index extends ArrayList<BigInteger>  {
+public final class Index extends AbstractList<BigInteger> implements RandomAccess {
+
+	private static final long[] NO_WORDS = new long[0];
+
+	/**
+	 * The (hi, lo) pair of every atom, one after the other. Only null if some atom does not fit in 128 bits,
+	 * in which case all of them are kept in {@link Index#wide} instead (which pretty much never happens)
+	 */
+	private final @Nullable long[] words;
+	private final @Nullable BigInteger[] wide;
+	// where this index starts in the arrays (in atoms), and how many atoms it has
+	private final int offset;
+	private final int length;
+
+	// worked out on first use. like String, racing threads just do the same work twice
+	private int hash;
+	private @Nullable String string;
 
 
 	/**
 	 * Create an empty index
 	 */
 	public Index() {
-		super();
+		this(NO_WORDS, null, 0, 0);
 	}
 
 
@@ -31,7 +55,12 @@ public class Index extends ArrayList<BigInteger>  {
 	 * @param uids The uids to create an index from
 	 */
 	public Index(@NotNull Collection<? extends BigInteger> uids) {
-		super(uids);
+		BigInteger[] atoms = uids.toArray(new BigInteger[0]);
+		long[] packed = pack(atoms);
+		this.words = packed;
+		this.wide = packed == null ? atoms : null;
+		this.offset = 0;
+		this.length = atoms.length;
 	}
 
 	/**
@@ -42,6 +71,29 @@ public class Index extends ArrayList<BigInteger>  {
 		this(List.of(singleUID));
 	}
 
+	private Index(@Nullable long[] words, @Nullable BigInteger[] wide, int offset, int length) {
+		this.words = words;
+		this.wide = wide;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return the atoms packed into (hi, lo) pairs, or null if one of them does not fit
+	 */
+	private static @Nullable long[] pack(BigInteger[] atoms) {
+		long[] packed = new long[atoms.length * 2];
+		for (int i = 0; i < atoms.length; i++) {
+			BigInteger atom = Objects.requireNonNull(atoms[i], "an index cannot contain null");
+			if (!Atoms.fitsPacked(atom)) {
+				return null;
+			}
+			packed[2 * i] = Atoms.high(atom);
+			packed[2 * i + 1] = Atoms.low(atom);
+		}
+		return packed;
+	}
+
 
 	/**
 	 * Wrapper method around empty index constructor. Exists for readability
@@ -60,15 +112,102 @@ public class Index extends ArrayList<BigInteger>  {
 	 * which becomes List(BigInt(17239874987324798432), BigInt(4), BigInt(1))
 	 * @param indexStr the index string to parse
 	 * @return the resulting "deep index"
+	 * Like the split based parser this replaced, trailing slashes are ignored, so "/" is the empty index and "/1/2/" is "/1/2".
+	 * Unlike it, atoms must be plain digits, and the string must start with a '/'.
+	 * @throws NumberFormatException if the string is not a valid index, i.e. "/1//2", "1/2", or "/-5"
 	 */
 	public static Index fromString(String indexStr) {
-		return new Index(
-				Arrays
-				.stream(indexStr.split("/"))
-				.skip(1)
-				.map(BigInteger::new)
-				.collect(Collectors.toList())
-		);
+		// this runs for every node of every graph we read, so it is a single pass over the chars
+		// which packs each atom straight into two longs. an `@da` is 39 digits,
+		// so it takes the 128 bit path (only atoms that don't fit at all become BigIntegers)
+		int end = indexStr.length();
+		while (end > 0 && indexStr.charAt(end - 1) == '/') {
+			end--;
+		}
+		if (end == 0) {
+			return new Index();
+		}
+		if (indexStr.charAt(0) != '/') {
+			throw new NumberFormatException("An index must start with a '/': \"" + indexStr + "\"");
+		}
+		int atoms = 0;
+		for (int i = 0; i < end; i++) {
+			if (indexStr.charAt(i) == '/') {
+				atoms++;
+			}
+		}
+
+		long[] words = new long[atoms * 2];
+		int position = 1;
+		for (int atom = 0; atom < atoms; atom++) {
+			int start = position;
+			long lo = 0;
+			// up to 18 digits always fit in a (signed) long, so no need for the 128 bit math
+			int fastEnd = Math.min(end, start + 18);
+			while (position < fastEnd && indexStr.charAt(position) != '/') {
+				lo = lo * 10 + digit(indexStr, position);
+				position++;
+			}
+			long hi = 0;
+			while (position < end && indexStr.charAt(position) != '/') {
+				int digit = digit(indexStr, position);
+				// (hi, lo) * 10 + digit
+				long loTimesTen = lo * 10;
+				long carry = Math.multiplyHigh(lo, 10) + ((lo >> 63) & 10); // the upper half of the unsigned product
+				long newLo = loTimesTen + digit;
+				if (Long.compareUnsigned(newLo, loTimesTen) < 0) {
+					carry++;
+				}
+				long hiTimesTen = hi * 10;
+				long newHi = hiTimesTen + carry;
+				if (Long.compareUnsigned(hi, 0x1999999999999999L) > 0 || Long.compareUnsigned(newHi, hiTimesTen) < 0) {
+					// more than 128 bits. this never happens for real indexes, so just start over the slow way
+					return fromStringWide(indexStr, end);
+				}
+				hi = newHi;
+				lo = newLo;
+				position++;
+			}
+			if (position == start) {
+				throw new NumberFormatException("Empty atom in index: \"" + indexStr + "\"");
+			}
+			words[2 * atom] = hi;
+			words[2 * atom + 1] = lo;
+			position++; // skip the '/'
+		}
+		return new Index(words, null, 0, atoms);
+	}
+
+	private static int digit(String indexStr, int position) {
+		int digit = indexStr.charAt(position) - '0';
+		if (digit < 0 || digit > 9) {
+			throw new NumberFormatException("Invalid character '" + indexStr.charAt(position) + "' in index: \"" + indexStr + "\"");
+		}
+		return digit;
+	}
+
+	/**
+	 * @param end The end of the index in the string, i.e. without the trailing slashes
+	 */
+	private static Index fromStringWide(String indexStr, int end) {
+		List<BigInteger> atoms = new ArrayList<>();
+		int start = 1;
+		while (start <= end) {
+			int atomEnd = indexStr.indexOf('/', start);
+			if (atomEnd == -1 || atomEnd > end) {
+				atomEnd = end;
+			}
+			if (atomEnd == start) {
+				throw new NumberFormatException("Empty atom in index: \"" + indexStr + "\"");
+			}
+			for (int i = start; i < atomEnd; i++) {
+				// BigInteger would take signs, and any unicode digit, too
+				digit(indexStr, i);
+			}
+			atoms.add(new BigInteger(indexStr.substring(start, atomEnd)));
+			start = atomEnd + 1;
+		}
+		return new Index(atoms);
 	}
 
 
@@ -77,24 +216,23 @@ public class Index extends ArrayList<BigInteger>  {
 	 * @return the canonical/serialized string representation of an index
 	 */
 	public String asString() {
-		if (this.isEmpty()) {
-			// special case: empty index serializes to an empty string,
-			// not "/" as it would with code below
-			return "";
+		String result = this.string;
+		if (result == null) {
+			// example: [17012348792174, 1, 170812937724, 2] -> "/17012348792174/1/170812937724/2"
+			// special case: empty index serializes to an empty string, not "/"
+			StringBuilder builder = new StringBuilder(length * 40);
+			for (int i = 0; i < length; i++) {
+				builder.append('/');
+				if (words != null) {
+					builder.append(Atoms.toString(hi(i), lo(i)));
+				} else {
+					builder.append(wide[offset + i]);
+				}
+			}
+			result = builder.toString();
+			this.string = result;
 		}
-
-		return this.stream()               // 1
-				.map(BigInteger::toString) // 2
-				.collect(Collectors.joining("/", "/", "")) // 3
-				;
-		// 1. For each BigInteger uid in index
-		// 2. convert uid to a string
-		// 3. join the resulting string list into one string
-		//    that is separated by slashes, has a slash at the start, and does not have anything at the end
-
-		// example: [17012348792174, 1, 170812937724, 2] -> "/17012348792174/1/170812937724/2"
-
-
+		return result;
 	}
 
 
@@ -105,10 +243,7 @@ public class Index extends ArrayList<BigInteger>  {
 	 * @return The combination of `baseIndex` with the `restOfTheIndex`
 	 */
 	public static Index fromIndex(Index baseIndex, BigInteger... restOfTheIndex) {
-		List<BigInteger> intermediate = new ArrayList<>(baseIndex);
-		intermediate.addAll(Arrays.asList(restOfTheIndex));
-
-		return new Index(intermediate);
+		return fromIndex(baseIndex, new Index(Arrays.asList(restOfTheIndex)));
 	}
 
 
@@ -126,25 +261,162 @@ public class Index extends ArrayList<BigInteger>  {
 	 * @return The combination of `baseIndex` with the `restOfTheIndex`
 	 */
 	public static Index fromIndex(Index baseIndex, Index otherIndex) {
-		return fromIndex(baseIndex, otherIndex.toArray(BigInteger[]::new));
+		if (otherIndex.isEmpty()) {
+			return baseIndex;
+		}
+		if (baseIndex.isEmpty()) {
+			return otherIndex;
+		}
+		if (baseIndex.words == null || otherIndex.words == null) {
+			List<BigInteger> intermediate = new ArrayList<>(baseIndex);
+			intermediate.addAll(otherIndex);
+			return new Index(intermediate);
+		}
+		long[] words = new long[(baseIndex.length + otherIndex.length) * 2];
+		System.arraycopy(baseIndex.words, baseIndex.offset * 2, words, 0, baseIndex.length * 2);
+		System.arraycopy(otherIndex.words, otherIndex.offset * 2, words, baseIndex.length * 2, otherIndex.length * 2);
+		return new Index(words, null, 0, baseIndex.length + otherIndex.length);
+	}
+
+
+	@Override
+	public BigInteger get(int i) {
+		Objects.checkIndex(i, length);
+		return words != null ? Atoms.toBigInteger(hi(i), lo(i)) : wide[offset + i];
 	}
 
+	@Override
+	public int size() {
+		return length;
+	}
 
+	/**
+	 * @return whether every atom fits in 128 bits, meaning {@link Index#hi(int)} and {@link Index#lo(int)} can be used
+	 */
+	boolean isPacked() {
+		return words != null;
+	}
+
+	/**
+	 * @return the upper 64 bits of the i-th atom. Only for packed indexes
+	 */
+	long hi(int i) {
+		return words[2 * (offset + i)];
+	}
+
+	/**
+	 * @return the lower 64 bits of the i-th atom. Only for packed indexes
+	 */
+	long lo(int i) {
+		return words[2 * (offset + i) + 1];
+	}
+
+	/**
+	 * The first atoms of this index, i.e. the index of an ancestor of the node. Shares this index's array.
+	 * @param length How many atoms to keep
+	 * @return the prefix
+	 */
+	public Index prefix(int length) {
+		return subList(0, length);
+	}
+
+	/**
+	 * The last atoms of this index, i.e. the index of the node within the graph of one of its ancestors.
+	 * Shares this index's array.
+	 * @param start How many atoms to drop
+	 * @return the suffix
+	 */
+	public Index suffix(int start) {
+		return subList(start, length);
+	}
+
+	/**
+	 * Like {@link List#subList(int, int)}, but since indexes are immutable, the result is a proper index
+	 */
+	@Override
+	public Index subList(int fromIndex, int toIndex) {
+		Objects.checkFromToIndex(fromIndex, toIndex, length);
+		if (fromIndex == 0 && toIndex == length) {
+			return this;
+		}
+		return new Index(words, wide, offset + fromIndex, toIndex - fromIndex);
+	}
+
+	/**
+	 * Whether this index points to the node at the given index, or to one of its descendants
+	 * @param prefix The index of the ancestor
+	 * @return true if the given index is a prefix of this one
+	 */
+	public boolean startsWith(Index prefix) {
+		return prefix.length <= this.length && this.regionEquals(prefix, prefix.length);
+	}
+
+	/**
+	 * @return whether the first `count` atoms of both indexes are the same
+	 */
+	private boolean regionEquals(Index other, int count) {
+		if (this.words != null && other.words != null) {
+			return Arrays.equals(
+					this.words, this.offset * 2, (this.offset + count) * 2,
+					other.words, other.offset * 2, (other.offset + count) * 2
+			);
+		}
+		for (int i = 0; i < count; i++) {
+			if (!this.get(i).equals(other.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o instanceof Index) {
+			Index other = (Index) o;
+			if (this.length != other.length) {
+				return false;
+			}
+			if (this.hash != 0 && other.hash != 0 && this.hash != other.hash) {
+				return false;
+			}
+			return this.regionEquals(other, length);
+		}
+		return super.equals(o);
+	}
+
+	/**
+	 * Same as the hash code of any other list of the same atoms, except that it is only worked out once
+	 */
+	@Override
+	public int hashCode() {
+		if (length == 0) {
+			return 1; // what every empty list hashes to
+		}
+		int h = hash;
+		if (h == 0) {
+			h = 1;
+			for (int i = 0; i < length; i++) {
+				h = 31 * h + (words != null ? Atoms.hash(hi(i), lo(i)) : wide[offset + i].hashCode());
+			}
+			hash = h;
+		}
+		return h;
+	}
 
 
-	private static class Adapter implements JsonSerializer<Index>, JsonDeserializer<Index> {
+	private static class Adapter extends TypeAdapter<Index> {
 		@Override
-		public Index deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-			String indexStr = json.getAsJsonPrimitive().getAsString();
-			return Index.fromString(indexStr);
+		public Index read(JsonReader in) throws IOException {
+			return Index.fromString(in.nextString());
 		}
 
 		@Override
-		public JsonElement serialize(Index src, Type typeOfSrc, JsonSerializationContext context) {
-			return new JsonPrimitive(src.asString());
+		public void write(JsonWriter out, Index src) throws IOException {
+			out.value(src.asString());
 		}
 	}
 
-	public static final Adapter ADAPTER = new Adapter();
+	public static final TypeAdapter<Index> ADAPTER = new Adapter().nullSafe();
 
 }
@@ -31,6 +31,15 @@ public class Node {
 				'}';
 	}
 
+	/**
+	 * Copy the node along with all of its children. The post is shared with the original
+	 *
+	 * @return the copy
+	 */
+	public Node deepCopy() {
+		return new Node(this.post, this.children == null ? null : this.children.deepCopy());
+	}
+
 	public void ensureChildGraph() {
 		if (this.children == null) {
 			this.children = new Graph();
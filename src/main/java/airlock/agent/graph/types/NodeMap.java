@@ -1,9 +1,14 @@
 package airlock.agent.graph.types;
 
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Type;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 
@@ -11,8 +16,9 @@ import java.util.Map;
  * Represents the `nodes` object which you get from `payload["json"]["add-nodes"]["nodes"]`
  * Basically a flatmap version of {@link Graph}.
  * That is, a map of Indexes and Nodes, without preserving graph structure.
+ * The nodes keep the order they were received in, so that parents which are sent before their children are also added first.
  */
-public class NodeMap extends HashMap<Index, Node> {
+public class NodeMap extends LinkedHashMap<Index, Node> {
 
 	/**
 	 * Construct an empty NodeMap
@@ -32,35 +38,52 @@ public class NodeMap extends HashMap<Index, Node> {
 
 
 
-	private static class Adapter implements JsonSerializer<NodeMap>, JsonDeserializer<NodeMap> {
+	private static class AdapterFactory implements TypeAdapterFactory {
+
 		@Override
-		public NodeMap deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			if (type.getRawType() != NodeMap.class) {
+				return null;
+			}
+			return (TypeAdapter<T>) new Adapter(gson.getAdapter(Node.class)).nullSafe();
+		}
+	}
+
+	private static class Adapter extends TypeAdapter<NodeMap> {
+
+		private final TypeAdapter<Node> nodeAdapter;
+
+		Adapter(TypeAdapter<Node> nodeAdapter) {
+			this.nodeAdapter = nodeAdapter;
+		}
+
+		@Override
+		public NodeMap read(JsonReader in) throws IOException {
 			// hash map.
 			// keys: index
 			// values: Node
 			NodeMap result = new NodeMap();
-			JsonObject nodeMapObj = json.getAsJsonObject();
-			nodeMapObj.entrySet().forEach(indexNodeObjEntry -> {
-				Index indexList = Index.fromString(indexNodeObjEntry.getKey());
-				Node nodeObj = context.deserialize(indexNodeObjEntry.getValue(), Node.class);
-				result.put(indexList, nodeObj);
-			});
+			in.beginObject();
+			while (in.hasNext()) {
+				Index index = Index.fromString(in.nextName());
+				result.put(index, nodeAdapter.read(in));
+			}
+			in.endObject();
 
 			return result;
 		}
 
 		@Override
-		public JsonElement serialize(NodeMap src, Type typeOfSrc, JsonSerializationContext context) {
-			JsonObject result = new JsonObject();
-			src.forEach((index, node) -> {
-				String indexStr = index.asString();
-				JsonElement nodeObj = context.serialize(node, Node.class);
-				result.add(indexStr, nodeObj);
-			});
-
-			return result;
+		public void write(JsonWriter out, NodeMap src) throws IOException {
+			out.beginObject();
+			for (Map.Entry<Index, Node> entry : src.entrySet()) {
+				out.name(entry.getKey().asString());
+				nodeAdapter.write(out, entry.getValue());
+			}
+			out.endObject();
 		}
 	}
 
-	public static final Adapter ADAPTER = new Adapter();
+	public static final TypeAdapterFactory ADAPTER_FACTORY = new AdapterFactory();
 }
@@ -2,13 +2,19 @@ package airlock.agent.graph.types;
 
 import airlock.agent.graph.types.content.GraphContent;
 import airlock.types.ShipName;
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import lombok.With;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -94,44 +100,95 @@ public class Post {
 	}
 
 
-	private static class Adapter implements JsonSerializer<Post>, JsonDeserializer<Post> {
+	private static class AdapterFactory implements TypeAdapterFactory {
+
 		@Override
-		public Post deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-			Type contentList = new TypeToken<List<GraphContent>>() {
-			}.getType();
-			Type signatureList = new TypeToken<List<String>>() {
-			}.getType();
-
-			JsonObject postObj = json.getAsJsonObject();
-			JsonElement hashObj = postObj.get("hash");
-			String hash = hashObj.isJsonNull() ? null : hashObj.getAsString();
-			return new Post(
-					postObj.get("author").getAsString(),
-					Index.fromString(postObj.get("index").getAsString()),
-					postObj.get("time-sent").getAsLong(),
-					context.deserialize(postObj.get("contents").getAsJsonArray(), contentList),
-					hash,
-					context.deserialize(postObj.get("signatures").getAsJsonArray(), signatureList)
-			);
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+			if (type.getRawType() != Post.class) {
+				return null;
+			}
+			TypeAdapter<List<GraphContent>> contentsAdapter = gson.getAdapter(new TypeToken<List<GraphContent>>() {
+			});
+			TypeAdapter<List<String>> signaturesAdapter = gson.getAdapter(new TypeToken<List<String>>() {
+			});
+			return (TypeAdapter<T>) new Adapter(contentsAdapter, signaturesAdapter).nullSafe();
 		}
+	}
 
-		@Override
-		public JsonElement serialize(Post src, Type typeOfSrc, JsonSerializationContext context) {
-			JsonObject result = new JsonObject();
+	private static class Adapter extends TypeAdapter<Post> {
+
+		private final TypeAdapter<List<GraphContent>> contentsAdapter;
+		private final TypeAdapter<List<String>> signaturesAdapter;
 
+		Adapter(TypeAdapter<List<GraphContent>> contentsAdapter, TypeAdapter<List<String>> signaturesAdapter) {
+			this.contentsAdapter = contentsAdapter;
+			this.signaturesAdapter = signaturesAdapter;
+		}
 
-			result.addProperty("author", src.author);
-			result.addProperty("index", src.index.asString());
-			result.addProperty("time-sent", src.timeSent);
-			result.add("contents", context.serialize(src.contents));
-			result.addProperty("hash", src.hash);
-			result.add("signatures", context.serialize(src.signatures));
+		@Override
+		public Post read(JsonReader in) throws IOException {
+			String author = null;
+			Index index = null;
+			long timeSent = 0;
+			List<GraphContent> contents = null;
+			String hash = null;
+			List<String> signatures = null;
+
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "author":
+						author = in.nextString();
+						break;
+					case "index":
+						index = Index.fromString(in.nextString());
+						break;
+					case "time-sent":
+						timeSent = in.nextLong();
+						break;
+					case "contents":
+						contents = contentsAdapter.read(in);
+						break;
+					case "hash":
+						if (in.peek() == JsonToken.NULL) {
+							in.nextNull();
+						} else {
+							hash = in.nextString();
+						}
+						break;
+					case "signatures":
+						signatures = signaturesAdapter.read(in);
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			if (author == null || index == null || contents == null || signatures == null) {
+				throw new JsonParseException("Post is missing one of `author`, `index`, `contents` or `signatures`");
+			}
+
+			return new Post(author, index, timeSent, contents, hash, signatures);
+		}
 
-			return result;
+		@Override
+		public void write(JsonWriter out, Post src) throws IOException {
+			out.beginObject();
+			out.name("author").value(src.author);
+			out.name("index").value(src.index.asString());
+			out.name("time-sent").value(src.timeSent);
+			out.name("contents");
+			contentsAdapter.write(out, src.contents);
+			out.name("hash").value(src.hash);
+			out.name("signatures");
+			signaturesAdapter.write(out, src.signatures);
+			out.endObject();
 		}
 	}
 
-	public static final Adapter ADAPTER = new Adapter();
+	public static final TypeAdapterFactory ADAPTER_FACTORY = new AdapterFactory();
 
 
 	@Override
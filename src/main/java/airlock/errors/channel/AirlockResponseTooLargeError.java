@@ -0,0 +1,20 @@
+package airlock.errors.channel;
+
+import airlock.InMemoryResponseWrapper;
+
+/**
+ * Thrown when the body of a response from the ship is larger than the channel is willing to read.
+ * The wrapped response carries the status and headers, but not the (discarded) body.
+ */
+public class AirlockResponseTooLargeError extends AirlockResponseError {
+
+	/**
+	 * The limit which was exceeded, in bytes
+	 */
+	public final long maxBytes;
+
+	public AirlockResponseTooLargeError(String message, InMemoryResponseWrapper responseWrapper, long maxBytes) {
+		super(message, responseWrapper);
+		this.maxBytes = maxBytes;
+	}
+}
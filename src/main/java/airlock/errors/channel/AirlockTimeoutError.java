@@ -0,0 +1,18 @@
+package airlock.errors.channel;
+
+/**
+ * Thrown when a request was sent to the ship, but no response to it arrived before its deadline
+ */
+public class AirlockTimeoutError extends AirlockRequestError {
+	public AirlockTimeoutError(String message) {
+		super(message);
+	}
+
+	public AirlockTimeoutError(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public AirlockTimeoutError(Throwable cause) {
+		super(cause);
+	}
+}
@@ -1,4 +1,8 @@
+import airlock.EyreResponse;
+import airlock.agent.graph.GraphUpdateDecoder;
+import airlock.agent.graph.types.GraphUpdate;
 import airlock.agent.graph.types.Resource;
+import com.google.gson.JsonParseException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -12,6 +16,52 @@ public class UrbitUnitTests {
 		Assertions.assertEquals(new Resource("~zod", "test-graph"), gson.fromJson("{\"ship\": \"~zod\",\"name\": \"test-graph\"}", Resource.class));
 	}
 
+	@Test
+	public void graphUpdateDecodedInSinglePass() {
+		String event = "{\"id\": 2, \"response\": \"diff\", \"json\": {\"graph-update\": {\"remove-nodes\": {\"resource\": {\"ship\": \"~zod\", \"name\": \"test-graph\"}, \"indices\": [\"/1/2\"]}}}}";
+		EyreResponse response = EyreResponse.fromJson(event, id -> GraphUpdateDecoder.INSTANCE);
+		Assertions.assertNull(response.json);
+		GraphUpdate.RemoveNodes update = (GraphUpdate.RemoveNodes) response.decodedJson;
+		Assertions.assertNotNull(update);
+		Assertions.assertEquals(new Resource("~zod", "test-graph"), update.resource);
+		Assertions.assertEquals("/1/2", update.indices.get(0).asString());
+	}
+
+	@Test
+	public void malformedEventIsAJsonParseException() {
+		// a payload of the wrong shape for its decoder, and an id that isn't a number
+		String wrongPayload = "{\"id\": 2, \"response\": \"diff\", \"json\": \"not a graph-update\"}";
+		String wrongId = "{\"id\": \"two\", \"response\": \"diff\"}";
+		Assertions.assertThrows(JsonParseException.class, () -> EyreResponse.fromJson(wrongPayload, id -> GraphUpdateDecoder.INSTANCE));
+		Assertions.assertThrows(JsonParseException.class, () -> EyreResponse.fromJson(wrongId, id -> null));
+		Assertions.assertThrows(JsonParseException.class, () -> gson.fromJson(wrongId, EyreResponse.class));
+	}
+
+	@Test
+	public void eyreResponseFromGson() {
+		EyreResponse response = gson.fromJson("{\"id\": 3, \"ok\": \"ok\", \"response\": \"diff\", \"json\": {\"a\": 1}}", EyreResponse.class);
+		Assertions.assertEquals(3, response.id);
+		Assertions.assertTrue(response.ok);
+		Assertions.assertNotNull(response.json);
+		Assertions.assertEquals(1, response.json.get("a").getAsInt());
+		Assertions.assertNull(response.decodedJson);
+	}
+
+	@Test
+	public void copiedGraphUpdateSharesNothingMutable() {
+		String event = "{\"id\": 2, \"response\": \"diff\", \"json\": {\"graph-update\": {\"add-nodes\": {\"resource\": {\"ship\": \"~zod\", \"name\": \"test-graph\"}, "
+				+ "\"nodes\": {\"/1\": {\"post\": {\"author\": \"zod\", \"index\": \"/1\", \"time-sent\": 0, \"contents\": [], \"hash\": null, \"signatures\": []}, \"children\": null}}}}}}";
+		GraphUpdate.AddNodes update = (GraphUpdate.AddNodes) EyreResponse.fromJson(event, id -> GraphUpdateDecoder.INSTANCE).decodedJson;
+		GraphUpdate.AddNodes copy = (GraphUpdate.AddNodes) GraphUpdateDecoder.INSTANCE.copy(update);
+
+		Assertions.assertNotNull(update);
+		Assertions.assertNotNull(copy);
+		Assertions.assertNotSame(update.nodes, copy.nodes);
+		Assertions.assertEquals(update.nodes.keySet(), copy.nodes.keySet());
+		update.nodes.clear();
+		Assertions.assertEquals(1, copy.nodes.size());
+	}
+
 
 
 	/*
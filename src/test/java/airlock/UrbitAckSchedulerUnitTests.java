@@ -0,0 +1,117 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitAckSchedulerUnitTests {
+
+	// long enough that the scheduler never sends an ack by itself during a test, unless it is meant to
+	private static final AckConfig MANUAL = new AckConfig(1000, Duration.ofMinutes(10));
+
+	private static AckScheduler neverSends(AckConfig config) {
+		return new AckScheduler(config, eventId -> {
+			throw new AssertionError("did not expect an ack for " + eventId);
+		});
+	}
+
+	@Test
+	public void replayedEventsAreSeen() {
+		AckScheduler scheduler = neverSends(MANUAL);
+		Assertions.assertFalse(scheduler.alreadySeen(1));
+		Assertions.assertTrue(scheduler.eventSeen(1));
+		Assertions.assertTrue(scheduler.eventSeen(2));
+		Assertions.assertTrue(scheduler.alreadySeen(2));
+		Assertions.assertFalse(scheduler.eventSeen(2));
+		Assertions.assertFalse(scheduler.eventSeen(1));
+		Assertions.assertEquals(2, scheduler.getLastSeenEventId());
+	}
+
+	@Test
+	public void claimedAckCountsOnlyOnceSent() {
+		AckScheduler scheduler = neverSends(MANUAL);
+		Assertions.assertEquals(AckScheduler.NO_PENDING_ACK, scheduler.takePendingAck());
+
+		scheduler.eventSeen(1);
+		scheduler.eventSeen(2);
+		Assertions.assertEquals(2, scheduler.takePendingAck());
+		// claimed, but still in flight
+		Assertions.assertEquals(AckScheduler.NO_PENDING_ACK, scheduler.takePendingAck());
+		Assertions.assertEquals(0, scheduler.getLastAcknowledgedEventId());
+
+		scheduler.ackSettled(2, true);
+		Assertions.assertEquals(2, scheduler.getLastAcknowledgedEventId());
+		Assertions.assertEquals(AckScheduler.NO_PENDING_ACK, scheduler.takePendingAck());
+	}
+
+	@Test
+	public void failedAckIsPendingAgain() {
+		AckScheduler scheduler = neverSends(MANUAL);
+		scheduler.eventSeen(1);
+		scheduler.ackSettled(scheduler.takePendingAck(), true);
+
+		scheduler.eventSeen(2);
+		scheduler.eventSeen(3);
+		Assertions.assertEquals(3, scheduler.takePendingAck());
+		scheduler.ackSettled(3, false);
+		Assertions.assertEquals(1, scheduler.getLastAcknowledgedEventId());
+		Assertions.assertEquals(3, scheduler.takePendingAck());
+	}
+
+	@Test
+	public void failureOfAnOlderAckKeepsTheNewerClaim() {
+		AckScheduler scheduler = neverSends(MANUAL);
+		scheduler.eventSeen(1);
+		Assertions.assertEquals(1, scheduler.takePendingAck());
+		scheduler.eventSeen(2);
+		Assertions.assertEquals(2, scheduler.takePendingAck());
+
+		// the ack for 2 covers 1 as well
+		scheduler.ackSettled(1, false);
+		Assertions.assertEquals(AckScheduler.NO_PENDING_ACK, scheduler.takePendingAck());
+		scheduler.ackSettled(2, true);
+		Assertions.assertEquals(2, scheduler.getLastAcknowledgedEventId());
+	}
+
+	@Test
+	public void acksAfterEveryEventsAndAfterMaxDelay() throws InterruptedException {
+		BlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+		AckScheduler scheduler = new AckScheduler(new AckConfig(3, Duration.ofMillis(50)), eventId -> {
+			sent.add(eventId);
+			return CompletableFuture.completedFuture(null);
+		});
+
+		scheduler.eventSeen(1);
+		scheduler.eventSeen(2);
+		scheduler.eventSeen(3);
+		Assertions.assertEquals(Integer.valueOf(3), sent.poll(5, TimeUnit.SECONDS));
+
+		// fewer than everyEvents, so this one waits for maxDelay
+		scheduler.eventSeen(4);
+		Assertions.assertEquals(Integer.valueOf(4), sent.poll(5, TimeUnit.SECONDS));
+		Assertions.assertNull(sent.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void restoreAndReset() {
+		AckScheduler scheduler = neverSends(MANUAL);
+		scheduler.restore(10);
+		Assertions.assertTrue(scheduler.alreadySeen(10));
+		Assertions.assertEquals(10, scheduler.getLastAcknowledgedEventId());
+		Assertions.assertEquals(AckScheduler.NO_PENDING_ACK, scheduler.takePendingAck());
+
+		scheduler.eventSeen(11);
+		int claimed = scheduler.takePendingAck();
+		scheduler.reset();
+		// an ack from before the reset that completes afterwards doesn't count for the new channel
+		scheduler.ackSettled(claimed, true);
+		Assertions.assertEquals(0, scheduler.getLastAcknowledgedEventId());
+		Assertions.assertFalse(scheduler.alreadySeen(1));
+	}
+
+}
@@ -0,0 +1,131 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitChannelBatcherUnitTests {
+
+	// long enough that nothing is flushed by the timer during a test, unless it is meant to
+	private static final Duration NEVER = Duration.ofMinutes(10);
+
+	/**
+	 * Records every batch, and leaves it to the test to answer them
+	 */
+	private static class RecordingSender {
+		final List<List<String>> batches = new CopyOnWriteArrayList<>();
+		final List<CompletableFuture<InMemoryResponseWrapper>> responses = new CopyOnWriteArrayList<>();
+
+		CompletableFuture<InMemoryResponseWrapper> send(List<String> batch) {
+			CompletableFuture<InMemoryResponseWrapper> response = new CompletableFuture<>();
+			batches.add(batch);
+			responses.add(response);
+			return response;
+		}
+	}
+
+	private static InMemoryResponseWrapper response(int code) throws IOException {
+		return InMemoryResponseWrapper.withoutBody(new TransportResponse(code, new URL("http://localhost:8080/~/channel/1"), Collections.emptyMap(), 0, new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	public void fullBatchGoesOutRightAway() {
+		RecordingSender sender = new RecordingSender();
+		ChannelBatcher batcher = new ChannelBatcher(new BatchingConfig(NEVER, 3, 1024), sender::send);
+		for (int i = 0; i < 7; i++) {
+			batcher.enqueue("action" + i);
+		}
+		Assertions.assertEquals(List.of(List.of("action0", "action1", "action2"), List.of("action3", "action4", "action5")), sender.batches);
+
+		batcher.flush();
+		Assertions.assertEquals(List.of("action6"), sender.batches.get(2));
+		// nothing is left to flush
+		batcher.flush();
+		Assertions.assertEquals(3, sender.batches.size());
+	}
+
+	@Test
+	public void actionThatWouldOverflowStartsTheNextBatch() {
+		RecordingSender sender = new RecordingSender();
+		ChannelBatcher batcher = new ChannelBatcher(new BatchingConfig(NEVER, 100, 10), sender::send);
+		batcher.enqueue("aaaa");
+		batcher.enqueue("bbbb");
+		Assertions.assertTrue(sender.batches.isEmpty());
+
+		// 12 bytes would be over the limit, so the first two go without it
+		batcher.enqueue("cccc");
+		Assertions.assertEquals(List.of(List.of("aaaa", "bbbb")), sender.batches);
+
+		// an action bigger than the limit still goes out, on its own
+		batcher.enqueue("dddddddddddd");
+		Assertions.assertEquals(List.of("cccc"), sender.batches.get(1));
+		Assertions.assertEquals(List.of("dddddddddddd"), sender.batches.get(2));
+	}
+
+	@Test
+	public void lingerFlushesAPartialBatch() throws InterruptedException {
+		RecordingSender sender = new RecordingSender();
+		ChannelBatcher batcher = new ChannelBatcher(new BatchingConfig(Duration.ofMillis(20), 100, 1024), sender::send);
+		batcher.enqueue("first");
+		batcher.enqueue("second");
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (sender.batches.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		Assertions.assertEquals(List.of(List.of("first", "second")), sender.batches);
+
+		// the linger window starts again with the next action
+		batcher.enqueue("third");
+		deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (sender.batches.size() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		Assertions.assertEquals(List.of("third"), sender.batches.get(1));
+	}
+
+	@Test
+	public void everyActionGetsTheResponseOfItsBatch() throws Exception {
+		RecordingSender sender = new RecordingSender();
+		ChannelBatcher batcher = new ChannelBatcher(new BatchingConfig(NEVER, 2, 1024), sender::send);
+		List<CompletableFuture<InMemoryResponseWrapper>> futures = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(batcher.enqueue("action" + i));
+		}
+		futures.forEach(future -> Assertions.assertFalse(future.isDone()));
+
+		InMemoryResponseWrapper ok = response(204);
+		sender.responses.get(0).complete(ok);
+		Assertions.assertSame(ok, futures.get(0).get(5, TimeUnit.SECONDS));
+		Assertions.assertSame(ok, futures.get(1).get(5, TimeUnit.SECONDS));
+		Assertions.assertFalse(futures.get(2).isDone());
+
+		IOException failure = new IOException("connection reset");
+		sender.responses.get(1).completeExceptionally(failure);
+		for (int i = 2; i < 4; i++) {
+			ExecutionException thrown = Assertions.assertThrows(ExecutionException.class, futures.get(i)::get);
+			Assertions.assertSame(failure, thrown.getCause());
+		}
+	}
+
+	@Test
+	public void senderThatThrowsFailsTheBatch() {
+		ChannelBatcher batcher = new ChannelBatcher(new BatchingConfig(NEVER, 1, 1024), batch -> {
+			throw new IllegalStateException("channel is closed");
+		});
+		CompletableFuture<InMemoryResponseWrapper> future = batcher.enqueue("action");
+		Assertions.assertTrue(future.isCompletedExceptionally());
+	}
+
+}
@@ -0,0 +1,128 @@
+package airlock;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitChannelOrderingUnitTests {
+
+	/**
+	 * Records every async request, and leaves it to the test to complete them
+	 */
+	private static class FakeTransport implements HttpTransport {
+		final List<TransportRequest> requests = new CopyOnWriteArrayList<>();
+		final List<CompletableFuture<TransportResponse>> responses = new CopyOnWriteArrayList<>();
+
+		@Override
+		public TransportResponse execute(TransportRequest request) throws IOException {
+			throw new IOException("only async requests are expected");
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			CompletableFuture<TransportResponse> response = new CompletableFuture<>();
+			requests.add(request);
+			responses.add(response);
+			return response;
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			throw new UnsupportedOperationException("no event stream in this test");
+		}
+
+		void respond(int index, int code) {
+			TransportRequest request = requests.get(index);
+			responses.get(index).complete(new TransportResponse(code, request.url, Collections.emptyMap(), 0, new ByteArrayInputStream(new byte[0])));
+		}
+
+		void awaitRequests(int count) throws InterruptedException {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (requests.size() < count && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			Assertions.assertEquals(count, requests.size());
+		}
+	}
+
+	private static JsonObject action(String name) {
+		JsonObject action = new JsonObject();
+		action.addProperty("action", name);
+		return action;
+	}
+
+	@Test
+	public void putsGoOutInOrderOneAtATime() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+
+		CompletableFuture<InMemoryResponseWrapper> first = channel.sendJSONtoChannelAsync(action("first"));
+		CompletableFuture<InMemoryResponseWrapper> second = channel.sendJSONtoChannelAsync(action("second"));
+		CompletableFuture<InMemoryResponseWrapper> third = channel.sendJSONtoChannelAsync(action("third"));
+
+		// the second PUT waits for the first
+		transport.awaitRequests(1);
+		Thread.sleep(50);
+		Assertions.assertEquals(1, transport.requests.size());
+
+		// and a failed PUT doesn't hold up the ones after it
+		transport.respond(0, 500);
+		transport.awaitRequests(2);
+		Assertions.assertTrue(first.isCompletedExceptionally());
+		transport.respond(1, 204);
+		transport.awaitRequests(3);
+		transport.respond(2, 204);
+
+		Assertions.assertEquals(204, second.get(5, TimeUnit.SECONDS).code);
+		Assertions.assertEquals(204, third.get(5, TimeUnit.SECONDS).code);
+		String[] names = {"first", "second", "third"};
+		for (int i = 0; i < names.length; i++) {
+			String body = new String(transport.requests.get(i).body, StandardCharsets.UTF_8);
+			Assertions.assertTrue(body.contains(names[i]), body);
+		}
+	}
+
+	@Test
+	public void subscriptionThatTimesOutIsUnsubscribedFrom() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+		channel.setRequestTimeout(Duration.ofMillis(50));
+		LinkedBlockingQueue<SubscribeEvent> events = new LinkedBlockingQueue<>();
+
+		CompletableFuture<Integer> subscription = channel.subscribeAsync("~zod", "graph-store", "/updates", events::add);
+		transport.awaitRequests(1);
+		transport.respond(0, 204);
+		int id = subscription.get(5, TimeUnit.SECONDS);
+
+		// the ship never says whether it started the subscription
+		SubscribeEvent event = events.poll(5, TimeUnit.SECONDS);
+		Assertions.assertNotNull(event);
+		Assertions.assertEquals(SubscribeEvent.EventType.FAILURE, event.eventType);
+		transport.awaitRequests(2);
+		JsonObject unsubscribe = JsonParser.parseString(new String(transport.requests.get(1).body, StandardCharsets.UTF_8)).getAsJsonArray().get(0).getAsJsonObject();
+		Assertions.assertEquals("unsubscribe", unsubscribe.get("action").getAsString());
+		Assertions.assertEquals(id, unsubscribe.get("subscription").getAsInt());
+		transport.respond(1, 204);
+	}
+
+}
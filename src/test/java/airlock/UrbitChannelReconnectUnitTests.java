@@ -0,0 +1,187 @@
+package airlock;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitChannelReconnectUnitTests {
+
+	/**
+	 * A single sse stream that the channel opened, which the test feeds
+	 */
+	private static class FakeStream implements EventStream {
+		final Map<String, String> headers;
+		final EventStream.Listener listener;
+		final long openedAt = System.nanoTime();
+		volatile boolean cancelled = false;
+
+		FakeStream(Map<String, String> headers, EventStream.Listener listener) {
+			this.headers = headers;
+			this.listener = listener;
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		void event(int id) {
+			listener.onEvent(String.valueOf(id), null, "{\"id\":" + id + ",\"response\":\"poke\",\"ok\":\"ok\"}");
+		}
+	}
+
+	/**
+	 * Logs in, answers every other request with a 204, and hands the streams the channel opens to the test
+	 */
+	private static class FakeTransport implements HttpTransport {
+		final BlockingQueue<FakeStream> streams = new LinkedBlockingQueue<>();
+		private @Nullable CookieHandler cookieHandler;
+
+		@Override
+		public TransportResponse execute(TransportRequest request) throws IOException {
+			if (request.url.getPath().equals("/~/login") && cookieHandler != null) {
+				try {
+					cookieHandler.put(request.url.toURI(), Map.of("Set-Cookie", List.of("urbauth-~zod=0v1.abcde; Path=/; Max-Age=604800")));
+				} catch (URISyntaxException e) {
+					throw new IOException(e);
+				}
+			}
+			return new TransportResponse(204, request.url, Collections.emptyMap(), 0, new ByteArrayInputStream(new byte[0]));
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			try {
+				return CompletableFuture.completedFuture(execute(request));
+			} catch (IOException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			this.cookieHandler = cookieHandler;
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			FakeStream stream = new FakeStream(Map.copyOf(headers), listener);
+			streams.add(stream);
+			return stream;
+		}
+
+		FakeStream nextStream() throws InterruptedException {
+			FakeStream stream = streams.poll(5, TimeUnit.SECONDS);
+			Assertions.assertNotNull(stream);
+			return stream;
+		}
+	}
+
+	private static AirlockChannel connectedChannel(FakeTransport transport, ReconnectConfig config) throws Exception {
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+		channel.enableReconnect(config);
+		channel.authenticate();
+		channel.connect();
+		return channel;
+	}
+
+	private static long millisBetween(FakeStream first, FakeStream second) {
+		return TimeUnit.NANOSECONDS.toMillis(second.openedAt - first.openedAt);
+	}
+
+	@Test
+	public void lostStreamIsReopenedAfterLastSeenEvent() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		AirlockChannel channel = connectedChannel(transport, new ReconnectConfig(Duration.ofMillis(100), Duration.ofSeconds(1), 0));
+		FakeStream first = transport.nextStream();
+		Assertions.assertNull(first.headers.get("Last-Event-ID"));
+		Assertions.assertEquals("urbauth-~zod=0v1.abcde", first.headers.get("Cookie"));
+
+		first.listener.onOpen();
+		first.event(1);
+		first.event(2);
+		first.listener.onFailure(new IOException("connection reset"), -1);
+
+		// after the backoff (100ms, give or take 20%), on the same channel, right after the last event we saw
+		FakeStream second = transport.nextStream();
+		Assertions.assertTrue(millisBetween(first, second) >= 80, millisBetween(first, second) + "ms");
+		Assertions.assertTrue(first.cancelled);
+		Assertions.assertEquals("2", second.headers.get("Last-Event-ID"));
+		Assertions.assertEquals("urbauth-~zod=0v1.abcde", second.headers.get("Cookie"));
+		Assertions.assertTrue(channel.isConnected());
+
+		// the old stream is no longer listened to, and a replayed event doesn't count twice
+		first.event(5);
+		second.listener.onOpen();
+		second.event(2);
+		second.event(3);
+		second.listener.onClosed();
+		Assertions.assertEquals("3", transport.nextStream().headers.get("Last-Event-ID"));
+	}
+
+	@Test
+	public void backoffGrowsUntilTheStreamOpens() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		connectedChannel(transport, new ReconnectConfig(Duration.ofMillis(200), Duration.ofSeconds(5), 0));
+		FakeStream first = transport.nextStream();
+		first.listener.onFailure(null, 502);
+		FakeStream second = transport.nextStream();
+		second.listener.onFailure(null, 502);
+		FakeStream third = transport.nextStream();
+		third.listener.onFailure(null, 502);
+		FakeStream fourth = transport.nextStream();
+
+		// 200, 400 and then 800ms, each give or take 20% (and rounded up to the channel timer's ticks)
+		Assertions.assertTrue(millisBetween(first, second) >= 160, millisBetween(first, second) + "ms");
+		Assertions.assertTrue(millisBetween(second, third) >= 320, millisBetween(second, third) + "ms");
+		Assertions.assertTrue(millisBetween(third, fourth) >= 640, millisBetween(third, fourth) + "ms");
+
+		// once a stream opens, the next failure starts over at the initial backoff
+		fourth.listener.onOpen();
+		fourth.listener.onFailure(null, 502);
+		FakeStream fifth = transport.nextStream();
+		Assertions.assertTrue(millisBetween(fourth, fifth) < 640, millisBetween(fourth, fifth) + "ms");
+	}
+
+	@Test
+	public void channelIsTornDownOnceOutOfAttempts() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		AirlockChannel channel = connectedChannel(transport, new ReconnectConfig(Duration.ofMillis(10), Duration.ofMillis(10), 1));
+		transport.nextStream().listener.onFailure(null, 502);
+		FakeStream second = transport.nextStream();
+		Assertions.assertTrue(channel.isConnected());
+
+		second.listener.onFailure(null, 502);
+		Assertions.assertFalse(channel.isConnected());
+		Assertions.assertTrue(second.cancelled);
+		Assertions.assertNull(transport.streams.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void streamIsNotReopenedWithoutReconnectMode() throws Exception {
+		FakeTransport transport = new FakeTransport();
+		AirlockChannel channel = connectedChannel(transport, ReconnectConfig.DEFAULT);
+		channel.disableReconnect();
+		FakeStream first = transport.nextStream();
+		first.listener.onOpen();
+		first.listener.onFailure(new IOException("connection reset"), -1);
+		Assertions.assertFalse(channel.isConnected());
+		Assertions.assertNull(transport.streams.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+}
@@ -0,0 +1,94 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Random;
+
+public class UrbitDaUnitTests {
+
+	// ~1970.1.1
+	private static final BigInteger DA_UNIX_EPOCH = new BigInteger("170141184475152167957503069145530368000");
+	private static final BigInteger DA_SECOND = BigInteger.ONE.shiftLeft(64);
+
+	/**
+	 * The `@da` of a unix time done the slow way, with floored division like urbit does
+	 */
+	private static BigInteger reference(long unix) {
+		BigInteger[] quotient = BigInteger.valueOf(unix).multiply(DA_SECOND).divideAndRemainder(BigInteger.valueOf(1000));
+		// divide rounds toward zero
+		return DA_UNIX_EPOCH.add(quotient[1].signum() < 0 ? quotient[0].subtract(BigInteger.ONE) : quotient[0]);
+	}
+
+	private static void assertPacked(BigInteger da, long hi, long lo) {
+		Assertions.assertEquals(da.shiftRight(64).longValue(), hi, da.toString());
+		Assertions.assertEquals(da.longValue(), lo, da.toString());
+	}
+
+	@Test
+	public void msRoundTrip() {
+		Random random = new Random(25);
+		long[] times = new long[2_000];
+		times[0] = 0;
+		times[1] = 1;
+		times[2] = 999;
+		times[3] = 1000;
+		times[4] = 1_634_567_890_123L;
+		for (int i = 5; i < times.length; i++) {
+			// anything from 1900 to 2100
+			times[i] = -2_208_988_800_000L + (long) (random.nextDouble() * 6_311_390_400_000L);
+		}
+		for (long unix : times) {
+			BigInteger da = AirlockUtils.unixToDa(unix);
+			Assertions.assertEquals(reference(unix), da, Long.toString(unix));
+			assertPacked(da, AirlockUtils.unixToDaHigh(unix), AirlockUtils.unixToDaLow(unix));
+			Assertions.assertEquals(unix, AirlockUtils.daToUnix(da));
+			Assertions.assertEquals(unix, AirlockUtils.daToUnix(AirlockUtils.unixToDaHigh(unix), AirlockUtils.unixToDaLow(unix)));
+		}
+	}
+
+	@Test
+	public void before1970IsFloored() {
+		// a ms before the epoch is in the second before it, 999 ms in
+		long hi = AirlockUtils.unixToDaHigh(-1);
+		long lo = AirlockUtils.unixToDaLow(-1);
+		Assertions.assertEquals(DA_UNIX_EPOCH.shiftRight(64).longValue() - 1, hi);
+		Assertions.assertEquals(AirlockUtils.unixToDaLow(999), lo);
+		Assertions.assertEquals(DA_UNIX_EPOCH.subtract(DA_SECOND).add(AirlockUtils.unixToDa(999).subtract(DA_UNIX_EPOCH)), AirlockUtils.unixToDa(-1));
+		Assertions.assertEquals(-1, AirlockUtils.daToUnix(hi, lo));
+
+		Assertions.assertEquals(reference(-1001), AirlockUtils.unixToDa(-1001));
+		Assertions.assertEquals(-1001, AirlockUtils.daToUnix(AirlockUtils.unixToDa(-1001)));
+		Assertions.assertTrue(AirlockUtils.unixToDa(-1001).compareTo(AirlockUtils.unixToDa(-1000)) < 0);
+
+		Instant instant = Instant.ofEpochSecond(-1, 999_999_999);
+		Assertions.assertEquals(instant, AirlockUtils.daToInstant(AirlockUtils.unixToDa(instant)));
+	}
+
+	@Test
+	public void nanosecondsRoundTrip() {
+		Random random = new Random(64);
+		for (int i = 0; i < 2_000; i++) {
+			Instant instant = Instant.ofEpochSecond(-2_208_988_800L + (long) (random.nextDouble() * 6_311_390_400L), random.nextInt(1_000_000_000));
+			BigInteger da = AirlockUtils.unixToDa(instant);
+			assertPacked(da, AirlockUtils.unixToDaHigh(instant), AirlockUtils.unixToDaLow(instant));
+			Assertions.assertEquals(instant, AirlockUtils.daToInstant(da));
+			Assertions.assertEquals(instant, AirlockUtils.daToInstant(AirlockUtils.unixToDaHigh(instant), AirlockUtils.unixToDaLow(instant)));
+		}
+
+		// a single ns is still a different @da
+		Instant instant = Instant.ofEpochSecond(1_634_567_890L, 123_456_789);
+		Assertions.assertTrue(AirlockUtils.unixToDa(instant).compareTo(AirlockUtils.unixToDa(instant.plusNanos(1))) < 0);
+		// and whole ms agree with the ms conversion
+		Assertions.assertEquals(AirlockUtils.unixToDa(1_634_567_890_123L), AirlockUtils.unixToDa(Instant.ofEpochMilli(1_634_567_890_123L)));
+	}
+
+	@Test
+	public void rejectsAtomsThatAreNotDates() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> AirlockUtils.daToUnix(BigInteger.ONE.negate()));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> AirlockUtils.daToInstant(BigInteger.ONE.shiftLeft(128)));
+	}
+
+}
@@ -0,0 +1,152 @@
+package airlock;
+
+import com.google.gson.JsonElement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitJdkHttpTransportUnitTests {
+
+	private static final String AUTH_COOKIE = "urbauth-~zod=0v1.abcde";
+
+	/**
+	 * A ship that hands out an auth cookie on login, and answers everything else with the cookie header it got
+	 */
+	private static HttpServer ship() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/~/login", exchange -> {
+			exchange.getResponseHeaders().add("Set-Cookie", AUTH_COOKIE + "; Path=/; Max-Age=604800");
+			respond(exchange, 204, "");
+		});
+		server.createContext("/", exchange -> {
+			String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+			respond(exchange, 200, "\"" + (cookie == null ? "none" : cookie) + "\"");
+		});
+		server.start();
+		return server;
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static URL url(HttpServer server, String path) throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	private static String body(TransportResponse response) throws IOException {
+		try (response) {
+			return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static TransportRequest login(HttpServer server) throws IOException {
+		return TransportRequest.post(url(server, "/~/login"), "application/x-www-form-urlencoded", "password=lidlut-tabwed-pillex-ridrup");
+	}
+
+	@Test
+	public void derivedTransportStoresAndSendsCookies() throws Exception {
+		HttpServer server = ship();
+		try {
+			JdkHttpTransport transport = new JdkHttpTransport();
+			CookieManager cookies = new CookieManager();
+			HttpTransport derived = transport.withCookieHandler(cookies);
+
+			Assertions.assertEquals(204, derived.execute(login(server)).code);
+			List<HttpCookie> stored = cookies.getCookieStore().get(url(server, "/~/channel/1").toURI());
+			Assertions.assertEquals(1, stored.size());
+			Assertions.assertEquals("urbauth-~zod", stored.get(0).getName());
+
+			// sent with both blocking and async requests
+			Assertions.assertEquals("\"" + AUTH_COOKIE + "\"", body(derived.execute(TransportRequest.get(url(server, "/~/scry/a.json")))));
+			TransportResponse response = derived.executeAsync(TransportRequest.get(url(server, "/~/scry/a.json"))).get(10, TimeUnit.SECONDS);
+			Assertions.assertEquals("\"" + AUTH_COOKIE + "\"", body(response));
+
+			// the transport it was derived from keeps no cookies
+			Assertions.assertEquals("\"none\"", body(transport.execute(TransportRequest.get(url(server, "/~/scry/a.json")))));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void derivedTransportsKeepTheirCookiesApart() throws Exception {
+		HttpServer server = ship();
+		try {
+			JdkHttpTransport transport = new JdkHttpTransport();
+			CookieManager loggedIn = new CookieManager();
+			HttpTransport first = transport.withCookieHandler(loggedIn);
+			HttpTransport second = transport.withCookieHandler(new CookieManager());
+
+			// cookies set by an async response are stored too
+			Assertions.assertEquals(204, first.executeAsync(login(server)).get(10, TimeUnit.SECONDS).code);
+			Assertions.assertFalse(loggedIn.getCookieStore().getCookies().isEmpty());
+			Assertions.assertEquals("\"" + AUTH_COOKIE + "\"", body(first.execute(TransportRequest.get(url(server, "/~/scry/a.json")))));
+			Assertions.assertEquals("\"none\"", body(second.execute(TransportRequest.get(url(server, "/~/scry/a.json")))));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void channelCanUseTheJdkTransport() throws Exception {
+		HttpServer server = ship();
+		try {
+			AirlockChannel channel = new AirlockChannel(new AirlockCredentials(url(server, "/"), "~zod", "lidlut-tabwed-pillex-ridrup"), new JdkHttpTransport());
+			channel.authenticate();
+			// the scry is made with the cookie that the login left behind
+			JsonElement scry = channel.scryRequest("graph-store", "/keys");
+			Assertions.assertEquals(AUTH_COOKIE, scry.getAsString());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void defaultTransportFallsBackToTheJdk() throws Exception {
+		// airlock's own classes on their own, without OkHttp (or anything else of the test's classpath) next to them
+		URL classes = HttpTransport.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader withoutOkHttp = new URLClassLoader(new URL[]{classes}, ClassLoader.getPlatformClassLoader())) {
+			Assertions.assertThrows(ClassNotFoundException.class, () -> Class.forName("okhttp3.OkHttpClient", false, withoutOkHttp));
+			Object transport = withoutOkHttp.loadClass("airlock.HttpTransport").getMethod("defaultTransport").invoke(null);
+			Assertions.assertEquals("airlock.JdkHttpTransport", transport.getClass().getName());
+		}
+	}
+
+	@Test
+	public void onlyPlainCookiePairsAreSent() throws Exception {
+		HttpServer server = ship();
+		try {
+			CookieManager cookies = new CookieManager();
+			HttpTransport transport = new JdkHttpTransport().withCookieHandler(cookies);
+			transport.execute(login(server));
+			cookies.put(url(server, "/").toURI(), Map.of("Set-Cookie", List.of("other=\"value\"; Path=/; Max-Age=60")));
+
+			// instead of `$Version="1"; urbauth-~zod="0v1.abcde";$Path="/"...`, which is what the cookie manager gives us
+			String sent = body(transport.execute(TransportRequest.get(url(server, "/~/scry/a.json"))));
+			Assertions.assertTrue(sent.equals("\"" + AUTH_COOKIE + "; other=value\"") || sent.equals("\"other=value; " + AUTH_COOKIE + "\""), sent);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+}
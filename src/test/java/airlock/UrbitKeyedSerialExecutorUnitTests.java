@@ -0,0 +1,143 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UrbitKeyedSerialExecutorUnitTests {
+
+	/**
+	 * Only runs what it was given when the test says so
+	 */
+	private static class ManualExecutor implements Executor {
+		final Queue<Runnable> submitted = new ArrayDeque<>();
+
+		@Override
+		public void execute(Runnable command) {
+			submitted.add(command);
+		}
+
+		void runAll() {
+			Runnable command;
+			while ((command = submitted.poll()) != null) {
+				command.run();
+			}
+		}
+	}
+
+	@Test
+	public void tasksOfAKeyRunInOrder() {
+		ManualExecutor delegate = new ManualExecutor();
+		KeyedSerialExecutor executor = new KeyedSerialExecutor(delegate);
+		List<String> ran = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			String name = "a" + i;
+			executor.execute("a", () -> ran.add(name));
+		}
+		executor.execute("b", () -> ran.add("b0"));
+
+		// one drain per key, not one per task
+		Assertions.assertEquals(2, delegate.submitted.size());
+		Assertions.assertEquals(101, executor.getQueueDepth());
+		Assertions.assertEquals(100, executor.getQueueDepth("a"));
+
+		delegate.runAll();
+		Assertions.assertEquals(101, ran.size());
+		ran.remove("b0");
+		for (int i = 0; i < 100; i++) {
+			Assertions.assertEquals("a" + i, ran.get(i));
+		}
+		Assertions.assertEquals(0, executor.getQueueDepth());
+		Assertions.assertEquals(0, executor.getQueueDepth("a"));
+	}
+
+	@Test
+	public void aFailingTaskDoesNotStopTheQueue() {
+		ManualExecutor delegate = new ManualExecutor();
+		KeyedSerialExecutor executor = new KeyedSerialExecutor(delegate);
+		AtomicBoolean ranAfter = new AtomicBoolean();
+		executor.execute("a", () -> {
+			throw new IllegalStateException("handler failed");
+		});
+		executor.execute("a", () -> ranAfter.set(true));
+		delegate.runAll();
+		Assertions.assertTrue(ranAfter.get());
+		Assertions.assertEquals(0, executor.getQueueDepth());
+	}
+
+	@Test
+	public void slowKeyDoesNotHoldUpOthers() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch fastRan = new CountDownLatch(1);
+			executor.execute("slow", () -> {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			executor.execute("fast", fastRan::countDown);
+			Assertions.assertTrue(fastRan.await(5, TimeUnit.SECONDS));
+			release.countDown();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void queueDepthNeverGoesNegative() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		ExecutorService producers = Executors.newFixedThreadPool(4);
+		try {
+			KeyedSerialExecutor executor = new KeyedSerialExecutor(pool);
+			Map<Integer, List<Integer>> ran = new ConcurrentHashMap<>();
+			AtomicBoolean sawNegative = new AtomicBoolean();
+			int perProducer = 20_000;
+			CountDownLatch done = new CountDownLatch(4 * perProducer);
+			for (int producer = 0; producer < 4; producer++) {
+				int key = producer;
+				ran.put(key, Collections.synchronizedList(new ArrayList<>()));
+				producers.execute(() -> {
+					for (int i = 0; i < perProducer; i++) {
+						int value = i;
+						executor.execute(key, () -> {
+							if (executor.getQueueDepth() < 0) {
+								sawNegative.set(true);
+							}
+							ran.get(key).add(value);
+							done.countDown();
+						});
+					}
+				});
+			}
+			Assertions.assertTrue(done.await(30, TimeUnit.SECONDS));
+			Assertions.assertFalse(sawNegative.get());
+			Assertions.assertEquals(0, executor.getQueueDepth());
+			for (List<Integer> values : ran.values()) {
+				for (int i = 0; i < perProducer; i++) {
+					Assertions.assertEquals(Integer.valueOf(i), values.get(i));
+				}
+			}
+		} finally {
+			producers.shutdownNow();
+			pool.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package airlock;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class UrbitMultiplexedSseReaderUnitTests {
+
+	/**
+	 * Records every event as "id|type|data", and how the stream ended
+	 */
+	private static class RecordingListener implements EventStream.Listener {
+		final List<String> events = new CopyOnWriteArrayList<>();
+		final CompletableFuture<Integer> ended = new CompletableFuture<>();
+		volatile boolean opened = false;
+
+		@Override
+		public void onOpen() {
+			opened = true;
+		}
+
+		@Override
+		public void onEvent(@Nullable String id, @Nullable String type, String data) {
+			events.add(id + "|" + type + "|" + data);
+		}
+
+		@Override
+		public void onFailure(@Nullable Throwable t, int responseCode) {
+			ended.complete(responseCode);
+		}
+
+		@Override
+		public void onClosed() {
+			ended.complete(200);
+		}
+	}
+
+	/**
+	 * Serves the body once on a local server, reads it with a fresh reader and waits for the stream to end
+	 */
+	private static RecordingListener read(int code, String body, Map<String, String> headers, EventStream.Listener... others) throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		List<String> lastEventIds = new CopyOnWriteArrayList<>();
+		server.createContext("/~/channel/1", exchange -> {
+			String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+			if (lastEventId != null) {
+				lastEventIds.add(lastEventId);
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+			exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		});
+		server.start();
+		MultiplexedSseReader reader = new MultiplexedSseReader(1);
+		try {
+			RecordingListener listener = new RecordingListener();
+			URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/~/channel/1");
+			reader.open(url, headers, new EventStream.Listener() {
+				@Override
+				public void onOpen() {
+					listener.onOpen();
+				}
+
+				@Override
+				public void onEvent(@Nullable String id, @Nullable String type, String data) {
+					for (EventStream.Listener other : others) {
+						other.onEvent(id, type, data);
+					}
+					listener.onEvent(id, type, data);
+				}
+
+				@Override
+				public void onFailure(@Nullable Throwable t, int responseCode) {
+					listener.onFailure(t, responseCode);
+				}
+
+				@Override
+				public void onClosed() {
+					listener.onClosed();
+				}
+			});
+			listener.ended.get(10, TimeUnit.SECONDS);
+			Assertions.assertEquals(0, reader.getOpenStreamCount());
+			if (headers.containsKey("Last-Event-ID")) {
+				Assertions.assertEquals(List.of(headers.get("Last-Event-ID")), lastEventIds);
+			}
+			return listener;
+		} finally {
+			reader.shutdown();
+			server.stop(0);
+		}
+	}
+
+	private static RecordingListener read(String body) throws Exception {
+		return read(200, body, Map.of());
+	}
+
+	@Test
+	public void eventsAreSplitOnBlankLines() throws Exception {
+		RecordingListener listener = read("id: 1\ndata: {\"a\":1}\n\nid: 2\nevent: update\ndata: {\"b\":2}\n\n");
+		Assertions.assertTrue(listener.opened);
+		Assertions.assertEquals(List.of("1|null|{\"a\":1}", "2|update|{\"b\":2}"), listener.events);
+		Assertions.assertEquals(200, listener.ended.get().intValue());
+	}
+
+	@Test
+	public void multiLineDataIsJoinedWithNewlines() throws Exception {
+		RecordingListener listener = read("id: 1\ndata: {\ndata:   \"a\": 1\ndata:}\n\n");
+		// only a single space after the colon is stripped
+		Assertions.assertEquals(List.of("1|null|{\n  \"a\": 1\n}"), listener.events);
+	}
+
+	@Test
+	public void idWithNulIsIgnored() throws Exception {
+		RecordingListener listener = read("id: 1\ndata: first\n\nid: 2\u00003\ndata: second\n\n");
+		// the last event id sticks, and one with a NUL in it doesn't replace it
+		Assertions.assertEquals(List.of("1|null|first", "1|null|second"), listener.events);
+	}
+
+	@Test
+	public void commentsAndUnknownFieldsAreIgnored() throws Exception {
+		RecordingListener listener = read(": heartbeat\n\nretry: 1000\nid: 1\n: in the middle\nfoo: bar\ndata: kept\n\n");
+		Assertions.assertEquals(List.of("1|null|kept"), listener.events);
+	}
+
+	@Test
+	public void eventWithoutDataIsNotDispatched() throws Exception {
+		RecordingListener listener = read("id: 1\nevent: ping\n\ndata: after\n\n");
+		// the type of the empty event doesn't carry over to the next one
+		Assertions.assertEquals(List.of("1|null|after"), listener.events);
+	}
+
+	@Test
+	public void trailingEventWithoutBlankLineIsDropped() throws Exception {
+		RecordingListener listener = read("id: 1\ndata: complete\n\nid: 2\ndata: incomplete\n");
+		Assertions.assertEquals(List.of("1|null|complete"), listener.events);
+		Assertions.assertEquals(200, listener.ended.get().intValue());
+	}
+
+	@Test
+	public void anyLineEndingWorks() throws Exception {
+		RecordingListener listener = read("id: 1\r\ndata: crlf\r\n\r\nid: 2\rdata: cr\r\r");
+		Assertions.assertEquals(List.of("1|null|crlf", "2|null|cr"), listener.events);
+	}
+
+	@Test
+	public void fieldWithoutColonHasAnEmptyValue() throws Exception {
+		RecordingListener listener = read("data\ndata\n\n");
+		Assertions.assertEquals(List.of("null|null|\n"), listener.events);
+	}
+
+	@Test
+	public void errorResponseIsAFailure() throws Exception {
+		RecordingListener listener = read(500, "", Map.of());
+		Assertions.assertFalse(listener.opened);
+		Assertions.assertEquals(500, listener.ended.get().intValue());
+		Assertions.assertTrue(listener.events.isEmpty());
+	}
+
+	@Test
+	public void headersAreSent() throws Exception {
+		RecordingListener listener = read(200, "id: 6\ndata: resumed\n\n", Map.of("Last-Event-ID", "5"));
+		Assertions.assertEquals(List.of("6|null|resumed"), listener.events);
+	}
+
+	@Test
+	public void failingListenerDoesNotStopTheStream() throws Exception {
+		EventStream.Listener failing = new RecordingListener() {
+			@Override
+			public void onEvent(@Nullable String id, @Nullable String type, String data) {
+				if (data.equals("bad")) {
+					throw new IllegalStateException("listener failed");
+				}
+			}
+		};
+		RecordingListener listener = read(200, "id: 1\ndata: bad\n\nid: 2\ndata: good\n\n", Map.of(), failing);
+		Assertions.assertEquals(List.of("2|null|good"), listener.events);
+	}
+
+}
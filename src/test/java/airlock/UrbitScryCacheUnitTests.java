@@ -0,0 +1,145 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+public class UrbitScryCacheUnitTests {
+
+	private static final ScryCacheConfig LONG_TTL = new ScryCacheConfig(Duration.ofMinutes(10), 3);
+
+	private static byte[] body(String body) {
+		return body.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void put(ScryCache cache, String app, String path, String body) {
+		cache.put(app, path, body(body), cache.generation());
+	}
+
+	@Test
+	public void hitsAndMisses() {
+		ScryCache cache = new ScryCache(LONG_TTL);
+		Assertions.assertNull(cache.get("graph-store", "/keys"));
+		put(cache, "graph-store", "/keys", "keys");
+		Assertions.assertArrayEquals(body("keys"), cache.get("graph-store", "/keys"));
+		// the app is part of the key
+		Assertions.assertNull(cache.get("other-store", "/keys"));
+
+		ScryCache.Stats stats = cache.getStats();
+		Assertions.assertEquals(1, stats.hits);
+		Assertions.assertEquals(2, stats.misses);
+		Assertions.assertEquals(1, stats.entries);
+		Assertions.assertEquals(4, stats.bytes);
+	}
+
+	@Test
+	public void expiredResultsAreDropped() throws InterruptedException {
+		ScryCache cache = new ScryCache(new ScryCacheConfig(Duration.ofMillis(20), 10));
+		put(cache, "graph-store", "/keys", "keys");
+		Assertions.assertNotNull(cache.get("graph-store", "/keys"));
+		Thread.sleep(50);
+		Assertions.assertNull(cache.get("graph-store", "/keys"));
+		Assertions.assertEquals(1, cache.getStats().expirations);
+		Assertions.assertEquals(0, cache.getStats().entries);
+	}
+
+	@Test
+	public void zeroTtlIsNeverCached() {
+		ScryCache cache = new ScryCache(LONG_TTL.withRule("/graph-store/graph/", Duration.ZERO, 10));
+		put(cache, "graph-store", "/graph/~zod/test", "graph");
+		Assertions.assertNull(cache.get("graph-store", "/graph/~zod/test"));
+		put(cache, "graph-store", "/keys", "keys");
+		Assertions.assertNotNull(cache.get("graph-store", "/keys"));
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		ScryCache cache = new ScryCache(LONG_TTL);
+		put(cache, "app", "/a", "a");
+		put(cache, "app", "/b", "b");
+		put(cache, "app", "/c", "c");
+		// reading /a makes /b the least recently used
+		Assertions.assertNotNull(cache.get("app", "/a"));
+		put(cache, "app", "/d", "d");
+
+		Assertions.assertNull(cache.get("app", "/b"));
+		Assertions.assertNotNull(cache.get("app", "/a"));
+		Assertions.assertNotNull(cache.get("app", "/c"));
+		Assertions.assertNotNull(cache.get("app", "/d"));
+		Assertions.assertEquals(1, cache.getStats().evictions);
+	}
+
+	@Test
+	public void rulesHaveTheirOwnRoom() {
+		ScryCache cache = new ScryCache(LONG_TTL.withRule("/graph-store/graph/", Duration.ofMinutes(10), 1));
+		put(cache, "graph-store", "/keys", "keys");
+		put(cache, "graph-store", "/graph/~zod/one", "one");
+		put(cache, "graph-store", "/graph/~zod/two", "two");
+
+		// the rule only keeps one graph, and filling it doesn't push out anything else
+		Assertions.assertNull(cache.get("graph-store", "/graph/~zod/one"));
+		Assertions.assertNotNull(cache.get("graph-store", "/graph/~zod/two"));
+		Assertions.assertNotNull(cache.get("graph-store", "/keys"));
+	}
+
+	@Test
+	public void invalidationMatchesWholeSegments() {
+		ScryCache cache = new ScryCache(new ScryCacheConfig(Duration.ofMinutes(10), 10));
+		put(cache, "graph-store", "/graph/~zod/test", "test");
+		put(cache, "graph-store", "/graph/~zod/test/5", "node");
+		put(cache, "graph-store", "/graph/~zod/testing", "testing");
+		put(cache, "other-store", "/graph/~zod/test", "other");
+
+		Assertions.assertEquals(2, cache.invalidate("graph-store", "/graph/~zod/test"));
+		Assertions.assertNull(cache.get("graph-store", "/graph/~zod/test"));
+		Assertions.assertNull(cache.get("graph-store", "/graph/~zod/test/5"));
+		Assertions.assertNotNull(cache.get("graph-store", "/graph/~zod/testing"));
+		Assertions.assertNotNull(cache.get("other-store", "/graph/~zod/test"));
+
+		// a prefix ending in a '/' matches anything under it, but not the path itself
+		put(cache, "graph-store", "/graph/~zod/test", "test");
+		put(cache, "graph-store", "/graph/~zod/test/5", "node");
+		Assertions.assertEquals(1, cache.invalidate("graph-store", "/graph/~zod/test/"));
+		Assertions.assertNotNull(cache.get("graph-store", "/graph/~zod/test"));
+
+		cache.invalidateAll();
+		Assertions.assertEquals(0, cache.getStats().entries);
+		Assertions.assertEquals(3 + 3, cache.getStats().invalidations);
+	}
+
+	@Test
+	public void resultFromBeforeAnInvalidationIsNotStored() {
+		ScryCache cache = new ScryCache(LONG_TTL);
+		long generation = cache.generation();
+		// the scry is running while something changes on the ship
+		cache.invalidate("graph-store", "/graph/~zod/other");
+		cache.put("graph-store", "/keys", body("stale"), generation);
+		Assertions.assertNull(cache.get("graph-store", "/keys"));
+
+		put(cache, "graph-store", "/keys", "fresh");
+		Assertions.assertArrayEquals(body("fresh"), cache.get("graph-store", "/keys"));
+	}
+
+	@Test
+	public void removeDoesNotBumpTheGeneration() {
+		ScryCache cache = new ScryCache(LONG_TTL);
+		put(cache, "graph-store", "/keys", "not json");
+		long generation = cache.generation();
+
+		cache.remove("graph-store", "/keys");
+		Assertions.assertNull(cache.get("graph-store", "/keys"));
+		Assertions.assertEquals(generation, cache.generation());
+		Assertions.assertEquals(0, cache.getStats().invalidations);
+
+		// so a scry that was already running still gets cached
+		cache.put("graph-store", "/keys", body("keys"), generation);
+		Assertions.assertArrayEquals(body("keys"), cache.get("graph-store", "/keys"));
+		// and removing something that isn't there does nothing
+		cache.remove("graph-store", "/nothing");
+		cache.remove("other-store", "/keys");
+		Assertions.assertEquals(1, cache.getStats().entries);
+	}
+
+}
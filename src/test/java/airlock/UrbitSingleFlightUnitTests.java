@@ -0,0 +1,266 @@
+package airlock;
+
+import airlock.errors.AirlockException;
+import airlock.errors.channel.AirlockRequestError;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UrbitSingleFlightUnitTests {
+
+	/**
+	 * Waits until the thread is blocked, i.e. waiting on the leader of a flight
+	 */
+	private static void awaitBlocked(Thread thread) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		Assertions.assertEquals(Thread.State.WAITING, thread.getState());
+	}
+
+	@Test
+	public void followersGetCopiesOfTheLeadersResult() throws Exception {
+		SingleFlight singleFlight = new SingleFlight();
+		CountDownLatch leaderStarted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		SingleFlight.Call<SingleFlight.Result<String, String>> call = () -> {
+			calls.incrementAndGet();
+			leaderStarted.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new AirlockRequestError("interrupted", e);
+			}
+			return new SingleFlight.Result<>("leader", "shared");
+		};
+		SingleFlight.Copier<String, String> copier = (value, shared) -> "copy of " + value + " and " + shared;
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> leader = executor.submit(() -> singleFlight.run("key", call, copier));
+			Assertions.assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+			Assertions.assertEquals(1, singleFlight.getRunningCount());
+
+			Thread[] followerThread = new Thread[1];
+			Future<String> follower = executor.submit(() -> {
+				followerThread[0] = Thread.currentThread();
+				return singleFlight.run("key", call, copier);
+			});
+			while (followerThread[0] == null) {
+				Thread.sleep(5);
+			}
+			awaitBlocked(followerThread[0]);
+			release.countDown();
+
+			Assertions.assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+			Assertions.assertEquals("copy of leader and shared", follower.get(5, TimeUnit.SECONDS));
+			Assertions.assertEquals(1, calls.get());
+			Assertions.assertEquals(0, singleFlight.getRunningCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failuresAreNotRemembered() throws AirlockException {
+		SingleFlight singleFlight = new SingleFlight();
+		AirlockRequestError error = new AirlockRequestError("nope", new RuntimeException());
+		AirlockRequestError thrown = Assertions.assertThrows(AirlockRequestError.class, () -> singleFlight.run("key", () -> {
+			throw error;
+		}, (value, shared) -> "unexpected"));
+		Assertions.assertSame(error, thrown);
+
+		// the key is forgotten once the call is done, so the next caller runs it again
+		Assertions.assertEquals("again", singleFlight.run("key", () -> new SingleFlight.Result<>("again", "shared"), (value, shared) -> "unexpected"));
+	}
+
+	/**
+	 * Answers every request with the same small json body, once the test lets it
+	 */
+	private static class BlockingTransport implements HttpTransport {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger requests = new AtomicInteger();
+
+		@Override
+		public TransportResponse execute(TransportRequest request) {
+			requests.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"graph\": {\"nodes\": [1, 2, 3]}}".getBytes(StandardCharsets.UTF_8);
+			return new TransportResponse(200, request.url, Collections.emptyMap(), body.length, new ByteArrayInputStream(body));
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			return CompletableFuture.failedFuture(new UnsupportedOperationException("only scries in this test"));
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			throw new UnsupportedOperationException("no event stream in this test");
+		}
+	}
+
+	@Test
+	public void coalescedScriesGetTheirOwnObjects() throws Exception {
+		BlockingTransport transport = new BlockingTransport();
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<JsonElement> leader = executor.submit(() -> channel.scryRequest("graph-store", "/graph/~zod/test"));
+			while (transport.requests.get() == 0) {
+				Thread.sleep(5);
+			}
+			Thread[] followerThread = new Thread[1];
+			Future<JsonElement> follower = executor.submit(() -> {
+				followerThread[0] = Thread.currentThread();
+				return channel.scryRequest("graph-store", "/graph/~zod/test");
+			});
+			while (followerThread[0] == null) {
+				Thread.sleep(5);
+			}
+			awaitBlocked(followerThread[0]);
+			transport.release.countDown();
+
+			JsonElement leaderResult = leader.get(5, TimeUnit.SECONDS);
+			JsonElement followerResult = follower.get(5, TimeUnit.SECONDS);
+			Assertions.assertEquals(1, transport.requests.get());
+			Assertions.assertEquals(leaderResult, followerResult);
+			Assertions.assertNotSame(leaderResult, followerResult);
+
+			// so changing one of them leaves the other alone
+			((JsonObject) leaderResult).remove("graph");
+			Assertions.assertTrue(((JsonObject) followerResult).has("graph"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void followersRunTheCallThemselvesIfTheResultCantBeCopied() throws Exception {
+		SingleFlight singleFlight = new SingleFlight();
+		CountDownLatch leaderStarted = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		SingleFlight.Call<SingleFlight.Result<String, String>> call = () -> {
+			int number = calls.incrementAndGet();
+			if (number == 1) {
+				leaderStarted.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AirlockRequestError("interrupted", e);
+				}
+			}
+			return new SingleFlight.Result<>("call " + number, null);
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> leader = executor.submit(() -> singleFlight.run("key", call, (value, shared) -> null));
+			Assertions.assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+			Thread[] followerThread = new Thread[1];
+			Future<String> follower = executor.submit(() -> {
+				followerThread[0] = Thread.currentThread();
+				return singleFlight.run("key", call, (value, shared) -> null);
+			});
+			while (followerThread[0] == null) {
+				Thread.sleep(5);
+			}
+			awaitBlocked(followerThread[0]);
+			release.countDown();
+
+			Assertions.assertEquals("call 1", leader.get(5, TimeUnit.SECONDS));
+			Assertions.assertEquals("call 2", follower.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs two identical scries at once, and returns both results once they are done
+	 */
+	private static <T> List<T> scryTwice(AirlockChannel channel, BlockingTransport transport, JsonDecoder<T> decoder) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<T> leader = executor.submit(() -> channel.scryRequest("graph-store", "/graph/~zod/test", decoder));
+			while (transport.requests.get() == 0) {
+				Thread.sleep(5);
+			}
+			Thread[] followerThread = new Thread[1];
+			Future<T> follower = executor.submit(() -> {
+				followerThread[0] = Thread.currentThread();
+				return channel.scryRequest("graph-store", "/graph/~zod/test", decoder);
+			});
+			while (followerThread[0] == null) {
+				Thread.sleep(5);
+			}
+			awaitBlocked(followerThread[0]);
+			transport.release.countDown();
+			return List.of(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void decoderThatCantCopyMakesItsOwnRequest() throws Exception {
+		BlockingTransport transport = new BlockingTransport();
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+		JsonDecoder<JsonElement> noCopy = JsonParser::parseReader;
+
+		List<JsonElement> results = scryTwice(channel, transport, noCopy);
+		Assertions.assertEquals(2, transport.requests.get());
+		Assertions.assertEquals(results.get(0), results.get(1));
+		Assertions.assertNotSame(results.get(0), results.get(1));
+	}
+
+	@Test
+	public void cachedBodyIsUsedWhenTheDecoderCantCopy() throws Exception {
+		BlockingTransport transport = new BlockingTransport();
+		AirlockChannel channel = new AirlockChannel(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), transport);
+		channel.enableScryCache(ScryCacheConfig.DEFAULT);
+		JsonDecoder<JsonElement> noCopy = JsonParser::parseReader;
+
+		// the body is kept for the cache anyways, so the follower decodes that rather than asking again
+		List<JsonElement> results = scryTwice(channel, transport, noCopy);
+		Assertions.assertEquals(1, transport.requests.get());
+		Assertions.assertEquals(results.get(0), results.get(1));
+		Assertions.assertNotSame(results.get(0), results.get(1));
+
+		// and the next scry is a hit
+		Assertions.assertEquals(results.get(0), channel.scryRequest("graph-store", "/graph/~zod/test", noCopy));
+		Assertions.assertEquals(1, transport.requests.get());
+	}
+
+}
@@ -0,0 +1,267 @@
+package airlock;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class UrbitSubscriptionMultiplexerUnitTests {
+
+	private static final int SUBSCRIPTION_ID = 1;
+
+	/**
+	 * A channel which never talks to a ship. The test hands events to the subscription through {@link FakeChannel#event},
+	 * on the subscription's dispatch queue like the channel would
+	 */
+	private static class FakeChannel extends AirlockChannel {
+		final AtomicInteger subscribes = new AtomicInteger();
+		final List<Integer> unsubscribed = new CopyOnWriteArrayList<>();
+		volatile @Nullable Consumer<SubscribeEvent> handler;
+		volatile CompletableFuture<Integer> subscribed = CompletableFuture.completedFuture(SUBSCRIPTION_ID);
+
+		FakeChannel() throws IOException {
+			super(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), new NoTransport());
+		}
+
+		@Override
+		public CompletableFuture<Integer> subscribeAsync(String ship, String app, String path, @Nullable JsonDecoder<?> decoder, Consumer<SubscribeEvent> subscribeHandler) {
+			subscribes.incrementAndGet();
+			handler = subscribeHandler;
+			return subscribed;
+		}
+
+		@Override
+		public CompletableFuture<Void> unsubscribeAsync(int subscription) {
+			unsubscribed.add(subscription);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		void event(SubscribeEvent event) {
+			Consumer<SubscribeEvent> handler = this.handler;
+			Assertions.assertNotNull(handler);
+			this.dispatchFor(SUBSCRIPTION_ID, () -> handler.accept(event));
+		}
+
+		/**
+		 * Waits until everything that was dispatched for the subscription so far has run
+		 */
+		void settle() throws InterruptedException {
+			CountDownLatch done = new CountDownLatch(1);
+			this.dispatchFor(SUBSCRIPTION_ID, done::countDown);
+			Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	private static class NoTransport implements HttpTransport {
+		@Override
+		public TransportResponse execute(TransportRequest request) throws IOException {
+			throw new IOException("no requests in this test");
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			return CompletableFuture.failedFuture(new IOException("no requests in this test"));
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			throw new UnsupportedOperationException("no event stream in this test");
+		}
+	}
+
+	private static SubscribeEvent update(String value) {
+		JsonObject json = new JsonObject();
+		json.addProperty("value", value);
+		return SubscribeEvent.fromUpdate(json);
+	}
+
+	private static SubscribeEvent.EventType next(BlockingQueue<SubscribeEvent> events) throws InterruptedException {
+		SubscribeEvent event = events.poll(5, TimeUnit.SECONDS);
+		Assertions.assertNotNull(event);
+		return event.eventType;
+	}
+
+	private static SubscriptionMultiplexer.Registration listen(FakeChannel channel, BlockingQueue<SubscribeEvent> events) throws Exception {
+		return channel.getSubscriptionMultiplexer().subscribeAsync("~zod", "graph-store", "/updates", null, events::add).get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void listenerThatJoinsLateGetsItsOwnStarted() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		SubscriptionMultiplexer multiplexer = channel.getSubscriptionMultiplexer();
+		BlockingQueue<SubscribeEvent> first = new LinkedBlockingQueue<>();
+		BlockingQueue<SubscribeEvent> second = new LinkedBlockingQueue<>();
+
+		listen(channel, first);
+		channel.event(SubscribeEvent.STARTED);
+		channel.event(update("before"));
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(first));
+		Assertions.assertEquals(SubscribeEvent.EventType.UPDATE, next(first));
+
+		listen(channel, second);
+		channel.event(update("after"));
+		channel.settle();
+		// the late listener doesn't get what came before it joined, but does hear that the subscription is up
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(second));
+		Assertions.assertEquals("after", second.poll().updateJson.get("value").getAsString());
+		Assertions.assertTrue(second.isEmpty());
+		Assertions.assertEquals("after", first.poll().updateJson.get("value").getAsString());
+
+		Assertions.assertEquals(1, channel.subscribes.get());
+		Assertions.assertEquals(1, multiplexer.getSubscriptionCount());
+		Assertions.assertEquals(2, multiplexer.getListenerCount("~zod", "graph-store", "/updates"));
+	}
+
+	@Test
+	public void listenerThatJoinsAfterTheSubscriptionEndedHearsAboutIt() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		CompletableFuture<Integer> subscribed = new CompletableFuture<>();
+		channel.subscribed = subscribed;
+		SubscriptionMultiplexer multiplexer = channel.getSubscriptionMultiplexer();
+		BlockingQueue<SubscribeEvent> first = new LinkedBlockingQueue<>();
+		BlockingQueue<SubscribeEvent> second = new LinkedBlockingQueue<>();
+
+		CompletableFuture<SubscriptionMultiplexer.Registration> firstRegistration = multiplexer.subscribeAsync("~zod", "graph-store", "/updates", null, first::add);
+		CompletableFuture<SubscriptionMultiplexer.Registration> secondRegistration = multiplexer.subscribeAsync("~zod", "graph-store", "/updates", null, second::add);
+		// the subscription starts and fails before the second listener's join gets its turn
+		channel.event(SubscribeEvent.STARTED);
+		channel.event(SubscribeEvent.fromFailure("no such path"));
+		channel.settle();
+		subscribed.complete(SUBSCRIPTION_ID);
+		firstRegistration.get(5, TimeUnit.SECONDS);
+		secondRegistration.get(5, TimeUnit.SECONDS);
+		channel.settle();
+
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(first));
+		Assertions.assertEquals(SubscribeEvent.EventType.FAILURE, next(first));
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(second));
+		Assertions.assertEquals(SubscribeEvent.EventType.FAILURE, next(second));
+		Assertions.assertEquals(0, multiplexer.getSubscriptionCount());
+		Assertions.assertEquals(0, multiplexer.getListenerCount("~zod", "graph-store", "/updates"));
+
+		// the ship already ended it, so leaving doesn't unsubscribe
+		firstRegistration.get().unsubscribe().get(5, TimeUnit.SECONDS);
+		secondRegistration.get().unsubscribe().get(5, TimeUnit.SECONDS);
+		Assertions.assertTrue(channel.unsubscribed.isEmpty());
+	}
+
+	@Test
+	public void listenerAfterFinishedStartsANewSubscription() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		BlockingQueue<SubscribeEvent> first = new LinkedBlockingQueue<>();
+		BlockingQueue<SubscribeEvent> second = new LinkedBlockingQueue<>();
+
+		listen(channel, first);
+		channel.event(SubscribeEvent.STARTED);
+		channel.event(SubscribeEvent.FINISHED);
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(first));
+		Assertions.assertEquals(SubscribeEvent.EventType.FINISHED, next(first));
+		Assertions.assertEquals(0, channel.getSubscriptionMultiplexer().getSubscriptionCount());
+
+		listen(channel, second);
+		Assertions.assertEquals(2, channel.subscribes.get());
+		channel.event(SubscribeEvent.STARTED);
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(second));
+		channel.settle();
+		// the first listener was detached along with the old subscription
+		Assertions.assertTrue(first.isEmpty());
+	}
+
+	@Test
+	public void onlyTheLastListenerToLeaveUnsubscribes() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		SubscriptionMultiplexer multiplexer = channel.getSubscriptionMultiplexer();
+		BlockingQueue<SubscribeEvent> first = new LinkedBlockingQueue<>();
+		BlockingQueue<SubscribeEvent> second = new LinkedBlockingQueue<>();
+		SubscriptionMultiplexer.Registration firstRegistration = listen(channel, first);
+		SubscriptionMultiplexer.Registration secondRegistration = listen(channel, second);
+		channel.event(SubscribeEvent.STARTED);
+		channel.settle();
+
+		firstRegistration.unsubscribe().get(5, TimeUnit.SECONDS);
+		Assertions.assertTrue(firstRegistration.isClosed());
+		Assertions.assertTrue(channel.unsubscribed.isEmpty());
+		Assertions.assertEquals(1, multiplexer.getListenerCount("~zod", "graph-store", "/updates"));
+
+		// a listener that left doesn't get anything more
+		channel.event(update("after"));
+		channel.settle();
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(first));
+		Assertions.assertTrue(first.isEmpty());
+		Assertions.assertEquals(2, second.size());
+
+		secondRegistration.unsubscribe().get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(List.of(SUBSCRIPTION_ID), channel.unsubscribed);
+		Assertions.assertEquals(0, multiplexer.getSubscriptionCount());
+		// leaving twice does nothing
+		secondRegistration.unsubscribe().get(5, TimeUnit.SECONDS);
+		firstRegistration.close();
+		Assertions.assertEquals(1, channel.unsubscribed.size());
+	}
+
+	@Test
+	public void listenersOfAPathMustShareADecoder() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		SubscriptionMultiplexer multiplexer = channel.getSubscriptionMultiplexer();
+		listen(channel, new LinkedBlockingQueue<>());
+		JsonDecoder<JsonObject> decoder = reader -> new JsonObject();
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> multiplexer.subscribeAsync("~zod", "graph-store", "/updates", decoder, event -> {
+		}));
+		Assertions.assertEquals(1, multiplexer.getListenerCount("~zod", "graph-store", "/updates"));
+		// another path is another subscription, with whatever decoder
+		multiplexer.subscribeAsync("~zod", "graph-store", "/keys", decoder, event -> {
+		}).get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(2, multiplexer.getSubscriptionCount());
+	}
+
+	@Test
+	public void failingListenerDoesNotKeepTheEventFromOthers() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		BlockingQueue<SubscribeEvent> events = new LinkedBlockingQueue<>();
+		channel.getSubscriptionMultiplexer().subscribeAsync("~zod", "graph-store", "/updates", null, event -> {
+			throw new IllegalStateException("listener failed");
+		}).get(5, TimeUnit.SECONDS);
+		listen(channel, events);
+
+		channel.event(SubscribeEvent.STARTED);
+		Assertions.assertEquals(SubscribeEvent.EventType.STARTED, next(events));
+	}
+
+	@Test
+	public void failedSubscribeFailsEveryoneWaiting() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		CompletableFuture<Integer> subscribed = new CompletableFuture<>();
+		channel.subscribed = subscribed;
+		SubscriptionMultiplexer multiplexer = channel.getSubscriptionMultiplexer();
+		CompletableFuture<SubscriptionMultiplexer.Registration> first = multiplexer.subscribeAsync("~zod", "graph-store", "/updates", null, event -> {
+		});
+		CompletableFuture<SubscriptionMultiplexer.Registration> second = multiplexer.subscribeAsync("~zod", "graph-store", "/updates", null, event -> {
+		});
+		subscribed.completeExceptionally(new IOException("connection reset"));
+
+		Assertions.assertTrue(first.isCompletedExceptionally());
+		Assertions.assertTrue(second.isCompletedExceptionally());
+		Assertions.assertEquals(0, multiplexer.getSubscriptionCount());
+	}
+
+}
@@ -0,0 +1,375 @@
+package airlock;
+
+import airlock.errors.channel.AirlockRequestError;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class UrbitSubscriptionPublisherUnitTests {
+
+	private static final int SUBSCRIPTION_ID = 7;
+
+	/**
+	 * A channel which never talks to a ship. The test hands events to the publisher through {@link FakeChannel#handler}
+	 */
+	private static class FakeChannel extends AirlockChannel {
+		volatile @Nullable Consumer<SubscribeEvent> handler;
+		final List<Integer> unsubscribed = new CopyOnWriteArrayList<>();
+		CompletableFuture<Integer> subscribed = CompletableFuture.completedFuture(SUBSCRIPTION_ID);
+
+		FakeChannel() throws IOException {
+			super(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), new NoTransport());
+		}
+
+		@Override
+		public CompletableFuture<Integer> subscribeAsync(String ship, String app, String path, @Nullable JsonDecoder<?> decoder, Consumer<SubscribeEvent> subscribeHandler) {
+			handler = subscribeHandler;
+			return subscribed;
+		}
+
+		@Override
+		public CompletableFuture<Void> unsubscribeAsync(int subscription) {
+			unsubscribed.add(subscription);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		void offer(SubscribeEvent event) {
+			Assertions.assertNotNull(handler);
+			handler.accept(event);
+		}
+	}
+
+	private static class NoTransport implements HttpTransport {
+		@Override
+		public TransportResponse execute(TransportRequest request) throws IOException {
+			throw new IOException("no requests in this test");
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			return CompletableFuture.failedFuture(new IOException("no requests in this test"));
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			throw new UnsupportedOperationException("no event stream in this test");
+		}
+	}
+
+	/**
+	 * Records everything it is given, and checks that it is never called by two threads (or recursively) at once
+	 */
+	private static class RecordingSubscriber implements Flow.Subscriber<SubscribeEvent> {
+		final List<SubscribeEvent> events = new CopyOnWriteArrayList<>();
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+		final AtomicInteger inside = new AtomicInteger();
+		volatile boolean overlapped = false;
+		volatile Flow.Subscription subscription;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(SubscribeEvent item) {
+			if (inside.getAndIncrement() != 0) {
+				overlapped = true;
+			}
+			events.add(item);
+			this.handled(item);
+			inside.decrementAndGet();
+		}
+
+		void handled(SubscribeEvent item) {
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(null);
+		}
+
+		List<String> updates() {
+			return events.stream()
+					.filter(event -> event.eventType == SubscribeEvent.EventType.UPDATE)
+					.map(event -> event.updateJson.get("value").getAsString())
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static SubscribeEvent update(String key, String value) {
+		JsonObject json = new JsonObject();
+		json.addProperty("key", key);
+		json.addProperty("value", value);
+		return SubscribeEvent.fromUpdate(json);
+	}
+
+	private static SubscriptionPublisher publisher(FakeChannel channel, int bufferSize, BackpressureConfig.OverflowPolicy policy) {
+		return channel.subscriptionPublisher("~zod", "app", "/path", null,
+				new BackpressureConfig(bufferSize, policy, event -> event.updateJson.get("key").getAsString()));
+	}
+
+	@Test
+	public void onlyDeliversWhatWasRequested() throws IOException {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 10, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+
+		for (int i = 0; i < 5; i++) {
+			channel.offer(update("a", "u" + i));
+		}
+		Assertions.assertTrue(subscriber.events.isEmpty());
+
+		subscriber.subscription.request(2);
+		Assertions.assertEquals(List.of("u0", "u1"), subscriber.updates());
+		subscriber.subscription.request(1);
+		Assertions.assertEquals(List.of("u0", "u1", "u2"), subscriber.updates());
+
+		// demand that is left over is used up by events that arrive later
+		subscriber.subscription.request(10);
+		channel.offer(update("a", "u5"));
+		Assertions.assertEquals(List.of("u0", "u1", "u2", "u3", "u4", "u5"), subscriber.updates());
+
+		// and it saturates instead of overflowing
+		subscriber.subscription.request(Long.MAX_VALUE);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		channel.offer(update("a", "u6"));
+		Assertions.assertEquals(7, subscriber.updates().size());
+	}
+
+	@Test
+	public void requestingFromInsideOnNextDoesNotRecurse() throws IOException {
+		FakeChannel channel = new FakeChannel();
+		AtomicInteger depth = new AtomicInteger();
+		AtomicInteger maxDepth = new AtomicInteger();
+		RecordingSubscriber subscriber = new RecordingSubscriber() {
+			@Override
+			void handled(SubscribeEvent item) {
+				maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+				subscription.request(1);
+				depth.decrementAndGet();
+			}
+		};
+		publisher(channel, 1_000, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+		for (int i = 0; i < 1_000; i++) {
+			channel.offer(update("a", Integer.toString(i)));
+		}
+		subscriber.subscription.request(1);
+
+		// everything was delivered by the loop of the first drain, one event at a time
+		List<String> updates = subscriber.updates();
+		Assertions.assertEquals(1_000, updates.size());
+		for (int i = 0; i < updates.size(); i++) {
+			Assertions.assertEquals(Integer.toString(i), updates.get(i));
+		}
+		Assertions.assertEquals(1, maxDepth.get());
+		Assertions.assertFalse(subscriber.overlapped);
+	}
+
+	@Test
+	public void concurrentOffersAreDeliveredOneAtATime() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 100_000, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+
+		Thread[] producers = new Thread[4];
+		for (int p = 0; p < producers.length; p++) {
+			String key = "p" + p;
+			producers[p] = new Thread(() -> {
+				for (int i = 0; i < 5_000; i++) {
+					channel.offer(update(key, key + "-" + i));
+				}
+			});
+			producers[p].start();
+		}
+		for (Thread producer : producers) {
+			producer.join(TimeUnit.SECONDS.toMillis(30));
+		}
+
+		Assertions.assertEquals(20_000, subscriber.updates().size());
+		Assertions.assertFalse(subscriber.overlapped);
+	}
+
+	@Test
+	public void dropOldestKeepsTheNewestUpdates() throws IOException {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SubscriptionPublisher publisher = publisher(channel, 2, BackpressureConfig.OverflowPolicy.DROP_OLDEST);
+		publisher.subscribe(subscriber);
+
+		channel.offer(SubscribeEvent.STARTED);
+		for (int i = 0; i < 5; i++) {
+			channel.offer(update("a", "u" + i));
+		}
+		Assertions.assertEquals(3, publisher.getDroppedCount());
+		Assertions.assertEquals(0, publisher.getConflatedCount());
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		// STARTED doesn't count towards the buffer, so it is never dropped
+		Assertions.assertSame(SubscribeEvent.STARTED, subscriber.events.get(0));
+		Assertions.assertEquals(List.of("u3", "u4"), subscriber.updates());
+	}
+
+	@Test
+	public void conflateKeepsTheLatestUpdatePerKey() throws IOException {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SubscriptionPublisher publisher = publisher(channel, 2, BackpressureConfig.OverflowPolicy.CONFLATE);
+		publisher.subscribe(subscriber);
+
+		channel.offer(update("a", "a1"));
+		channel.offer(update("b", "b1"));
+		channel.offer(update("a", "a2"));
+		channel.offer(update("a", "a3"));
+		Assertions.assertEquals(2, publisher.getConflatedCount());
+		Assertions.assertEquals(0, publisher.getDroppedCount());
+
+		// a new key with a full buffer pushes out the oldest one, which is "a" (it keeps its place in line)
+		channel.offer(update("c", "c1"));
+		Assertions.assertEquals(1, publisher.getDroppedCount());
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		Assertions.assertEquals(List.of("b1", "c1"), subscriber.updates());
+
+		// once delivered, an update can't be replaced anymore
+		channel.offer(update("b", "b2"));
+		Assertions.assertEquals(List.of("b1", "c1", "b2"), subscriber.updates());
+		Assertions.assertEquals(2, publisher.getConflatedCount());
+	}
+
+	@Test
+	public void blockedProducerWakesUpWhenCancelled() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SubscriptionPublisher publisher = publisher(channel, 1, BackpressureConfig.OverflowPolicy.BLOCK);
+		publisher.subscribe(subscriber);
+
+		channel.offer(update("a", "u0"));
+		Thread producer = new Thread(() -> channel.offer(update("a", "u1")));
+		producer.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (publisher.getBlockedCount() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		Assertions.assertEquals(1, publisher.getBlockedCount());
+		Assertions.assertTrue(producer.isAlive());
+
+		subscriber.subscription.cancel();
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		Assertions.assertFalse(producer.isAlive());
+		Assertions.assertEquals(List.of(SUBSCRIPTION_ID), channel.unsubscribed);
+
+		// nothing is delivered after cancelling, and cancelling again does nothing
+		subscriber.subscription.request(10);
+		Assertions.assertTrue(subscriber.events.isEmpty());
+		subscriber.subscription.cancel();
+		Assertions.assertEquals(1, channel.unsubscribed.size());
+	}
+
+	@Test
+	public void blockedProducerContinuesOnceThereIsRoom() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		SubscriptionPublisher publisher = publisher(channel, 1, BackpressureConfig.OverflowPolicy.BLOCK);
+		publisher.subscribe(subscriber);
+
+		channel.offer(update("a", "u0"));
+		Thread producer = new Thread(() -> channel.offer(update("a", "u1")));
+		producer.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (publisher.getBlockedCount() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+
+		subscriber.subscription.request(2);
+		producer.join(TimeUnit.SECONDS.toMillis(5));
+		Assertions.assertEquals(List.of("u0", "u1"), subscriber.updates());
+		Assertions.assertEquals(0, publisher.getDroppedCount());
+	}
+
+	@Test
+	public void nonPositiveRequestIsAnError() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 10, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+		channel.offer(update("a", "u0"));
+
+		subscriber.subscription.request(0);
+		Exception thrown = Assertions.assertThrows(Exception.class, () -> subscriber.done.get(5, TimeUnit.SECONDS));
+		Assertions.assertTrue(thrown.getCause() instanceof IllegalArgumentException, String.valueOf(thrown.getCause()));
+		// the subscription is cancelled as well
+		Assertions.assertEquals(List.of(SUBSCRIPTION_ID), channel.unsubscribed);
+		subscriber.subscription.request(1);
+		Assertions.assertTrue(subscriber.events.isEmpty());
+	}
+
+	@Test
+	public void finishedIsDeliveredAndCompletes() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 10, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+		channel.offer(SubscribeEvent.STARTED);
+		channel.offer(update("a", "u0"));
+		channel.offer(SubscribeEvent.FINISHED);
+		Assertions.assertFalse(subscriber.done.isDone());
+
+		subscriber.subscription.request(3);
+		subscriber.done.get(5, TimeUnit.SECONDS);
+		Assertions.assertSame(SubscribeEvent.FINISHED, subscriber.events.get(2));
+		// the ship already ended the subscription, so there is nothing to unsubscribe from
+		subscriber.subscription.cancel();
+		Assertions.assertTrue(channel.unsubscribed.isEmpty());
+	}
+
+	@Test
+	public void failedSubscribeIsAnError() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		channel.subscribed = CompletableFuture.failedFuture(new AirlockRequestError("ship said no"));
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 10, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+
+		Exception thrown = Assertions.assertThrows(Exception.class, () -> subscriber.done.get(5, TimeUnit.SECONDS));
+		Assertions.assertTrue(thrown.getCause() instanceof AirlockRequestError, String.valueOf(thrown.getCause()));
+		Assertions.assertTrue(channel.unsubscribed.isEmpty());
+	}
+
+	@Test
+	public void cancelBeforeTheSubscriptionStartedUnsubscribesOnceItDoes() throws IOException {
+		FakeChannel channel = new FakeChannel();
+		CompletableFuture<Integer> subscribed = new CompletableFuture<>();
+		channel.subscribed = subscribed;
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher(channel, 10, BackpressureConfig.OverflowPolicy.DROP_OLDEST).subscribe(subscriber);
+
+		subscriber.subscription.cancel();
+		Assertions.assertTrue(channel.unsubscribed.isEmpty());
+		subscribed.complete(SUBSCRIPTION_ID);
+		Assertions.assertEquals(List.of(SUBSCRIPTION_ID), channel.unsubscribed);
+	}
+
+}
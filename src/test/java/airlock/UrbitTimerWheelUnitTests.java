@@ -0,0 +1,72 @@
+package airlock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UrbitTimerWheelUnitTests {
+
+	@Test
+	public void neverFiresEarly() throws InterruptedException {
+		// a small wheel, so that most of these go round it several times before they are due
+		TimerWheel wheel = new TimerWheel(5, TimeUnit.MILLISECONDS, 4, "test-timer");
+		long[] delays = {0, 1, 5, 12, 20, 21, 37, 60, 100, 150};
+		Map<Long, Long> firedAfter = new ConcurrentHashMap<>();
+		CountDownLatch fired = new CountDownLatch(delays.length);
+		long start = System.nanoTime();
+		for (long delay : delays) {
+			wheel.schedule(() -> {
+				firedAfter.put(delay, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				fired.countDown();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+		for (long delay : delays) {
+			long actual = firedAfter.get(delay);
+			Assertions.assertTrue(actual >= delay, "fired after " + actual + " ms instead of " + delay);
+			// a tick or two late at most, with plenty of slack for a busy machine
+			Assertions.assertTrue(actual < delay + 1_000, "fired after " + actual + " ms instead of " + delay);
+		}
+	}
+
+	@Test
+	public void cancelledTimeoutsDoNotFire() throws InterruptedException {
+		TimerWheel wheel = new TimerWheel(5, TimeUnit.MILLISECONDS, 8, "test-timer");
+		AtomicBoolean cancelledFired = new AtomicBoolean();
+		CountDownLatch laterFired = new CountDownLatch(1);
+
+		// one that is cancelled before the worker picks it up, and one after it is in the wheel
+		wheel.schedule(() -> cancelledFired.set(true), 20, TimeUnit.MILLISECONDS).cancel();
+		TimerWheel.Timeout inTheWheel = wheel.schedule(() -> cancelledFired.set(true), 50, TimeUnit.MILLISECONDS);
+		Thread.sleep(20);
+		inTheWheel.cancel();
+
+		wheel.schedule(laterFired::countDown, 100, TimeUnit.MILLISECONDS);
+		Assertions.assertTrue(laterFired.await(5, TimeUnit.SECONDS));
+		Assertions.assertFalse(cancelledFired.get());
+	}
+
+	@Test
+	public void aFailingTaskDoesNotStopTheWheel() throws InterruptedException {
+		TimerWheel wheel = new TimerWheel(5, TimeUnit.MILLISECONDS, 8, "test-timer");
+		CountDownLatch fired = new CountDownLatch(1);
+		wheel.schedule(() -> {
+			throw new IllegalStateException("timeout task failed");
+		}, 0, TimeUnit.MILLISECONDS);
+		wheel.schedule(fired::countDown, 20, TimeUnit.MILLISECONDS);
+		Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void rejectsInvalidSizes() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TimerWheel(0, TimeUnit.MILLISECONDS, 8, "test-timer"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TimerWheel(5, TimeUnit.MILLISECONDS, 0, "test-timer"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TimerWheel(5, TimeUnit.MILLISECONDS, (1 << 30) + 1, "test-timer"));
+	}
+
+}
@@ -0,0 +1,380 @@
+package airlock.agent.graph;
+
+import airlock.AirlockChannel;
+import airlock.AirlockCredentials;
+import airlock.EventStream;
+import airlock.HttpTransport;
+import airlock.JsonDecoder;
+import airlock.SubscribeEvent;
+import airlock.TransportRequest;
+import airlock.TransportResponse;
+import airlock.agent.graph.types.Graph;
+import airlock.agent.graph.types.GraphChange;
+import airlock.agent.graph.types.GraphUpdate;
+import airlock.agent.graph.types.Index;
+import airlock.agent.graph.types.Node;
+import airlock.agent.graph.types.NodeMap;
+import airlock.agent.graph.types.Post;
+import airlock.agent.graph.types.Resource;
+import airlock.errors.channel.AirlockRequestError;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.CookieHandler;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class UrbitGraphAgentUnitTests {
+
+	private static final Resource RESOURCE = new Resource("~zod", "test");
+	private static final Resource OTHER = new Resource("~zod", "other");
+
+	/**
+	 * A scry that the test answers
+	 */
+	private static class Scry {
+		final String path;
+		final CompletableFuture<GraphUpdate> result = new CompletableFuture<>();
+
+		Scry(String path) {
+			this.path = path;
+		}
+	}
+
+	/**
+	 * A channel which never talks to a ship. Scries wait until the test answers them,
+	 * and the test hands diffs to whoever subscribed through {@link FakeChannel#diff}
+	 */
+	private static class FakeChannel extends AirlockChannel {
+		final BlockingQueue<Scry> scries = new LinkedBlockingQueue<>();
+		volatile @Nullable Consumer<SubscribeEvent> handler;
+
+		FakeChannel() throws IOException {
+			super(new AirlockCredentials(new URL("http://localhost:8080"), "~zod", "lidlut-tabwed-pillex-ridrup"), new NoTransport());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T scryRequest(String app, String path, JsonDecoder<T> decoder) throws AirlockRequestError {
+			Scry scry = new Scry(path);
+			scries.add(scry);
+			try {
+				return (T) scry.result.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				throw new AirlockRequestError("Scry failed", e.getCause());
+			} catch (Exception e) {
+				throw new AirlockRequestError("Scry was never answered", e);
+			}
+		}
+
+		@Override
+		public CompletableFuture<Integer> subscribeAsync(String ship, String app, String path, @Nullable JsonDecoder<?> decoder, Consumer<SubscribeEvent> subscribeHandler) {
+			handler = subscribeHandler;
+			return CompletableFuture.completedFuture(1);
+		}
+
+		@Override
+		public CompletableFuture<Void> unsubscribeAsync(int subscription) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		Scry nextScry() throws InterruptedException {
+			Scry scry = scries.poll(5, TimeUnit.SECONDS);
+			Assertions.assertNotNull(scry);
+			return scry;
+		}
+
+		void diff(GraphUpdate update) {
+			Assertions.assertNotNull(handler);
+			handler.accept(SubscribeEvent.fromDecodedUpdate(update));
+		}
+	}
+
+	private static class NoTransport implements HttpTransport {
+		@Override
+		public TransportResponse execute(TransportRequest request) throws IOException {
+			throw new IOException("no requests in this test");
+		}
+
+		@Override
+		public CompletableFuture<TransportResponse> executeAsync(TransportRequest request) {
+			return CompletableFuture.failedFuture(new IOException("no requests in this test"));
+		}
+
+		@Override
+		public HttpTransport withCookieHandler(CookieHandler cookieHandler) {
+			return this;
+		}
+
+		@Override
+		public EventStream open(URL url, Map<String, String> headers, EventStream.Listener listener) {
+			throw new UnsupportedOperationException("no event stream in this test");
+		}
+	}
+
+	private static Node node(Index index) {
+		return new Node(new Post("~zod", index, 0, Collections.emptyList()), null);
+	}
+
+	private static GraphUpdate.AddGraph addGraph(long... keys) {
+		Graph graph = new Graph();
+		for (long key : keys) {
+			graph.put(BigInteger.valueOf(key), node(new Index(BigInteger.valueOf(key))));
+		}
+		return new GraphUpdate.AddGraph(RESOURCE, graph);
+	}
+
+	private static GraphUpdate.AddNodes addNodes(long... keys) {
+		NodeMap nodes = new NodeMap();
+		for (long key : keys) {
+			Index index = new Index(BigInteger.valueOf(key));
+			nodes.put(index, node(index));
+		}
+		return new GraphUpdate.AddNodes(RESOURCE, nodes);
+	}
+
+	private static GraphUpdate.AddNodes addNodes(Resource resource, String... indices) {
+		NodeMap nodes = new NodeMap();
+		for (String index : indices) {
+			nodes.put(Index.fromString(index), node(Index.fromString(index)));
+		}
+		return new GraphUpdate.AddNodes(resource, nodes);
+	}
+
+	private static GraphUpdate.RemoveNodes removeNodes(String... indices) {
+		List<Index> removed = new ArrayList<>();
+		for (String index : indices) {
+			removed.add(Index.fromString(index));
+		}
+		return new GraphUpdate.RemoveNodes(RESOURCE, removed);
+	}
+
+	/**
+	 * An agent that is live syncing the test resource, whose graph has the nodes 1 and 2
+	 */
+	private static GraphAgent syncedAgent(FakeChannel channel) throws Exception {
+		GraphAgent agent = new GraphAgent(channel);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		channel.nextScry().result.complete(addGraph(1, 2));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		return agent;
+	}
+
+	private static List<Index> indices(GraphChange change) {
+		if (change instanceof GraphChange.NodesAdded) {
+			return new ArrayList<>(((GraphChange.NodesAdded) change).nodes.keySet());
+		}
+		Assertions.assertTrue(change instanceof GraphChange.NodesRemoved, change.toString());
+		return ((GraphChange.NodesRemoved) change).indices;
+	}
+
+	private static List<BigInteger> keys(GraphAgent agent) {
+		Graph graph = agent.getGraphSnapshot(RESOURCE);
+		Assertions.assertNotNull(graph);
+		return new ArrayList<>(graph.keySet());
+	}
+
+	private static List<BigInteger> atoms(long... atoms) {
+		List<BigInteger> list = new ArrayList<>();
+		for (long atom : atoms) {
+			list.add(BigInteger.valueOf(atom));
+		}
+		return list;
+	}
+
+	@Test
+	public void diffsAreHeldBackUntilTheGraphIsFetched() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		Scry scry = channel.nextScry();
+		Assertions.assertEquals("/graph/~zod/test", scry.path);
+
+		channel.diff(addNodes(2));
+		Assertions.assertNull(agent.getGraphSnapshot(RESOURCE));
+
+		// the graph was read before the diff happened
+		scry.result.complete(addGraph(1));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(atoms(2, 1), keys(agent));
+		Assertions.assertEquals(Set.of(RESOURCE), agent.getSyncedResources());
+
+		// and once it is applied, diffs are applied right away
+		channel.diff(addNodes(3));
+		Assertions.assertEquals(atoms(3, 2, 1), keys(agent));
+	}
+
+	@Test
+	public void overlappingSyncsDontLoseHeldBackDiffs() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		Scry first = channel.nextScry();
+		// i.e. a resync which starts while the first sync is still fetching
+		CompletableFuture<Void> second = agent.syncGraphs(List.of(RESOURCE));
+		Scry secondScry = channel.nextScry();
+
+		channel.diff(addNodes(2));
+		// the second fetch was read later, and already has a node that the first one doesn't
+		secondScry.result.complete(addGraph(1));
+		second.get(5, TimeUnit.SECONDS);
+		// the diff is still held back, since the first fetch is still running
+		Assertions.assertEquals(atoms(1), keys(agent));
+		Assertions.assertTrue(agent.getSyncedResources().isEmpty());
+
+		// the older graph doesn't replace the newer one
+		first.result.complete(addGraph());
+		caughtUp.get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(atoms(2, 1), keys(agent));
+		Assertions.assertEquals(Set.of(RESOURCE), agent.getSyncedResources());
+
+		channel.diff(addNodes(3));
+		Assertions.assertEquals(atoms(3, 2, 1), keys(agent));
+	}
+
+	@Test
+	public void graphIsSyncedIfAnyOverlappingFetchSucceeded() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		Scry first = channel.nextScry();
+		CompletableFuture<Void> second = agent.syncGraphs(List.of(RESOURCE));
+		Scry secondScry = channel.nextScry();
+
+		channel.diff(addNodes(2));
+		first.result.complete(addGraph(1));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		Assertions.assertTrue(agent.getSyncedResources().isEmpty());
+
+		// the last one to finish failed, but the graph of the first is there, and the held back diffs go on top of it
+		secondScry.result.completeExceptionally(new IOException("connection reset"));
+		second.get(5, TimeUnit.SECONDS);
+		Assertions.assertEquals(atoms(2, 1), keys(agent));
+		Assertions.assertEquals(Set.of(RESOURCE), agent.getSyncedResources());
+	}
+
+	@Test
+	public void failedFetchIsNotSynced() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		channel.nextScry().result.completeExceptionally(new IOException("connection reset"));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		Assertions.assertTrue(agent.getSyncedResources().isEmpty());
+		Assertions.assertTrue(agent.isCaughtUp());
+	}
+
+	@Test
+	public void resourceListenersOnlyGetTheirResource() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		List<GraphChange> everything = new CopyOnWriteArrayList<>();
+		List<GraphChange> ours = new CopyOnWriteArrayList<>();
+		List<GraphChange> others = new CopyOnWriteArrayList<>();
+		agent.addChangeListener(everything::add);
+		GraphAgent.ListenerRegistration registration = agent.addChangeListener(RESOURCE, ours::add);
+		agent.addChangeListener(OTHER, others::add);
+
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		channel.nextScry().result.complete(addGraph(1));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		channel.diff(addNodes(2));
+
+		// the global listener also hears about the new key, which doesn't belong to any resource
+		Assertions.assertEquals(3, everything.size());
+		Assertions.assertTrue(everything.get(0) instanceof GraphChange.GraphAdded);
+		Assertions.assertEquals(Set.of(RESOURCE), ((GraphChange.KeysChanged) everything.get(1)).keys);
+		Assertions.assertEquals(2, ours.size());
+		Assertions.assertTrue(ours.get(0) instanceof GraphChange.GraphAdded);
+		Assertions.assertEquals(List.of(Index.fromString("/2")), indices(ours.get(1)));
+		Assertions.assertTrue(others.isEmpty());
+
+		registration.close();
+		channel.diff(addNodes(3));
+		Assertions.assertEquals(4, everything.size());
+		Assertions.assertEquals(2, ours.size());
+	}
+
+	@Test
+	public void prefixListenersOnlyGetTheNodesAroundTheirPrefix() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = syncedAgent(channel);
+		List<GraphChange> replies = new CopyOnWriteArrayList<>();
+		agent.addChangeListener(RESOURCE, Index.fromString("/1"), replies::add);
+
+		// nodes under other parents are left out, and a change with none of ours isn't delivered at all
+		channel.diff(addNodes(RESOURCE, "/1/5", "/2/6"));
+		channel.diff(addNodes(RESOURCE, "/2/7"));
+		Assertions.assertEquals(1, replies.size());
+		Assertions.assertEquals(List.of(Index.fromString("/1/5")), indices(replies.get(0)));
+
+		// replacing the node at the prefix affects everything under it
+		channel.diff(addNodes(RESOURCE, "/1", "/2"));
+		Assertions.assertEquals(List.of(Index.fromString("/1")), indices(replies.get(1)));
+
+		channel.diff(removeNodes("/2/6", "/1/5"));
+		Assertions.assertEquals(List.of(Index.fromString("/1/5")), indices(replies.get(2)));
+		channel.diff(removeNodes("/2"));
+		Assertions.assertEquals(3, replies.size());
+
+		// a new graph is passed on as it is
+		channel.diff(addGraph(8));
+		Assertions.assertEquals(4, replies.size());
+		Assertions.assertEquals(Set.of(BigInteger.valueOf(8)), ((GraphChange.GraphAdded) replies.get(3)).graph.keySet());
+	}
+
+	@Test
+	public void listenersGetCopiesOfTheState() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = new GraphAgent(channel);
+		List<GraphChange> changes = new CopyOnWriteArrayList<>();
+		agent.addChangeListener(RESOURCE, changes::add);
+		CompletableFuture<Void> caughtUp = agent.startLiveSync(List.of(RESOURCE));
+		channel.nextScry().result.complete(addGraph(1));
+		caughtUp.get(5, TimeUnit.SECONDS);
+		Graph delivered = ((GraphChange.GraphAdded) changes.get(0)).graph;
+
+		// the agent's graph keeps changing, but what was delivered doesn't
+		channel.diff(addNodes(2));
+		channel.diff(addNodes(RESOURCE, "/1/3"));
+		Assertions.assertEquals(atoms(1), new ArrayList<>(delivered.keySet()));
+		// i.e. node 1 has no replies in it
+		Assertions.assertTrue(delivered.get(BigInteger.ONE).toString().endsWith("children={}}"));
+
+		// and changing it doesn't change the agent's graph
+		delivered.put(BigInteger.valueOf(4), node(new Index(BigInteger.valueOf(4))));
+		((GraphChange.NodesAdded) changes.get(1)).nodes.clear();
+		Assertions.assertEquals(atoms(2, 1), keys(agent));
+		Assertions.assertFalse(agent.getGraphSnapshot(RESOURCE).get(BigInteger.ONE).toString().endsWith("children={}}"));
+	}
+
+	@Test
+	public void failingListenerDoesNotKeepTheChangeFromOthers() throws Exception {
+		FakeChannel channel = new FakeChannel();
+		GraphAgent agent = syncedAgent(channel);
+		List<GraphChange> changes = new CopyOnWriteArrayList<>();
+		agent.addChangeListener(RESOURCE, change -> {
+			throw new IllegalStateException("listener failed");
+		});
+		agent.addChangeListener(RESOURCE, changes::add);
+
+		channel.diff(addNodes(3));
+		Assertions.assertEquals(1, changes.size());
+		Assertions.assertEquals(atoms(3, 2, 1), keys(agent));
+	}
+
+}
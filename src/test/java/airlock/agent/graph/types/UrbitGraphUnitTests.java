@@ -0,0 +1,249 @@
+package airlock.agent.graph.types;
+
+import airlock.AirlockUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class UrbitGraphUnitTests {
+
+	// a recent @da, so that the keys use both halves of the packed form
+	private static final BigInteger DA = new BigInteger("170141184504863525594501376000000000000");
+
+	private static Node node(BigInteger key) {
+		return new Node(new Post("~zod", new Index(List.of(key)), 0, Collections.emptyList()), null);
+	}
+
+	private static List<BigInteger> keys(Graph graph) {
+		return new ArrayList<>(graph.keySet());
+	}
+
+	/**
+	 * What a graph used to be, which iterates from the greatest key to the least
+	 */
+	private static NavigableMap<BigInteger, Node> reference() {
+		return new TreeMap<>(Comparator.reverseOrder());
+	}
+
+	private static void assertSameAs(NavigableMap<BigInteger, Node> expected, Graph graph) {
+		Assertions.assertEquals(expected.size(), graph.size());
+		Assertions.assertIterableEquals(new ArrayList<>(expected.keySet()), keys(graph));
+		List<BigInteger> forEachKeys = new ArrayList<>();
+		graph.forEach((key, node) -> {
+			forEachKeys.add(key);
+			Assertions.assertSame(expected.get(key), node);
+		});
+		Assertions.assertIterableEquals(expected.keySet(), forEachKeys);
+		Assertions.assertEquals(expected, graph);
+		Assertions.assertEquals(expected.hashCode(), graph.hashCode());
+		if (!expected.isEmpty()) {
+			Assertions.assertEquals(expected.firstKey(), graph.firstKey());
+			Assertions.assertEquals(expected.lastKey(), graph.lastKey());
+		}
+	}
+
+	/**
+	 * Keys on both sides of the packed limit, so that the overflow map is used too
+	 */
+	private static BigInteger randomKey(Random random) {
+		switch (random.nextInt(6)) {
+			case 0:
+				return BigInteger.valueOf(random.nextInt(50));
+			case 1:
+				return new BigInteger(130 + random.nextInt(8), random);
+			case 2:
+				return BigInteger.valueOf(-1 - random.nextInt(50));
+			case 3:
+				return BigInteger.ONE.shiftLeft(128).subtract(BigInteger.valueOf(random.nextInt(3)));
+			default:
+				return DA.add(BigInteger.valueOf(random.nextInt(200)).shiftLeft(64)).add(BigInteger.valueOf(random.nextInt(3)));
+		}
+	}
+
+	@Test
+	public void descendingPutAllIsLoadedInOrder() {
+		// this is the order that an add-graph comes in (and that a graph iterates in)
+		int count = 100_000;
+		Map<BigInteger, Node> descending = new LinkedHashMap<>();
+		for (int i = count - 1; i >= 0; i--) {
+			BigInteger key = DA.add(BigInteger.valueOf(i).shiftLeft(64));
+			descending.put(key, node(key));
+		}
+
+		Graph graph = new Graph();
+		// putting them one by one would move the whole array on every put, which takes seconds rather than tens of milliseconds
+		Assertions.assertTimeout(Duration.ofSeconds(1), () -> graph.putAll(descending));
+
+		Assertions.assertEquals(count, graph.size());
+		Assertions.assertIterableEquals(new ArrayList<>(descending.keySet()), keys(graph));
+		Assertions.assertEquals(DA.add(BigInteger.valueOf(count - 1).shiftLeft(64)), graph.firstKey());
+		Assertions.assertEquals(DA, graph.lastKey());
+	}
+
+	@Test
+	public void putAllOfAnotherGraphKeepsItsOrder() {
+		Graph source = new Graph();
+		for (int i = 0; i < 3_000; i++) {
+			BigInteger key = DA.subtract(BigInteger.valueOf(i));
+			source.put(key, node(key));
+		}
+
+		Graph copy = new Graph();
+		copy.putAll(source);
+
+		Assertions.assertEquals(source.size(), copy.size());
+		Assertions.assertIterableEquals(keys(source), keys(copy));
+		for (BigInteger key : source.keySet()) {
+			Assertions.assertSame(source.get(key), copy.get(key));
+		}
+	}
+
+	@Test
+	public void betweenTakesThePostsInThePeriod() {
+		Instant start = Instant.parse("2026-10-01T00:00:00Z");
+		Graph graph = new Graph();
+		for (int day = -2; day < 10; day++) {
+			BigInteger key = AirlockUtils.unixToDa(start.plusSeconds(day * 86_400L));
+			graph.put(key, node(key));
+		}
+		// keys that don't fit in 128 bits are never in a period
+		BigInteger wide = BigInteger.ONE.shiftLeft(130);
+		graph.put(wide, node(wide));
+
+		Graph week = graph.between(start, start.plusSeconds(7 * 86_400L));
+		Assertions.assertEquals(7, week.size());
+		Assertions.assertEquals(AirlockUtils.unixToDa(start.plusSeconds(6 * 86_400L)), week.firstKey());
+		Assertions.assertEquals(AirlockUtils.unixToDa(start), week.lastKey());
+		Assertions.assertEquals(graph.range(AirlockUtils.unixToDa(start), AirlockUtils.unixToDa(start.plusSeconds(7 * 86_400L))), week);
+
+		Assertions.assertTrue(graph.between(start, start).isEmpty());
+		Assertions.assertTrue(graph.between(start.plusSeconds(1), start).isEmpty());
+	}
+
+	@Test
+	public void behavesLikeASortedMap() {
+		Random random = new Random(22);
+		NavigableMap<BigInteger, Node> expected = reference();
+		Graph graph = new Graph();
+		for (int i = 0; i < 5_000; i++) {
+			BigInteger key = randomKey(random);
+			if (random.nextInt(3) == 0) {
+				Assertions.assertSame(expected.remove(key), graph.remove(key));
+			} else {
+				Node node = node(key);
+				Assertions.assertSame(expected.put(key, node), graph.put(key, node));
+			}
+			Assertions.assertSame(expected.get(key), graph.get(key));
+			Assertions.assertEquals(expected.containsKey(key), graph.containsKey(key));
+		}
+		assertSameAs(expected, graph);
+		Assertions.assertNull(graph.get("not a key"));
+		Assertions.assertNull(graph.remove(1L));
+	}
+
+	@Test
+	public void overflowKeysAreOrderedAroundThePackedOnes() {
+		BigInteger wide = BigInteger.ONE.shiftLeft(128);
+		BigInteger maxPacked = wide.subtract(BigInteger.ONE);
+		BigInteger negative = BigInteger.ONE.negate();
+		Graph graph = new Graph();
+		for (BigInteger key : List.of(BigInteger.ZERO, wide, DA, negative, maxPacked)) {
+			graph.put(key, node(key));
+		}
+		Assertions.assertIterableEquals(List.of(wide, maxPacked, DA, BigInteger.ZERO, negative), keys(graph));
+		Assertions.assertEquals(wide, graph.firstKey());
+		Assertions.assertEquals(negative, graph.lastKey());
+
+		graph.remove(wide);
+		graph.remove(negative);
+		Assertions.assertEquals(maxPacked, graph.firstKey());
+		Assertions.assertEquals(BigInteger.ZERO, graph.lastKey());
+	}
+
+	@Test
+	public void removingThroughTheIterator() {
+		Random random = new Random(2);
+		NavigableMap<BigInteger, Node> expected = reference();
+		Graph graph = new Graph();
+		for (int i = 0; i < 1_000; i++) {
+			BigInteger key = randomKey(random);
+			Node node = node(key);
+			expected.put(key, node);
+			graph.put(key, node);
+		}
+		// drop every other key, on both sides of the packed limit
+		Iterator<Map.Entry<BigInteger, Node>> iterator = graph.entrySet().iterator();
+		boolean drop = false;
+		while (iterator.hasNext()) {
+			BigInteger key = iterator.next().getKey();
+			if (drop) {
+				iterator.remove();
+				expected.remove(key);
+			}
+			drop = !drop;
+		}
+		assertSameAs(expected, graph);
+		Assertions.assertThrows(IllegalStateException.class, () -> graph.entrySet().iterator().remove());
+	}
+
+	@Test
+	public void putAllMatchesPuttingOneByOne() {
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			NavigableMap<BigInteger, Node> expected = reference();
+			// in whatever order the source happens to iterate
+			Map<BigInteger, Node> source = round % 2 == 0 ? new LinkedHashMap<>() : new HashMap<>();
+			for (int i = 0; i < 500; i++) {
+				BigInteger key = randomKey(random);
+				Node node = node(key);
+				expected.put(key, node);
+				source.put(key, node);
+			}
+			Graph graph = new Graph();
+			graph.putAll(source);
+			assertSameAs(expected, graph);
+
+			// and into a graph that already has keys
+			BigInteger extra = DA.add(BigInteger.valueOf(1_000).shiftLeft(64));
+			Graph nonEmpty = new Graph();
+			nonEmpty.put(extra, node(extra));
+			nonEmpty.putAll(source);
+			expected.put(extra, nonEmpty.get(extra));
+			assertSameAs(expected, nonEmpty);
+		}
+	}
+
+	@Test
+	public void rangeOfKeys() {
+		Graph graph = new Graph();
+		NavigableMap<BigInteger, Node> expected = reference();
+		Random random = new Random(11);
+		for (int i = 0; i < 1_000; i++) {
+			BigInteger key = randomKey(random);
+			Node node = node(key);
+			graph.put(key, node);
+			expected.put(key, node);
+		}
+		BigInteger from = DA.add(BigInteger.valueOf(50).shiftLeft(64));
+		BigInteger to = DA.add(BigInteger.valueOf(150).shiftLeft(64));
+		// the reference is reversed, so the range is (to, from]
+		assertSameAs(expected.subMap(to, false, from, true), graph.range(from, to));
+		assertSameAs(expected.subMap(BigInteger.ONE.shiftLeft(200), false, BigInteger.ZERO, true), graph.range(BigInteger.ZERO, BigInteger.ONE.shiftLeft(200)));
+		Assertions.assertTrue(graph.range(to, from).isEmpty());
+	}
+
+}
@@ -0,0 +1,195 @@
+package airlock.agent.graph.types;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class UrbitIndexUnitTests {
+
+	// a `@da`, and one atom on either side of the 128 bit limit
+	private static final String DA = "170141184504863525594501376000000000000";
+	private static final String MAX_PACKED = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE).toString();
+	private static final String WIDE = BigInteger.ONE.shiftLeft(128).toString();
+
+	/**
+	 * What the split based parser used to produce
+	 */
+	private static List<BigInteger> legacyAtoms(String indexStr) {
+		return Arrays.stream(indexStr.split("/")).skip(1).map(BigInteger::new).collect(Collectors.toList());
+	}
+
+	@Test
+	public void parsesLikeTheLegacyParser() {
+		String[] indexes = {
+				"",
+				"/",
+				"/0",
+				"/1",
+				"/" + DA,
+				"/" + DA + "/1/2",
+				"/" + MAX_PACKED,
+				"/" + WIDE,
+				"/" + DA + "/" + WIDE + "/3",
+				"/1/",
+				"/" + DA + "/2//",
+				"/9223372036854775807",
+				"/9223372036854775808",
+				"/18446744073709551615",
+				"/18446744073709551616",
+		};
+		for (String indexStr : indexes) {
+			Index index = Index.fromString(indexStr);
+			Assertions.assertEquals(legacyAtoms(indexStr), index, indexStr);
+			Assertions.assertEquals(new Index(legacyAtoms(indexStr)), index, indexStr);
+		}
+	}
+
+	@Test
+	public void rootIsTheEmptyIndex() {
+		Assertions.assertTrue(Index.fromString("/").isEmpty());
+		Assertions.assertEquals(Index.createEmptyIndex(), Index.fromString("/"));
+		Assertions.assertEquals("", Index.fromString("/").asString());
+	}
+
+	@Test
+	public void trailingSlashesAreIgnored() {
+		Assertions.assertEquals("/1/2", Index.fromString("/1/2/").asString());
+		Assertions.assertEquals("/" + WIDE, Index.fromString("/" + WIDE + "/").asString());
+	}
+
+	@Test
+	public void rejectsMalformedIndexes() {
+		String[] malformed = {
+				"1/2",
+				"/1//2",
+				"/-5",
+				"/+5",
+				"/1a",
+				"/\u0661\u0662", // arabic-indic digits, which Character.isDigit and BigInteger would both take
+				"/" + WIDE + "/-5",
+				"/-" + WIDE,
+				"/" + WIDE + "\u0663",
+				"/" + WIDE + "//1",
+		};
+		for (String indexStr : malformed) {
+			Assertions.assertThrows(NumberFormatException.class, () -> Index.fromString(indexStr), indexStr);
+		}
+	}
+
+	@Test
+	public void randomIndexesRoundTrip() {
+		Random random = new Random(24);
+		for (int i = 0; i < 2_000; i++) {
+			StringBuilder indexStr = new StringBuilder();
+			int atoms = 1 + random.nextInt(4);
+			for (int j = 0; j < atoms; j++) {
+				// anything from a single bit to a bit past the packed limit
+				indexStr.append('/').append(new BigInteger(1 + random.nextInt(130), random));
+			}
+			Index index = Index.fromString(indexStr.toString());
+			Assertions.assertEquals(legacyAtoms(indexStr.toString()), index);
+			Assertions.assertEquals(indexStr.toString(), index.asString());
+		}
+	}
+
+	/**
+	 * Anything from a single bit to a bit past the packed limit, with extra weight on the edges of the two halves
+	 */
+	private static BigInteger randomAtom(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return BigInteger.ONE.shiftLeft(random.nextInt(130)).subtract(BigInteger.valueOf(random.nextInt(2)));
+			default:
+				return new BigInteger(1 + random.nextInt(130), random);
+		}
+	}
+
+	@Test
+	public void packedHashIsTheBigIntegerHash() {
+		Random random = new Random(23);
+		List<BigInteger> atoms = new ArrayList<>(List.of(
+				BigInteger.ZERO,
+				BigInteger.ONE,
+				BigInteger.valueOf(Long.MAX_VALUE),
+				BigInteger.ONE.shiftLeft(63),
+				BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE),
+				BigInteger.ONE.shiftLeft(64),
+				new BigInteger(DA),
+				new BigInteger(MAX_PACKED)
+		));
+		for (int i = 0; i < 10_000; i++) {
+			BigInteger atom = randomAtom(random);
+			if (Atoms.fitsPacked(atom)) {
+				atoms.add(atom);
+			}
+		}
+		for (BigInteger atom : atoms) {
+			long hi = Atoms.high(atom);
+			long lo = Atoms.low(atom);
+			Assertions.assertEquals(atom.hashCode(), Atoms.hash(hi, lo), atom.toString());
+			Assertions.assertEquals(atom, Atoms.toBigInteger(hi, lo));
+			Assertions.assertEquals(atom.toString(), Atoms.toString(hi, lo));
+		}
+	}
+
+	@Test
+	public void equalsAndHashLikeAnyOtherList() {
+		Random random = new Random(32);
+		Map<List<BigInteger>, Integer> byList = new HashMap<>();
+		for (int i = 0; i < 2_000; i++) {
+			List<BigInteger> atoms = new ArrayList<>();
+			int count = random.nextInt(4);
+			for (int j = 0; j < count; j++) {
+				atoms.add(randomAtom(random));
+			}
+			Index index = new Index(atoms);
+			Index parsed = Index.fromString(index.asString());
+
+			// both ways round, and against the wide and packed forms of the same atoms
+			Assertions.assertEquals(atoms, index);
+			Assertions.assertEquals(index, atoms);
+			Assertions.assertEquals(index, parsed);
+			Assertions.assertEquals(atoms.hashCode(), index.hashCode());
+			Assertions.assertEquals(atoms.hashCode(), parsed.hashCode());
+			byList.put(atoms, i);
+			Assertions.assertEquals(Integer.valueOf(i), byList.get(index));
+
+			if (count > 0) {
+				List<BigInteger> changed = new ArrayList<>(atoms);
+				changed.set(count - 1, changed.get(count - 1).add(BigInteger.ONE));
+				Assertions.assertNotEquals(new Index(changed), index);
+				Assertions.assertNotEquals(index, Index.fromIndex(index, BigInteger.ONE));
+			}
+		}
+	}
+
+	@Test
+	public void viewsShareTheSemanticsOfTheWholeIndex() {
+		BigInteger da = new BigInteger(DA);
+		BigInteger wide = new BigInteger(WIDE);
+		for (Index index : List.of(new Index(List.of(da, BigInteger.ONE, BigInteger.TWO)), new Index(List.of(da, wide, BigInteger.TWO)))) {
+			Index prefix = index.prefix(2);
+			Index suffix = index.suffix(1);
+			Assertions.assertEquals(index.subList(0, 2), prefix);
+			Assertions.assertEquals(new ArrayList<>(index.subList(1, 3)), suffix);
+			Assertions.assertEquals(new ArrayList<>(index.subList(1, 3)).hashCode(), suffix.hashCode());
+			Assertions.assertEquals(index, Index.fromIndex(prefix, index.suffix(2)));
+			Assertions.assertEquals(index.asString(), Index.fromIndex(prefix, index.get(2)).asString());
+
+			Assertions.assertTrue(index.startsWith(prefix));
+			Assertions.assertTrue(index.startsWith(Index.createEmptyIndex()));
+			Assertions.assertTrue(index.startsWith(index));
+			Assertions.assertFalse(prefix.startsWith(index));
+			Assertions.assertFalse(index.startsWith(suffix));
+		}
+	}
+
+}